@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import services.codec.CacheDeNomes;
+import services.codec.CodecBinario;
+import services.codec.CodecTexto;
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+
+/**
+ * Conversão das mensagens de ordem recebidas pela Bolsa de Valores em operações, nos formatos
+ * de texto (converterMensagemParaOperacao) e binário, e a escrita das mensagens pelo Broker.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private final CacheDeNomes nomes = new CacheDeNomes(1024);
+    private String mensagemTexto;
+    private byte[] mensagemBinaria;
+    private byte[] destino;
+    private Operacao operacao;
+
+    @Setup
+    public void preparar() {
+        operacao = new Operacao(TipoOperacao.COMPRA, "PETR4", 300, 3_512, "CORRETORA", Relogio.agora());
+        mensagemTexto = CodecTexto.deOperacao(operacao);
+        mensagemBinaria = new byte[CodecBinario.TAMANHO_ORDEM];
+        CodecBinario.codificarOrdem(mensagemBinaria, 0, TipoOperacao.COMPRA, "PETR4", 300,
+                TabelaDeTicks.getInstance().paraPontoFixo("PETR4", 3_512), "CORRETORA");
+        destino = new byte[CodecBinario.TAMANHO_ORDEM];
+    }
+
+    @Benchmark
+    public Operacao lerTexto() {
+        return CodecTexto.paraOperacao(mensagemTexto, TipoOperacao.COMPRA);
+    }
+
+    /**
+     * Mesmos passos de BolsaDeValores.converterMensagemBinariaParaOperacao.
+     */
+    @Benchmark
+    public Operacao lerBinario() {
+        byte[] corpo = mensagemBinaria;
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_ORDEM) {
+            throw new IllegalStateException();
+        }
+        String ativo = CodecBinario.ativo(corpo, 0, nomes);
+        long preco = TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, 0));
+        return new Operacao(CodecBinario.lado(corpo, 0), ativo, CodecBinario.quantidade(corpo, 0), preco,
+                CodecBinario.corretora(corpo, 0, nomes), Relogio.agora());
+    }
+
+    @Benchmark
+    public String escreverTexto() {
+        return CodecTexto.deOperacao(operacao);
+    }
+
+    @Benchmark
+    public byte[] escreverBinario() {
+        CodecBinario.codificarOrdem(destino, 0, operacao.getTipo(), operacao.getAtivo(), operacao.getQuantidade(),
+                TabelaDeTicks.getInstance().paraPontoFixo(operacao.getAtivo(), operacao.getPreco()), operacao.getCorretora());
+        return destino;
+    }
+}
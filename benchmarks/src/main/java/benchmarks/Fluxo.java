@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.Random;
+
+import services.manager.TipoOperacao;
+
+/**
+ * Gera um fluxo de ordens pré-calculado para os benchmarks, próximo de um fluxo real: a
+ * maior parte das ordens repousa perto do topo do livro e uma fração cruza o spread.
+ */
+final class Fluxo {
+
+    // Tamanho do fluxo pré-calculado (potência de 2)
+    static final int TAMANHO = 1 << 16;
+
+    final TipoOperacao[] tipos = new TipoOperacao[TAMANHO];
+    final int[] ativos = new int[TAMANHO];
+    final int[] quantidades = new int[TAMANHO];
+    final long[] precos = new long[TAMANHO];
+
+    /**
+     * Gera o fluxo.
+     *
+     * @param quantidadeAtivos A quantidade de ativos negociados.
+     * @param profundidade     A distância máxima, em ticks, das ordens que repousam em relação ao topo.
+     * @param fracaoAgressiva  A fração das ordens que cruza o spread.
+     * @param semente          A semente do gerador, para fluxos reproduzíveis.
+     */
+    Fluxo(int quantidadeAtivos, int profundidade, double fracaoAgressiva, long semente) {
+        Random aleatorio = new Random(semente);
+        for (int i = 0; i < TAMANHO; i++) {
+            boolean compra = aleatorio.nextBoolean();
+            // Distância ao preço central: negativa para ordens que cruzam o spread
+            long distancia = aleatorio.nextDouble() < fracaoAgressiva
+                    ? -1 - aleatorio.nextInt(3)
+                    : (long) Math.min(profundidade - 1, Math.abs(aleatorio.nextGaussian()) * profundidade / 4);
+
+            tipos[i] = compra ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+            ativos[i] = aleatorio.nextInt(quantidadeAtivos);
+            quantidades[i] = 100 * (1 + aleatorio.nextInt(10));
+            precos[i] = compra
+                    ? LivroDeOfertasBenchmark.PRECO_CENTRAL - distancia
+                    : LivroDeOfertasBenchmark.PRECO_CENTRAL + 1 + distancia;
+        }
+    }
+
+    /**
+     * Gera os nomes dos ativos de um benchmark. Cada benchmark usa um prefixo próprio, pois o
+     * LivroDeOfertas é um singleton compartilhado por toda a JVM.
+     */
+    static String[] nomesDeAtivos(String prefixo, int quantidade) {
+        String[] nomes = new String[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            nomes[i] = prefixo + i;
+        }
+        return nomes;
+    }
+}
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import services.history.HistoricoOperacoes;
+import services.history.JornalNegocios;
+import services.history.ModoDurabilidade;
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TipoOperacao;
+
+/**
+ * Registro de negócios no histórico: HistoricoOperacoes.registrarOperacao, com a configuração
+ * padrão, e o JornalNegocios em cada modo de durabilidade. Os segmentos são gravados em um
+ * diretório temporário, apagado ao final de cada execução.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoricoBenchmark {
+
+    private static final Operacao NEGOCIO =
+            new Operacao(TipoOperacao.COMPRA, "PETR4", 300, 3_512, "CORRETORA", Relogio.agora());
+
+    @State(Scope.Thread)
+    public static class Jornal {
+
+        @Param({"POR_LOTE", "TEMPORIZADO", "SISTEMA_OPERACIONAL"})
+        ModoDurabilidade modo;
+
+        Path diretorio;
+        JornalNegocios jornal;
+
+        @Setup(Level.Trial)
+        public void abrir() throws IOException {
+            diretorio = Files.createTempDirectory("jornal-benchmark");
+            jornal = new JornalNegocios(diretorio, 64 * 1024 * 1024, modo, 100, 10);
+        }
+
+        @TearDown(Level.Trial)
+        public void apagar() throws IOException {
+            jornal.close();
+            apagarDiretorio(diretorio);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Historico {
+
+        Path diretorio;
+        HistoricoOperacoes historico;
+
+        @Setup(Level.Trial)
+        public void abrir() throws IOException {
+            // O HistoricoOperacoes lê o diretório das propriedades de sistema na primeira utilização
+            diretorio = Files.createTempDirectory("historico-benchmark");
+            System.setProperty("bolsa.historico.diretorio", diretorio.toString());
+            historico = HistoricoOperacoes.getInstance();
+        }
+
+        @TearDown(Level.Trial)
+        public void apagar() throws IOException {
+            apagarDiretorio(diretorio);
+        }
+    }
+
+    @Benchmark
+    public void registrarNoJornal(Jornal estado) throws IOException {
+        estado.jornal.registrar(NEGOCIO);
+    }
+
+    /**
+     * Usa o modo de durabilidade padrão (bolsa.historico.durabilidade).
+     */
+    @Benchmark
+    public void registrarOperacao(Historico estado) {
+        estado.historico.registrarOperacao(NEGOCIO);
+    }
+
+    private static void apagarDiretorio(Path diretorio) throws IOException {
+        try (Stream<Path> arquivos = Files.walk(diretorio)) {
+            arquivos.sorted(Comparator.reverseOrder()).forEach(arquivo -> arquivo.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.LivroDeOfertas;
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TipoOperacao;
+
+/**
+ * Inclusão, remoção e consulta de ofertas no LivroDeOfertas, com livros de várias
+ * profundidades (níveis de preço por lado) e quantidades de ativos.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LivroDeOfertasBenchmark {
+
+    // Preço de referência dos livros, em ticks
+    static final long PRECO_CENTRAL = 10_000;
+
+    @Param({"1", "100"})
+    int ativos;
+
+    @Param({"10", "1000"})
+    int profundidade;
+
+    private LivroDeOfertas livro;
+    private String[] nomes;
+    private long agora;
+    private int proximo;
+
+    @Setup
+    public void preencherLivro() {
+        livro = LivroDeOfertas.getInstance();
+        agora = Relogio.agora();
+        nomes = Fluxo.nomesDeAtivos("LIV", ativos);
+
+        // Uma oferta de 100 ações por nível de preço, em cada lado de cada ativo
+        for (String ativo : nomes) {
+            for (int i = 0; i < profundidade; i++) {
+                livro.adicionarOferta(new Operacao(TipoOperacao.COMPRA, ativo, 100, PRECO_CENTRAL - i, "CORRETORA", agora));
+                livro.adicionarOferta(new Operacao(TipoOperacao.VENDA, ativo, 100, PRECO_CENTRAL + 1 + i, "CORRETORA", agora));
+            }
+        }
+    }
+
+    @Benchmark
+    public Operacao adicionarERemover() {
+        int n = proximo++;
+        String ativo = nomes[n % ativos];
+        // Percorre os níveis existentes, do topo até o fundo do livro
+        long preco = PRECO_CENTRAL - (n % profundidade);
+        Operacao oferta = new Operacao(TipoOperacao.COMPRA, ativo, 100, preco, "CORRETORA", agora);
+        livro.adicionarOferta(oferta);
+        livro.removerOferta(oferta);
+        return oferta;
+    }
+
+    @Benchmark
+    public Operacao melhorOferta() {
+        return livro.melhorOferta(nomes[proximo++ % ativos], TipoOperacao.VENDA);
+    }
+
+    @Benchmark
+    public List<Operacao> consultarOfertasPorAtivoETipo() {
+        return livro.consultarOfertasPorAtivoETipo(nomes[proximo++ % ativos], TipoOperacao.COMPRA);
+    }
+}
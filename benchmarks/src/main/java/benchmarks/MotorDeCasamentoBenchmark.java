@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.LivroDeOfertas;
+import server.MotorDeCasamento;
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TipoOperacao;
+
+/**
+ * Casamento de ofertas (MotorDeCasamento.processarTransacao) sob um fluxo de ordens em que a
+ * maior parte repousa perto do topo do livro e uma fração cruza o spread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotorDeCasamentoBenchmark {
+
+    @Param({"1", "100"})
+    int ativos;
+
+    @Param({"10", "1000"})
+    int profundidade;
+
+    @Param({"0.3"})
+    double fracaoAgressiva;
+
+    private MotorDeCasamento motor;
+    private Fluxo fluxo;
+    private String[] nomes;
+    private long agora;
+    private int proximo;
+    private long negocios;
+
+    @Setup
+    public void preparar() {
+        LivroDeOfertas livro = LivroDeOfertas.getInstance();
+        motor = new MotorDeCasamento(livro, transacao -> negocios++);
+        fluxo = new Fluxo(ativos, profundidade, fracaoAgressiva, 42);
+        nomes = Fluxo.nomesDeAtivos("MOT", ativos);
+        agora = Relogio.agora();
+
+        // Livro inicial com um nível por tick até a profundidade, dos dois lados
+        for (String ativo : nomes) {
+            for (int i = 0; i < profundidade; i++) {
+                livro.adicionarOferta(new Operacao(TipoOperacao.COMPRA, ativo, 500, LivroDeOfertasBenchmark.PRECO_CENTRAL - i, "CORRETORA", agora));
+                livro.adicionarOferta(new Operacao(TipoOperacao.VENDA, ativo, 500, LivroDeOfertasBenchmark.PRECO_CENTRAL + 1 + i, "CORRETORA", agora));
+            }
+        }
+    }
+
+    @Benchmark
+    public long processarTransacao() {
+        int i = proximo++ & (Fluxo.TAMANHO - 1);
+        motor.processarTransacao(new Operacao(fluxo.tipos[i], nomes[fluxo.ativos[i]], fluxo.quantidades[i],
+                fluxo.precos[i], "CORRETORA", agora));
+        return negocios;
+    }
+}
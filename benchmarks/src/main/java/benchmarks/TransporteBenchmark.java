@@ -0,0 +1,119 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import services.codec.CodecBinario;
+import services.codec.FormatoMensagem;
+import services.mq.RabbitMQCliente;
+import services.mq.Transporte;
+import services.mq.TransporteMemoria;
+
+/**
+ * Envio de operações binárias pelo Transporte até o consumidor da fila da Bolsa de Valores, com
+ * o mesmo vínculo por tópicos usado pela aplicação. Cada operação mede a publicação e aguarda a
+ * entrega da mensagem, de modo que a vazão inclui o roteamento e a passagem entre threads.
+ * publicarEmParalelo publica de várias threads ao mesmo tempo; no AMQP, cada thread usa o seu
+ * canal do pool do RabbitMQCliente, e a vazão deve crescer com a quantidade de threads (-t).
+ *
+ * O transporte MEMORIA roda sem rede; o AMQP usa o servidor configurado em RabbitMQConfig
+ * (-Dbolsa.rabbitmq.host=...) e só deve ser selecionado com um servidor disponível, por exemplo
+ * -p transporte=AMQP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransporteBenchmark {
+
+    @Param({"MEMORIA"})
+    String transporte;
+
+    @Param({"100"})
+    int ativos;
+
+    private Transporte destino;
+    private Fluxo fluxo;
+    private String[] chaves;
+    private byte[][] mensagens;
+    private final AtomicLong recebidas = new AtomicLong();
+    private final AtomicLong publicadas = new AtomicLong();
+    private long enviadas;
+    private int proximo;
+
+    @State(Scope.Thread)
+    public static class Envio {
+        int proximo;
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        destino = transporte.equals("AMQP") ? new RabbitMQCliente() : TransporteMemoria.getInstance();
+        fluxo = new Fluxo(ativos, 100, 0.3, 42);
+        String[] nomes = Fluxo.nomesDeAtivos("TRP", ativos);
+
+        // Mensagens pré-codificadas, para medir apenas o transporte
+        chaves = new String[Fluxo.TAMANHO];
+        mensagens = new byte[Fluxo.TAMANHO][];
+        for (int i = 0; i < Fluxo.TAMANHO; i++) {
+            String ativo = nomes[fluxo.ativos[i]];
+            chaves[i] = fluxo.tipos[i] + "." + ativo;
+            mensagens[i] = new byte[CodecBinario.TAMANHO_ORDEM];
+            CodecBinario.codificarOrdem(mensagens[i], 0, fluxo.tipos[i], ativo, fluxo.quantidades[i],
+                    fluxo.precos[i], "CORRETORA");
+        }
+
+        destino.consumir("BENCHMARK_" + transporte + "_queue", Arrays.asList("COMPRA.#", "VENDA.#"), recebida -> {
+            recebidas.incrementAndGet();
+            destino.concluirEntrega(recebida.getIdEntrega());
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws Exception {
+        destino.fechar();
+    }
+
+    @Benchmark
+    public long publicarEReceber() throws Exception {
+        int i = proximo++ & (Fluxo.TAMANHO - 1);
+        destino.publicar(chaves[i], mensagens[i], FormatoMensagem.BINARIO.getTipoConteudo());
+        enviadas++;
+        // Mantém no máximo uma janela de mensagens em trânsito, para não medir apenas o enfileiramento
+        while (enviadas - recebidas.get() > 1024) {
+            Thread.yield();
+        }
+        return enviadas;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long publicarEmParalelo(Envio envio) throws Exception {
+        int i = envio.proximo++ & (Fluxo.TAMANHO - 1);
+        destino.publicar(chaves[i], mensagens[i], FormatoMensagem.BINARIO.getTipoConteudo());
+        long total = publicadas.incrementAndGet();
+        // A janela de mensagens em trânsito é compartilhada pelas threads
+        while (total - recebidas.get() > 4096) {
+            Thread.yield();
+        }
+        return total;
+    }
+}
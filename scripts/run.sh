@@ -11,6 +11,8 @@ if [ "$1" == "AppBolsaDeValores" ]; then
     java -cp "$CLASSPATH:$OUT_DIR" app.AppBolsaDeValores
 elif [ "$1" == "AppBroker" ]; then
     java -cp "$CLASSPATH:$OUT_DIR" app.AppBroker
+elif [ "$1" == "AppGeradorDeCarga" ]; then
+    java $JAVA_OPTS -cp "$CLASSPATH:$OUT_DIR" app.AppGeradorDeCarga
 else
-    echo "Uso: $0 {AppBolsaDeValores|AppBroker}"
+    echo "Uso: $0 {AppBolsaDeValores|AppBroker|AppGeradorDeCarga}"
 fi
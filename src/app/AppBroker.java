@@ -1,22 +1,26 @@
 package app;
 
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.TreeMap;
 
-import server.LivroDeOfertas;
 import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TabelaDeTicks;
 import services.manager.TipoOperacao;
+import services.marketdata.ProfundidadeLivro;
 
 /**
  * A classe AppBroker representa a aplicação que interage com o broker.
  * Ela fornece um menu interativo para processar operações de compra e venda,
- * consultar ofertas específicas e visualizar todas as operações no Livro de
- * Ofertas.
+ * cancelar ou alterar ordens e consultar o Livro de Ofertas da Bolsa de Valores.
  */
 public class AppBroker {
 
+    // Quantidade de níveis de cada lado do livro exibidos nas consultas
+    private static final int PROFUNDIDADE_CONSULTA = 10;
+
     private static final Scanner scanner = new Scanner(System.in);
     private static Broker broker;
 
@@ -48,6 +52,9 @@ public class AppBroker {
                     case 2:
                         processarVenda(brokerName);
                         break;
+                    case 3:
+                        processarAlteracao();
+                        break;
                     case 4:
                         consultarOfertasPorAtivoETipo();
                         break;
@@ -77,8 +84,9 @@ public class AppBroker {
     private static int exibirMenu() {
         System.out.println("\n1 - Comprar"
                 + "\n2 - Vender"
-                + "\n4 - Consultar operações de um ativo específico no Livro de Ofertas por tipo"
-                + "\n5 - Consultar todas as operações no Livro de Ofertas"
+                + "\n3 - Cancelar ou alterar a quantidade de uma ordem"
+                + "\n4 - Consultar o livro de um ativo específico por tipo"
+                + "\n5 - Consultar o livro de todos os ativos"
                 + "\n6 - Sair");
         System.out.print("Escolha uma opção: ");
         return scanner.nextInt();
@@ -116,6 +124,31 @@ public class AppBroker {
         }
     }
 
+    /**
+     * Cancela ou altera a quantidade de uma ordem no livro, pelo ID informado no seu aceite.
+     */
+    private static void processarAlteracao() {
+        System.out.print("Digite o ativo: ");
+        String ativo = scanner.next();
+        System.out.print("Digite o tipo da ordem (1 - COMPRA ou 2 - VENDA): ");
+        TipoOperacao lado = scanner.nextInt() == 1 ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+        System.out.print("Digite o ID da ordem: ");
+        long idOrdem = scanner.nextLong();
+        System.out.print("Digite a nova quantidade (0 cancela a ordem): ");
+        int novaQuantidade = scanner.nextInt();
+        try {
+            if (novaQuantidade == 0) {
+                broker.cancelarOrdem(ativo, lado, idOrdem);
+                System.out.println("Cancelamento enviado com sucesso.");
+            } else {
+                broker.alterarOrdem(ativo, lado, idOrdem, novaQuantidade);
+                System.out.println("Alteração enviada com sucesso.");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Erro ao enviar a alteração: " + e.getMessage());
+        }
+    }
+
     /**
      * Obtém uma operação com os dados fornecidos pelo usuário.
      *
@@ -130,52 +163,61 @@ public class AppBroker {
         System.out.print("Digite a quantidade: ");
         int quantidade = scanner.nextInt();
         System.out.print("Digite o valor: ");
-        double valor = scanner.nextDouble();
+        long preco = TabelaDeTicks.getInstance().paraTicks(ativo, scanner.next());
 
-        return new Operacao(tipoOperacao, ativo, quantidade, valor, brokerName, LocalDateTime.now());
+        return new Operacao(tipoOperacao, ativo, quantidade, preco, brokerName, Relogio.agora());
     }
 
     /**
-     * Consulta ofertas específicas de um ativo no Livro de Ofertas com base no tipo
-     * de operação.
+     * Consulta na Bolsa de Valores os melhores níveis de um lado do livro de um ativo.
      */
     private static void consultarOfertasPorAtivoETipo() {
         System.out.println("Digite a ação que deseja consultar: ");
         String ativo = scanner.next();
         System.out.println("Digite o tipo da operação (1 - COMPRA ou 2 - VENDA): ");
         int tipoOperacao = scanner.nextInt();
-
-        if (tipoOperacao == 1) {
-            System.out.println("Ofertas de compra para " + ativo + ":");
-            List<Operacao> ofertas = LivroDeOfertas.getInstance().consultarOfertasPorAtivoETipo(ativo,
-                    TipoOperacao.COMPRA);
-            ofertas.forEach(oferta -> {
-                System.out.println(
-                        oferta.getCorretora() + " - " + oferta.getQuantidade() + " ações por R$ " + oferta.getValor());
-            });
-        } else if (tipoOperacao == 2) {
-            System.out.println("Ofertas de venda para " + ativo + ":");
-            List<Operacao> ofertas = LivroDeOfertas.getInstance().consultarOfertasPorAtivoETipo(ativo,
-                    TipoOperacao.VENDA);
-            ofertas.forEach(oferta -> {
-                System.out.println(
-                        oferta.getCorretora() + " - " + oferta.getQuantidade() + " ações por R$ " + oferta.getValor());
-            });
-        } else {
+        if (tipoOperacao != 1 && tipoOperacao != 2) {
             System.out.println("Tipo de operação inválido.");
+            return;
+        }
+
+        TipoOperacao lado = tipoOperacao == 1 ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+        try {
+            ProfundidadeLivro livro = broker.consultarLivro(ativo, PROFUNDIDADE_CONSULTA);
+            System.out.println("Ofertas de " + (lado == TipoOperacao.COMPRA ? "compra" : "venda") + " para " + ativo + ":");
+            exibirNiveis(livro, lado);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Erro ao consultar o livro: " + e.getMessage());
         }
     }
 
     /**
-     * Consulta todas as operações no Livro de Ofertas e as exibe no console.
+     * Consulta na Bolsa de Valores os melhores níveis do livro de todos os ativos e os exibe no console.
      */
     private static void consultarTodasOperacoes() {
-        System.out.println("Todas as operações no Livro de Ofertas:");
-        List<Operacao> operacoes = LivroDeOfertas.getInstance().consultarTodasOfertas(null);
-        operacoes.forEach(operacao -> {
-            System.out
-                    .println(operacao.getCorretora() + " - " + operacao.getTipo() + " - " + operacao.getAtivo() + " - "
-                            + operacao.getQuantidade() + " ações por R$ " + operacao.getValor());
-        });
+        try {
+            Map<String, ProfundidadeLivro> livros = broker.consultarLivros(PROFUNDIDADE_CONSULTA);
+            System.out.println("Todas as operações no Livro de Ofertas:");
+            for (ProfundidadeLivro livro : new TreeMap<>(livros).values()) {
+                for (TipoOperacao lado : TipoOperacao.values()) {
+                    if (livro.niveis(lado) > 0) {
+                        System.out.println(livro.getAtivo() + " - " + lado + ":");
+                        exibirNiveis(livro, lado);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Erro ao consultar o livro: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exibe os níveis de preço de um lado do livro, do melhor para o pior preço.
+     */
+    private static void exibirNiveis(ProfundidadeLivro livro, TipoOperacao lado) {
+        for (int i = 0; i < livro.niveis(lado); i++) {
+            System.out.println("  " + livro.quantidade(lado, i) + " ações por R$ "
+                    + TabelaDeTicks.getInstance().formatar(livro.getAtivo(), livro.preco(lado, i)));
+        }
     }
 }
@@ -0,0 +1,53 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import services.carga.GeradorDeCarga;
+import services.mq.Transporte;
+import utils.CargaConfig;
+import utils.RabbitMQConfig;
+
+/**
+ * A classe AppGeradorDeCarga é o ponto de entrada do gerador de carga. Ela cria os Brokers
+ * simulados, e também a Bolsa de Valores quando configurada para rodar no mesmo processo, e
+ * envia um fluxo de ordens sem interação com o usuário, conforme CargaConfig. Por padrão, os
+ * Brokers são sessões de um único SessoesBroker, o que permite simular milhares deles.
+ */
+public class AppGeradorDeCarga {
+
+    /**
+     * O método main é o ponto de entrada do gerador de carga.
+     *
+     * @param args Argumentos de linha de comando (não usados nesta aplicação).
+     */
+    public static void main(String[] args) {
+        try {
+            if (CargaConfig.BOLSA_LOCAL) {
+                new BolsaDeValores();
+            }
+
+            List<Broker> brokers = new ArrayList<>();
+            if (CargaConfig.SESSOES) {
+                // As sessões compartilham o transporte, a fila de respostas e as threads de processamento
+                SessoesBroker sessoes = new SessoesBroker(Transporte.criar(), "CARGA", RabbitMQConfig.THREADS_SESSOES);
+                for (int i = 0; i < CargaConfig.BROKERS; i++) {
+                    brokers.add(sessoes.abrir("CARGA-" + i));
+                }
+            } else {
+                for (int i = 0; i < CargaConfig.BROKERS; i++) {
+                    // Os Brokers simulados recebem apenas as suas execuções, sem os dados de mercado
+                    brokers.add(new Broker("CARGA-" + i, Transporte.criar(), Collections.emptyList()));
+                }
+            }
+
+            new GeradorDeCarga(brokers).executar();
+        } catch (Exception e) {
+            System.err.println("Erro ao executar o gerador de carga: " + e.getMessage());
+            e.printStackTrace();
+        }
+        // Encerra as conexões e as threads de consumo dos Brokers e da Bolsa de Valores
+        System.exit(0);
+    }
+}
@@ -1,16 +1,40 @@
 package app;
 
-import com.rabbitmq.client.DeliverCallback;
+import services.codec.CacheDeNomes;
+import services.codec.CodecBinario;
+import services.codec.CodecTexto;
+import services.codec.FormatoMensagem;
+import services.marketdata.Barra;
+import services.marketdata.PublicadorMercado;
+import services.manager.Dicionario;
 import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TabelaDeTicks;
+import services.manager.TabelaPorCodigo;
 import services.manager.TipoOperacao;
-import services.mq.RabbitMQCliente;
+import services.metricas.Estagio;
+import services.metricas.MetricasBolsa;
+import services.mq.ConsumidorMensagens;
+import services.mq.Transporte;
+import server.ControleLeilao;
+import server.EtapasParticao;
 import server.LivroDeOfertas;
+import server.MotorDeCasamento;
+import server.MotorParticionado;
+import server.OuvinteNegociacao;
+import server.RecuperacaoLivro;
+import server.Sequenciador;
 import services.history.HistoricoOperacoes;
+import utils.BolsaDeValoresConfig;
 import utils.RabbitMQConfig;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,49 +44,313 @@ import java.util.List;
  */
 public class BolsaDeValores {
 
-    private RabbitMQCliente rabbitMQCliente;
+    private Transporte transporte;
     private LivroDeOfertas livroDeOfertas;
     private HistoricoOperacoes historicoOperacoes;
+    private MotorDeCasamento motorDeCasamento;
+    private MotorParticionado motorParticionado; // null quando o casamento ocorre na thread do consumidor
+    private PublicadorMercado publicadorMercado;
+    private RecuperacaoLivro recuperacaoLivro;
+    private ControleLeilao controleLeilao;
+    private final Object entrada = new Object(); // serializa as ordens recebidas e os eventos de leilão
+    private final Sequenciador sequenciador = Sequenciador.getInstance();
+    private final MetricasBolsa metricas = MetricasBolsa.getInstance();
+    private final TabelaPorCodigo<String> rotasAceite = new TabelaPorCodigo<>(); // rota de cada corretora, por código
+    private final TabelaPorCodigo<String> rotasExecucao = new TabelaPorCodigo<>();
+    private final CacheDeNomes nomesEntrada = new CacheDeNomes(1024); // usado apenas sob o monitor da entrada
 
     /**
-     * Cria uma instância de BolsaDeValores e configura o recebimento de operações pelo RabbitMQ.
+     * Cria uma instância de BolsaDeValores e configura o recebimento de operações pelo
+     * transporte configurado (RabbitMQ, por padrão).
      *
      * @throws IOException Em caso de erro de comunicação com o RabbitMQ.
      * @throws Exception Em caso de outros erros ao inicializar os componentes.
      */
     public BolsaDeValores() throws IOException, Exception {
-        rabbitMQCliente = new RabbitMQCliente();
+        this(Transporte.criar());
+    }
+
+    /**
+     * Cria uma instância de BolsaDeValores que recebe as operações e publica os dados de
+     * mercado pelo transporte informado.
+     *
+     * @param transporte O transporte das mensagens.
+     * @throws IOException Em caso de erro de comunicação com o transporte.
+     */
+    public BolsaDeValores(Transporte transporte) throws IOException {
+        this.transporte = transporte;
         livroDeOfertas = LivroDeOfertas.getInstance();
         historicoOperacoes = HistoricoOperacoes.getInstance();
 
+        // Publica os negócios e as alterações do livro na exchange, para os Brokers
+        publicadorMercado = new PublicadorMercado(
+                new PublicadorMercado.Destino() {
+                    @Override
+                    public void publicar(String routingKey, byte[] corpo) throws IOException {
+                        long inicio = metricas.inicio();
+                        transporte.publicar(routingKey, corpo, FormatoMensagem.BINARIO.getTipoConteudo());
+                        metricas.registrarDesde(Estagio.PUBLICACAO, inicio);
+                    }
+
+                    @Override
+                    public void publicarLote(List<String> routingKeys, List<byte[]> corpos) throws IOException {
+                        long inicio = metricas.inicio();
+                        transporte.publicarLote(routingKeys, corpos, FormatoMensagem.BINARIO.getTipoConteudo());
+                        metricas.registrarDesde(Estagio.PUBLICACAO, inicio);
+                    }
+                },
+                BolsaDeValoresConfig.INTERVALO_MERCADO,
+                BolsaDeValoresConfig.INTERVALO_SNAPSHOT_MERCADO,
+                intervalosBarras(),
+                BolsaDeValoresConfig.CAPACIDADE_BARRAS,
+                BolsaDeValoresConfig.PUBLICAR_BARRAS);
+        OuvinteNegociacao ouvinte = new OuvinteNegociacao() {
+            @Override
+            public void aoNegociar(Operacao transacao) {
+                metricas.contarNegocio(transacao.getCodigoAtivo());
+                long inicio = metricas.inicio();
+                historicoOperacoes.registrarOperacao(transacao);
+                metricas.registrarDesde(Estagio.HISTORICO, inicio);
+                publicadorMercado.aoNegociar(transacao);
+            }
+
+            @Override
+            public void aoNegociar(Operacao transacao, Operacao agressora, Operacao passiva) {
+                aoNegociar(transacao);
+                if (BolsaDeValoresConfig.EXECUCAO_ORDENS) {
+                    publicarExecucoes(transacao, agressora, passiva);
+                }
+            }
+        };
+
+        if (BolsaDeValoresConfig.PARTICOES > 0) {
+            // Cada partição casa as ofertas dos seus ativos em uma thread própria
+            // e registra no jornal e aceita as ordens dos seus ativos, fora da thread do consumidor
+            motorParticionado = new MotorParticionado(livroDeOfertas, ouvinte, publicadorMercado, new EtapasParticao() {
+                @Override
+                public void antesDoCasamento(Operacao operacao, long idBroker) throws IOException {
+                    registrarEAceitar(operacao, idBroker);
+                }
+
+                @Override
+                public void aposCasamento(Operacao operacao, long idEntrega) {
+                    if (idEntrega != MotorParticionado.SEM_ENTREGA) {
+                        transporte.concluirEntrega(idEntrega);
+                    }
+                }
+            }, BolsaDeValoresConfig.PARTICOES, BolsaDeValoresConfig.CAPACIDADE_FILA_PARTICAO);
+            System.out.println("[BolsaDeValores] Casamento particionado em " + BolsaDeValoresConfig.PARTICOES + " partições");
+            metricas.setFonteFilas(motorParticionado::tamanhoFilas);
+        } else {
+            motorDeCasamento = new MotorDeCasamento(livroDeOfertas, ouvinte, publicadorMercado);
+        }
+
+        // Com confirmação manual, as entregas só são confirmadas depois que os negócios que
+        // elas geraram estão no disco, conforme o modo de durabilidade do histórico
+        transporte.antesDeConfirmar(historicoOperacoes::garantirDurabilidade);
+
+        // Restaura o livro do último snapshot e do jornal de ordens antes de receber novas operações
+        recuperacaoLivro = new RecuperacaoLivro(Paths.get(BolsaDeValoresConfig.DIRETORIO_LIVRO),
+                historicoOperacoes::percorrerOrdens);
+        recuperacaoLivro.restaurar(livroDeOfertas, publicadorMercado);
+        if (BolsaDeValoresConfig.INTERVALO_SNAPSHOT_LIVRO > 0) {
+            recuperacaoLivro.iniciarSnapshots(BolsaDeValoresConfig.INTERVALO_SNAPSHOT_LIVRO);
+        }
+
+        // Os IDs das ordens e dos negócios continuam após os já registrados no histórico
+        sequenciador.continuarApos(historicoOperacoes.maiorIdOrdem(), historicoOperacoes.maiorIdNegocio());
+
+        // Os eventos de leilão são numerados e registrados no jornal como as ordens, na mesma sequência
+        controleLeilao = new ControleLeilao(entrada, this::emitirLeilao, BolsaDeValoresConfig.JANELA_LEILAO,
+                BolsaDeValoresConfig.LIMITE_RAJADA_LEILAO, BolsaDeValoresConfig.LEILAO_ABERTURA);
+        controleLeilao.retomar(livroDeOfertas.ativosEmLeilao());
+        if (!BolsaDeValoresConfig.HORARIO_FECHAMENTO_LEILAO.isEmpty()) {
+            controleLeilao.agendarFechamento(LocalTime.parse(BolsaDeValoresConfig.HORARIO_FECHAMENTO_LEILAO), livroDeOfertas);
+        }
+
+        if (!BolsaDeValoresConfig.HORARIO_COMPACTACAO.isEmpty()) {
+            historicoOperacoes.agendarCompactacao(LocalTime.parse(BolsaDeValoresConfig.HORARIO_COMPACTACAO));
+        }
+
+        // Expõe as métricas no JMX e, a cada intervalo, no console
+        metricas.setFonteNiveis(publicadorMercado::quantidadeNiveis);
+        metricas.iniciar(BolsaDeValoresConfig.INTERVALO_METRICAS, BolsaDeValoresConfig.RELATORIO_METRICAS);
+
         configurarRecebimentoOperacoes();
+        configurarConsultas();
     }
 
     /**
-     * Configura o recebimento de operações pelo RabbitMQ.
+     * Obtém uma barra recente (OHLCV e VWAP) de um ativo, sem percorrer o histórico.
      *
-     * @throws IOException Em caso de erro de comunicação com o RabbitMQ.
+     * @param ativo           O ativo.
+     * @param intervaloMillis A duração da barra, em milissegundos, uma das configuradas em bolsa.barras.intervalos.
+     * @param atras           Quantos períodos antes do último negócio (0 para a barra corrente).
+     * @return A barra, ou null se não houve negócios do ativo no período ou se ele já saiu do buffer.
      */
-    private void configurarRecebimentoOperacoes() throws IOException {
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            String mensagem = new String(delivery.getBody(), StandardCharsets.UTF_8);
-            String routingKey = delivery.getEnvelope().getRoutingKey();
+    public Barra consultarBarra(String ativo, long intervaloMillis, int atras) {
+        return publicadorMercado.barra(ativo, intervaloMillis, atras);
+    }
+
+    /**
+     * Lê as durações das barras configuradas, de segundos para milissegundos.
+     */
+    private static long[] intervalosBarras() {
+        if (BolsaDeValoresConfig.INTERVALOS_BARRAS.trim().isEmpty()) {
+            return new long[0];
+        }
+        return Arrays.stream(BolsaDeValoresConfig.INTERVALOS_BARRAS.split(","))
+                .mapToLong(segundos -> Long.parseLong(segundos.trim()) * 1000)
+                .toArray();
+    }
 
-            System.out.println("[BolsaDeValores] Operação recebida: " + routingKey + " - " + mensagem);
+    /**
+     * Configura o recebimento de operações pelo transporte.
+     *
+     * @throws IOException Em caso de erro de comunicação com o transporte.
+     */
+    private void configurarRecebimentoOperacoes() throws IOException {
+        ConsumidorMensagens consumidor = recebida -> {
+            long inicio = metricas.inicio();
+            String routingKey = recebida.getRoutingKey();
+            FormatoMensagem formato = FormatoMensagem.deTipoConteudo(recebida.getTipoConteudo());
 
-            TipoOperacao tipoOperacao = determinarTipoOperacao(routingKey);
+            long deliveryTag = recebida.getIdEntrega();
             try {
-                Operacao operacao = converterMensagemParaOperacao(mensagem, tipoOperacao);
-                processarOperacao(operacao, tipoOperacao);
+                // O temporizador dos leilões não intercala eventos entre o ID de uma ordem e a sua entrega ao motor
+                synchronized (entrada) {
+                    Operacao operacao;
+                    if (isAlteracao(routingKey)) {
+                        if (formato != FormatoMensagem.BINARIO) {
+                            throw new IllegalArgumentException("Alterações de ordens são aceitas apenas no formato binário");
+                        }
+                        operacao = converterMensagemBinariaParaAlteracao(recebida.getCorpo(), routingKey);
+                        if (BolsaDeValoresConfig.LOG_OPERACOES) {
+                            System.out.println("[BolsaDeValores] Alteração recebida: " + routingKey + " - " + operacao);
+                        }
+                    } else if (formato == FormatoMensagem.BINARIO) {
+                        TipoOperacao tipoOperacao = determinarTipoOperacao(routingKey);
+                        operacao = converterMensagemBinariaParaOperacao(recebida.getCorpo(), tipoOperacao);
+                        if (BolsaDeValoresConfig.LOG_OPERACOES) {
+                            System.out.println("[BolsaDeValores] Operação recebida: " + routingKey + " - " + operacao);
+                        }
+                    } else {
+                        TipoOperacao tipoOperacao = determinarTipoOperacao(routingKey);
+                        String mensagem = new String(recebida.getCorpo(), StandardCharsets.UTF_8);
+                        if (BolsaDeValoresConfig.LOG_OPERACOES) {
+                            System.out.println("[BolsaDeValores] Operação recebida: " + routingKey + " - " + mensagem);
+                        }
+                        operacao = converterMensagemParaOperacao(mensagem, tipoOperacao);
+                    }
+                    metricas.registrarDesde(Estagio.DECODIFICACAO, inicio);
+                    // O número da ordem no Broker só trafega no formato binário
+                    long idBroker = formato == FormatoMensagem.BINARIO && !operacao.isAlteracao()
+                            ? CodecBinario.idBroker(recebida.getCorpo(), 0) : Operacao.SEM_ID;
+                    processarOperacao(operacao, idBroker, deliveryTag);
+                    if (!operacao.isAlteracao()) {
+                        abrirLeilaoSeNecessario(operacao.getCodigoAtivo());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // A entrega não é concluída e será reenviada pelo RabbitMQ
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 System.err.println("[BolsaDeValores] Erro ao processar operação: " + e.getMessage());
+                // Mensagens inválidas são descartadas, para não serem reenviadas indefinidamente
+                transporte.concluirEntrega(deliveryTag);
             }
         };
 
-        rabbitMQCliente.receberMensagem(RabbitMQConfig.FILA_BOLSADEVALORES, deliverCallback, "BolsaDeValores");
+        // Vincula a fila apenas às operações e às alterações de ordens, e não aos dados de mercado,
+        // aos aceites e às execuções publicados na mesma exchange
+        transporte.consumir(RabbitMQConfig.FILA_BOLSADEVALORES, Arrays.asList("COMPRA.#", "VENDA.#",
+                RabbitMQConfig.ROTA_CANCELAMENTO + ".#", RabbitMQConfig.ROTA_ALTERACAO + ".#"), consumidor);
         System.out.println("[BolsaDeValores] Ouvindo operações na fila " + RabbitMQConfig.FILA_BOLSADEVALORES);
     }
 
+    /**
+     * Informa ao controle de leilões a chegada de uma ordem já entregue ao motor. Uma falha ao
+     * abrir o leilão não afeta a entrega da ordem, que já foi processada.
+     */
+    private void abrirLeilaoSeNecessario(int codigoAtivo) throws InterruptedException {
+        try {
+            controleLeilao.aoReceber(codigoAtivo);
+        } catch (RuntimeException e) {
+            System.err.println("[BolsaDeValores] Erro ao abrir o leilão: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Numera, registra no jornal e processa um evento de abertura ou de encerramento de leilão,
+     * na sequência das ordens. É chamado pelo controle de leilões com o monitor de entrada. No
+     * modo particionado, aguarda a partição do ativo registrar e processar o evento.
+     *
+     * @param ativo  O ativo.
+     * @param evento Operacao.ABERTURA_LEILAO ou Operacao.ENCERRAMENTO_LEILAO.
+     * @throws InterruptedException Se a thread for interrompida ao entregar o evento a uma partição ou ao aguardá-la.
+     * @throws UncheckedIOException Se o evento não puder ser registrado no jornal; nesse caso, ele
+     *                              não é processado.
+     */
+    private void emitirLeilao(String ativo, byte evento) throws InterruptedException {
+        Operacao operacao = Operacao.leilao(sequenciador.proximaOrdem(), ativo, evento, Relogio.agora());
+        try {
+            if (motorParticionado != null) {
+                // A partição registra o evento no jornal depois das ordens do ativo que o precedem
+                motorParticionado.processar(operacao);
+            } else {
+                historicoOperacoes.registrarOrdem(operacao);
+                synchronized (livroDeOfertas) {
+                    motorDeCasamento.processarTransacao(operacao);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("[BolsaDeValores] " + operacao);
+    }
+
+    /**
+     * Configura as respostas às consultas ao livro dos Brokers. As consultas são respondidas
+     * com o livro agregado do publicador de dados de mercado, sem acesso ao livro de ofertas, e
+     * ficam em uma fila exclusiva e limitada: consultas antigas, cujo Broker já desistiu da
+     * resposta, são descartadas.
+     *
+     * @throws IOException Em caso de erro de comunicação com o transporte.
+     */
+    private void configurarConsultas() throws IOException {
+        CacheDeNomes nomesConsultas = new CacheDeNomes(1024); // usado apenas pela thread das consultas
+        ConsumidorMensagens consumidor = recebida -> {
+            try {
+                responderConsulta(recebida.getCorpo(), recebida.getIdCorrelacao(), recebida.getResponderPara(), nomesConsultas);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[BolsaDeValores] Erro ao responder a consulta " + recebida.getRoutingKey() + ": " + e.getMessage());
+            } finally {
+                transporte.concluirEntrega(recebida.getIdEntrega());
+            }
+        };
+        // "CONSULTA.#" inclui a chave "CONSULTA", das consultas a todos os ativos
+        transporte.assinar(Collections.singletonList(RabbitMQConfig.ROTA_CONSULTA + ".#"),
+                BolsaDeValoresConfig.FILA_CONSULTAS, consumidor);
+    }
+
+    /**
+     * Responde uma consulta com os melhores níveis do livro, até PROFUNDIDADE_CONSULTA por lado,
+     * publicados com a chave de resposta e o ID de correlação da consulta.
+     */
+    private void responderConsulta(byte[] corpo, String idCorrelacao, String responderPara, CacheDeNomes nomes)
+            throws IOException {
+        // A resposta só pode ir para uma chave de respostas, e não para as filas de ordens ou de aceites
+        if (responderPara == null || idCorrelacao == null || !responderPara.startsWith(RabbitMQConfig.ROTA_RESPOSTA + ".")) {
+            throw new IllegalArgumentException("Consulta sem chave de resposta válida ou ID de correlação");
+        }
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_CONSULTA) {
+            throw new IllegalArgumentException("Mensagem não é uma consulta");
+        }
+        int profundidade = Math.min(CodecBinario.quantidade(corpo, 0), BolsaDeValoresConfig.PROFUNDIDADE_CONSULTA);
+        byte[] resposta = publicadorMercado.consultarNiveis(CodecBinario.ativo(corpo, 0, nomes), Math.max(profundidade, 0));
+        transporte.publicar(responderPara, resposta, FormatoMensagem.BINARIO.getTipoConteudo(), idCorrelacao, null);
+    }
+
     /**
      * Determina o tipo de operação (COMPRA ou VENDA) com base na chave de roteamento.
      *
@@ -80,88 +368,205 @@ public class BolsaDeValores {
     }
 
     /**
-     * Converte uma mensagem recebida em uma operação de compra ou venda.
+     * Indica se a chave de roteamento é a de um cancelamento ou de uma alteração de ordem.
      *
-     * @param mensagem A mensagem recebida.
-     * @param tipoOperacao O tipo de operação (COMPRA ou VENDA).
-     * @return Uma instância de Operação criada com base na mensagem.
-     * @throws Exception Se a mensagem não estiver no formato esperado ou contiver valores inválidos.
+     * @param routingKey A chave de roteamento recebida com a mensagem.
+     * @return true para CANCELAMENTO.&lt;ativo&gt; e ALTERACAO.&lt;ativo&gt;.
      */
-    private Operacao converterMensagemParaOperacao(String mensagem, TipoOperacao tipoOperacao) throws Exception {
-        String[] campos = mensagem.split("-");
-        if (campos.length != 4) {
-            throw new IllegalArgumentException("Mensagem inválida, formato esperado: 'ativo-quantidade-valor-corretora'");
-        }
-        String ativo = campos[0];
-        int quantidade;
-        double valor;
-        
-        try {
-            quantidade = Integer.parseInt(campos[1]);
-            valor = Double.parseDouble(campos[2]);
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Quantidade ou valor inválidos na mensagem: " + mensagem);
+    private boolean isAlteracao(String routingKey) {
+        return routingKey.startsWith(RabbitMQConfig.ROTA_CANCELAMENTO + ".")
+                || routingKey.startsWith(RabbitMQConfig.ROTA_ALTERACAO + ".");
+    }
+
+    /**
+     * Converte uma mensagem binária de alteração em uma alteração de ordem, numerada como as
+     * ordens para que ocupe a sua posição no jornal de ordens.
+     *
+     * @param corpo Os bytes da mensagem recebida.
+     * @param routingKey A chave de roteamento recebida com a mensagem.
+     * @return A alteração, com quantidade 0 para os cancelamentos.
+     * @throws IllegalArgumentException Se a mensagem não for uma alteração válida ou divergir da chave de roteamento.
+     */
+    private Operacao converterMensagemBinariaParaAlteracao(byte[] corpo, String routingKey) {
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_ALTERACAO) {
+            throw new IllegalArgumentException("Mensagem binária não é uma alteração de ordem");
+        }
+        int novaQuantidade = CodecBinario.quantidade(corpo, 0);
+        if (novaQuantidade < 0) {
+            throw new IllegalArgumentException("Quantidade inválida: " + novaQuantidade);
+        }
+        if (novaQuantidade != 0 && routingKey.startsWith(RabbitMQConfig.ROTA_CANCELAMENTO + ".")) {
+            throw new IllegalArgumentException("Cancelamento com quantidade diferente de zero");
+        }
+        // Sem o ID da ordem alterada, a mensagem não é uma alteração válida
+        long idOrdem = CodecBinario.idOrdem(corpo, 0);
+        if (idOrdem <= Operacao.SEM_ID) {
+            throw new IllegalArgumentException("ID da ordem alterada inválido: " + idOrdem);
         }
-        
-        String corretora = campos[3];
 
-        return new Operacao(tipoOperacao, ativo, quantidade, valor, corretora, LocalDateTime.now());
+        // A ordem alterada já incluiu o seu ativo e a sua corretora nos dicionários
+        int codigoAtivo = CodecBinario.codigoAtivoExistente(corpo, 0);
+        int codigoCorretora = CodecBinario.codigoCorretoraExistente(corpo, 0);
+        if (codigoAtivo == Dicionario.SEM_CODIGO || codigoCorretora == Dicionario.SEM_CODIGO) {
+            throw new IllegalArgumentException("Alteração de ativo ou corretora sem ordens");
+        }
+
+        return Operacao.alteracao(sequenciador.proximaOrdem(), idOrdem,
+                CodecBinario.lado(corpo, 0), codigoAtivo, novaQuantidade, codigoCorretora, Relogio.agora());
     }
 
     /**
-     * Processa a operação recebida e negocia com ofertas opostas no Livro de Ofertas.
+     * Publica para o Broker de origem o aceite de uma ordem registrada no jornal, com o ID que
+     * ela recebeu na chegada. Deve ser chamado antes do casamento, que altera a quantidade da
+     * ordem. Uma falha na publicação não impede o processamento da ordem.
      *
-     * @param operacao A operação recebida.
-     * @param tipoOperacao O tipo de operação recebida (COMPRA ou VENDA).
-     * @throws IOException Em caso de erro ao adicionar ou remover ofertas no Livro de Ofertas.
+     * @param ordem    A ordem aceita.
+     * @param idBroker O número dado à ordem pelo Broker, ou SEM_ID se a mensagem não o trouxer.
      */
-    private void processarOperacao(Operacao operacao, TipoOperacao tipoOperacao) throws IOException {
-        TipoOperacao tipoOperacaoOposto = tipoOperacao == TipoOperacao.COMPRA ? TipoOperacao.VENDA : TipoOperacao.COMPRA;
-        processarTransacao(operacao, tipoOperacaoOposto);
+    private void publicarAceite(Operacao ordem, long idBroker) {
+        byte[] aceite = new byte[CodecBinario.TAMANHO_ACEITE];
+        CodecBinario.codificarAceite(aceite, 0, ordem.getTipo(), ordem.getAtivo(), ordem.getQuantidade(),
+                TabelaDeTicks.getInstance().paraPontoFixo(ordem.getAtivo(), ordem.getPreco()),
+                ordem.getCorretora(), idBroker, ordem.getId());
+        String rota = rotasAceite.obter(ordem.getCodigoCorretora(),
+                codigo -> RabbitMQConfig.ROTA_ACEITE + "." + Dicionario.getCorretoras().nome(codigo));
+        try {
+            transporte.publicar(rota, aceite, FormatoMensagem.BINARIO.getTipoConteudo());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[BolsaDeValores] Erro ao publicar o aceite da ordem " + ordem.getId() + ": " + e.getMessage());
+        }
     }
 
     /**
-     * Processa a transação de uma operação negociando com ofertas opostas.
+     * Publica para a corretora de cada ordem de um negócio a execução da sua ordem, com a chave
+     * da corretora, de modo que cada Broker receba apenas as suas execuções, sem filtrar as dos
+     * demais. As duas execuções são publicadas em um lote. É chamado pela thread que casa as
+     * ofertas do ativo. Uma falha na publicação não desfaz o negócio.
      *
-     * @param operacao A operação recebida.
-     * @param tipoOperacaoOposto O tipo de operação oposta (COMPRA ou VENDA).
-     * @throws IOException Em caso de erro ao adicionar ou remover ofertas no Livro de Ofertas.
+     * @param transacao O negócio realizado.
+     * @param agressora A ordem agressora.
+     * @param passiva   A ordem do livro.
      */
-    private void processarTransacao(Operacao operacao, TipoOperacao tipoOperacaoOposto) throws IOException {
-        List<Operacao> ofertasOpostas = livroDeOfertas.consultarOfertasPorAtivoETipo(operacao.getAtivo(), tipoOperacaoOposto);
+    private void publicarExecucoes(Operacao transacao, Operacao agressora, Operacao passiva) {
+        try {
+            transporte.publicarLote(Arrays.asList(rotaExecucao(agressora), rotaExecucao(passiva)),
+                    Arrays.asList(codificarExecucao(transacao, agressora), codificarExecucao(transacao, passiva)),
+                    FormatoMensagem.BINARIO.getTipoConteudo());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[BolsaDeValores] Erro ao publicar a execução das ordens " + agressora.getId()
+                    + " e " + passiva.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] codificarExecucao(Operacao transacao, Operacao ordem) {
+        byte[] execucao = new byte[CodecBinario.TAMANHO_EXECUCAO];
+        CodecBinario.codificarExecucao(execucao, 0, ordem.getTipo(), transacao.getAtivo(), transacao.getQuantidade(),
+                TabelaDeTicks.getInstance().paraPontoFixo(transacao.getAtivo(), transacao.getPreco()),
+                ordem.getCorretora(), transacao.getId(), ordem.getId());
+        return execucao;
+    }
+
+    private String rotaExecucao(Operacao ordem) {
+        return rotasExecucao.obter(ordem.getCodigoCorretora(),
+                codigo -> RabbitMQConfig.ROTA_EXECUCAO + "." + Dicionario.getCorretoras().nome(codigo));
+    }
 
-        for (Operacao oferta : ofertasOpostas) {
-            boolean podeNegociar = (tipoOperacaoOposto == TipoOperacao.COMPRA && oferta.getValor() >= operacao.getValor()) ||
-                                   (tipoOperacaoOposto == TipoOperacao.VENDA && oferta.getValor() <= operacao.getValor());
+    /**
+     * Converte uma mensagem recebida em uma operação de compra ou venda.
+     *
+     * @param mensagem A mensagem recebida.
+     * @param tipoOperacao O tipo de operação (COMPRA ou VENDA).
+     * @return Uma instância de Operação criada com base na mensagem.
+     * @throws Exception Se a mensagem não estiver no formato esperado ou contiver valores inválidos.
+     */
+    private Operacao converterMensagemParaOperacao(String mensagem, TipoOperacao tipoOperacao) throws Exception {
+        return CodecTexto.paraOperacao(mensagem, tipoOperacao, sequenciador::proximaOrdem);
+    }
 
-            if (podeNegociar) {
-                int quantidadeNegociada = Math.min(operacao.getQuantidade(), oferta.getQuantidade());
+    /**
+     * Converte uma mensagem binária de ordem em uma operação de compra ou venda. Os campos são
+     * lidos diretamente do corpo da mensagem e o ativo e a corretora são convertidos nos seus
+     * códigos do Dicionario, sem alocações além da própria operação. Um ativo ou uma corretora
+     * novos só são incluídos nos dicionários depois de validados todos os campos.
+     *
+     * @param corpo Os bytes da mensagem recebida.
+     * @param tipoOperacao O tipo de operação indicado pela chave de roteamento.
+     * @return Uma instância de Operação criada com base na mensagem.
+     * @throws IllegalArgumentException Se a mensagem não for uma ordem válida ou divergir da chave de roteamento.
+     */
+    private Operacao converterMensagemBinariaParaOperacao(byte[] corpo, TipoOperacao tipoOperacao) {
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_ORDEM) {
+            throw new IllegalArgumentException("Mensagem binária não é uma ordem");
+        }
+        if (CodecBinario.lado(corpo, 0) != tipoOperacao) {
+            throw new IllegalArgumentException("Tipo da ordem diverge da chave de roteamento");
+        }
+        int quantidade = CodecBinario.quantidade(corpo, 0);
+        if (quantidade <= 0) {
+            throw new IllegalArgumentException("Quantidade inválida: " + quantidade);
+        }
 
-                operacao.setQuantidade(operacao.getQuantidade() - quantidadeNegociada);
-                oferta.setQuantidade(oferta.getQuantidade() - quantidadeNegociada);
+        int codigoAtivo = CodecBinario.codigoAtivoExistente(corpo, 0);
+        String ativo = codigoAtivo != Dicionario.SEM_CODIGO
+                ? Dicionario.getAtivos().nome(codigoAtivo)
+                : CodecBinario.ativo(corpo, 0, nomesEntrada);
+        long preco = TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, 0));
+        int codigoCorretora = CodecBinario.codigoCorretoraExistente(corpo, 0);
 
-                Operacao transacao = new Operacao(
-                    operacao.getTipo(),
-                    operacao.getAtivo(),
-                    quantidadeNegociada,
-                    oferta.getValor(),
-                    operacao.getCorretora(),
-                    LocalDateTime.now()
-                );
+        if (codigoAtivo == Dicionario.SEM_CODIGO) {
+            codigoAtivo = Dicionario.getAtivos().codigo(ativo);
+        }
+        if (codigoCorretora == Dicionario.SEM_CODIGO) {
+            codigoCorretora = CodecBinario.codigoCorretora(corpo, 0);
+        }
+        return Operacao.porCodigos(sequenciador.proximaOrdem(), tipoOperacao, codigoAtivo, quantidade,
+                preco, codigoCorretora, Relogio.agora());
+    }
 
-                historicoOperacoes.registrarOperacao(transacao);
+    /**
+     * Registra no jornal uma ordem recebida e publica o seu aceite. A ordem vai para o jornal
+     * antes do casamento, que altera a sua quantidade; se a gravação falhar, a ordem não é
+     * aceita nem negociada.
+     *
+     * @param operacao A ordem recebida.
+     * @param idBroker O número dado à ordem pelo Broker, ou SEM_ID.
+     * @throws IOException Se a ordem não puder ser registrada no jornal.
+     */
+    private void registrarEAceitar(Operacao operacao, long idBroker) throws IOException {
+        historicoOperacoes.registrarOrdem(operacao);
+        if (BolsaDeValoresConfig.ACEITE_ORDENS && !operacao.isAlteracao() && !operacao.isLeilao()) {
+            publicarAceite(operacao, idBroker);
+        }
+    }
 
-                if (oferta.getQuantidade() == 0) {
-                    livroDeOfertas.removerOferta(oferta);
-                }
-                if (operacao.getQuantidade() == 0) {
-                    break;
+    /**
+     * Registra no jornal, aceita e negocia a operação recebida com as ofertas opostas no Livro
+     * de Ofertas. No modo particionado, a operação é apenas entregue à partição responsável pelo
+     * ativo, que faz o registro, o aceite e o casamento. Em ambos os casos, a entrega é
+     * concluída somente depois do casamento e do registro dos negócios no histórico.
+     *
+     * @param operacao    A operação recebida.
+     * @param idBroker    O número dado à ordem pelo Broker, ou SEM_ID.
+     * @param deliveryTag O delivery tag da mensagem que trouxe a operação.
+     * @throws IOException          Se a operação não puder ser registrada no jornal (apenas sem partições).
+     * @throws InterruptedException Se a thread for interrompida ao entregar a operação a uma partição.
+     */
+    private void processarOperacao(Operacao operacao, long idBroker, long deliveryTag)
+            throws IOException, InterruptedException {
+        if (motorParticionado != null) {
+            motorParticionado.submeter(operacao, deliveryTag, idBroker);
+        } else {
+            registrarEAceitar(operacao, idBroker);
+            long inicio = metricas.inicio();
+            metricas.contarOrdem(operacao.getCodigoAtivo());
+            try {
+                synchronized (livroDeOfertas) {
+                    motorDeCasamento.processarTransacao(operacao);
                 }
+                metricas.registrarDesde(Estagio.CASAMENTO, inicio);
+            } finally {
+                transporte.concluirEntrega(deliveryTag);
             }
         }
-
-        if (operacao.getQuantidade() > 0) {
-            livroDeOfertas.adicionarOferta(operacao);
-        }
     }
 }
@@ -1,21 +1,98 @@
 package app;
 
-import com.rabbitmq.client.DeliverCallback;
+import services.codec.CacheDeNomes;
+import services.codec.CodecBinario;
+import services.codec.CodecTexto;
+import services.codec.FormatoMensagem;
 import services.manager.Operacao;
-import services.mq.RabbitMQCliente;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+import services.marketdata.ConsultaLivro;
+import services.marketdata.ProfundidadeLivro;
+import services.mq.ConsumidorMensagens;
+import services.mq.Mensagem;
+import services.mq.Transporte;
 import utils.RabbitMQConfig;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A classe Broker representa uma corretora que interage com a Bolsa de Valores para enviar operações
  * e processar respostas de operações enviadas.
+ *
+ * Cada ordem enviada recebe um número do Broker. A Bolsa responde, na fila de respostas própria do
+ * Broker, com um aceite que associa esse número ao ID da ordem na Bolsa; é por esse ID que a ordem,
+ * enquanto estiver no livro, pode ser cancelada ou ter a sua quantidade alterada.
+ *
+ * As execuções das ordens do Broker, como agressoras ou como ofertas do livro, chegam na mesma
+ * fila, publicadas pela Bolsa com a chave da corretora. A fila tem um único consumidor
+ * (exclusivo), de modo que duas instâncias com o mesmo nome não dividem as respostas, e retém
+ * as respostas enquanto o Broker estiver desconectado. Os dados de mercado são assinados apenas
+ * para os ativos configurados, de modo que cada mensagem de mercado chega só aos Brokers
+ * interessados no seu ativo.
+ *
+ * O livro de ofertas fica apenas na Bolsa; o Broker o consulta pela mensageria (ConsultaLivro).
+ *
+ * Um Broker também pode ser uma sessão hospedada em um SessoesBroker, que recebe as respostas
+ * de muitas sessões em uma única fila e as distribui entre elas, sem fila, consumidor nem
+ * assinatura de dados de mercado próprios.
  */
 public class Broker {
 
-    private RabbitMQCliente rabbitMQCliente;
+    private static final String PREFIXO_EXECUCAO = RabbitMQConfig.ROTA_EXECUCAO + ".";
+    private static final String PREFIXO_RESPOSTA = RabbitMQConfig.ROTA_RESPOSTA + ".";
+
+    private Transporte transporte;
     private String nomeBroker;
+    private FormatoMensagem formatoMensagem;
+    private final CacheDeNomes nomes; // usado apenas pela thread de consumo
+    private volatile OuvinteExecucoes ouvinteExecucoes; // null descreve as execuções no console
+    private volatile OuvinteAceites ouvinteAceites; // null descreve os aceites no console
+    private final AtomicLong numeracao = new AtomicLong(); // números das ordens e alterações enviadas
+    private final ConsultaLivro consultaLivro;
+
+    /**
+     * Ouvinte das execuções das ordens enviadas por este Broker.
+     */
+    @FunctionalInterface
+    public interface OuvinteExecucoes {
+        /**
+         * Chamado na thread de consumo da fila de respostas (ou em uma thread do SessoesBroker)
+         * para cada negócio de uma ordem deste Broker, agressora ou do livro.
+         *
+         * @param idOrdem    O ID da ordem na Bolsa, o mesmo do seu aceite.
+         * @param ativo      O ativo negociado.
+         * @param lado       O tipo da ordem executada.
+         * @param quantidade A quantidade negociada.
+         * @param preco      O preço do negócio, em ticks do ativo.
+         */
+        void aoExecutar(long idOrdem, String ativo, TipoOperacao lado, int quantidade, long preco);
+    }
+
+    /**
+     * Ouvinte dos aceites das ordens enviadas por este Broker.
+     */
+    @FunctionalInterface
+    public interface OuvinteAceites {
+        /**
+         * Chamado na thread de consumo da fila de respostas (ou em uma thread do SessoesBroker)
+         * para cada ordem aceita pela Bolsa.
+         *
+         * @param idBroker O número da ordem, retornado por enviarOperacao (0 para ordens enviadas em texto).
+         * @param idOrdem  O ID da ordem na Bolsa, usado para cancelá-la ou alterá-la.
+         * @param ativo    O ativo da ordem.
+         * @param lado     O tipo da ordem.
+         */
+        void aoAceitar(long idBroker, long idOrdem, String ativo, TipoOperacao lado);
+    }
 
     /**
      * Cria uma instância de Broker com o nome da corretora especificado.
@@ -25,33 +102,265 @@ public class Broker {
      * @throws Exception Em caso de outros erros ao inicializar os componentes.
      */
     public Broker(String nomeBroker) throws IOException, Exception {
-        // Inicializa o cliente RabbitMQ
-        rabbitMQCliente = new RabbitMQCliente();
+        // Inicializa o transporte configurado (cliente RabbitMQ, por padrão)
+        this(nomeBroker, Transporte.criar());
+    }
+
+    /**
+     * Cria uma instância de Broker que se comunica com a Bolsa de Valores pelo transporte
+     * informado e assina os dados de mercado dos ativos de RabbitMQConfig.ATIVOS_MERCADO.
+     *
+     * @param nomeBroker O nome da corretora.
+     * @param transporte O transporte das mensagens.
+     * @throws IOException Em caso de erro de comunicação com o transporte.
+     */
+    public Broker(String nomeBroker, Transporte transporte) throws IOException {
+        this(nomeBroker, transporte, ativosConfigurados());
+    }
+
+    /**
+     * Cria uma instância de Broker que se comunica com a Bolsa de Valores pelo transporte informado.
+     *
+     * @param nomeBroker    O nome da corretora.
+     * @param transporte    O transporte das mensagens.
+     * @param ativosMercado Os ativos cujos dados de mercado são assinados ("#" para todos; vazia para nenhum).
+     * @throws IOException Em caso de erro de comunicação com o transporte, inclusive se outra
+     *                     instância já consumir a fila de respostas desta corretora.
+     */
+    public Broker(String nomeBroker, Transporte transporte, List<String> ativosMercado) throws IOException {
+        this.transporte = transporte;
 
         // Define o nome do Broker
         this.nomeBroker = nomeBroker;
 
+        // Define o formato das operações enviadas à Bolsa de Valores
+        this.formatoMensagem = FormatoMensagem.valueOf(RabbitMQConfig.FORMATO_MENSAGEM.toUpperCase());
+        this.nomes = new CacheDeNomes(1024);
+
         // Configura o recebimento de mensagens da fila FILA_BROKER
-        configurarRecebimentoMensagens();
+        configurarRecebimentoMensagens(ativosMercado);
+
+        // Consulta o livro da Bolsa, com as respostas em uma fila exclusiva deste Broker
+        this.consultaLivro = new ConsultaLivro(transporte, nomeBroker);
+    }
+
+    private Broker(String nomeBroker, Transporte transporte, ConsultaLivro consultaLivro) {
+        this.transporte = transporte;
+        this.nomeBroker = nomeBroker;
+        this.formatoMensagem = FormatoMensagem.valueOf(RabbitMQConfig.FORMATO_MENSAGEM.toUpperCase());
+        // Poucos nomes por sessão, para que milhares de sessões caibam em pouca memória
+        this.nomes = new CacheDeNomes(16);
+        this.consultaLivro = consultaLivro;
     }
 
     /**
-     * Configura o recebimento de mensagens da fila FILA_BROKER para processar respostas.
+     * Cria uma sessão de Broker hospedada em um SessoesBroker, que vincula as chaves da
+     * corretora à fila compartilhada das sessões e repassa as respostas a receber.
      *
-     * @throws IOException Em caso de erro de comunicação com o RabbitMQ.
+     * @param nomeBroker O nome da corretora.
+     * @param transporte O transporte das mensagens, compartilhado pelas sessões.
+     * @return A sessão, ainda sem as chaves vinculadas.
+     */
+    static Broker sessao(String nomeBroker, Transporte transporte) {
+        return new Broker(nomeBroker, transporte, ConsultaLivro.semAssinatura(transporte, nomeBroker));
+    }
+
+    /**
+     * Obtém as chaves de roteamento das respostas da Bolsa a este Broker: aceites, execuções e
+     * respostas às consultas ao livro.
+     *
+     * @return As chaves da corretora.
+     */
+    List<String> chavesRespostas() {
+        return Arrays.asList(RabbitMQConfig.ROTA_ACEITE + "." + nomeBroker, PREFIXO_EXECUCAO + nomeBroker,
+                consultaLivro.getRotaResposta());
+    }
+
+    /**
+     * Processa uma resposta da Bolsa a este Broker e conclui a sua entrega, mesmo que o
+     * processamento falhe: uma entrega não concluída retém as seguintes das sessões que dividem
+     * a fila. As respostas de um Broker devem ser recebidas por uma única thread de cada vez.
+     *
+     * @param recebida O aceite, a execução ou a resposta a uma consulta ao livro.
      */
-    private void configurarRecebimentoMensagens() throws IOException {
-        DeliverCallback deliverCallback = (consumerTag, delivery) -> {
-            String mensagem = new String(delivery.getBody(), StandardCharsets.UTF_8);
-            String routingKey = delivery.getEnvelope().getRoutingKey();
+    void receber(Mensagem recebida) {
+        if (recebida.getRoutingKey().startsWith(PREFIXO_RESPOSTA)) {
+            consultaLivro.receberResposta(recebida);
+            return;
+        }
+        try {
+            if (recebida.getRoutingKey().startsWith(PREFIXO_EXECUCAO)) {
+                processarExecucao(recebida.getRoutingKey(), recebida.getCorpo());
+            } else {
+                processarAceite(recebida.getRoutingKey(), recebida.getCorpo());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("[" + nomeBroker + "] Resposta inválida: " + e.getMessage());
+        } finally {
+            transporte.concluirEntrega(recebida.getIdEntrega());
+        }
+    }
 
-            // Processa a mensagem recebida com base na chave de roteamento
-            processarResposta(routingKey, mensagem);
+    /**
+     * Configura o recebimento das respostas da Bolsa de Valores, na fila própria do Broker, e a
+     * assinatura dos dados de mercado dos ativos informados.
+     *
+     * @param ativosMercado Os ativos cujos dados de mercado são assinados.
+     * @throws IOException Em caso de erro de comunicação com o transporte.
+     */
+    private void configurarRecebimentoMensagens(List<String> ativosMercado) throws IOException {
+        // Recebe os aceites e as execuções das ordens deste Broker em uma fila própria, vinculada
+        // apenas às chaves da corretora, que os retém enquanto ele estiver desconectado
+        String fila = RabbitMQConfig.FILA_BROKER + "." + nomeBroker;
+        transporte.consumir(fila, Arrays.asList(RabbitMQConfig.ROTA_ACEITE + "." + nomeBroker,
+                PREFIXO_EXECUCAO + nomeBroker), true, this::receber);
+        System.out.println("[" + nomeBroker + "] Recebendo respostas da fila " + fila);
+
+        if (ativosMercado.isEmpty()) {
+            return;
+        }
+
+        // Assina os negócios e as alterações do livro dos ativos de interesse
+        ConsumidorMensagens mercado = recebida -> {
+            try {
+                processarResposta(recebida.getRoutingKey(), descreverMercado(recebida.getCorpo()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("[" + nomeBroker + "] Mensagem de mercado inválida: " + e.getMessage());
+            } finally {
+                transporte.concluirEntrega(recebida.getIdEntrega());
+            }
         };
+        List<String> padroes = new ArrayList<>();
+        for (String ativo : ativosMercado) {
+            padroes.add(RabbitMQConfig.ROTA_NEGOCIO + "." + ativo);
+            padroes.add(RabbitMQConfig.ROTA_ATUALIZACAO + "." + ativo);
+            padroes.add(RabbitMQConfig.ROTA_SNAPSHOT + "." + ativo);
+        }
+        // A fila retém no máximo MAX_MENSAGENS_MERCADO mensagens; com ela cheia, as mais antigas são
+        // descartadas e o Broker se ressincroniza pelo próximo snapshot
+        transporte.assinar(padroes, RabbitMQConfig.MAX_MENSAGENS_MERCADO, mercado);
+    }
+
+    /**
+     * Obtém os ativos dos dados de mercado configurados em RabbitMQConfig.ATIVOS_MERCADO.
+     *
+     * @return Os ativos, sem espaços e sem itens vazios.
+     */
+    private static List<String> ativosConfigurados() {
+        List<String> ativos = new ArrayList<>();
+        for (String ativo : RabbitMQConfig.ATIVOS_MERCADO.split(",")) {
+            if (!ativo.trim().isEmpty()) {
+                ativos.add(ativo.trim());
+            }
+        }
+        return ativos;
+    }
+
+    /**
+     * Descreve em texto os registros binários de uma mensagem de mercado (negócios ou níveis do livro).
+     *
+     * @param corpo Os registros binários da mensagem.
+     * @return Um registro por linha, no formato "LADO quantidade@preço".
+     */
+    private String descreverMercado(byte[] corpo) {
+        StringBuilder descricao = new StringBuilder();
+        int offset = 0;
+        while (offset < corpo.length) {
+            byte tipo = CodecBinario.tipoMensagem(corpo, offset, corpo.length - offset);
+            String ativo = CodecBinario.ativo(corpo, offset, nomes);
+            long preco = TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, offset));
+            descricao.append("\n  ").append(CodecBinario.lado(corpo, offset))
+                    .append(' ').append(CodecBinario.quantidade(corpo, offset))
+                    .append('@').append(TabelaDeTicks.getInstance().formatar(ativo, preco));
+            if (tipo == CodecBinario.TIPO_ATUALIZACAO) {
+                descricao.append(" #").append(CodecBinario.sequencia(corpo, offset));
+                offset += CodecBinario.TAMANHO_ATUALIZACAO;
+            } else {
+                offset += CodecBinario.TAMANHO_NEGOCIO;
+            }
+        }
+        return descricao.toString();
+    }
+
+    /**
+     * Repassa ao ouvinte a execução de uma ordem deste Broker ou, sem ouvinte, a descreve no console.
+     *
+     * @param routingKey A chave de roteamento da mensagem.
+     * @param corpo      A execução, no formato binário.
+     */
+    private void processarExecucao(String routingKey, byte[] corpo) {
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_EXECUCAO) {
+            throw new IllegalArgumentException("Mensagem não é uma execução: " + routingKey);
+        }
+        String ativo = CodecBinario.ativo(corpo, 0, nomes);
+        TipoOperacao lado = CodecBinario.lado(corpo, 0);
+        int quantidade = CodecBinario.quantidade(corpo, 0);
+        long preco = TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, 0));
+        long idOrdem = CodecBinario.idOrdem(corpo, 0);
+
+        OuvinteExecucoes ouvinte = ouvinteExecucoes;
+        if (ouvinte != null) {
+            ouvinte.aoExecutar(idOrdem, ativo, lado, quantidade, preco);
+        } else {
+            processarResposta(routingKey, String.format("%s %s %d@%s executada na ordem %d (negócio %d)", lado, ativo,
+                    quantidade, TabelaDeTicks.getInstance().formatar(ativo, preco), idOrdem,
+                    CodecBinario.idNegocio(corpo, 0)));
+        }
+    }
+
+    /**
+     * Repassa ao ouvinte o aceite de uma ordem deste Broker ou, sem ouvinte, o descreve no console.
+     *
+     * @param routingKey A chave de roteamento da mensagem.
+     * @param corpo      O aceite, no formato binário.
+     */
+    private void processarAceite(String routingKey, byte[] corpo) {
+        if (CodecBinario.tipoMensagem(corpo, 0, corpo.length) != CodecBinario.TIPO_ACEITE) {
+            throw new IllegalArgumentException("Mensagem não é um aceite: " + routingKey);
+        }
+        String ativo = CodecBinario.ativo(corpo, 0, nomes);
+        TipoOperacao lado = CodecBinario.lado(corpo, 0);
+        long idBroker = CodecBinario.idBroker(corpo, 0);
+        long idOrdem = CodecBinario.idOrdem(corpo, 0);
+
+        OuvinteAceites ouvinte = ouvinteAceites;
+        if (ouvinte != null) {
+            ouvinte.aoAceitar(idBroker, idOrdem, ativo, lado);
+        } else {
+            processarResposta(routingKey, String.format("%s %s %d@%s aceita como ordem %d (número %d)", lado, ativo,
+                    CodecBinario.quantidade(corpo, 0),
+                    TabelaDeTicks.getInstance().formatar(ativo, TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, 0))),
+                    idOrdem, idBroker));
+        }
+    }
+
+    /**
+     * Define o ouvinte dos aceites das ordens deste Broker. Com um ouvinte definido, os aceites
+     * deixam de ser descritos no console.
+     *
+     * @param ouvinte O ouvinte dos aceites, ou null para voltar a descrevê-los no console.
+     */
+    public void setOuvinteAceites(OuvinteAceites ouvinte) {
+        this.ouvinteAceites = ouvinte;
+    }
+
+    /**
+     * Define o ouvinte das execuções das ordens deste Broker. Com um ouvinte definido, as
+     * execuções deixam de ser descritas no console.
+     *
+     * @param ouvinte O ouvinte das execuções, ou null para voltar a descrevê-las no console.
+     */
+    public void setOuvinteExecucoes(OuvinteExecucoes ouvinte) {
+        this.ouvinteExecucoes = ouvinte;
+    }
 
-        // Recebe mensagens da fila FILA_BROKER
-        rabbitMQCliente.receberMensagem(RabbitMQConfig.FILA_BROKER, deliverCallback, "Broker");
-        System.out.println("[" + nomeBroker + "] Recebendo mensagens da fila " + RabbitMQConfig.FILA_BROKER);
+    /**
+     * Obtém o nome da corretora.
+     *
+     * @return O nome da corretora.
+     */
+    public String getNomeBroker() {
+        return nomeBroker;
     }
 
     /**
@@ -69,12 +378,20 @@ public class Broker {
      * Envia uma operação para a Bolsa de Valores.
      *
      * @param operacao A operação a ser enviada.
+     * @return O número da ordem no Broker, informado no seu aceite.
      * @throws IOException Em caso de erro ao enviar a operação.
      */
-    public void enviarOperacao(Operacao operacao) throws IOException {
+    public long enviarOperacao(Operacao operacao) throws IOException {
         String tipoOperacao = operacao.getTipo().name();
         String ativo = operacao.getAtivo();
         String routingKey = tipoOperacao + "." + ativo;
+        long idBroker = numeracao.incrementAndGet();
+
+        if (formatoMensagem == FormatoMensagem.BINARIO) {
+            // Envia a operação no formato binário para a fila FILA_BOLSADEVALORES
+            publicar(routingKey, construirMensagemBinaria(operacao, idBroker), FormatoMensagem.BINARIO);
+            return idBroker;
+        }
 
         // Constrói a mensagem a partir dos dados da operação
         String mensagem = construirMensagem(operacao);
@@ -82,12 +399,104 @@ public class Broker {
         System.out.println("\n\nMensagem: " + mensagem + "\n\n");
 
         // Envia a mensagem para a fila FILA_BOLSADEVALORES
-        rabbitMQCliente.enviarMensagem(
-                RabbitMQConfig.FILA_BOLSADEVALORES,
-                routingKey,
-                mensagem);
+        publicar(routingKey, mensagem.getBytes(StandardCharsets.UTF_8), FormatoMensagem.TEXTO);
 
         //System.out.println("[" + nomeBroker + "] Enviada operação: " + routingKey + " - " + mensagem);
+        return idBroker;
+    }
+
+    /**
+     * Consulta na Bolsa de Valores os melhores níveis do livro de um ativo. Uma resposta
+     * recente, de até VALIDADE_CONSULTA milissegundos, é reaproveitada sem nova ida à Bolsa.
+     *
+     * @param ativo        O ativo.
+     * @param profundidade A quantidade máxima de níveis de cada lado.
+     * @return Os níveis do livro do ativo.
+     * @throws IOException Em caso de erro ao enviar a consulta ou se a Bolsa não responder a tempo.
+     */
+    public ProfundidadeLivro consultarLivro(String ativo, int profundidade) throws IOException {
+        return aguardar(consultaLivro.consultar(ativo, profundidade));
+    }
+
+    /**
+     * Consulta na Bolsa de Valores os melhores níveis do livro de todos os ativos com ofertas.
+     *
+     * @param profundidade A quantidade máxima de níveis de cada lado de cada ativo.
+     * @return Os níveis do livro de cada ativo.
+     * @throws IOException Em caso de erro ao enviar a consulta ou se a Bolsa não responder a tempo.
+     */
+    public Map<String, ProfundidadeLivro> consultarLivros(int profundidade) throws IOException {
+        return aguardar(consultaLivro.consultarTodos(profundidade));
+    }
+
+    private static <T> T aguardar(CompletableFuture<T> resposta) throws IOException {
+        try {
+            return resposta.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Consulta ao livro interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Falha na consulta ao livro: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Cancela uma ordem deste Broker que está no livro. Se a ordem já tiver sido executada ou
+     * cancelada, a Bolsa ignora o pedido.
+     *
+     * @param ativo   O ativo da ordem.
+     * @param lado    O tipo da ordem (COMPRA ou VENDA).
+     * @param idOrdem O ID da ordem na Bolsa, recebido no aceite.
+     * @throws IOException Em caso de erro ao enviar o pedido.
+     */
+    public void cancelarOrdem(String ativo, TipoOperacao lado, long idOrdem) throws IOException {
+        enviarAlteracao(RabbitMQConfig.ROTA_CANCELAMENTO, ativo, lado, idOrdem, 0);
+    }
+
+    /**
+     * Altera a quantidade de uma ordem deste Broker que está no livro. A redução mantém a
+     * prioridade da ordem no seu nível de preço; o aumento a leva para o final da fila. A
+     * quantidade 0 cancela a ordem.
+     *
+     * @param ativo          O ativo da ordem.
+     * @param lado           O tipo da ordem (COMPRA ou VENDA).
+     * @param idOrdem        O ID da ordem na Bolsa, recebido no aceite.
+     * @param novaQuantidade A nova quantidade da ordem no livro.
+     * @throws IOException Em caso de erro ao enviar o pedido.
+     */
+    public void alterarOrdem(String ativo, TipoOperacao lado, long idOrdem, int novaQuantidade) throws IOException {
+        if (novaQuantidade < 0) {
+            throw new IllegalArgumentException("Quantidade inválida: " + novaQuantidade);
+        }
+        enviarAlteracao(RabbitMQConfig.ROTA_ALTERACAO, ativo, lado, idOrdem, novaQuantidade);
+    }
+
+    /**
+     * Envia uma alteração de ordem, sempre no formato binário, com a chave "&lt;rota&gt;.&lt;ativo&gt;".
+     */
+    private void enviarAlteracao(String rota, String ativo, TipoOperacao lado, long idOrdem, int novaQuantidade)
+            throws IOException {
+        byte[] mensagem = new byte[CodecBinario.TAMANHO_ALTERACAO];
+        CodecBinario.codificarAlteracao(mensagem, 0, lado, ativo, novaQuantidade, nomeBroker,
+                numeracao.incrementAndGet(), idOrdem);
+        publicar(rota + "." + ativo, mensagem, FormatoMensagem.BINARIO);
+    }
+
+    /**
+     * Publica uma operação pelo transporte. Com publisher confirms, a publicação bloqueia apenas
+     * quando a janela de confirmações está cheia; falhas de confirmação são informadas no erro padrão.
+     *
+     * @param routingKey A chave de roteamento da mensagem.
+     * @param mensagem   Os bytes da mensagem.
+     * @param formato    O formato da mensagem.
+     * @throws IOException Em caso de erro ao publicar a mensagem.
+     */
+    private void publicar(String routingKey, byte[] mensagem, FormatoMensagem formato) throws IOException {
+        transporte.publicar(routingKey, mensagem, formato.getTipoConteudo()).whenComplete((ok, erro) -> {
+            if (erro != null) {
+                System.err.println("[" + nomeBroker + "] Operação não confirmada: " + routingKey + " - " + erro.getMessage());
+            }
+        });
     }
 
     /**
@@ -98,9 +507,25 @@ public class Broker {
      */
     private String construirMensagem(Operacao operacao) {
         // Construir a mensagem com base no layout: "<ativo>,<quantidade>,<valor>,<corretora>"
-        return operacao.getAtivo() + "-" +
-                operacao.getQuantidade() + "-" +
-                operacao.getValor() + "-" +
-                operacao.getCorretora();
+        return CodecTexto.deOperacao(operacao);
+    }
+
+    /**
+     * Constrói uma mensagem binária de ordem a partir dos dados da operação.
+     *
+     * @param operacao A operação para a qual a mensagem será construída.
+     * @param idBroker O número da ordem no Broker.
+     * @return Os bytes da mensagem no layout de ORDEM definido em CodecBinario.
+     */
+    private byte[] construirMensagemBinaria(Operacao operacao, long idBroker) {
+        byte[] mensagem = new byte[CodecBinario.TAMANHO_ORDEM];
+        CodecBinario.codificarOrdem(mensagem, 0,
+                operacao.getTipo(),
+                operacao.getAtivo(),
+                operacao.getQuantidade(),
+                TabelaDeTicks.getInstance().paraPontoFixo(operacao.getAtivo(), operacao.getPreco()),
+                operacao.getCorretora(),
+                idBroker);
+        return mensagem;
     }
 }
@@ -0,0 +1,181 @@
+package app;
+
+import services.mq.Mensagem;
+import services.mq.Transporte;
+import utils.RabbitMQConfig;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A classe SessoesBroker hospeda milhares de sessões de Broker em um processo, sobre um único
+ * transporte (e, no AMQP, sobre o pool de conexões e canais de um único cliente).
+ *
+ * Um Broker isolado tem uma fila de respostas, uma fila de respostas às consultas e, no
+ * transporte em memória, uma thread de consumo para cada uma. As sessões, em vez disso,
+ * compartilham uma única fila do grupo, vinculada às chaves de todas as corretoras hospedadas,
+ * com um único consumidor exclusivo. Esse consumidor apenas distribui cada mensagem para a
+ * caixa de entrada da sua sessão, pelo nome da corretora na chave de roteamento. Cada caixa é
+ * esvaziada por uma das poucas threads do grupo, por uma thread de cada vez, de modo que as
+ * respostas de cada sessão são processadas em ordem, sem uma thread por sessão. Sessões ociosas
+ * não ocupam thread alguma.
+ *
+ * As sessões não assinam dados de mercado. As mensagens de uma sessão fechada, ou que chegam
+ * antes de ela ser aberta, são descartadas. O nome de cada corretora deve ser único entre as
+ * sessões e os Brokers isolados conectados à Bolsa.
+ */
+public class SessoesBroker {
+
+    // Mensagens processadas por sessão antes de ceder a thread às demais sessões
+    private static final int LOTE_SESSAO = 64;
+
+    private final Transporte transporte;
+    private final String fila;
+    private final Map<String, Sessao> sessoes = new ConcurrentHashMap<>();
+    private final ExecutorService threads;
+    private final AtomicInteger descartadas = new AtomicInteger();
+
+    /**
+     * Cria o grupo de sessões e passa a consumir a fila do grupo.
+     *
+     * @param transporte A conexão com a Bolsa de Valores, compartilhada pelas sessões.
+     * @param grupo      O nome do grupo, que identifica a sua fila ("BROKER_queue.sessoes.grupo").
+     * @param threads    A quantidade de threads que processam as respostas das sessões.
+     * @throws IOException Em caso de erro de comunicação com o transporte, inclusive se outro
+     *                     processo já consumir a fila do grupo.
+     */
+    public SessoesBroker(Transporte transporte, String grupo, int threads) throws IOException {
+        this.transporte = transporte;
+        this.fila = RabbitMQConfig.FILA_BROKER + ".sessoes." + grupo;
+        AtomicInteger numeracao = new AtomicInteger();
+        this.threads = Executors.newFixedThreadPool(Math.max(1, threads), tarefa -> {
+            Thread thread = new Thread(tarefa, "SessoesBroker-" + grupo + "-" + numeracao.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        transporte.consumir(fila, Collections.emptyList(), true, this::distribuir);
+        System.out.println("[SessoesBroker] Recebendo respostas das sessões na fila " + fila);
+    }
+
+    /**
+     * Abre uma sessão de Broker, vinculando as chaves da corretora à fila do grupo.
+     *
+     * @param nomeBroker O nome da corretora.
+     * @return O Broker da sessão.
+     * @throws IOException Em caso de erro ao vincular as chaves da corretora.
+     * @throws IllegalArgumentException Se o grupo já tiver uma sessão da corretora.
+     */
+    public Broker abrir(String nomeBroker) throws IOException {
+        Broker broker = Broker.sessao(nomeBroker, transporte);
+        Sessao sessao = new Sessao(broker);
+        if (sessoes.putIfAbsent(nomeBroker, sessao) != null) {
+            throw new IllegalArgumentException("Sessão já aberta: " + nomeBroker);
+        }
+        try {
+            transporte.vincular(fila, broker.chavesRespostas());
+        } catch (IOException | RuntimeException e) {
+            sessoes.remove(nomeBroker, sessao);
+            throw e;
+        }
+        return broker;
+    }
+
+    /**
+     * Fecha a sessão de uma corretora. As respostas que ainda chegarem para ela são descartadas.
+     *
+     * @param nomeBroker O nome da corretora.
+     */
+    public void fechar(String nomeBroker) {
+        sessoes.remove(nomeBroker);
+    }
+
+    /**
+     * Obtém a quantidade de sessões abertas.
+     *
+     * @return A quantidade de sessões.
+     */
+    public int quantidade() {
+        return sessoes.size();
+    }
+
+    /**
+     * Obtém a quantidade de mensagens descartadas por não terem sessão aberta.
+     *
+     * @return A quantidade de mensagens sem sessão.
+     */
+    public int getDescartadas() {
+        return descartadas.get();
+    }
+
+    /**
+     * Encerra as threads das sessões. O transporte, que pode ser compartilhado, não é fechado.
+     */
+    public void encerrar() {
+        threads.shutdownNow();
+        sessoes.clear();
+    }
+
+    /**
+     * Entrega uma mensagem da fila do grupo à caixa de entrada da sua sessão, pelo nome da
+     * corretora que segue o prefixo da chave ("ACEITE.corretora", por exemplo).
+     */
+    private void distribuir(Mensagem recebida) {
+        String routingKey = recebida.getRoutingKey();
+        Sessao sessao = sessoes.get(routingKey.substring(routingKey.indexOf('.') + 1));
+        if (sessao == null) {
+            descartadas.incrementAndGet();
+            transporte.concluirEntrega(recebida.getIdEntrega());
+            return;
+        }
+        sessao.caixa.offer(recebida);
+        sessao.agendar();
+    }
+
+    /**
+     * Sessão de um Broker: a sua caixa de entrada e a indicação de que ela já está agendada ou
+     * em processamento em uma das threads do grupo.
+     */
+    private class Sessao implements Runnable {
+        final Broker broker;
+        final Queue<Mensagem> caixa = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean agendada = new AtomicBoolean();
+
+        Sessao(Broker broker) {
+            this.broker = broker;
+        }
+
+        void agendar() {
+            if (agendada.compareAndSet(false, true)) {
+                threads.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < LOTE_SESSAO; i++) {
+                Mensagem mensagem = caixa.poll();
+                if (mensagem == null) {
+                    break;
+                }
+                try {
+                    broker.receber(mensagem);
+                } catch (RuntimeException e) {
+                    System.err.println("[SessoesBroker] Erro na sessão " + broker.getNomeBroker() + ": " + e.getMessage());
+                }
+            }
+            // Libera a sessão e a reagenda se chegaram mensagens depois da última retirada
+            agendada.set(false);
+            if (!caixa.isEmpty()) {
+                agendar();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package server;
+
+import services.manager.Dicionario;
+import services.manager.Operacao;
+import services.manager.TabelaPorCodigo;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A classe ControleLeilao decide quando cada ativo entra em leilão e quando o leilão termina.
+ * Durante o leilão, o motor de casamento acumula as ofertas do ativo no livro sem negociá-las;
+ * ao final, todas as ofertas que se cruzam negociam juntas a um único preço.
+ *
+ * Um ativo entra em leilão:
+ * - na sua primeira ordem após a inicialização, se o leilão de abertura estiver ativo;
+ * - quando recebe mais ordens em um segundo do que o limite de rajada;
+ * - no horário diário de fechamento, junto com todos os ativos do livro;
+ * - por chamada explícita a iniciarLeilao.
+ *
+ * A abertura e o encerramento são eventos entregues ao emissor, que os numera como ordens, os
+ * registra no jornal e os processa no motor, de modo que a recuperação reproduza os mesmos
+ * leilões. Os eventos do temporizador precisam da mesma ordem das ordens recebidas no jornal e
+ * no motor, por isso todos os métodos sincronizam no monitor de entrada da Bolsa de Valores,
+ * o mesmo que protege o recebimento das ordens.
+ */
+public class ControleLeilao {
+
+    private static final long UM_SEGUNDO = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Destino dos eventos de leilão.
+     */
+    @FunctionalInterface
+    public interface EmissorLeilao {
+
+        /**
+         * Registra e processa um evento de leilão. É chamado com o monitor de entrada.
+         *
+         * @param ativo  O ativo.
+         * @param evento Operacao.ABERTURA_LEILAO ou Operacao.ENCERRAMENTO_LEILAO.
+         * @throws InterruptedException Se a thread for interrompida ao entregar o evento ao motor.
+         */
+        void emitir(String ativo, byte evento) throws InterruptedException;
+    }
+
+    private final Object entrada;
+    private final EmissorLeilao emissor;
+    private final long janelaMillis;
+    private final int limiteRajada;
+    private final boolean abertura;
+    private final TabelaPorCodigo<Estado> estados = new TabelaPorCodigo<>(); // por código do ativo; protegido pelo monitor de entrada
+
+    // A thread só é criada no primeiro agendamento
+    private final ScheduledExecutorService temporizador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "ControleLeilao");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Cria o controle de leilões.
+     *
+     * @param entrada      O monitor que serializa o recebimento das ordens.
+     * @param emissor      O destino dos eventos de abertura e de encerramento.
+     * @param janelaMillis A duração de cada leilão, em milissegundos; 0 desativa os novos leilões.
+     * @param limiteRajada As ordens de um ativo em um segundo a partir das quais ele entra em leilão; 0 desativa.
+     * @param abertura     Se cada ativo entra em leilão na sua primeira ordem.
+     */
+    public ControleLeilao(Object entrada, EmissorLeilao emissor, long janelaMillis, int limiteRajada, boolean abertura) {
+        this.entrada = entrada;
+        this.emissor = emissor;
+        this.janelaMillis = janelaMillis;
+        this.limiteRajada = limiteRajada;
+        this.abertura = abertura;
+    }
+
+    /**
+     * Registra a chegada de uma ordem de um ativo, já processada, e abre o leilão do ativo se
+     * ela for a primeira (com o leilão de abertura ativo) ou exceder o limite de rajada.
+     *
+     * @param codigoAtivo O código do ativo da ordem (ver Dicionario.getAtivos).
+     * @throws InterruptedException Se a thread for interrompida ao entregar a abertura ao motor.
+     */
+    public void aoReceber(int codigoAtivo) throws InterruptedException {
+        if (janelaMillis <= 0 || !abertura && limiteRajada <= 0) {
+            return;
+        }
+        synchronized (entrada) {
+            Estado estado = estados.obter(codigoAtivo);
+            if (estado == null) {
+                estado = estados.obter(codigoAtivo, codigo -> new Estado());
+                if (abertura) {
+                    abrir(Dicionario.getAtivos().nome(codigoAtivo), estado);
+                    return;
+                }
+            }
+            if (estado.emLeilao || limiteRajada <= 0) {
+                return;
+            }
+            long agora = System.nanoTime();
+            if (agora - estado.inicioJanela >= UM_SEGUNDO) {
+                estado.inicioJanela = agora;
+                estado.contagem = 0;
+            }
+            if (++estado.contagem > limiteRajada) {
+                abrir(Dicionario.getAtivos().nome(codigoAtivo), estado);
+            }
+        }
+    }
+
+    /**
+     * Abre o leilão de um ativo, se ele ainda não estiver em leilão.
+     *
+     * @param ativo O ativo.
+     * @throws InterruptedException Se a thread for interrompida ao entregar a abertura ao motor.
+     */
+    public void iniciarLeilao(String ativo) throws InterruptedException {
+        if (janelaMillis <= 0) {
+            return;
+        }
+        synchronized (entrada) {
+            Estado estado = estados.obter(Dicionario.getAtivos().codigo(ativo), codigo -> new Estado());
+            if (!estado.emLeilao) {
+                abrir(ativo, estado);
+            }
+        }
+    }
+
+    /**
+     * Agenda o encerramento dos leilões restaurados do snapshot e do jornal, que ficaram abertos
+     * na parada anterior. Os ativos ficam em leilão por mais uma janela.
+     *
+     * @param ativos Os ativos em leilão no livro restaurado.
+     */
+    public void retomar(List<String> ativos) {
+        synchronized (entrada) {
+            for (String ativo : ativos) {
+                Estado estado = estados.obter(Dicionario.getAtivos().codigo(ativo), codigo -> new Estado());
+                estado.emLeilao = true;
+                agendarEncerramento(ativo, Math.max(janelaMillis, 0));
+            }
+        }
+    }
+
+    /**
+     * Agenda o leilão de fechamento diário de todos os ativos do livro.
+     *
+     * @param horario O horário do fechamento.
+     * @param livro   O livro de ofertas, de onde vêm os ativos.
+     */
+    public void agendarFechamento(LocalTime horario, LivroDeOfertas livro) {
+        LocalDateTime agora = LocalDateTime.now();
+        LocalDateTime proximo = agora.toLocalDate().atTime(horario);
+        if (!proximo.isAfter(agora)) {
+            proximo = proximo.plusDays(1);
+        }
+        temporizador.scheduleAtFixedRate(() -> {
+            try {
+                for (String ativo : new ArrayList<>(livro.livros().keySet())) {
+                    iniciarLeilao(ativo);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                System.err.println("[ControleLeilao] Erro ao abrir o leilão de fechamento: " + e.getMessage());
+            }
+        }, Duration.between(agora, proximo).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        System.out.println("[ControleLeilao] Leilão de fechamento agendado para " + horario);
+    }
+
+    /**
+     * Encerra o temporizador. Os leilões abertos são encerrados pela recuperação na próxima inicialização.
+     */
+    public void encerrar() {
+        temporizador.shutdownNow();
+    }
+
+    private void abrir(String ativo, Estado estado) throws InterruptedException {
+        emissor.emitir(ativo, Operacao.ABERTURA_LEILAO);
+        estado.emLeilao = true;
+        agendarEncerramento(ativo, janelaMillis);
+    }
+
+    private void agendarEncerramento(String ativo, long atrasoMillis) {
+        temporizador.schedule(() -> encerrarLeilao(ativo), atrasoMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void encerrarLeilao(String ativo) {
+        synchronized (entrada) {
+            Estado estado = estados.obter(Dicionario.getAtivos().codigo(ativo));
+            if (estado == null || !estado.emLeilao) {
+                return;
+            }
+            try {
+                emissor.emitir(ativo, Operacao.ENCERRAMENTO_LEILAO);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // O encerramento não foi registrado nem processado: o leilão continua e é tentado de novo
+                System.err.println("[ControleLeilao] Erro ao encerrar o leilão de " + ativo + ": " + e.getMessage());
+                agendarEncerramento(ativo, Math.max(janelaMillis, TimeUnit.SECONDS.toMillis(1)));
+                return;
+            }
+            estado.emLeilao = false;
+            estado.inicioJanela = System.nanoTime();
+            estado.contagem = 0;
+        }
+    }
+
+    /**
+     * Estado de um ativo: se está em leilão e a contagem de ordens no segundo corrente.
+     */
+    private static class Estado {
+        boolean emLeilao;
+        long inicioJanela = System.nanoTime();
+        int contagem;
+    }
+}
@@ -0,0 +1,36 @@
+package server;
+
+import java.io.IOException;
+
+import services.manager.Operacao;
+
+/**
+ * A interface EtapasParticao define o que cada partição do MotorParticionado executa antes e
+ * depois do casamento de uma operação, na própria thread da partição. Como todas as operações
+ * de um ativo passam pela mesma partição, em ordem de chegada, o que é feito nestas etapas, como
+ * registrar a ordem no jornal, também segue a ordem de chegada de cada ativo.
+ *
+ * As etapas são chamadas concorrentemente por partições diferentes.
+ */
+public interface EtapasParticao {
+
+    /**
+     * Executada antes do casamento, quando a operação ainda tem a sua quantidade de chegada.
+     *
+     * @param operacao A operação a ser negociada.
+     * @param idBroker O número informado pelo remetente junto com a operação (Operacao.SEM_ID se não houver).
+     * @throws IOException Se a operação não puder ser aceita; nesse caso ela não é negociada.
+     */
+    default void antesDoCasamento(Operacao operacao, long idBroker) throws IOException {
+    }
+
+    /**
+     * Executada depois do casamento, mesmo que a operação tenha sido descartada antes dele ou
+     * que o casamento tenha falhado.
+     *
+     * @param operacao  A operação.
+     * @param idEntrega O identificador da entrega informado na submissão, ou MotorParticionado.SEM_ENTREGA.
+     */
+    default void aposCasamento(Operacao operacao, long idEntrega) {
+    }
+}
@@ -0,0 +1,128 @@
+package server;
+
+/**
+ * A classe IndiceDeOfertas é um mapa de ID da ordem (long) para a sua OfertaNoLivro, usado para
+ * localizar em O(1) as ofertas a cancelar ou alterar, qualquer que seja o tamanho do livro.
+ *
+ * É uma tabela de endereçamento aberto com sondagem linear sobre vetores primitivos, sem
+ * objetos por chave. A ocupação é mantida em no máximo metade da capacidade, e a remoção
+ * desloca para trás as entradas seguintes do mesmo agrupamento, sem marcas de remoção. A classe
+ * não é sincronizada; cada LivroDoAtivo tem o seu próprio índice.
+ */
+final class IndiceDeOfertas {
+
+    private static final int CAPACIDADE_INICIAL = 64;
+
+    private long[] ids;
+    private OfertaNoLivro[] ofertas; // null nas posições livres
+    private int mascara;
+    private int tamanho;
+
+    /**
+     * Cria um índice vazio.
+     */
+    IndiceDeOfertas() {
+        ids = new long[CAPACIDADE_INICIAL];
+        ofertas = new OfertaNoLivro[CAPACIDADE_INICIAL];
+        mascara = CAPACIDADE_INICIAL - 1;
+    }
+
+    /**
+     * Obtém a oferta de um ID.
+     *
+     * @param id O ID da ordem.
+     * @return A oferta, ou null se o ID não estiver no índice.
+     */
+    OfertaNoLivro obter(long id) {
+        for (int i = posicao(id); ofertas[i] != null; i = (i + 1) & mascara) {
+            if (ids[i] == id) {
+                return ofertas[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inclui uma oferta pelo ID da sua operação, substituindo a entrada anterior do mesmo ID.
+     *
+     * @param oferta A oferta.
+     */
+    void adicionar(OfertaNoLivro oferta) {
+        if (tamanho >= ofertas.length >> 1) {
+            crescer();
+        }
+        long id = oferta.operacao.getId();
+        int i = posicao(id);
+        while (ofertas[i] != null) {
+            if (ids[i] == id) {
+                ofertas[i] = oferta;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+        ids[i] = id;
+        ofertas[i] = oferta;
+        tamanho++;
+    }
+
+    /**
+     * Retira uma oferta do índice, se a entrada do seu ID for ela.
+     *
+     * @param oferta A oferta.
+     */
+    void remover(OfertaNoLivro oferta) {
+        long id = oferta.operacao.getId();
+        int i = posicao(id);
+        while (ofertas[i] != null && ids[i] != id) {
+            i = (i + 1) & mascara;
+        }
+        if (ofertas[i] != oferta) {
+            return;
+        }
+
+        // Desloca para a posição liberada as entradas seguintes que não estão na sua posição ideal
+        for (int j = (i + 1) & mascara; ofertas[j] != null; j = (j + 1) & mascara) {
+            int ideal = posicao(ids[j]);
+            boolean noLugar = i <= j ? i < ideal && ideal <= j : i < ideal || ideal <= j;
+            if (!noLugar) {
+                ids[i] = ids[j];
+                ofertas[i] = ofertas[j];
+                i = j;
+            }
+        }
+        ofertas[i] = null;
+        tamanho--;
+    }
+
+    /**
+     * Obtém a quantidade de ofertas no índice.
+     *
+     * @return A quantidade de IDs indexados.
+     */
+    int tamanho() {
+        return tamanho;
+    }
+
+    private int posicao(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+
+    private void crescer() {
+        long[] idsAntigos = ids;
+        OfertaNoLivro[] ofertasAntigas = ofertas;
+        ids = new long[idsAntigos.length * 2];
+        ofertas = new OfertaNoLivro[ofertasAntigas.length * 2];
+        mascara = ofertas.length - 1;
+        for (int k = 0; k < ofertasAntigas.length; k++) {
+            if (ofertasAntigas[k] != null) {
+                int i = posicao(idsAntigos[k]);
+                while (ofertas[i] != null) {
+                    i = (i + 1) & mascara;
+                }
+                ids[i] = idsAntigos[k];
+                ofertas[i] = ofertasAntigas[k];
+            }
+        }
+    }
+}
@@ -2,9 +2,12 @@ package server;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import services.manager.Dicionario;
 import services.manager.Operacao;
+import services.manager.TabelaPorCodigo;
 import services.manager.TipoOperacao;
 
 /**
@@ -12,20 +15,36 @@ import services.manager.TipoOperacao;
  * Ela gerencia um livro de ofertas para um mercado financeiro, permitindo adicionar,
  * remover e consultar ofertas de ativos específicos.
  * 
+ * Cada ativo possui o seu próprio livro, com um lado de compra e um lado de venda
+ * organizados por nível de preço e, dentro de cada nível, por ordem de chegada.
+ * Além do mapa por nome, usado nas consultas e nos snapshots, os livros são indexados pelo
+ * código do ativo (ver Dicionario), de modo que o casamento encontra o livro de cada ordem
+ * lendo um vetor, sem hash do nome.
+ * Os métodos de escrita desta classe sincronizam no próprio livro. O MotorParticionado, por
+ * sua vez, acessa o livro de cada ativo diretamente a partir da partição dona do ativo, sem
+ * bloqueio.
+ *
+ * As consultas não sincronizam e não bloqueiam o casamento, em nenhum dos modos: cada uma lê
+ * uma fotografia consistente do livro de cada ativo (LivroDoAtivo.fotografar), com cópias das
+ * ofertas desligadas do livro. Entre ativos diferentes, as fotografias podem ser de instantes
+ * diferentes, e sob escritas contínuas a fotografia de um ativo pode estar atrasada.
+ * 
  * A classe segue o padrão Singleton para garantir que apenas uma instância única
- * exista durante a execução do programa.
+ * exista durante a execução do programa. A RecuperacaoLivro cria, dentro do pacote, livros
+ * auxiliares para restaurar o estado e gerar os snapshots sem bloquear o livro em uso.
  */
 public class LivroDeOfertas implements ILivroDeOfertas {
     private static LivroDeOfertas instance;
-    private final List<Operacao> ofertas;
+    private final Map<String, LivroDoAtivo> livros;
+    private final TabelaPorCodigo<LivroDoAtivo> livrosPorCodigo = new TabelaPorCodigo<>();
 
     /**
-     * Construtor privado para evitar a criação direta de instâncias.
-     * Inicializa a lista de ofertas.
+     * Construtor restrito ao pacote, para evitar a criação direta de instâncias fora da
+     * recuperação do livro. Inicializa o mapa de livros por ativo.
      */
-    private LivroDeOfertas() {
+    LivroDeOfertas() {
         super();
-        ofertas = new ArrayList<>();
+        livros = new ConcurrentHashMap<>();
     }
 
     /**
@@ -40,6 +59,139 @@ public class LivroDeOfertas implements ILivroDeOfertas {
         return instance;
     }
 
+    /**
+     * Obtém o livro de um ativo, criando-o se ainda não existir. O chamador é responsável
+     * por garantir que haja um único escritor por ativo.
+     *
+     * @param ativo O ativo.
+     * @return O livro do ativo.
+     */
+    LivroDoAtivo livroDoAtivo(String ativo) {
+        return livroDoAtivo(Dicionario.getAtivos().codigo(ativo));
+    }
+
+    /**
+     * Obtém o livro de um ativo pelo código, criando-o se ainda não existir. O chamador é
+     * responsável por garantir que haja um único escritor por ativo.
+     *
+     * @param codigoAtivo O código do ativo (ver Dicionario.getAtivos).
+     * @return O livro do ativo.
+     */
+    LivroDoAtivo livroDoAtivo(int codigoAtivo) {
+        LivroDoAtivo livro = livrosPorCodigo.obter(codigoAtivo);
+        return livro != null ? livro : livrosPorCodigo.obter(codigoAtivo, codigo ->
+                livros.computeIfAbsent(Dicionario.getAtivos().nome(codigo), chave -> new LivroDoAtivo()));
+    }
+
+    /**
+     * Obtém o livro de um ativo pelo código, sem criá-lo.
+     *
+     * @param codigoAtivo O código do ativo (ver Dicionario.getAtivos).
+     * @return O livro do ativo, ou null se o ativo não tiver livro.
+     */
+    LivroDoAtivo livroExistente(int codigoAtivo) {
+        LivroDoAtivo livro = livrosPorCodigo.obter(codigoAtivo);
+        if (livro == null && livros.containsKey(Dicionario.getAtivos().nome(codigoAtivo))) {
+            // Livro restaurado ainda não indexado pelo código
+            livro = livroDoAtivo(codigoAtivo);
+        }
+        return livro;
+    }
+
+    /**
+     * Obtém os livros de todos os ativos, para a gravação dos snapshots. O chamador é
+     * responsável por garantir que não haja escritores durante a leitura.
+     *
+     * @return O mapa de livros por ativo.
+     */
+    Map<String, LivroDoAtivo> livros() {
+        return livros;
+    }
+
+    /**
+     * Remove os livros de todos os ativos. Usado na recuperação, antes do recebimento de operações.
+     */
+    void limpar() {
+        synchronized (this) {
+            livros.clear();
+            livrosPorCodigo.limpar();
+        }
+    }
+
+    /**
+     * Substitui o conteúdo deste livro pelo de outro, sem copiar as ofertas. Usado na
+     * inicialização, antes do recebimento de operações.
+     *
+     * @param restaurado O livro cujo conteúdo passa a ser deste.
+     */
+    void substituir(LivroDeOfertas restaurado) {
+        synchronized (this) {
+            livros.clear();
+            livrosPorCodigo.limpar();
+            livros.putAll(restaurado.livros);
+        }
+    }
+
+    /**
+     * Informa ao ouvinte a quantidade total de cada nível de preço do livro, como se cada
+     * nível acabasse de ser alterado. Usado para publicar o livro restaurado.
+     *
+     * @param ouvinteLivro O ouvinte que recebe os níveis.
+     */
+    void percorrerNiveis(OuvinteLivro ouvinteLivro) {
+        synchronized (this) {
+            for (Map.Entry<String, LivroDoAtivo> entrada : livros.entrySet()) {
+                int codigoAtivo = Dicionario.getAtivos().codigo(entrada.getKey());
+                for (TipoOperacao lado : TipoOperacao.values()) {
+                    NiveisDePreco niveis = entrada.getValue().lado(lado);
+                    for (int i = 0; i < niveis.posicoes(); i++) {
+                        NivelDePreco nivel = niveis.nivel(i);
+                        if (nivel.isVazio()) {
+                            continue;
+                        }
+                        ouvinteLivro.aoAtualizarNivel(codigoAtivo, lado, nivel.getPreco(), nivel.getQuantidade());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Conta as ofertas de todos os ativos.
+     *
+     * @return A quantidade de ofertas no livro.
+     */
+    long quantidadeOfertas() {
+        synchronized (this) {
+            long ofertas = 0;
+            for (LivroDoAtivo livro : livros.values()) {
+                for (TipoOperacao lado : TipoOperacao.values()) {
+                    NiveisDePreco niveis = livro.lado(lado);
+                    for (int i = 0; i < niveis.posicoes(); i++) {
+                        ofertas += niveis.nivel(i).tamanho();
+                    }
+                }
+            }
+            return ofertas;
+        }
+    }
+
+    /**
+     * Obtém os ativos cujo livro está em leilão, por exemplo após a restauração de um livro
+     * gravado durante um leilão.
+     *
+     * @return Os ativos em leilão.
+     */
+    public List<String> ativosEmLeilao() {
+        List<String> ativos = new ArrayList<>();
+        for (Map.Entry<String, LivroDoAtivo> entrada : livros.entrySet()) {
+            if (entrada.getValue().isEmLeilao()) {
+                ativos.add(entrada.getKey());
+            }
+        }
+        return ativos;
+    }
+
     /**
      * Adiciona uma oferta a um ativo.
      *
@@ -48,7 +200,13 @@ public class LivroDeOfertas implements ILivroDeOfertas {
     @Override
     public void adicionarOferta(Operacao oferta) {
         synchronized (this) {
-            ofertas.add(oferta);
+            LivroDoAtivo livro = livroDoAtivo(oferta.getCodigoAtivo());
+            long carimbo = livro.iniciarEscrita();
+            try {
+                livro.adicionar(oferta);
+            } finally {
+                livro.concluirEscrita(carimbo);
+            }
         }
     }
 
@@ -60,10 +218,31 @@ public class LivroDeOfertas implements ILivroDeOfertas {
     @Override
     public void removerOferta(Operacao operacao) {
         synchronized (this) {
-            ofertas.remove(operacao);
+            LivroDoAtivo livro = livroExistente(operacao.getCodigoAtivo());
+            if (livro != null) {
+                long carimbo = livro.iniciarEscrita();
+                try {
+                    livro.remover(operacao);
+                } finally {
+                    livro.concluirEscrita(carimbo);
+                }
+            }
         }
     }
 
+    /**
+     * Obtém a oferta com maior prioridade de um ativo para o tipo de operação informado:
+     * o melhor preço e, dentro dele, a oferta mais antiga.
+     *
+     * @param ativo O ativo para o qual a oferta deve ser consultada.
+     * @param tipoOperacao O tipo de operação (COMPRA ou VENDA).
+     * @return Uma cópia da melhor oferta, ou null se não houver ofertas.
+     */
+    public Operacao melhorOferta(String ativo, TipoOperacao tipoOperacao) {
+        LivroDoAtivo livro = livros.get(ativo);
+        return livro == null ? null : livro.lerMelhorOferta(tipoOperacao);
+    }
+
     /**
      * Consulta as ofertas de um ativo específico de acordo com o tipo de operação (COMPRA ou VENDA).
      *
@@ -73,12 +252,13 @@ public class LivroDeOfertas implements ILivroDeOfertas {
      */
     @Override
     public List<Operacao> consultarOfertasPorAtivoETipo(String ativo, TipoOperacao tipoOperacao) {
-        // Filtra as ofertas de acordo com o ativo e o tipo de operação
-        synchronized (this) {
-            return ofertas.stream()
-                .filter(oferta -> oferta.getAtivo().equals(ativo) && oferta.getTipo() == tipoOperacao)
-                .collect(Collectors.toList());
+        // Copia apenas o lado solicitado da fotografia do ativo, em ordem de prioridade
+        List<Operacao> ofertas = new ArrayList<>();
+        LivroDoAtivo livro = livros.get(ativo);
+        if (livro != null) {
+            livro.fotografar().copiarOfertas(tipoOperacao, ofertas);
         }
+        return ofertas;
     }
 
     /**
@@ -89,12 +269,15 @@ public class LivroDeOfertas implements ILivroDeOfertas {
      */
     @Override
     public List<Operacao> consultarOfertasPorAtivo(String ativo) {
-        // Filtra as ofertas de acordo com o ativo
-        synchronized (this) {
-            return ofertas.stream()
-                .filter(oferta -> oferta.getAtivo().equals(ativo))
-                .collect(Collectors.toList());
+        // Junta os dois lados de uma mesma fotografia do ativo
+        List<Operacao> ofertas = new ArrayList<>();
+        LivroDoAtivo livro = livros.get(ativo);
+        if (livro != null) {
+            LivroDoAtivo.Fotografia fotografia = livro.fotografar();
+            fotografia.copiarOfertas(TipoOperacao.COMPRA, ofertas);
+            fotografia.copiarOfertas(TipoOperacao.VENDA, ofertas);
         }
+        return ofertas;
     }
 
     /**
@@ -105,9 +288,17 @@ public class LivroDeOfertas implements ILivroDeOfertas {
      */
     @Override
     public List<Operacao> consultarTodasOfertas(TipoOperacao tipoOperacao) {
-        synchronized (this) {
-            // Retorna a lista de todas as ofertas.
-            return ofertas;
+        // Retorna cópias das ofertas de todos os ativos, de uma fotografia por ativo
+        List<Operacao> ofertas = new ArrayList<>();
+        for (LivroDoAtivo livro : livros.values()) {
+            LivroDoAtivo.Fotografia fotografia = livro.fotografar();
+            if (tipoOperacao == null || tipoOperacao == TipoOperacao.COMPRA) {
+                fotografia.copiarOfertas(TipoOperacao.COMPRA, ofertas);
+            }
+            if (tipoOperacao == null || tipoOperacao == TipoOperacao.VENDA) {
+                fotografia.copiarOfertas(TipoOperacao.VENDA, ofertas);
+            }
         }
+        return ofertas;
     }
 }
@@ -0,0 +1,508 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe LivroDoAtivo mantém as ofertas de um único ativo, separadas em um lado de compra
+ * e um lado de venda. Cada lado é indexado por nível de preço e, dentro de cada nível, as
+ * ofertas são mantidas em ordem de chegada (prioridade preço-tempo). Os preços são
+ * indexados em ticks (long), sem objetos por chave. Um IndiceDeOfertas localiza cada oferta
+ * pelo ID da sua ordem, de modo que cancelar ou alterar uma oferta custa O(1), e não uma busca
+ * na fila do nível.
+ *
+ * A classe não é sincronizada: cada livro tem um único escritor, seja o monitor de
+ * LivroDeOfertas, seja a partição do MotorParticionado responsável pelo ativo.
+ *
+ * As leituras de outras threads (fotografar e lerMelhorOferta) não fazem o escritor trabalhar
+ * por elas. O escritor delimita cada operação com iniciarEscrita e concluirEscrita, que avançam
+ * a versão do livro (um StampedLock usado como seqlock), e os leitores copiam as ofertas de
+ * forma otimista, descartando a cópia se a versão mudou durante a leitura e tentando de novo
+ * após uma espera crescente. Os leitores nunca tomam o bloqueio de leitura da versão, de modo
+ * que o escritor nunca espera por eles. A última fotografia completa fica guardada com a versão
+ * em que foi tirada: é reaproveitada enquanto o livro não muda e, se as escritas forem tão
+ * frequentes que a cópia não se completa, é devolvida no lugar de uma nova, consistente mas
+ * atrasada.
+ *
+ * Em leilão, as ofertas se acumulam sem negociar e o livro pode ficar cruzado até o seu
+ * encerramento, quando o MotorDeCasamento as negocia todas ao preço de precoDeLeilao.
+ */
+class LivroDoAtivo {
+
+    // Ofertas de compra, melhor nível = maior preço
+    private final NiveisDePreco compras;
+
+    // Ofertas de venda, melhor nível = menor preço
+    private final NiveisDePreco vendas;
+
+    // Ofertas dos dois lados por ID da ordem, para cancelamentos e alterações
+    private final IndiceDeOfertas indice;
+
+    // Preço de leilão de um livro que não está cruzado
+    static final long SEM_PRECO = -1;
+
+    // Tentativas de leitura otimista em que o leitor apenas cede o processador antes de repetir
+    private static final int TENTATIVAS_SEM_ESPERA = 8;
+
+    // Tentativas de cópia otimista antes de o leitor se contentar com a última fotografia
+    private static final int TENTATIVAS_OTIMISTAS = 16;
+
+    // Ofertas copiadas entre validações da versão durante uma cópia otimista
+    private static final int OFERTAS_POR_VALIDACAO = 64;
+
+    // Versão do livro: bloqueada pelo escritor durante cada operação; os leitores apenas a validam
+    private final StampedLock versao = new StampedLock();
+
+    // Última fotografia completa, com a versão em que foi tirada
+    private volatile Fotografia ultimaFotografia;
+
+    // Indica se as ofertas do ativo se acumulam para o leilão, em vez de negociar na chegada
+    private volatile boolean emLeilao;
+
+    /**
+     * Cria um livro vazio para um ativo.
+     */
+    LivroDoAtivo() {
+        compras = new NiveisDePreco(true);
+        vendas = new NiveisDePreco(false);
+        indice = new IndiceDeOfertas();
+    }
+
+    /**
+     * Inicia uma operação do escritor. As alterações feitas até concluirEscrita são vistas
+     * pelos leitores todas de uma vez.
+     *
+     * @return O carimbo a ser informado em concluirEscrita.
+     */
+    long iniciarEscrita() {
+        return versao.writeLock();
+    }
+
+    /**
+     * Conclui uma operação do escritor.
+     *
+     * @param carimbo O carimbo retornado por iniciarEscrita.
+     */
+    void concluirEscrita(long carimbo) {
+        versao.unlockWrite(carimbo);
+    }
+
+    /**
+     * Obtém uma cópia consistente das ofertas do livro, sem bloquear o escritor. Pode ser
+     * chamado por qualquer thread. Se o livro não mudou desde a última fotografia, ela é
+     * reaproveitada; se a cópia otimista falhar TENTATIVAS_OTIMISTAS vezes seguidas, a última
+     * fotografia é devolvida, mesmo atrasada. Só a primeira fotografia do livro insiste na cópia
+     * até encontrar um intervalo entre duas operações do escritor.
+     *
+     * @return As ofertas dos dois lados, em ordem de prioridade preço-tempo. A fotografia é
+     *         compartilhada entre os leitores e as suas ofertas não devem ser alteradas.
+     */
+    Fotografia fotografar() {
+        Fotografia ultima = ultimaFotografia;
+        if (ultima != null && versao.validate(ultima.carimbo)) {
+            return ultima;
+        }
+        for (int tentativa = 1; ; tentativa++) {
+            Fotografia copia = copiarOtimista();
+            if (copia != null) {
+                ultimaFotografia = copia;
+                return copia;
+            }
+            ultima = ultimaFotografia;
+            if (tentativa >= TENTATIVAS_OTIMISTAS && ultima != null) {
+                return ultima;
+            }
+            aguardar(tentativa);
+        }
+    }
+
+    /**
+     * Espera antes de uma nova tentativa de leitura: cede o processador nas primeiras e depois
+     * dorme por intervalos crescentes, de até 100 microssegundos.
+     */
+    private static void aguardar(int tentativa) {
+        if (tentativa < TENTATIVAS_SEM_ESPERA) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(100_000L, 1_000L << Math.min(tentativa - TENTATIVAS_SEM_ESPERA, 7)));
+        }
+    }
+
+    /**
+     * Obtém uma cópia da oferta com maior prioridade de um lado do livro, sem bloquear o
+     * escritor. Pode ser chamado por qualquer thread.
+     *
+     * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+     * @return Uma cópia da melhor oferta, ou null se o lado estiver vazio.
+     */
+    Operacao lerMelhorOferta(TipoOperacao tipoOperacao) {
+        for (int tentativa = 1; ; tentativa++) {
+            long carimbo = versao.tryOptimisticRead();
+            if (carimbo != 0) {
+                try {
+                    Operacao melhor = melhorOferta(tipoOperacao);
+                    Operacao copia = melhor == null ? null : copiar(melhor);
+                    if (versao.validate(carimbo)) {
+                        return copia;
+                    }
+                } catch (RuntimeException e) {
+                    // Estado lido durante uma escrita; a leitura é repetida
+                }
+            }
+            // A leitura é curta e acaba encontrando um intervalo entre duas operações do escritor
+            aguardar(tentativa);
+        }
+    }
+
+    /**
+     * Adiciona uma oferta ao final da fila do seu nível de preço. Ofertas com ID são incluídas
+     * no índice, para que possam ser canceladas ou alteradas.
+     *
+     * @param oferta A oferta a ser adicionada.
+     * @return A quantidade total do nível após a inclusão.
+     */
+    long adicionar(Operacao oferta) {
+        NivelDePreco nivel = lado(oferta.getTipo()).obterOuCriar(oferta.getPreco());
+        OfertaNoLivro noLivro = new OfertaNoLivro(oferta);
+        nivel.adicionar(noLivro);
+        if (oferta.getId() != Operacao.SEM_ID) {
+            indice.adicionar(noLivro);
+        }
+        return nivel.somarQuantidade(oferta.getQuantidade());
+    }
+
+    /**
+     * Remove uma oferta do seu nível de preço. Ofertas com ID são localizadas pelo índice, em
+     * O(1); as demais, percorrendo a fila do seu nível.
+     *
+     * @param oferta A oferta a ser removida.
+     * @return true se a oferta estava no livro.
+     */
+    boolean remover(Operacao oferta) {
+        OfertaNoLivro noLivro = localizar(oferta);
+        if (noLivro == null) {
+            return false;
+        }
+        retirar(noLivro);
+        return true;
+    }
+
+    /**
+     * Obtém uma oferta do livro pelo ID da ordem, em O(1).
+     *
+     * @param id O ID atribuído à ordem na chegada.
+     * @return A oferta, ou null se a ordem não estiver no livro.
+     */
+    Operacao oferta(long id) {
+        OfertaNoLivro noLivro = id == Operacao.SEM_ID ? null : indice.obter(id);
+        return noLivro == null ? null : noLivro.operacao;
+    }
+
+    /**
+     * Altera a quantidade de uma oferta do livro. A redução mantém a posição da oferta na fila
+     * do nível; o aumento a leva para o final da fila, como uma oferta nova, e a quantidade 0
+     * retira a oferta do livro.
+     *
+     * @param oferta         Uma oferta do livro.
+     * @param novaQuantidade A nova quantidade da oferta, não negativa.
+     * @return A quantidade total do nível após a alteração (0 se o nível saiu do livro), ou -1
+     *         se a oferta não estava no livro.
+     */
+    long alterarQuantidade(Operacao oferta, int novaQuantidade) {
+        OfertaNoLivro noLivro = localizar(oferta);
+        if (noLivro == null) {
+            return -1;
+        }
+        if (novaQuantidade == 0) {
+            return retirar(noLivro);
+        }
+
+        NivelDePreco nivel = noLivro.nivel;
+        int variacao = novaQuantidade - oferta.getQuantidade();
+        if (variacao > 0) {
+            // O aumento perde a prioridade de tempo
+            nivel.remover(noLivro);
+            nivel.adicionar(noLivro);
+        }
+        oferta.setQuantidade(novaQuantidade);
+        return nivel.somarQuantidade(variacao);
+    }
+
+    /**
+     * Executa parte ou toda a oferta com maior prioridade de um lado do livro, em O(1).
+     * A oferta totalmente executada sai do livro.
+     *
+     * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+     * @param quantidade   A quantidade executada, no máximo a quantidade da oferta.
+     * @return A quantidade total que resta no nível de preço da oferta (0 se o nível saiu do livro).
+     */
+    long executarMelhorOferta(TipoOperacao tipoOperacao, int quantidade) {
+        NivelDePreco melhorNivel = lado(tipoOperacao).melhor();
+        OfertaNoLivro primeira = melhorNivel.primeira();
+        Operacao oferta = primeira.operacao;
+        oferta.setQuantidade(oferta.getQuantidade() - quantidade);
+        long restante = melhorNivel.somarQuantidade(-quantidade);
+        if (oferta.getQuantidade() == 0) {
+            retirar(primeira);
+        }
+        return restante;
+    }
+
+    /**
+     * Obtém a oferta com maior prioridade de um lado do livro: o melhor preço e,
+     * dentro dele, a oferta mais antiga.
+     *
+     * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+     * @return A melhor oferta, ou null se o lado estiver vazio.
+     */
+    Operacao melhorOferta(TipoOperacao tipoOperacao) {
+        NivelDePreco melhorNivel = lado(tipoOperacao).melhor();
+        return melhorNivel == null ? null : melhorNivel.primeira().operacao;
+    }
+
+    /**
+     * Indica se o ativo está em leilão.
+     *
+     * @return true se as ofertas do ativo se acumulam para o leilão.
+     */
+    boolean isEmLeilao() {
+        return emLeilao;
+    }
+
+    /**
+     * Abre ou encerra o leilão do ativo. Apenas marca o livro; o encerramento não negocia as ofertas.
+     *
+     * @param emLeilao true para abrir o leilão.
+     */
+    void setEmLeilao(boolean emLeilao) {
+        this.emLeilao = emLeilao;
+    }
+
+    /**
+     * Calcula o preço de leilão: o preço que maximiza a quantidade negociável entre as compras
+     * com preço maior ou igual a ele e as vendas com preço menor ou igual. No empate, vale o
+     * menor desequilíbrio entre as duas quantidades; persistindo o empate, o maior preço se
+     * sobrarem compras, o menor se sobrarem vendas e, caso contrário, o ponto médio dos preços
+     * empatados. Os candidatos são os preços dos níveis que se cruzam, percorridos uma única
+     * vez em ordem crescente.
+     *
+     * @return O preço de leilão, em ticks, ou SEM_PRECO se o livro não estiver cruzado.
+     */
+    long precoDeLeilao() {
+        NivelDePreco melhorCompra = compras.melhor();
+        NivelDePreco melhorVenda = vendas.melhor();
+        if (melhorCompra == null || melhorVenda == null || melhorCompra.getPreco() < melhorVenda.getPreco()) {
+            return SEM_PRECO;
+        }
+
+        // Níveis que se cruzam: as compras a partir da melhor até a menor acima da melhor venda, e o inverso
+        int niveisCompra = 0;
+        while (niveisCompra < compras.posicoes() && compras.nivel(niveisCompra).getPreco() >= melhorVenda.getPreco()) {
+            niveisCompra++;
+        }
+        int niveisVenda = 0;
+        while (niveisVenda < vendas.posicoes() && vendas.nivel(niveisVenda).getPreco() <= melhorCompra.getPreco()) {
+            niveisVenda++;
+        }
+
+        // No menor candidato, todas as compras que se cruzam estão na demanda e nenhuma venda na oferta
+        long demanda = 0;
+        for (int i = 0; i < niveisCompra; i++) {
+            demanda += compras.nivel(i).getQuantidade();
+        }
+        long oferta = 0;
+        int compra = niveisCompra - 1; // pior compra ainda na demanda
+        int venda = 0; // próxima venda a entrar na oferta
+
+        long maiorQuantidade = -1;
+        long menorDesequilibrio = 0;
+        long precoInicial = SEM_PRECO;
+        long precoFinal = SEM_PRECO;
+        long desequilibrioInicial = 0;
+        long desequilibrioFinal = 0;
+        while (true) {
+            // Os níveis vazios ainda não retirados não são candidatos
+            while (compra >= 0 && compras.nivel(compra).isVazio()) {
+                compra--;
+            }
+            while (venda < niveisVenda && vendas.nivel(venda).isVazio()) {
+                venda++;
+            }
+            if (compra < 0 && venda >= niveisVenda) {
+                break;
+            }
+
+            long preco = Math.min(compra >= 0 ? compras.nivel(compra).getPreco() : Long.MAX_VALUE,
+                    venda < niveisVenda ? vendas.nivel(venda).getPreco() : Long.MAX_VALUE);
+            while (venda < niveisVenda && vendas.nivel(venda).getPreco() <= preco) {
+                oferta += vendas.nivel(venda++).getQuantidade();
+            }
+
+            long quantidade = Math.min(demanda, oferta);
+            long desequilibrio = demanda - oferta;
+            if (quantidade > maiorQuantidade
+                    || (quantidade == maiorQuantidade && Math.abs(desequilibrio) < menorDesequilibrio)) {
+                maiorQuantidade = quantidade;
+                menorDesequilibrio = Math.abs(desequilibrio);
+                precoInicial = preco;
+                desequilibrioInicial = desequilibrio;
+                precoFinal = preco;
+                desequilibrioFinal = desequilibrio;
+            } else if (quantidade == maiorQuantidade && Math.abs(desequilibrio) == menorDesequilibrio) {
+                precoFinal = preco;
+                desequilibrioFinal = desequilibrio;
+            }
+
+            // Os próximos candidatos são maiores: as compras deste preço saem da demanda
+            while (compra >= 0 && compras.nivel(compra).getPreco() <= preco) {
+                demanda -= compras.nivel(compra--).getQuantidade();
+            }
+        }
+
+        if (desequilibrioInicial > 0 && desequilibrioFinal > 0) {
+            return precoFinal;
+        }
+        if (desequilibrioInicial < 0 && desequilibrioFinal < 0) {
+            return precoInicial;
+        }
+        return precoInicial + (precoFinal - precoInicial) / 2;
+    }
+
+    /**
+     * Tenta uma cópia otimista do livro, abandonada assim que a versão muda.
+     *
+     * @return A cópia, ou null se houve uma escrita durante a leitura.
+     */
+    private Fotografia copiarOtimista() {
+        long carimbo = versao.tryOptimisticRead();
+        if (carimbo == 0) {
+            return null;
+        }
+        try {
+            Fotografia copia = copiar(carimbo);
+            return copia != null && versao.validate(carimbo) ? copia : null;
+        } catch (RuntimeException e) {
+            // Estado inconsistente lido durante uma escrita, como um nível já reaproveitado
+            return null;
+        }
+    }
+
+    /**
+     * Copia as ofertas dos dois lados, validando a versão periodicamente.
+     *
+     * @return A cópia, ou null se a versão mudou durante a cópia.
+     */
+    private Fotografia copiar(long carimbo) {
+        List<Operacao> copiaCompras = copiar(compras, carimbo);
+        List<Operacao> copiaVendas = copiaCompras == null ? null : copiar(vendas, carimbo);
+        return copiaVendas == null ? null : new Fotografia(carimbo, copiaCompras, copiaVendas);
+    }
+
+    private List<Operacao> copiar(NiveisDePreco lado, long carimbo) {
+        List<Operacao> ofertas = new ArrayList<>();
+        for (int i = 0; i < lado.posicoes(); i++) {
+            for (OfertaNoLivro oferta = lado.nivel(i).primeira(); oferta != null; oferta = oferta.proxima) {
+                ofertas.add(copiar(oferta.operacao));
+                // A validação periódica garante o fim da cópia mesmo sobre ligações alteradas
+                if (ofertas.size() % OFERTAS_POR_VALIDACAO == 0 && !versao.validate(carimbo)) {
+                    return null;
+                }
+            }
+        }
+        return ofertas;
+    }
+
+    private static Operacao copiar(Operacao oferta) {
+        return Operacao.porCodigos(oferta.getId(), oferta.getTipo(), oferta.getCodigoAtivo(), oferta.getQuantidade(),
+                oferta.getPreco(), oferta.getCodigoCorretora(), oferta.getDataHora());
+    }
+
+    /**
+     * Localiza o elemento de uma oferta pelo índice ou, para ofertas sem ID, na fila do seu nível.
+     */
+    private OfertaNoLivro localizar(Operacao oferta) {
+        OfertaNoLivro noLivro = oferta.getId() == Operacao.SEM_ID ? null : indice.obter(oferta.getId());
+        if (noLivro != null && noLivro.operacao == oferta) {
+            return noLivro;
+        }
+        NivelDePreco nivel = lado(oferta.getTipo()).obter(oferta.getPreco());
+        for (noLivro = nivel == null ? null : nivel.primeira(); noLivro != null; noLivro = noLivro.proxima) {
+            if (noLivro.operacao == oferta) {
+                return noLivro;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retira uma oferta do livro e do índice, removendo o seu nível se ele ficar vazio.
+     *
+     * @return A quantidade total que resta no nível (0 se o nível saiu do livro).
+     */
+    private long retirar(OfertaNoLivro noLivro) {
+        Operacao oferta = noLivro.operacao;
+        NivelDePreco nivel = noLivro.nivel;
+        nivel.remover(noLivro);
+        indice.remover(noLivro);
+        long restante = nivel.somarQuantidade(-oferta.getQuantidade());
+        if (nivel.isVazio()) {
+            lado(oferta.getTipo()).remover(nivel);
+        }
+        return restante;
+    }
+
+    /**
+     * Obtém um lado do livro.
+     *
+     * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+     * @return Os níveis de preço do lado.
+     */
+    NiveisDePreco lado(TipoOperacao tipoOperacao) {
+        return tipoOperacao == TipoOperacao.COMPRA ? compras : vendas;
+    }
+
+    /**
+     * Cópia consistente das ofertas de um livro, desligada do livro, com a versão em que foi
+     * tirada. É imutável e compartilhada entre os leitores; quem entrega as ofertas para fora do
+     * pacote as copia antes (copiarOfertas).
+     */
+    static final class Fotografia {
+        private final long carimbo;
+        private final List<Operacao> compras;
+        private final List<Operacao> vendas;
+
+        Fotografia(long carimbo, List<Operacao> compras, List<Operacao> vendas) {
+            this.carimbo = carimbo;
+            this.compras = Collections.unmodifiableList(compras);
+            this.vendas = Collections.unmodifiableList(vendas);
+        }
+
+        /**
+         * Obtém as ofertas de um lado, em ordem de prioridade preço-tempo.
+         *
+         * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+         * @return As ofertas do lado informado, que não devem ser alteradas.
+         */
+        List<Operacao> ofertas(TipoOperacao tipoOperacao) {
+            return tipoOperacao == TipoOperacao.COMPRA ? compras : vendas;
+        }
+
+        /**
+         * Acrescenta a uma lista cópias das ofertas de um lado, que o chamador pode alterar.
+         *
+         * @param tipoOperacao O lado do livro (COMPRA ou VENDA).
+         * @param destino      A lista que recebe as cópias, em ordem de prioridade preço-tempo.
+         */
+        void copiarOfertas(TipoOperacao tipoOperacao, List<Operacao> destino) {
+            for (Operacao oferta : ofertas(tipoOperacao)) {
+                destino.add(copiar(oferta));
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package server;
+
+import java.util.function.LongSupplier;
+
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe MotorDeCasamento negocia uma operação recebida com as ofertas opostas do livro
+ * do seu ativo, seguindo a prioridade preço-tempo, e deixa o saldo não negociado no livro.
+ *
+ * A classe não é sincronizada: cada ativo deve ter um único escritor. No modo de thread única,
+ * a BolsaDeValores chama o motor segurando o monitor de LivroDeOfertas; no modo particionado,
+ * cada partição do MotorParticionado chama o motor para os seus próprios ativos. Cada operação
+ * é uma escrita do LivroDoAtivo, de modo que as consultas veem o livro antes ou depois dela,
+ * nunca no meio do casamento.
+ *
+ * Cada negócio recebe um ID do Sequenciador e a data e hora do Relogio, sem bloqueios e sem
+ * outras alocações além do próprio negócio.
+ *
+ * As alterações (Operacao.isAlteracao) não negociam: mudam a quantidade ou cancelam a oferta
+ * indicada, localizada pelo ID em O(1). Alterações de ofertas que já saíram do livro, ou de
+ * outra corretora ou lado, são ignoradas.
+ *
+ * Em leilão (aberto e encerrado por eventos de leilão, Operacao.isLeilao), as ordens do ativo
+ * entram no livro sem negociar. O encerramento calcula o preço de leilão do livro e negocia,
+ * em uma única passagem e a esse preço, todas as ofertas que se cruzam, em prioridade
+ * preço-tempo; cada nível de preço alterado é notificado uma única vez. Nos negócios do
+ * leilão, a mais recente das duas ordens é registrada como a agressora.
+ */
+public class MotorDeCasamento {
+
+    private final LivroDeOfertas livroDeOfertas;
+    private final OuvinteNegociacao ouvinte;
+    private final OuvinteLivro ouvinteLivro;
+    private final LongSupplier idsNegocios;
+
+    /**
+     * Cria um motor de casamento sobre um livro de ofertas.
+     *
+     * @param livroDeOfertas O livro de ofertas.
+     * @param ouvinte        O ouvinte notificado a cada negócio realizado.
+     */
+    public MotorDeCasamento(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte) {
+        this(livroDeOfertas, ouvinte, (codigoAtivo, lado, preco, quantidade) -> { });
+    }
+
+    /**
+     * Cria um motor de casamento sobre um livro de ofertas, notificando também as alterações
+     * dos níveis de preço do livro.
+     *
+     * @param livroDeOfertas O livro de ofertas.
+     * @param ouvinte        O ouvinte notificado a cada negócio realizado.
+     * @param ouvinteLivro   O ouvinte notificado a cada alteração de um nível de preço.
+     */
+    public MotorDeCasamento(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte, OuvinteLivro ouvinteLivro) {
+        this(livroDeOfertas, ouvinte, ouvinteLivro, Sequenciador.getInstance()::proximoNegocio);
+    }
+
+    /**
+     * Cria um motor de casamento com uma fonte própria de IDs dos negócios. Usado pela
+     * RecuperacaoLivro, cujos negócios reaplicados são descartados e não consomem IDs.
+     *
+     * @param livroDeOfertas O livro de ofertas.
+     * @param ouvinte        O ouvinte notificado a cada negócio realizado.
+     * @param ouvinteLivro   O ouvinte notificado a cada alteração de um nível de preço.
+     * @param idsNegocios    A fonte dos IDs dos negócios.
+     */
+    MotorDeCasamento(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte, OuvinteLivro ouvinteLivro,
+                     LongSupplier idsNegocios) {
+        this.livroDeOfertas = livroDeOfertas;
+        this.ouvinte = ouvinte;
+        this.ouvinteLivro = ouvinteLivro;
+        this.idsNegocios = idsNegocios;
+    }
+
+    /**
+     * Processa a transação de uma operação negociando com ofertas opostas.
+     *
+     * @param operacao A operação recebida.
+     */
+    public void processarTransacao(Operacao operacao) {
+        if (operacao.isAlteracao()) {
+            alterarOferta(operacao);
+            return;
+        }
+
+        LivroDoAtivo livro = livroDeOfertas.livroDoAtivo(operacao.getCodigoAtivo());
+        long carimbo = livro.iniciarEscrita();
+        try {
+            if (operacao.isLeilao()) {
+                processarLeilao(livro, operacao);
+            } else if (livro.isEmLeilao()) {
+                // A ordem aguarda o encerramento do leilão, mesmo que cruze o livro
+                if (operacao.getQuantidade() > 0) {
+                    long totalNivel = livro.adicionar(operacao);
+                    ouvinteLivro.aoAtualizarNivel(operacao.getCodigoAtivo(), operacao.getTipo(), operacao.getPreco(), totalNivel);
+                }
+            } else {
+                casar(livro, operacao);
+            }
+        } finally {
+            livro.concluirEscrita(carimbo);
+        }
+    }
+
+    /**
+     * Negocia a operação com as ofertas opostas do livro do seu ativo e deixa o saldo no livro.
+     */
+    private void casar(LivroDoAtivo livro, Operacao operacao) {
+        TipoOperacao tipoOperacaoOposto = operacao.getTipo() == TipoOperacao.COMPRA ? TipoOperacao.VENDA : TipoOperacao.COMPRA;
+
+        while (operacao.getQuantidade() > 0) {
+            // Sempre negocia com a oferta de maior prioridade (melhor preço, depois a mais antiga)
+            Operacao oferta = livro.melhorOferta(tipoOperacaoOposto);
+            if (oferta == null) {
+                break;
+            }
+
+            boolean podeNegociar = (tipoOperacaoOposto == TipoOperacao.COMPRA && oferta.getPreco() >= operacao.getPreco()) ||
+                                   (tipoOperacaoOposto == TipoOperacao.VENDA && oferta.getPreco() <= operacao.getPreco());
+            if (!podeNegociar) {
+                // Se a melhor oferta não cruza, nenhuma outra do livro cruza
+                break;
+            }
+
+            int quantidadeNegociada = Math.min(operacao.getQuantidade(), oferta.getQuantidade());
+
+            long precoNegociado = oferta.getPreco();
+
+            operacao.setQuantidade(operacao.getQuantidade() - quantidadeNegociada);
+            // Executa a oferta do livro, retirando-a se for totalmente executada
+            long restanteNivel = livro.executarMelhorOferta(tipoOperacaoOposto, quantidadeNegociada);
+
+            Operacao transacao = Operacao.porCodigos(
+                idsNegocios.getAsLong(),
+                operacao.getTipo(),
+                operacao.getCodigoAtivo(),
+                quantidadeNegociada,
+                precoNegociado,
+                operacao.getCodigoCorretora(),
+                Relogio.agora()
+            );
+
+            ouvinte.aoNegociar(transacao, operacao, oferta);
+            ouvinteLivro.aoAtualizarNivel(operacao.getCodigoAtivo(), tipoOperacaoOposto, precoNegociado, restanteNivel);
+        }
+
+        if (operacao.getQuantidade() > 0) {
+            long totalNivel = livro.adicionar(operacao);
+            ouvinteLivro.aoAtualizarNivel(operacao.getCodigoAtivo(), operacao.getTipo(), operacao.getPreco(), totalNivel);
+        }
+    }
+
+    /**
+     * Abre o leilão do ativo ou o encerra, negociando as ofertas que se cruzam. Eventos
+     * repetidos (abertura de um leilão aberto ou encerramento sem leilão) são ignorados.
+     */
+    private void processarLeilao(LivroDoAtivo livro, Operacao evento) {
+        if (evento.getLeilao() == Operacao.ABERTURA_LEILAO) {
+            livro.setEmLeilao(true);
+        } else if (livro.isEmLeilao()) {
+            livro.setEmLeilao(false);
+            leiloar(livro, evento.getCodigoAtivo());
+        }
+    }
+
+    /**
+     * Negocia ao preço de leilão todas as ofertas que se cruzam, das melhores para as piores e,
+     * em cada nível, das mais antigas para as mais recentes. Ao final, o livro não está cruzado.
+     */
+    private void leiloar(LivroDoAtivo livro, int codigoAtivo) {
+        long preco = livro.precoDeLeilao();
+        if (preco == LivroDoAtivo.SEM_PRECO) {
+            return;
+        }
+
+        // Todos os negócios do leilão ocorrem no mesmo instante
+        long dataHora = Relogio.agora();
+        long precoCompra = LivroDoAtivo.SEM_PRECO; // nível de compra executado em parte, notificado ao final
+        long precoVenda = LivroDoAtivo.SEM_PRECO;
+        long restanteCompra = 0;
+        long restanteVenda = 0;
+        while (true) {
+            Operacao compra = livro.melhorOferta(TipoOperacao.COMPRA);
+            Operacao venda = livro.melhorOferta(TipoOperacao.VENDA);
+            if (compra == null || venda == null || compra.getPreco() < preco || venda.getPreco() > preco) {
+                break;
+            }
+
+            int quantidadeNegociada = Math.min(compra.getQuantidade(), venda.getQuantidade());
+            Operacao agressora = compra.getId() > venda.getId() ? compra : venda;
+            Operacao passiva = agressora == compra ? venda : compra;
+
+            precoCompra = compra.getPreco();
+            precoVenda = venda.getPreco();
+            restanteCompra = livro.executarMelhorOferta(TipoOperacao.COMPRA, quantidadeNegociada);
+            restanteVenda = livro.executarMelhorOferta(TipoOperacao.VENDA, quantidadeNegociada);
+
+            Operacao transacao = Operacao.porCodigos(
+                idsNegocios.getAsLong(),
+                agressora.getTipo(),
+                agressora.getCodigoAtivo(),
+                quantidadeNegociada,
+                preco,
+                agressora.getCodigoCorretora(),
+                dataHora
+            );
+            ouvinte.aoNegociar(transacao, agressora, passiva);
+
+            // Os níveis esgotados são notificados na hora; os executados em parte, só ao final
+            if (restanteCompra == 0) {
+                ouvinteLivro.aoAtualizarNivel(codigoAtivo, TipoOperacao.COMPRA, precoCompra, 0);
+                precoCompra = LivroDoAtivo.SEM_PRECO;
+            }
+            if (restanteVenda == 0) {
+                ouvinteLivro.aoAtualizarNivel(codigoAtivo, TipoOperacao.VENDA, precoVenda, 0);
+                precoVenda = LivroDoAtivo.SEM_PRECO;
+            }
+        }
+
+        if (precoCompra != LivroDoAtivo.SEM_PRECO) {
+            ouvinteLivro.aoAtualizarNivel(codigoAtivo, TipoOperacao.COMPRA, precoCompra, restanteCompra);
+        }
+        if (precoVenda != LivroDoAtivo.SEM_PRECO) {
+            ouvinteLivro.aoAtualizarNivel(codigoAtivo, TipoOperacao.VENDA, precoVenda, restanteVenda);
+        }
+    }
+
+    /**
+     * Altera a quantidade de uma oferta do livro ou a cancela, conforme a alteração recebida.
+     * A redução mantém a prioridade da oferta no seu nível; o aumento a leva para o final da fila.
+     *
+     * @param alteracao A alteração recebida.
+     * @return true se a oferta foi alterada; false se ela não estava no livro ou a alteração é inválida.
+     */
+    public boolean alterarOferta(Operacao alteracao) {
+        LivroDoAtivo livro = livroDeOfertas.livroExistente(alteracao.getCodigoAtivo());
+        if (livro == null) {
+            return false;
+        }
+        long carimbo = livro.iniciarEscrita();
+        try {
+            Operacao oferta = livro.oferta(alteracao.getIdAlterada());
+            if (oferta == null || oferta.getTipo() != alteracao.getTipo() || alteracao.getQuantidade() < 0
+                    || oferta.getCodigoCorretora() != alteracao.getCodigoCorretora()) {
+                return false;
+            }
+
+            long totalNivel = livro.alterarQuantidade(oferta, alteracao.getQuantidade());
+            ouvinteLivro.aoAtualizarNivel(oferta.getCodigoAtivo(), oferta.getTipo(), oferta.getPreco(), totalNivel);
+            return true;
+        } finally {
+            livro.concluirEscrita(carimbo);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package server;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+import services.manager.Operacao;
+import services.metricas.Estagio;
+import services.metricas.MetricasBolsa;
+
+/**
+ * A classe MotorParticionado distribui o casamento de ofertas entre N partições, escolhidas
+ * pelo código do ativo (ver Dicionario). Como os códigos são atribuídos em ordem de chegada,
+ * os ativos se distribuem entre as partições em rodízio. Cada partição tem um anel de entrada e uma única thread escritora,
+ * que é a única a tocar no livro dos seus ativos; por isso o livro não precisa de bloqueio.
+ *
+ * O anel de cada partição é um vetor de pedidos alocados na criação, reaproveitados a cada
+ * volta, com um único produtor e um único consumidor: o produtor preenche o próximo pedido e
+ * avança a sua sequência, e a partição consome os pedidos até ela, sem bloqueios e sem
+ * alocação por operação. A partição só dorme quando o anel fica vazio, e o produtor a acorda
+ * na próxima submissão. As submissões precisam ser serializadas pelo chamador; na
+ * BolsaDeValores, pelo monitor de entrada.
+ *
+ * O que precisa seguir a ordem de chegada de cada ativo além do casamento, como o registro da
+ * ordem no jornal e o seu aceite, é feito pela própria partição (ver EtapasParticao), e não
+ * pela thread que recebe as operações.
+ *
+ * Como todas as operações de um ativo vão para a mesma partição e cada anel é FIFO, a ordem
+ * de chegada das operações de um mesmo ativo é preservada.
+ */
+public class MotorParticionado {
+
+    /**
+     * Identificador de entrega das operações submetidas sem uma entrega a concluir.
+     */
+    public static final long SEM_ENTREGA = -1;
+
+    // Verificações do anel em que a thread apenas cede o processador antes de dormir
+    private static final int ESPERAS_SEM_DORMIR = 64;
+
+    // Espera máxima do produtor entre verificações do anel cheio, em nanossegundos
+    private static final long ESPERA_MAXIMA_PRODUTOR = 100_000L;
+
+    private final Particao[] particoes;
+    private final EtapasParticao etapas;
+    private final MetricasBolsa metricas = MetricasBolsa.getInstance();
+
+    /**
+     * Cria e inicia as partições do motor.
+     *
+     * @param livroDeOfertas   O livro de ofertas compartilhado entre as partições.
+     * @param ouvinte          O ouvinte notificado a cada negócio realizado; deve ser seguro
+     *                         para chamadas concorrentes de partições diferentes.
+     * @param numeroParticoes  A quantidade de partições (threads de casamento).
+     * @param capacidadeFila   A capacidade do anel de entrada de cada partição.
+     */
+    public MotorParticionado(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte,
+                             int numeroParticoes, int capacidadeFila) {
+        this(livroDeOfertas, ouvinte, (ativo, lado, preco, quantidade) -> { }, numeroParticoes, capacidadeFila);
+    }
+
+    /**
+     * Cria e inicia as partições do motor, notificando também as alterações dos níveis de preço.
+     *
+     * @param livroDeOfertas   O livro de ofertas compartilhado entre as partições.
+     * @param ouvinte          O ouvinte notificado a cada negócio realizado; deve ser seguro
+     *                         para chamadas concorrentes de partições diferentes.
+     * @param ouvinteLivro     O ouvinte notificado a cada alteração de um nível de preço; deve
+     *                         ser seguro para chamadas concorrentes de partições diferentes.
+     * @param numeroParticoes  A quantidade de partições (threads de casamento).
+     * @param capacidadeFila   A capacidade do anel de entrada de cada partição.
+     */
+    public MotorParticionado(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte, OuvinteLivro ouvinteLivro,
+                             int numeroParticoes, int capacidadeFila) {
+        this(livroDeOfertas, ouvinte, ouvinteLivro, new EtapasParticao() { }, numeroParticoes, capacidadeFila);
+    }
+
+    /**
+     * Cria e inicia as partições do motor, executando também as etapas informadas em torno do
+     * casamento de cada operação.
+     *
+     * @param livroDeOfertas   O livro de ofertas compartilhado entre as partições.
+     * @param ouvinte          O ouvinte notificado a cada negócio realizado; deve ser seguro
+     *                         para chamadas concorrentes de partições diferentes.
+     * @param ouvinteLivro     O ouvinte notificado a cada alteração de um nível de preço; deve
+     *                         ser seguro para chamadas concorrentes de partições diferentes.
+     * @param etapas           As etapas executadas pela partição antes e depois do casamento.
+     * @param numeroParticoes  A quantidade de partições (threads de casamento).
+     * @param capacidadeFila   A capacidade do anel de entrada de cada partição, arredondada
+     *                         para a próxima potência de 2.
+     */
+    public MotorParticionado(LivroDeOfertas livroDeOfertas, OuvinteNegociacao ouvinte, OuvinteLivro ouvinteLivro,
+                             EtapasParticao etapas, int numeroParticoes, int capacidadeFila) {
+        if (numeroParticoes <= 0) {
+            throw new IllegalArgumentException("Número de partições inválido: " + numeroParticoes);
+        }
+        if (capacidadeFila <= 0 || capacidadeFila > 1 << 30) {
+            throw new IllegalArgumentException("Capacidade da fila inválida: " + capacidadeFila);
+        }
+        this.etapas = etapas;
+        MotorDeCasamento motor = new MotorDeCasamento(livroDeOfertas, ouvinte, ouvinteLivro);
+        int capacidadeAnel = Integer.highestOneBit(capacidadeFila - 1) << 1;
+        particoes = new Particao[numeroParticoes];
+        for (int i = 0; i < numeroParticoes; i++) {
+            particoes[i] = new Particao(i, motor, Math.max(capacidadeAnel, 1));
+            particoes[i].start();
+        }
+    }
+
+    /**
+     * Entrega uma operação à partição responsável pelo seu ativo. Se o anel da partição
+     * estiver cheio, o chamador aguarda, o que propaga a contrapressão até o consumidor.
+     *
+     * @param operacao A operação a ser negociada.
+     * @throws InterruptedException Se a thread for interrompida enquanto aguarda espaço no anel.
+     */
+    public void submeter(Operacao operacao) throws InterruptedException {
+        submeter(operacao, SEM_ENTREGA, Operacao.SEM_ID);
+    }
+
+    /**
+     * Entrega uma operação à partição responsável pelo seu ativo, com os identificadores
+     * repassados às etapas da partição (ver EtapasParticao).
+     *
+     * @param operacao  A operação a ser negociada.
+     * @param idEntrega O identificador da entrega, repassado a aposCasamento, ou SEM_ENTREGA.
+     * @param idBroker  O número informado pelo remetente, repassado a antesDoCasamento, ou Operacao.SEM_ID.
+     * @throws InterruptedException Se a thread for interrompida enquanto aguarda espaço no anel.
+     */
+    public void submeter(Operacao operacao, long idEntrega, long idBroker) throws InterruptedException {
+        particao(operacao).publicar(operacao, idEntrega, idBroker, null);
+    }
+
+    /**
+     * Entrega uma operação à partição responsável pelo seu ativo e aguarda o seu casamento.
+     * Usado para eventos raros, como os de leilão, cujo emissor precisa saber se foram aceitos.
+     *
+     * @param operacao A operação a ser negociada.
+     * @throws IOException          Se a operação for recusada por antesDoCasamento; nesse caso
+     *                              ela não foi negociada.
+     * @throws InterruptedException Se a thread for interrompida enquanto aguarda.
+     */
+    public void processar(Operacao operacao) throws IOException, InterruptedException {
+        CompletableFuture<Void> conclusao = new CompletableFuture<>();
+        particao(operacao).publicar(operacao, SEM_ENTREGA, Operacao.SEM_ID, conclusao);
+        try {
+            conclusao.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Obtém a quantidade de operações aguardando em cada partição.
+     *
+     * @return A quantidade de pedidos no anel de cada partição.
+     */
+    public int[] tamanhoFilas() {
+        int[] tamanhos = new int[particoes.length];
+        for (int i = 0; i < particoes.length; i++) {
+            tamanhos[i] = particoes[i].tamanho();
+        }
+        return tamanhos;
+    }
+
+    /**
+     * Interrompe as threads das partições. Operações ainda no anel são descartadas.
+     */
+    public void encerrar() {
+        for (Particao particao : particoes) {
+            particao.interrupt();
+        }
+    }
+
+    /**
+     * Calcula a partição responsável por um ativo.
+     *
+     * @param codigoAtivo O código do ativo.
+     * @return O índice da partição.
+     */
+    int indiceParticao(int codigoAtivo) {
+        return codigoAtivo % particoes.length;
+    }
+
+    private Particao particao(Operacao operacao) {
+        return particoes[indiceParticao(operacao.getCodigoAtivo())];
+    }
+
+    /**
+     * Uma partição do motor: um anel de entrada e a thread que o consome.
+     */
+    private final class Particao extends Thread {
+
+        private final MotorDeCasamento motor;
+        private final Pedido[] anel;
+        private final int mascara;
+
+        // Pedidos publicados e consumidos desde a criação; cada um é escrito por um só lado
+        private volatile long produzidos;
+        private volatile long consumidos;
+
+        // Indica que a partição vai dormir ou dorme à espera de pedidos
+        private volatile boolean aguardando;
+
+        Particao(int indice, MotorDeCasamento motor, int capacidade) {
+            super("Particao-" + indice);
+            setDaemon(true);
+            this.motor = motor;
+            this.anel = new Pedido[capacidade];
+            this.mascara = capacidade - 1;
+            for (int i = 0; i < capacidade; i++) {
+                anel[i] = new Pedido();
+            }
+        }
+
+        /**
+         * Preenche o próximo pedido do anel, aguardando enquanto ele estiver cheio, e acorda a
+         * partição se ela estiver dormindo. Chamado apenas pelo produtor.
+         */
+        void publicar(Operacao operacao, long idEntrega, long idBroker, CompletableFuture<Void> conclusao)
+                throws InterruptedException {
+            long sequencia = produzidos;
+            for (int espera = 0; sequencia - consumidos >= anel.length; espera++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (espera < ESPERAS_SEM_DORMIR) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(Math.min(ESPERA_MAXIMA_PRODUTOR, 1_000L << Math.min(espera - ESPERAS_SEM_DORMIR, 7)));
+                }
+            }
+            Pedido pedido = anel[(int) sequencia & mascara];
+            pedido.operacao = operacao;
+            pedido.idEntrega = idEntrega;
+            pedido.idBroker = idBroker;
+            pedido.conclusao = conclusao;
+            pedido.entrada = metricas.inicio();
+            produzidos = sequencia + 1;
+            if (aguardando) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        int tamanho() {
+            return (int) (produzidos - consumidos);
+        }
+
+        @Override
+        public void run() {
+            long sequencia = 0;
+            while (!isInterrupted()) {
+                if (sequencia == produzidos) {
+                    aguardarPedidos(sequencia);
+                    continue;
+                }
+                // Copia o pedido e devolve a sua posição ao produtor antes do casamento
+                Pedido pedido = anel[(int) sequencia & mascara];
+                Operacao operacao = pedido.operacao;
+                long idEntrega = pedido.idEntrega;
+                long idBroker = pedido.idBroker;
+                long entrada = pedido.entrada;
+                CompletableFuture<Void> conclusao = pedido.conclusao;
+                pedido.operacao = null;
+                pedido.conclusao = null;
+                consumidos = ++sequencia;
+
+                metricas.registrarDesde(Estagio.FILA, entrada);
+                processar(operacao, idEntrega, idBroker, conclusao);
+            }
+        }
+
+        private void processar(Operacao operacao, long idEntrega, long idBroker, CompletableFuture<Void> conclusao) {
+            try {
+                try {
+                    etapas.antesDoCasamento(operacao, idBroker);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("[" + getName() + "] Operação " + operacao.getId() + " descartada: " + e.getMessage());
+                    if (conclusao != null) {
+                        conclusao.completeExceptionally(e);
+                    }
+                    return;
+                }
+                long inicio = metricas.inicio();
+                metricas.contarOrdem(operacao.getCodigoAtivo());
+                try {
+                    motor.processarTransacao(operacao);
+                    metricas.registrarDesde(Estagio.CASAMENTO, inicio);
+                } catch (RuntimeException e) {
+                    System.err.println("[" + getName() + "] Erro ao processar operação: " + e.getMessage());
+                }
+                if (conclusao != null) {
+                    conclusao.complete(null);
+                }
+            } finally {
+                try {
+                    etapas.aposCasamento(operacao, idEntrega);
+                } catch (RuntimeException e) {
+                    System.err.println("[" + getName() + "] Erro ao concluir operação: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Aguarda um novo pedido: cede o processador por algumas verificações e depois dorme até
+         * ser acordada pelo produtor. O produtor avança a sua sequência antes de ler aguardando,
+         * e a partição marca aguardando antes de reler a sequência, de modo que uma submissão
+         * nunca deixa a partição dormindo.
+         */
+        private void aguardarPedidos(long sequencia) {
+            for (int espera = 0; espera < ESPERAS_SEM_DORMIR; espera++) {
+                if (produzidos != sequencia) {
+                    return;
+                }
+                Thread.yield();
+            }
+            aguardando = true;
+            if (produzidos == sequencia && !isInterrupted()) {
+                LockSupport.park(this);
+            }
+            aguardando = false;
+        }
+    }
+
+    /**
+     * Uma posição do anel de uma partição, reaproveitada a cada volta.
+     */
+    private static final class Pedido {
+        Operacao operacao;
+        long idEntrega;
+        long idBroker;
+        long entrada; // instante de entrada no anel, para as métricas
+        CompletableFuture<Void> conclusao; // apenas para quem aguarda o casamento
+    }
+}
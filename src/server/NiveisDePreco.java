@@ -0,0 +1,205 @@
+package server;
+
+import java.util.Arrays;
+
+/**
+ * A classe NiveisDePreco é um mapa ordenado de preço (long, em ticks) para NivelDePreco,
+ * especializado para um lado do livro de ofertas.
+ *
+ * As chaves ficam em um vetor primitivo ordenado, sem objetos por preço. O melhor nível fica
+ * sempre na última posição, de forma que consultar e remover o melhor nível custam O(1), a
+ * busca de um nível custa O(log n) e a inserção desloca apenas os níveis melhores que o novo,
+ * que normalmente são poucos porque as ofertas chegam perto do topo do livro.
+ *
+ * Um nível que se esvazia fora do topo (por exemplo, ao cancelar a última oferta de um preço
+ * pior) continua na sua posição, vazio, e é retirado depois: quando chega ao topo, ou quando
+ * os níveis vazios passam de metade das posições e o vetor é compactado. Assim a remoção de
+ * um nível custa O(1) amortizado, independentemente da profundidade do livro. Quem percorre
+ * as posições (ver nivel e posicoes) deve ignorar os níveis vazios; o melhor nível nunca está
+ * vazio.
+ *
+ * Os níveis retirados são guardados para reaproveitamento, evitando alocações no caminho de
+ * casamento de ofertas. A classe não é sincronizada.
+ */
+class NiveisDePreco {
+
+    private static final int CAPACIDADE_INICIAL = 16;
+    private static final int MAXIMO_NIVEIS_LIVRES = 64;
+
+    // true para o lado de compra (melhor = maior preço), false para o lado de venda (melhor = menor preço)
+    private final boolean compra;
+
+    // Chaves em ordem crescente; a chave é o preço na compra e o preço negado na venda
+    private long[] chaves;
+    private NivelDePreco[] niveis;
+    private int tamanho; // posições ocupadas, inclusive por níveis vazios
+    private int vazios; // níveis vazios ainda não retirados
+
+    // Níveis vazios disponíveis para reaproveitamento
+    private final NivelDePreco[] livres;
+    private int quantidadeLivres;
+
+    /**
+     * Cria um lado do livro vazio.
+     *
+     * @param compra true para o lado de compra, false para o lado de venda.
+     */
+    NiveisDePreco(boolean compra) {
+        this.compra = compra;
+        this.chaves = new long[CAPACIDADE_INICIAL];
+        this.niveis = new NivelDePreco[CAPACIDADE_INICIAL];
+        this.livres = new NivelDePreco[MAXIMO_NIVEIS_LIVRES];
+    }
+
+    /**
+     * Obtém o nível de um preço.
+     *
+     * @param preco O preço, em ticks.
+     * @return O nível do preço, possivelmente vazio, ou null se não existir.
+     */
+    NivelDePreco obter(long preco) {
+        int indice = Arrays.binarySearch(chaves, 0, tamanho, chave(preco));
+        return indice >= 0 ? niveis[indice] : null;
+    }
+
+    /**
+     * Obtém o nível de um preço, criando-o se não existir.
+     *
+     * @param preco O preço, em ticks.
+     * @return O nível do preço.
+     */
+    NivelDePreco obterOuCriar(long preco) {
+        long chave = chave(preco);
+
+        // Caso mais comum: o preço é o melhor nível ou melhora o livro
+        if (tamanho > 0 && chaves[tamanho - 1] == chave) {
+            return niveis[tamanho - 1];
+        }
+        int indice = tamanho == 0 || chaves[tamanho - 1] < chave
+                ? -(tamanho + 1)
+                : Arrays.binarySearch(chaves, 0, tamanho, chave);
+        if (indice >= 0) {
+            // Um nível vazio ainda não retirado volta a ser usado
+            if (niveis[indice].isVazio()) {
+                vazios--;
+            }
+            return niveis[indice];
+        }
+
+        int posicao = -(indice + 1);
+        if (tamanho == chaves.length) {
+            chaves = Arrays.copyOf(chaves, tamanho * 2);
+            niveis = Arrays.copyOf(niveis, tamanho * 2);
+        }
+        System.arraycopy(chaves, posicao, chaves, posicao + 1, tamanho - posicao);
+        System.arraycopy(niveis, posicao, niveis, posicao + 1, tamanho - posicao);
+
+        NivelDePreco nivel;
+        if (quantidadeLivres > 0) {
+            nivel = livres[--quantidadeLivres];
+            livres[quantidadeLivres] = null;
+        } else {
+            nivel = new NivelDePreco();
+        }
+        nivel.setPreco(preco);
+        chaves[posicao] = chave;
+        niveis[posicao] = nivel;
+        tamanho++;
+        return nivel;
+    }
+
+    /**
+     * Retira um nível que acabou de ficar vazio. O melhor nível sai imediatamente, junto com
+     * os níveis vazios que ficarem no topo; os demais ficam na sua posição até chegarem ao topo
+     * ou até a próxima compactação. Custa O(1) amortizado.
+     *
+     * @param nivel Um nível deste lado, vazio.
+     */
+    void remover(NivelDePreco nivel) {
+        if (tamanho > 0 && niveis[tamanho - 1] == nivel) {
+            liberar(--tamanho);
+            while (tamanho > 0 && niveis[tamanho - 1].isVazio()) {
+                liberar(--tamanho);
+                vazios--;
+            }
+        } else if (++vazios > tamanho / 2) {
+            compactar();
+        }
+    }
+
+    /**
+     * Retira todos os níveis vazios, em O(n).
+     */
+    private void compactar() {
+        int destino = 0;
+        for (int i = 0; i < tamanho; i++) {
+            if (niveis[i].isVazio()) {
+                liberar(i);
+            } else {
+                chaves[destino] = chaves[i];
+                niveis[destino++] = niveis[i];
+            }
+        }
+        Arrays.fill(niveis, destino, tamanho, null);
+        tamanho = destino;
+        vazios = 0;
+    }
+
+    private void liberar(int indice) {
+        if (quantidadeLivres < livres.length) {
+            livres[quantidadeLivres++] = niveis[indice];
+        }
+        niveis[indice] = null;
+    }
+
+    /**
+     * Obtém o melhor nível do lado: o maior preço na compra, o menor na venda.
+     *
+     * @return O melhor nível, ou null se o lado estiver vazio.
+     */
+    NivelDePreco melhor() {
+        return tamanho == 0 ? null : niveis[tamanho - 1];
+    }
+
+    /**
+     * Obtém um nível pela sua posição a partir do melhor preço.
+     *
+     * @param posicao A posição do nível, sendo 0 o melhor nível, menor que posicoes().
+     * @return O nível na posição informada, possivelmente vazio (exceto na posição 0).
+     */
+    NivelDePreco nivel(int posicao) {
+        return niveis[tamanho - 1 - posicao];
+    }
+
+    /**
+     * Obtém a quantidade de posições do lado, inclusive as de níveis vazios ainda não
+     * retirados. É o limite para percorrer os níveis com nivel(posicao).
+     *
+     * @return A quantidade de posições.
+     */
+    int posicoes() {
+        return tamanho;
+    }
+
+    /**
+     * Obtém a quantidade de níveis de preço com ofertas do lado.
+     *
+     * @return A quantidade de níveis.
+     */
+    int tamanho() {
+        return tamanho - vazios;
+    }
+
+    /**
+     * Indica se o lado não possui níveis.
+     *
+     * @return true se o lado estiver vazio.
+     */
+    boolean isVazio() {
+        return tamanho == 0;
+    }
+
+    private long chave(long preco) {
+        return compra ? preco : -preco;
+    }
+}
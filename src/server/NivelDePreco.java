@@ -0,0 +1,122 @@
+package server;
+
+/**
+ * A classe NivelDePreco representa um nível de preço de um lado do livro de um ativo.
+ * As ofertas do nível são mantidas em ordem de chegada (FIFO), em uma lista duplamente
+ * encadeada de OfertaNoLivro, junto com a quantidade total do nível, mantida pelo
+ * LivroDoAtivo a cada alteração. Acrescentar, retirar do início e retirar uma oferta
+ * qualquer da fila custam O(1).
+ */
+class NivelDePreco {
+
+    private long preco;
+    private long quantidade;
+    private OfertaNoLivro primeira;
+    private OfertaNoLivro ultima;
+    private int tamanho;
+
+    /**
+     * Obtém o preço do nível, em ticks.
+     *
+     * @return O preço do nível.
+     */
+    long getPreco() {
+        return preco;
+    }
+
+    /**
+     * Define o preço do nível. Usado ao reaproveitar um nível vazio.
+     *
+     * @param preco O preço do nível, em ticks.
+     */
+    void setPreco(long preco) {
+        this.preco = preco;
+    }
+
+    /**
+     * Obtém a quantidade total das ofertas do nível.
+     *
+     * @return A quantidade total do nível.
+     */
+    long getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * Soma uma variação à quantidade total do nível.
+     *
+     * @param variacao A variação, negativa quando ofertas são executadas ou removidas.
+     * @return A quantidade total do nível após a variação.
+     */
+    long somarQuantidade(long variacao) {
+        quantidade += variacao;
+        return quantidade;
+    }
+
+    /**
+     * Obtém a oferta mais antiga do nível. As demais são percorridas por OfertaNoLivro.proxima.
+     *
+     * @return A primeira oferta da fila, ou null se o nível estiver vazio.
+     */
+    OfertaNoLivro primeira() {
+        return primeira;
+    }
+
+    /**
+     * Acrescenta uma oferta ao final da fila do nível.
+     *
+     * @param oferta A oferta, fora de qualquer nível.
+     */
+    void adicionar(OfertaNoLivro oferta) {
+        oferta.nivel = this;
+        oferta.anterior = ultima;
+        oferta.proxima = null;
+        if (ultima == null) {
+            primeira = oferta;
+        } else {
+            ultima.proxima = oferta;
+        }
+        ultima = oferta;
+        tamanho++;
+    }
+
+    /**
+     * Retira uma oferta da fila do nível, em qualquer posição. A quantidade total não é alterada.
+     *
+     * @param oferta Uma oferta deste nível.
+     */
+    void remover(OfertaNoLivro oferta) {
+        if (oferta.anterior == null) {
+            primeira = oferta.proxima;
+        } else {
+            oferta.anterior.proxima = oferta.proxima;
+        }
+        if (oferta.proxima == null) {
+            ultima = oferta.anterior;
+        } else {
+            oferta.proxima.anterior = oferta.anterior;
+        }
+        oferta.nivel = null;
+        oferta.anterior = null;
+        oferta.proxima = null;
+        tamanho--;
+    }
+
+    /**
+     * Obtém a quantidade de ofertas do nível.
+     *
+     * @return A quantidade de ofertas na fila.
+     */
+    int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Indica se o nível não possui ofertas.
+     *
+     * @return true se o nível estiver vazio.
+     */
+    boolean isVazio() {
+        return primeira == null;
+    }
+}
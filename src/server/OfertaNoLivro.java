@@ -0,0 +1,27 @@
+package server;
+
+import services.manager.Operacao;
+
+/**
+ * A classe OfertaNoLivro é o elemento da fila de um nível de preço: a oferta, o nível em que
+ * ela está e as ofertas vizinhas na ordem de chegada. Com os vizinhos no próprio elemento, uma
+ * oferta localizada pelo IndiceDeOfertas sai da fila em O(1), em qualquer posição.
+ */
+final class OfertaNoLivro {
+
+    final Operacao operacao;
+
+    // Nível atual e vizinhos na fila, mantidos pelo NivelDePreco
+    NivelDePreco nivel;
+    OfertaNoLivro anterior;
+    OfertaNoLivro proxima;
+
+    /**
+     * Cria o elemento de uma oferta, ainda fora de qualquer nível.
+     *
+     * @param operacao A oferta.
+     */
+    OfertaNoLivro(Operacao operacao) {
+        this.operacao = operacao;
+    }
+}
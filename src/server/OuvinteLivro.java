@@ -0,0 +1,21 @@
+package server;
+
+import services.manager.TipoOperacao;
+
+/**
+ * A interface OuvinteLivro é notificada pelo MotorDeCasamento a cada alteração de um nível de
+ * preço do livro de um ativo. As notificações ocorrem na thread que executa o casamento de
+ * ofertas, que é a única escritora do livro do ativo.
+ */
+@FunctionalInterface
+public interface OuvinteLivro {
+    /**
+     * Chamado quando a quantidade total de um nível de preço muda.
+     *
+     * @param codigoAtivo O código do ativo do livro no Dicionario de ativos.
+     * @param lado        O lado do livro (COMPRA ou VENDA).
+     * @param preco       O preço do nível, em ticks.
+     * @param quantidade  A quantidade total do nível após a alteração (0 se o nível saiu do livro).
+     */
+    void aoAtualizarNivel(int codigoAtivo, TipoOperacao lado, long preco, long quantidade);
+}
@@ -0,0 +1,29 @@
+package server;
+
+import services.manager.Operacao;
+
+/**
+ * A interface OuvinteNegociacao é notificada pelo MotorDeCasamento a cada negócio realizado.
+ * As notificações ocorrem na thread que executa o casamento de ofertas.
+ */
+@FunctionalInterface
+public interface OuvinteNegociacao {
+    /**
+     * Chamado quando uma oferta é negociada, total ou parcialmente.
+     *
+     * @param transacao A operação que registra o negócio realizado.
+     */
+    void aoNegociar(Operacao transacao);
+
+    /**
+     * Chamado quando uma oferta é negociada, total ou parcialmente, com as duas ordens do negócio.
+     * Por padrão, repassa apenas a transação para aoNegociar(Operacao).
+     *
+     * @param transacao A operação que registra o negócio realizado.
+     * @param agressora A ordem que chegou e negociou com o livro, com a quantidade que ainda resta.
+     * @param passiva   A oferta do livro que foi negociada, com a quantidade que ainda resta.
+     */
+    default void aoNegociar(Operacao transacao, Operacao agressora, Operacao passiva) {
+        aoNegociar(transacao);
+    }
+}
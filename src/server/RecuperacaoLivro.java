@@ -0,0 +1,208 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import services.manager.Operacao;
+
+/**
+ * A classe RecuperacaoLivro restaura o livro de ofertas na inicialização da Bolsa de Valores e
+ * grava periodicamente snapshots do livro.
+ *
+ * A restauração lê o snapshot mais recente e reaplica, pelo MotorDeCasamento, as ordens do
+ * jornal de ordens posteriores a ele. Os negócios gerados pela reaplicação já estão no
+ * histórico e não são registrados de novo. O tempo da restauração é escrito no console.
+ *
+ * Os snapshots não bloqueiam o casamento: uma thread própria mantém um livro sombra,
+ * atualizado pela reaplicação das ordens novas do jornal, e grava esse livro, e não o livro em
+ * uso. O snapshot reflete exatamente as ordens do jornal até a sua sequência, e apenas os
+ * SNAPSHOTS_MANTIDOS mais recentes são mantidos no diretório.
+ */
+public class RecuperacaoLivro {
+
+    /**
+     * Fonte das ordens recebidas, em ordem de chegada, a partir de uma sequência.
+     */
+    @FunctionalInterface
+    public interface JornalDeOrdens {
+        /**
+         * Percorre as ordens a partir de uma sequência.
+         *
+         * @param primeira   A sequência da primeira ordem entregue (0 para todas).
+         * @param consumidor O consumidor que recebe cada ordem.
+         * @return A quantidade de ordens entregues.
+         * @throws IOException Em caso de erro ao ler as ordens.
+         */
+        long percorrer(long primeira, Consumer<Operacao> consumidor) throws IOException;
+    }
+
+    private static final String PREFIXO_SNAPSHOT = "livro-";
+    private static final String SUFIXO_SNAPSHOT = ".snp";
+
+    // Quantidade de snapshots mantidos no diretório; o anterior serve caso o mais recente esteja corrompido
+    private static final int SNAPSHOTS_MANTIDOS = 2;
+
+    // Os negócios reaplicados são descartados, sem notificações e sem consumir IDs
+    private static final OuvinteLivro SEM_OUVINTE_LIVRO = (codigoAtivo, lado, preco, quantidade) -> { };
+    private static final LongSupplier SEM_IDS = () -> Operacao.SEM_ID;
+
+    private final Path diretorio;
+    private final JornalDeOrdens jornal;
+    private ScheduledExecutorService agendador;
+
+    // Livro sombra e a sequência refletida nele, usados apenas pela thread dos snapshots
+    private LivroDeOfertas sombra;
+    private MotorDeCasamento motorSombra;
+    private long sequenciaSombra;
+
+    /**
+     * Cria a recuperação do livro.
+     *
+     * @param diretorio O diretório dos snapshots.
+     * @param jornal    O jornal das ordens recebidas.
+     * @throws IOException Em caso de erro ao criar o diretório.
+     */
+    public RecuperacaoLivro(Path diretorio, JornalDeOrdens jornal) throws IOException {
+        this.diretorio = diretorio;
+        this.jornal = jornal;
+        Files.createDirectories(diretorio);
+    }
+
+    /**
+     * Restaura o livro a partir do snapshot mais recente e do jornal de ordens e informa ao
+     * ouvinte os níveis de preço restaurados. Deve ser chamado antes do recebimento de operações.
+     *
+     * @param livro        O livro de ofertas em uso, que passa a ter o conteúdo restaurado.
+     * @param ouvinteLivro O ouvinte dos níveis de preço, por exemplo o publicador de dados de mercado.
+     * @throws IOException Em caso de erro ao ler o jornal de ordens.
+     */
+    public void restaurar(LivroDeOfertas livro, OuvinteLivro ouvinteLivro) throws IOException {
+        long inicio = System.nanoTime();
+        LivroDeOfertas restaurado = new LivroDeOfertas();
+        long sequencia = carregarUltimoSnapshot(restaurado);
+        long ofertasSnapshot = restaurado.quantidadeOfertas();
+        long carregado = System.nanoTime();
+
+        MotorDeCasamento motor = new MotorDeCasamento(restaurado, transacao -> { }, SEM_OUVINTE_LIVRO, SEM_IDS);
+        long reaplicadas = jornal.percorrer(sequencia, motor::processarTransacao);
+        long fim = System.nanoTime();
+
+        livro.substituir(restaurado);
+        livro.percorrerNiveis(ouvinteLivro);
+        System.out.println(String.format("[RecuperacaoLivro] Livro restaurado em %d ms: %d ofertas do snapshot (sequência %d) em %d ms"
+                        + " e %d ordens do jornal em %d ms; %d ofertas no livro",
+                TimeUnit.NANOSECONDS.toMillis(fim - inicio), ofertasSnapshot, sequencia,
+                TimeUnit.NANOSECONDS.toMillis(carregado - inicio), reaplicadas,
+                TimeUnit.NANOSECONDS.toMillis(fim - carregado), livro.quantidadeOfertas()));
+    }
+
+    /**
+     * Inicia a gravação periódica dos snapshots. Não faz nada se já tiver sido chamado.
+     *
+     * @param intervaloSegundos O intervalo entre snapshots, em segundos.
+     */
+    public synchronized void iniciarSnapshots(long intervaloSegundos) {
+        if (agendador != null) {
+            return;
+        }
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "RecuperacaoLivro-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        agendador.scheduleWithFixedDelay(this::gravarSnapshot, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Interrompe a gravação periódica dos snapshots.
+     */
+    public synchronized void encerrar() {
+        if (agendador != null) {
+            agendador.shutdownNow();
+            agendador = null;
+        }
+    }
+
+    /**
+     * Atualiza o livro sombra com as ordens novas do jornal e grava um snapshot, se houver
+     * ordens novas. Executado na thread dos snapshots.
+     */
+    private void gravarSnapshot() {
+        try {
+            if (sombra == null) {
+                sombra = new LivroDeOfertas();
+                sequenciaSombra = carregarUltimoSnapshot(sombra);
+                motorSombra = new MotorDeCasamento(sombra, transacao -> { }, SEM_OUVINTE_LIVRO, SEM_IDS);
+            }
+            long novas = jornal.percorrer(sequenciaSombra, motorSombra::processarTransacao);
+            if (novas == 0) {
+                return;
+            }
+            sequenciaSombra += novas;
+
+            long inicio = System.nanoTime();
+            long ofertas = SnapshotLivro.gravar(arquivoSnapshot(sequenciaSombra), sombra, sequenciaSombra);
+            apagarSnapshotsAntigos();
+            System.out.println("[RecuperacaoLivro] Snapshot de " + ofertas + " ofertas (sequência " + sequenciaSombra
+                    + ") gravado em " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[RecuperacaoLivro] Erro ao gravar o snapshot do livro: " + e.getMessage());
+            // O livro sombra pode ter ficado incompleto; é reconstruído na próxima execução
+            sombra = null;
+        }
+    }
+
+    /**
+     * Carrega no livro vazio informado o snapshot válido mais recente.
+     *
+     * @return A sequência do snapshot carregado, ou 0 se não houver snapshot válido.
+     */
+    private long carregarUltimoSnapshot(LivroDeOfertas livro) throws IOException {
+        List<Path> snapshots = listarSnapshots();
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            try {
+                return SnapshotLivro.ler(snapshots.get(i), livro);
+            } catch (IOException e) {
+                System.err.println("[RecuperacaoLivro] Snapshot descartado: " + e.getMessage());
+                livro.limpar();
+            }
+        }
+        return 0;
+    }
+
+    private void apagarSnapshotsAntigos() throws IOException {
+        List<Path> snapshots = listarSnapshots();
+        for (int i = 0; i < snapshots.size() - SNAPSHOTS_MANTIDOS; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * Lista os snapshots do diretório em ordem crescente de sequência.
+     */
+    private List<Path> listarSnapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, PREFIXO_SNAPSHOT + "*" + SUFIXO_SNAPSHOT)) {
+            for (Path arquivo : arquivos) {
+                snapshots.add(arquivo);
+            }
+        }
+        // A sequência tem largura fixa no nome, de modo que a ordem dos nomes é a das sequências
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private Path arquivoSnapshot(long sequencia) {
+        return diretorio.resolve(String.format("%s%020d%s", PREFIXO_SNAPSHOT, sequencia, SUFIXO_SNAPSHOT));
+    }
+}
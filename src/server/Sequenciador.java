@@ -0,0 +1,73 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A classe Sequenciador atribui os IDs das ordens recebidas e dos negócios realizados pela
+ * Bolsa de Valores: números sequenciais, crescentes e sem repetição, começando em 1.
+ *
+ * Os IDs das ordens são atribuídos pela thread que recebe as operações, na mesma ordem em que
+ * elas são gravadas no jornal de ordens, que guarda o ID de cada ordem. Os IDs dos negócios são
+ * atribuídos pelo MotorDeCasamento; no modo particionado, as partições compartilham o contador,
+ * que é incrementado sem bloqueio.
+ *
+ * Na inicialização, a BolsaDeValores posiciona os contadores após os maiores IDs já registrados
+ * no histórico, para que os IDs continuem de onde pararam.
+ *
+ * A classe segue o padrão Singleton.
+ */
+public class Sequenciador {
+
+    private static Sequenciador instance;
+
+    private final AtomicLong ordens = new AtomicLong();
+    private final AtomicLong negocios = new AtomicLong();
+
+    /**
+     * Construtor privado para evitar a criação direta de instâncias.
+     */
+    private Sequenciador() {
+    }
+
+    /**
+     * Método para obter a instância única da classe Sequenciador.
+     *
+     * @return A instância única de Sequenciador.
+     */
+    public static synchronized Sequenciador getInstance() {
+        if (instance == null) {
+            instance = new Sequenciador();
+        }
+        return instance;
+    }
+
+    /**
+     * Obtém o ID da próxima ordem recebida.
+     *
+     * @return O ID da ordem.
+     */
+    public long proximaOrdem() {
+        return ordens.incrementAndGet();
+    }
+
+    /**
+     * Obtém o ID do próximo negócio realizado.
+     *
+     * @return O ID do negócio.
+     */
+    public long proximoNegocio() {
+        return negocios.incrementAndGet();
+    }
+
+    /**
+     * Posiciona os contadores após as ordens e os negócios já registrados. Os contadores
+     * nunca retrocedem.
+     *
+     * @param ordensRegistradas   O maior ID de ordem já registrado.
+     * @param negociosRegistrados O maior ID de negócio já registrado.
+     */
+    public void continuarApos(long ordensRegistradas, long negociosRegistrados) {
+        ordens.accumulateAndGet(ordensRegistradas, Math::max);
+        negocios.accumulateAndGet(negociosRegistrados, Math::max);
+    }
+}
@@ -0,0 +1,317 @@
+package server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe SnapshotLivro grava e lê o estado completo de um LivroDeOfertas em um arquivo
+ * binário compacto: cada oferta ocupa 24 bytes, pois os nomes das corretoras são gravados uma
+ * única vez, em uma tabela no início do arquivo.
+ *
+ * Layout (big-endian):
+ *
+ * <pre>
+ * mágico (int) | versão (int) | sequência (long)
+ * quantidade de corretoras (int) | nome de cada corretora
+ * quantidade de ativos (int), e para cada ativo:
+ *   nome | em leilão (byte, 1 = sim), e para cada lado (compra, depois venda):
+ *     quantidade de níveis (int), e para cada nível, do pior para o melhor preço:
+ *       preço (long, em ticks) | quantidade de ofertas (int), e para cada oferta, por ordem de chegada:
+ *         ID (long) | quantidade (int) | data e hora (long, nanossegundos desde a época) | corretora (int, posição na tabela)
+ * CRC32 de todos os bytes anteriores (int)
+ * </pre>
+ *
+ * Os nomes são gravados como o tamanho em bytes (short) seguido dos bytes em UTF-8. A leitura e
+ * a gravação usam um buffer próprio sobre o canal do arquivo, sem fluxos sincronizados.
+ *
+ * Os níveis são gravados do pior para o melhor preço para que, na leitura, cada nível seja
+ * acrescentado no topo do lado em O(1). A sequência é a quantidade de ordens do jornal de
+ * ordens já refletidas no livro; a recuperação reaplica as ordens a partir dela. Um ativo
+ * gravado em leilão pode ter o livro cruzado. Os snapshots da versão 2, sem a marca de leilão,
+ * continuam sendo lidos.
+ *
+ * A gravação é atômica (arquivo temporário forçado para o disco e depois renomeado). O livro não pode ter
+ * escritores durante a gravação nem durante a leitura.
+ */
+final class SnapshotLivro {
+
+    private static final int MAGICO = 0x4C56534E; // "LVSN"
+    private static final int VERSAO = 3;
+    private static final int VERSAO_SEM_LEILAO = 2;
+
+    // Tamanho de uma oferta no arquivo, em bytes
+    private static final int TAMANHO_OFERTA = 24;
+
+    private static final int TAMANHO_BUFFER = 1 << 16;
+
+    private SnapshotLivro() {
+    }
+
+    /**
+     * Grava o livro de ofertas em um arquivo de snapshot.
+     *
+     * @param arquivo   O arquivo do snapshot.
+     * @param livro     O livro de ofertas, sem escritores durante a gravação.
+     * @param sequencia A quantidade de ordens do jornal refletidas no livro.
+     * @return A quantidade de ofertas gravadas.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    static long gravar(Path arquivo, LivroDeOfertas livro, long sequencia) throws IOException {
+        Map<String, LivroDoAtivo> livros = livro.livros();
+
+        // Tabela das corretoras, para que cada oferta guarde apenas a posição do nome
+        Map<String, Integer> corretoras = new HashMap<>();
+        List<String> nomes = new ArrayList<>();
+        for (LivroDoAtivo livroDoAtivo : livros.values()) {
+            for (TipoOperacao lado : TipoOperacao.values()) {
+                NiveisDePreco niveis = livroDoAtivo.lado(lado);
+                for (int i = 0; i < niveis.posicoes(); i++) {
+                    for (OfertaNoLivro oferta = niveis.nivel(i).primeira(); oferta != null; oferta = oferta.proxima) {
+                        String corretora = oferta.operacao.getCorretora();
+                        if (!corretoras.containsKey(corretora)) {
+                            corretoras.put(corretora, nomes.size());
+                            nomes.add(corretora);
+                        }
+                    }
+                }
+            }
+        }
+
+        long ofertas = 0;
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (Escritor out = new Escritor(FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            out.garantir(16).putInt(MAGICO).putInt(VERSAO).putLong(sequencia);
+            out.garantir(4).putInt(nomes.size());
+            for (String nome : nomes) {
+                out.escreverNome(nome);
+            }
+
+            out.garantir(4).putInt(livros.size());
+            for (Map.Entry<String, LivroDoAtivo> entrada : livros.entrySet()) {
+                out.escreverNome(entrada.getKey());
+                out.garantir(1).put((byte) (entrada.getValue().isEmLeilao() ? 1 : 0));
+                for (TipoOperacao lado : TipoOperacao.values()) {
+                    NiveisDePreco niveis = entrada.getValue().lado(lado);
+                    out.garantir(4).putInt(niveis.tamanho());
+                    for (int i = niveis.posicoes() - 1; i >= 0; i--) {
+                        NivelDePreco nivel = niveis.nivel(i);
+                        if (nivel.isVazio()) {
+                            continue;
+                        }
+                        out.garantir(12).putLong(nivel.getPreco()).putInt(nivel.tamanho());
+                        for (OfertaNoLivro noLivro = nivel.primeira(); noLivro != null; noLivro = noLivro.proxima) {
+                            Operacao oferta = noLivro.operacao;
+                            out.garantir(TAMANHO_OFERTA)
+                                    .putLong(oferta.getId())
+                                    .putInt(oferta.getQuantidade())
+                                    .putLong(oferta.getDataHora())
+                                    .putInt(corretoras.get(oferta.getCorretora()));
+                        }
+                        ofertas += nivel.tamanho();
+                    }
+                }
+            }
+            out.concluir();
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return ofertas;
+    }
+
+    /**
+     * Lê um arquivo de snapshot, acrescentando as suas ofertas a um livro vazio. A soma de
+     * verificação é conferida antes; se ainda assim a leitura falhar, o livro fica com parte das
+     * ofertas e deve ser descartado.
+     *
+     * @param arquivo O arquivo do snapshot.
+     * @param livro   O livro de ofertas, vazio e sem escritores durante a leitura.
+     * @return A sequência do snapshot: a quantidade de ordens do jornal refletidas no livro.
+     * @throws IOException Em caso de erro de leitura ou de arquivo inválido.
+     */
+    static long ler(Path arquivo, LivroDeOfertas livro) throws IOException {
+        verificar(arquivo);
+        try (Leitor in = new Leitor(FileChannel.open(arquivo, StandardOpenOption.READ))) {
+            ByteBuffer cabecalho = in.garantir(16);
+            int versao = cabecalho.getInt() == MAGICO ? cabecalho.getInt() : -1;
+            if (versao != VERSAO && versao != VERSAO_SEM_LEILAO) {
+                throw new IOException("Snapshot inválido: " + arquivo);
+            }
+            long sequencia = cabecalho.getLong();
+            String[] corretoras = new String[in.garantir(4).getInt()];
+            for (int i = 0; i < corretoras.length; i++) {
+                corretoras[i] = in.lerNome();
+            }
+
+            int ativos = in.garantir(4).getInt();
+            for (int a = 0; a < ativos; a++) {
+                String ativo = in.lerNome();
+                LivroDoAtivo livroDoAtivo = livro.livroDoAtivo(ativo);
+                if (versao != VERSAO_SEM_LEILAO) {
+                    livroDoAtivo.setEmLeilao(in.garantir(1).get() == 1);
+                }
+                for (TipoOperacao lado : TipoOperacao.values()) {
+                    int niveis = in.garantir(4).getInt();
+                    for (int n = 0; n < niveis; n++) {
+                        ByteBuffer nivel = in.garantir(12);
+                        long preco = nivel.getLong();
+                        int ofertas = nivel.getInt();
+                        for (int o = 0; o < ofertas; o++) {
+                            ByteBuffer oferta = in.garantir(TAMANHO_OFERTA);
+                            long id = oferta.getLong();
+                            int quantidade = oferta.getInt();
+                            long dataHora = oferta.getLong();
+                            livroDoAtivo.adicionar(new Operacao(id, lado, ativo, quantidade, preco,
+                                    corretoras[oferta.getInt()], dataHora));
+                        }
+                    }
+                }
+            }
+            return sequencia;
+        }
+    }
+
+    /**
+     * Confere a soma de verificação do arquivo antes da leitura das ofertas.
+     */
+    private static void verificar(Path arquivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            long tamanho = canal.size() - 4;
+            if (tamanho < 0) {
+                throw new IOException("Snapshot incompleto: " + arquivo);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer bloco = ByteBuffer.allocate(TAMANHO_BUFFER);
+            for (long restante = tamanho; restante > 0; ) {
+                bloco.clear().limit((int) Math.min(bloco.capacity(), restante));
+                if (canal.read(bloco) < 0) {
+                    throw new IOException("Snapshot incompleto: " + arquivo);
+                }
+                bloco.flip();
+                restante -= bloco.remaining();
+                crc.update(bloco);
+            }
+            bloco.clear().limit(4);
+            while (bloco.hasRemaining() && canal.read(bloco) >= 0) {
+                // lê a soma gravada ao final do arquivo
+            }
+            if (bloco.hasRemaining() || bloco.getInt(0) != (int) crc.getValue()) {
+                throw new IOException("Soma de verificação do snapshot divergente: " + arquivo);
+            }
+        }
+    }
+
+    /**
+     * Escrita em blocos de um arquivo de snapshot, calculando a soma de verificação de cada
+     * bloco antes de gravá-lo.
+     */
+    private static class Escritor implements Closeable {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+        private final CRC32 crc = new CRC32();
+
+        Escritor(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        /**
+         * Garante espaço no buffer para os bytes informados, gravando o que já foi escrito.
+         */
+        ByteBuffer garantir(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                gravarBuffer();
+            }
+            return buffer;
+        }
+
+        void escreverNome(String nome) throws IOException {
+            byte[] bytes = nome.getBytes(StandardCharsets.UTF_8);
+            garantir(2 + bytes.length).putShort((short) bytes.length).put(bytes);
+        }
+
+        /**
+         * Grava o restante do buffer e a soma de verificação e força o arquivo para o disco.
+         */
+        void concluir() throws IOException {
+            gravarBuffer();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+            canal.force(false);
+        }
+
+        private void gravarBuffer() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    /**
+     * Leitura em blocos de um arquivo de snapshot.
+     */
+    private static class Leitor implements Closeable {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+
+        Leitor(FileChannel canal) {
+            this.canal = canal;
+            buffer.limit(0);
+        }
+
+        /**
+         * Garante que o buffer tenha os bytes informados disponíveis para leitura.
+         */
+        ByteBuffer garantir(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                buffer.compact();
+                while (buffer.position() < bytes) {
+                    if (canal.read(buffer) < 0) {
+                        throw new EOFException("Snapshot incompleto");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        String lerNome() throws IOException {
+            int tamanho = garantir(2).getShort() & 0xFFFF;
+            ByteBuffer dados = garantir(tamanho);
+            String nome = new String(dados.array(), dados.position(), tamanho, StandardCharsets.UTF_8);
+            dados.position(dados.position() + tamanho);
+            return nome;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+}
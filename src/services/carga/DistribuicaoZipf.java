@@ -0,0 +1,48 @@
+package services.carga;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A classe DistribuicaoZipf sorteia posições de 0 a n - 1 com probabilidade proporcional a
+ * 1 / (posição + 1)^s, como a popularidade dos ativos em uma bolsa: poucos ativos concentram
+ * a maior parte das ordens. A distribuição acumulada é calculada uma única vez e cada sorteio
+ * é uma busca binária.
+ */
+public class DistribuicaoZipf {
+
+    private final double[] acumulada;
+
+    /**
+     * Cria a distribuição.
+     *
+     * @param n       A quantidade de posições.
+     * @param expoente O expoente s (0 gera uma distribuição uniforme).
+     */
+    public DistribuicaoZipf(int n, double expoente) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("A distribuição precisa de ao menos uma posição");
+        }
+        acumulada = new double[n];
+        double soma = 0;
+        for (int i = 0; i < n; i++) {
+            soma += 1.0 / Math.pow(i + 1, expoente);
+            acumulada[i] = soma;
+        }
+        for (int i = 0; i < n; i++) {
+            acumulada[i] /= soma;
+        }
+    }
+
+    /**
+     * Sorteia uma posição.
+     *
+     * @param aleatorio O gerador de números aleatórios.
+     * @return A posição sorteada, de 0 a n - 1.
+     */
+    public int sortear(Random aleatorio) {
+        int posicao = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+        // Sem correspondência exata, binarySearch devolve -(ponto de inserção) - 1
+        return Math.min(posicao < 0 ? -posicao - 1 : posicao, acumulada.length - 1);
+    }
+}
@@ -0,0 +1,275 @@
+package services.carga;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import app.Broker;
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TipoOperacao;
+import services.metricas.HistogramaLatencia;
+import utils.CargaConfig;
+
+/**
+ * A classe GeradorDeCarga envia um fluxo de ordens a uma taxa fixa por vários Brokers e mede a
+ * latência de cada ordem agressora, do envio até a chegada da sua execução no Broker.
+ *
+ * O fluxo segue a configuração de CargaConfig: os ativos são sorteados por uma distribuição de
+ * Zipf, o preço de referência de cada ativo faz um passeio aleatório e uma fração das ordens
+ * atravessa o preço de referência, enquanto as demais repousam no livro a uma distância
+ * aleatória dele.
+ *
+ * O envio é de laço aberto: a ordem i tem o instante previsto inicio + i / taxa e a latência é
+ * medida a partir desse instante. Assim, quando o envio atrasa (por uma pausa do coletor de
+ * lixo ou uma publicação bloqueada, por exemplo), o atraso entra na latência das ordens que
+ * esperaram, em vez de desaparecer da medição (correção da omissão coordenada).
+ *
+ * Para que cada negócio identifique a sua ordem, as ordens agressoras têm um único lote (100
+ * ações) e as que repousam têm lotes inteiros; assim, uma ordem agressora é executada em um
+ * único negócio. As ordens que repousam usam a corretora "nome-LIQ", sem Broker que a consuma,
+ * para que as suas execuções não cheguem ao Broker medido. As execuções de cada Broker, ativo e
+ * lado chegam na ordem de envio e são atribuídas à ordem agressora pendente mais antiga; ordens
+ * sem execução depois de CargaConfig.ESPERA_EXECUCAO são descartadas.
+ */
+public class GeradorDeCarga {
+
+    // Lote das ordens, em ações
+    private static final int LOTE = 100;
+
+    private final Simulado[] simulados;
+    private final String[] ativos;
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final long[] precos; // preço de referência de cada ativo, em ticks
+    private final DistribuicaoZipf popularidade;
+    private final Random aleatorio = new Random(42); // usado apenas pela thread de envio
+    private final long esperaNanos = TimeUnit.MILLISECONDS.toNanos(CargaConfig.ESPERA_EXECUCAO);
+
+    private volatile HistogramaLatencia histograma = new HistogramaLatencia();
+    private final AtomicLong semExecucao = new AtomicLong();
+    private final AtomicLong execucoes = new AtomicLong();
+    private long enviadas; // usado apenas pela thread de envio
+    private long atrasoMaximo; // maior atraso do envio em relação ao instante previsto, em nanossegundos
+
+    /**
+     * Cria um gerador de carga que envia as ordens pelos Brokers informados. O gerador passa a
+     * receber as execuções de cada Broker, que deixa de descrevê-las no console; os aceites das
+     * ordens são descartados.
+     *
+     * @param brokers Os Brokers simulados.
+     */
+    public GeradorDeCarga(List<Broker> brokers) {
+        ativos = new String[CargaConfig.ATIVOS];
+        precos = new long[CargaConfig.ATIVOS];
+        for (int i = 0; i < ativos.length; i++) {
+            ativos[i] = "CRG" + i;
+            indices.put(ativos[i], i);
+            precos[i] = CargaConfig.PRECO_INICIAL;
+        }
+        popularidade = new DistribuicaoZipf(ativos.length, CargaConfig.EXPOENTE_ZIPF);
+
+        simulados = new Simulado[brokers.size()];
+        for (int i = 0; i < simulados.length; i++) {
+            Simulado simulado = new Simulado(brokers.get(i), ativos.length);
+            simulados[i] = simulado;
+            simulado.broker.setOuvinteExecucoes((idOrdem, ativo, lado, quantidade, preco) -> aoExecutar(simulado, ativo, lado));
+            simulado.broker.setOuvinteAceites((idBroker, idOrdem, ativo, lado) -> { });
+        }
+    }
+
+    /**
+     * Envia as ordens durante o aquecimento e a medição e escreve o relatório no console. As
+     * latências do aquecimento são descartadas.
+     *
+     * @throws IOException Em caso de erro ao enviar uma ordem.
+     */
+    public void executar() throws IOException {
+        double intervalo = 1e9 / CargaConfig.TAXA;
+        long inicio = System.nanoTime();
+        long inicioMedicao = inicio + TimeUnit.SECONDS.toNanos(CargaConfig.AQUECIMENTO);
+        long fim = inicioMedicao + TimeUnit.SECONDS.toNanos(CargaConfig.DURACAO);
+        long proximoProgresso = inicio + TimeUnit.SECONDS.toNanos(1);
+        boolean medindo = false;
+        long enviadasNoProgresso = 0;
+        long execucoesNoProgresso = 0;
+
+        System.out.println("[GeradorDeCarga] " + simulados.length + " Brokers, " + CargaConfig.TAXA + " ordens/s, "
+                + ativos.length + " ativos, aquecimento de " + CargaConfig.AQUECIMENTO + " s e medição de " + CargaConfig.DURACAO + " s");
+
+        for (long i = 0; ; i++) {
+            long previsto = inicio + (long) (i * intervalo);
+            if (previsto >= fim) {
+                break;
+            }
+            long agora = esperarAte(previsto);
+            if (!medindo && previsto >= inicioMedicao) {
+                // Começa a medição com contadores e histograma novos
+                histograma = new HistogramaLatencia();
+                execucoes.set(0);
+                semExecucao.set(0);
+                enviadas = 0;
+                atrasoMaximo = 0;
+                enviadasNoProgresso = 0;
+                execucoesNoProgresso = 0;
+                medindo = true;
+            }
+            atrasoMaximo = Math.max(atrasoMaximo, agora - previsto);
+
+            enviar(simulados[(int) (i % simulados.length)], previsto);
+
+            if (agora >= proximoProgresso) {
+                long execucoesAgora = execucoes.get();
+                System.out.println("[GeradorDeCarga] " + (medindo ? "medição" : "aquecimento") + ": "
+                        + (enviadas - enviadasNoProgresso) + " ordens/s, "
+                        + (execucoesAgora - execucoesNoProgresso) + " execuções/s");
+                enviadasNoProgresso = enviadas;
+                execucoesNoProgresso = execucoesAgora;
+                proximoProgresso += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+
+        // Aguarda as execuções das últimas ordens enviadas
+        long encerramento = System.nanoTime();
+        LockSupport.parkNanos(esperaNanos);
+        relatar(encerramento - inicioMedicao);
+    }
+
+    /**
+     * Sorteia e envia uma ordem pelo Broker simulado.
+     */
+    private void enviar(Simulado simulado, long previsto) throws IOException {
+        int indice = popularidade.sortear(aleatorio);
+        String ativo = ativos[indice];
+        long referencia = caminhar(indice);
+        TipoOperacao tipo = aleatorio.nextDouble() < CargaConfig.FRACAO_COMPRA ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+        int sentido = tipo == TipoOperacao.COMPRA ? 1 : -1;
+
+        Operacao operacao;
+        if (aleatorio.nextDouble() < CargaConfig.FRACAO_AGRESSIVA) {
+            // Registra a ordem antes de enviá-la, pois o negócio pode chegar antes do retorno do envio
+            ArrayDeque<long[]> fila = simulado.pendentes[indice][tipo.ordinal()];
+            synchronized (fila) {
+                fila.addLast(new long[] {previsto});
+            }
+            operacao = new Operacao(tipo, ativo, LOTE, referencia + sentido * CargaConfig.MARGEM_AGRESSIVA,
+                    simulado.broker.getNomeBroker(), Relogio.agora());
+        } else {
+            long distancia = 1 + aleatorio.nextInt(CargaConfig.PROFUNDIDADE);
+            operacao = new Operacao(tipo, ativo, LOTE * (1 + aleatorio.nextInt(10)),
+                    Math.max(1, referencia - sentido * distancia), simulado.corretoraLiquidez, Relogio.agora());
+        }
+        simulado.broker.enviarOperacao(operacao);
+        enviadas++;
+    }
+
+    /**
+     * Avança o passeio aleatório do preço de referência de um ativo.
+     */
+    private long caminhar(int indice) {
+        long passo = aleatorio.nextBoolean() ? CargaConfig.PASSO_PRECO : -CargaConfig.PASSO_PRECO;
+        // O preço não se aproxima de zero, para que as ordens que repousam tenham preço positivo
+        precos[indice] = Math.max(CargaConfig.PROFUNDIDADE + CargaConfig.PASSO_PRECO + 1, precos[indice] + passo);
+        return precos[indice];
+    }
+
+    /**
+     * Atribui uma execução de um Broker simulado à sua ordem agressora pendente mais antiga.
+     * Chamado na thread de consumo do Broker.
+     */
+    private void aoExecutar(Simulado simulado, String ativo, TipoOperacao lado) {
+        Integer indice = indices.get(ativo);
+        if (indice == null) {
+            return;
+        }
+        long agora = System.nanoTime();
+        ArrayDeque<long[]> fila = simulado.pendentes[indice][lado.ordinal()];
+        long[] ordem;
+        synchronized (fila) {
+            // Descarta as ordens que repousaram no livro sem execução
+            while ((ordem = fila.pollFirst()) != null && agora - ordem[0] > esperaNanos) {
+                semExecucao.incrementAndGet();
+            }
+        }
+        if (ordem != null) {
+            histograma.registrar(agora - ordem[0]);
+            execucoes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Espera até o instante informado, dormindo enquanto faltar mais de 100 microssegundos.
+     *
+     * @return O instante em que a espera terminou.
+     */
+    private static long esperarAte(long instante) {
+        long agora;
+        while ((agora = System.nanoTime()) < instante) {
+            if (instante - agora > 100_000) {
+                LockSupport.parkNanos(instante - agora - 50_000);
+            }
+        }
+        return agora;
+    }
+
+    /**
+     * Escreve no console a vazão sustentada e os percentis de latência da medição.
+     */
+    private void relatar(long duracaoNanos) {
+        HistogramaLatencia resultado = histograma;
+        double segundos = duracaoNanos / 1e9;
+        long pendentes = 0;
+        for (Simulado simulado : simulados) {
+            for (ArrayDeque<long[]>[] lados : simulado.pendentes) {
+                for (ArrayDeque<long[]> fila : lados) {
+                    synchronized (fila) {
+                        pendentes += fila.size();
+                    }
+                }
+            }
+        }
+
+        System.out.println("\n[GeradorDeCarga] Resultado da medição (" + String.format("%.1f", segundos) + " s)");
+        System.out.println("  Ordens enviadas:     " + enviadas + " (" + String.format("%.0f", enviadas / segundos) + " ordens/s)");
+        System.out.println("  Execuções medidas:   " + resultado.getTotal() + " (" + String.format("%.0f", resultado.getTotal() / segundos) + " execuções/s)");
+        System.out.println("  Sem execução:        " + (semExecucao.get() + pendentes));
+        System.out.println("  Atraso máximo envio: " + milissegundos(atrasoMaximo) + " ms");
+        System.out.println("  Latência ordem→execução (ms):");
+        System.out.println("    p50   " + milissegundos(resultado.percentil(50)));
+        System.out.println("    p90   " + milissegundos(resultado.percentil(90)));
+        System.out.println("    p99   " + milissegundos(resultado.percentil(99)));
+        System.out.println("    p99.9 " + milissegundos(resultado.percentil(99.9)));
+        System.out.println("    máx   " + milissegundos(resultado.getMaximo()));
+    }
+
+    private static String milissegundos(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Estado de um Broker simulado: as ordens agressoras pendentes, com o instante previsto
+     * de envio, por ativo e lado.
+     */
+    private static class Simulado {
+        final Broker broker;
+        final String corretoraLiquidez;
+        final ArrayDeque<long[]>[][] pendentes;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Simulado(Broker broker, int quantidadeAtivos) {
+            this.broker = broker;
+            this.corretoraLiquidez = broker.getNomeBroker() + "-LIQ";
+            this.pendentes = new ArrayDeque[quantidadeAtivos][TipoOperacao.values().length];
+            for (ArrayDeque<long[]>[] lados : pendentes) {
+                for (int lado = 0; lado < lados.length; lado++) {
+                    lados[lado] = new ArrayDeque<>();
+                }
+            }
+        }
+    }
+}
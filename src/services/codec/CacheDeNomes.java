@@ -0,0 +1,77 @@
+package services.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A classe CacheDeNomes converte nomes ASCII de tamanho fixo (ativos e corretoras) lidos de uma
+ * mensagem binária em Strings, reaproveitando a mesma instância para bytes iguais. Depois que
+ * um nome é visto pela primeira vez, a decodificação não aloca objetos.
+ *
+ * A tabela usa endereçamento aberto com sondagem limitada; quando a vizinhança está cheia,
+ * a primeira entrada da vizinhança é substituída. A classe não é sincronizada e deve ser
+ * usada por uma única thread (normalmente a do consumidor de mensagens).
+ */
+public class CacheDeNomes {
+
+    private static final int MAXIMO_SONDAGENS = 8;
+
+    private final String[] tabela;
+    private final int mascara;
+
+    /**
+     * Cria um cache com a capacidade informada, arredondada para uma potência de dois.
+     *
+     * @param capacidade A quantidade aproximada de nomes distintos esperados.
+     */
+    public CacheDeNomes(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(capacidade, 16) * 2 - 1);
+        tabela = new String[tamanho];
+        mascara = tamanho - 1;
+    }
+
+    /**
+     * Obtém o nome contido em um campo de tamanho fixo, preenchido com zeros à direita.
+     *
+     * @param dados          Os bytes da mensagem.
+     * @param offset         A posição do campo.
+     * @param tamanhoMaximo  O tamanho do campo.
+     * @return O nome decodificado.
+     */
+    public String obter(byte[] dados, int offset, int tamanhoMaximo) {
+        int tamanho = 0;
+        int hash = 0;
+        while (tamanho < tamanhoMaximo && dados[offset + tamanho] != 0) {
+            hash = 31 * hash + dados[offset + tamanho];
+            tamanho++;
+        }
+
+        int inicio = (hash ^ (hash >>> 16)) & mascara;
+        int indice = inicio;
+        for (int sondagem = 0; sondagem < MAXIMO_SONDAGENS; sondagem++) {
+            String nome = tabela[indice];
+            if (nome == null) {
+                break;
+            }
+            if (iguais(nome, dados, offset, tamanho)) {
+                return nome;
+            }
+            indice = (indice + 1) & mascara;
+        }
+
+        String nome = new String(dados, offset, tamanho, StandardCharsets.US_ASCII);
+        tabela[tabela[indice] == null ? indice : inicio] = nome;
+        return nome;
+    }
+
+    private static boolean iguais(String nome, byte[] dados, int offset, int tamanho) {
+        if (nome.length() != tamanho) {
+            return false;
+        }
+        for (int i = 0; i < tamanho; i++) {
+            if (nome.charAt(i) != dados[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,679 @@
+package services.codec;
+
+import services.manager.Dicionario;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe CodecBinario define o formato binário de layout fixo das mensagens trocadas entre
+ * Brokers e a Bolsa de Valores, e lê e escreve esses campos diretamente sobre o vetor de bytes
+ * da mensagem AMQP, sem criar objetos intermediários.
+ *
+ * Todas as mensagens começam com um cabeçalho de 4 bytes, seguido de campos em big-endian:
+ *
+ * <pre>
+ * Cabeçalho (todas)    0 versão (1) | 1 tipo (1) | 2 lado (1, 0 = COMPRA, 1 = VENDA) | 3 reservado (1)
+ * Comum (todas)        4 quantidade (int) | 8 preço (long) | 16 ativo (12 bytes ASCII)
+ * ORDEM (56)           28 corretora (20 bytes ASCII) | 48 ID do Broker (long)
+ * NEGOCIO (56)         28 corretora (20 bytes ASCII) | 48 data e hora (long, epoch em milissegundos)
+ * ATUALIZACAO (36)     28 sequência (long)
+ * ALTERACAO (64)       28 corretora (20 bytes ASCII) | 48 ID do Broker (long) | 56 ID da ordem (long)
+ * ACEITE (64)          28 corretora (20 bytes ASCII) | 48 ID do Broker (long) | 56 ID da ordem (long)
+ * CONSULTA (48)        28 corretora (20 bytes ASCII)
+ * EXECUCAO (64)        28 corretora (20 bytes ASCII) | 48 ID do negócio (long) | 56 ID da ordem (long)
+ * BARRA (84)           28 início (long, epoch em milissegundos) | 36 duração (long, milissegundos) |
+ *                      44 abertura (long) | 52 máxima (long) | 60 mínima (long) | 68 volume (long) | 76 VWAP (long)
+ * </pre>
+ *
+ * O preço trafega em ponto fixo (unidades de 1/TabelaDeTicks.ESCALA), e não em ticks, para que o
+ * formato não dependa da tabela de ticks de quem envia. Os nomes são completados com zeros à
+ * direita. Em uma ATUALIZACAO, a quantidade é o total do nível de preço após a atualização,
+ * sendo 0 quando o nível deixou o livro.
+ *
+ * O ID do Broker é o número que o Broker deu à ordem, devolvido no ACEITE junto com o ID da
+ * ordem atribuído pela Bolsa na chegada. Uma ALTERACAO identifica pelo ID da Bolsa a ordem a
+ * alterar; a sua quantidade é a nova quantidade da ordem no livro (0 cancela a ordem) e o seu
+ * preço não é usado.
+ *
+ * Uma CONSULTA pede os melhores níveis do livro agregado de um ativo, ou de todos os ativos
+ * quando o ativo é vazio; a sua quantidade é a profundidade pedida, em níveis por lado, e o seu
+ * lado e o seu preço não são usados. A resposta é um vetor de registros ATUALIZACAO.
+ *
+ * Uma EXECUCAO informa à corretora de uma ordem que ela foi negociada: o lado é o da ordem da
+ * corretora, que pode ser a agressora ou a oferta do livro, e a quantidade e o preço são os do
+ * negócio. Cada negócio gera uma EXECUCAO para cada uma das duas ordens.
+ *
+ * Uma BARRA resume os negócios de um ativo em um período: a quantidade é a de negócios, o preço
+ * é o de fechamento e o lado não é usado. Os preços de abertura, máxima e mínima e o VWAP estão
+ * em ponto fixo, como o preço.
+ */
+public final class CodecBinario {
+
+    // Versão atual do formato
+    public static final byte VERSAO = 1;
+
+    // Tipos de mensagem
+    public static final byte TIPO_ORDEM = 1;
+    public static final byte TIPO_NEGOCIO = 2;
+    public static final byte TIPO_ATUALIZACAO = 3;
+    public static final byte TIPO_ALTERACAO = 4;
+    public static final byte TIPO_ACEITE = 5;
+    public static final byte TIPO_CONSULTA = 6;
+    public static final byte TIPO_EXECUCAO = 7;
+    public static final byte TIPO_BARRA = 8;
+
+    // Tamanhos dos campos de nome
+    public static final int TAMANHO_ATIVO = 12;
+    public static final int TAMANHO_CORRETORA = 20;
+
+    // Tamanhos das mensagens
+    public static final int TAMANHO_ORDEM = 56;
+    public static final int TAMANHO_NEGOCIO = 56;
+    public static final int TAMANHO_ATUALIZACAO = 36;
+    public static final int TAMANHO_ALTERACAO = 64;
+    public static final int TAMANHO_ACEITE = 64;
+    public static final int TAMANHO_CONSULTA = 48;
+    public static final int TAMANHO_EXECUCAO = 64;
+    public static final int TAMANHO_BARRA = 84;
+
+    // Posições dos campos
+    private static final int POS_VERSAO = 0;
+    private static final int POS_TIPO = 1;
+    private static final int POS_LADO = 2;
+    private static final int POS_QUANTIDADE = 4;
+    private static final int POS_PRECO = 8;
+    private static final int POS_ATIVO = 16;
+    private static final int POS_CORRETORA = 28;
+    private static final int POS_DATA_HORA = 48;
+    private static final int POS_SEQUENCIA = 28;
+    private static final int POS_ID_BROKER = 48;
+    private static final int POS_ID_NEGOCIO = 48;
+    private static final int POS_ID_ORDEM = 56;
+    private static final int POS_INICIO = 28;
+    private static final int POS_DURACAO = 36;
+    private static final int POS_ABERTURA = 44;
+    private static final int POS_MAXIMA = 52;
+    private static final int POS_MINIMA = 60;
+    private static final int POS_VOLUME = 68;
+    private static final int POS_VWAP = 76;
+
+    private CodecBinario() {
+    }
+
+    /**
+     * Escreve uma ordem de compra ou venda.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_ORDEM bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O tipo da operação (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade de ações.
+     * @param preco      O preço em ponto fixo.
+     * @param corretora  A corretora, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarOrdem(byte[] destino, int offset, TipoOperacao lado, String ativo,
+                                     int quantidade, long preco, String corretora) {
+        return codificarOrdem(destino, offset, lado, ativo, quantidade, preco, corretora, 0);
+    }
+
+    /**
+     * Escreve uma ordem de compra ou venda numerada pelo Broker.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_ORDEM bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O tipo da operação (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade de ações.
+     * @param preco      O preço em ponto fixo.
+     * @param corretora  A corretora, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @param idBroker   O número da ordem no Broker, devolvido no ACEITE.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarOrdem(byte[] destino, int offset, TipoOperacao lado, String ativo,
+                                     int quantidade, long preco, String corretora, long idBroker) {
+        escreverCabecalho(destino, offset, TIPO_ORDEM, lado, ativo, quantidade, preco);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        escreverLong(destino, offset + POS_ID_BROKER, idBroker);
+        return TAMANHO_ORDEM;
+    }
+
+    /**
+     * Escreve um negócio realizado.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_NEGOCIO bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O tipo da operação agressora (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade negociada.
+     * @param preco      O preço em ponto fixo.
+     * @param corretora  A corretora, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @param dataHora   A data e hora do negócio, em milissegundos desde a época.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarNegocio(byte[] destino, int offset, TipoOperacao lado, String ativo,
+                                       int quantidade, long preco, String corretora, long dataHora) {
+        escreverCabecalho(destino, offset, TIPO_NEGOCIO, lado, ativo, quantidade, preco);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        escreverLong(destino, offset + POS_DATA_HORA, dataHora);
+        return TAMANHO_NEGOCIO;
+    }
+
+    /**
+     * Escreve uma atualização de um nível de preço do livro.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_ATUALIZACAO bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O lado do livro (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade total do nível após a atualização (0 se o nível saiu do livro).
+     * @param preco      O preço do nível em ponto fixo.
+     * @param sequencia  O número de sequência da atualização.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarAtualizacao(byte[] destino, int offset, TipoOperacao lado, String ativo,
+                                           int quantidade, long preco, long sequencia) {
+        escreverCabecalho(destino, offset, TIPO_ATUALIZACAO, lado, ativo, quantidade, preco);
+        escreverLong(destino, offset + POS_SEQUENCIA, sequencia);
+        return TAMANHO_ATUALIZACAO;
+    }
+
+    /**
+     * Escreve uma alteração da quantidade de uma ordem do livro, ou o seu cancelamento.
+     *
+     * @param destino        O vetor de destino, com pelo menos TAMANHO_ALTERACAO bytes a partir de offset.
+     * @param offset         A posição inicial da mensagem no vetor.
+     * @param lado           O tipo da ordem alterada (COMPRA ou VENDA).
+     * @param ativo          O ativo da ordem, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param novaQuantidade A nova quantidade da ordem no livro (0 cancela a ordem).
+     * @param corretora      A corretora da ordem, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @param idBroker       O número da alteração no Broker.
+     * @param idOrdem        O ID da ordem alterada, recebido no ACEITE.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarAlteracao(byte[] destino, int offset, TipoOperacao lado, String ativo,
+                                         int novaQuantidade, String corretora, long idBroker, long idOrdem) {
+        escreverCabecalho(destino, offset, TIPO_ALTERACAO, lado, ativo, novaQuantidade, 0);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        escreverLong(destino, offset + POS_ID_BROKER, idBroker);
+        escreverLong(destino, offset + POS_ID_ORDEM, idOrdem);
+        return TAMANHO_ALTERACAO;
+    }
+
+    /**
+     * Escreve o aceite de uma ordem pela Bolsa de Valores.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_ACEITE bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O tipo da ordem (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade recebida.
+     * @param preco      O preço em ponto fixo.
+     * @param corretora  A corretora, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @param idBroker   O número da ordem no Broker.
+     * @param idOrdem    O ID atribuído à ordem pela Bolsa.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarAceite(byte[] destino, int offset, TipoOperacao lado, String ativo, int quantidade,
+                                      long preco, String corretora, long idBroker, long idOrdem) {
+        escreverCabecalho(destino, offset, TIPO_ACEITE, lado, ativo, quantidade, preco);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        escreverLong(destino, offset + POS_ID_BROKER, idBroker);
+        escreverLong(destino, offset + POS_ID_ORDEM, idOrdem);
+        return TAMANHO_ACEITE;
+    }
+
+    /**
+     * Escreve uma consulta aos melhores níveis do livro.
+     *
+     * @param destino      O vetor de destino, com pelo menos TAMANHO_CONSULTA bytes a partir de offset.
+     * @param offset       A posição inicial da mensagem no vetor.
+     * @param ativo        O ativo, com até TAMANHO_ATIVO caracteres ASCII, ou vazio para todos os ativos.
+     * @param profundidade A quantidade de níveis pedida em cada lado do livro.
+     * @param corretora    A corretora que consulta, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarConsulta(byte[] destino, int offset, String ativo, int profundidade, String corretora) {
+        escreverCabecalho(destino, offset, TIPO_CONSULTA, TipoOperacao.COMPRA, ativo, profundidade, 0);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        return TAMANHO_CONSULTA;
+    }
+
+    /**
+     * Escreve a execução de uma ordem em um negócio, para a corretora da ordem.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_EXECUCAO bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param lado       O tipo da ordem executada (COMPRA ou VENDA).
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param quantidade A quantidade negociada.
+     * @param preco      O preço do negócio em ponto fixo.
+     * @param corretora  A corretora da ordem, com até TAMANHO_CORRETORA caracteres ASCII.
+     * @param idNegocio  O ID do negócio.
+     * @param idOrdem    O ID da ordem executada, recebido no ACEITE.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarExecucao(byte[] destino, int offset, TipoOperacao lado, String ativo, int quantidade,
+                                        long preco, String corretora, long idNegocio, long idOrdem) {
+        escreverCabecalho(destino, offset, TIPO_EXECUCAO, lado, ativo, quantidade, preco);
+        escreverNome(destino, offset + POS_CORRETORA, TAMANHO_CORRETORA, corretora);
+        escreverLong(destino, offset + POS_ID_NEGOCIO, idNegocio);
+        escreverLong(destino, offset + POS_ID_ORDEM, idOrdem);
+        return TAMANHO_EXECUCAO;
+    }
+
+    /**
+     * Escreve uma barra com os negócios de um ativo em um período.
+     *
+     * @param destino    O vetor de destino, com pelo menos TAMANHO_BARRA bytes a partir de offset.
+     * @param offset     A posição inicial da mensagem no vetor.
+     * @param ativo      O ativo, com até TAMANHO_ATIVO caracteres ASCII.
+     * @param negocios   A quantidade de negócios do período.
+     * @param inicio     O início do período, em milissegundos desde a época.
+     * @param duracao    A duração do período, em milissegundos.
+     * @param abertura   O preço de abertura em ponto fixo.
+     * @param maxima     O preço máximo em ponto fixo.
+     * @param minima     O preço mínimo em ponto fixo.
+     * @param fechamento O preço de fechamento em ponto fixo.
+     * @param volume     A quantidade de ações negociadas.
+     * @param vwap       O preço médio ponderado pelo volume em ponto fixo.
+     * @return A quantidade de bytes escritos.
+     */
+    public static int codificarBarra(byte[] destino, int offset, String ativo, int negocios, long inicio, long duracao,
+                                     long abertura, long maxima, long minima, long fechamento, long volume, long vwap) {
+        escreverCabecalho(destino, offset, TIPO_BARRA, TipoOperacao.COMPRA, ativo, negocios, fechamento);
+        escreverLong(destino, offset + POS_INICIO, inicio);
+        escreverLong(destino, offset + POS_DURACAO, duracao);
+        escreverLong(destino, offset + POS_ABERTURA, abertura);
+        escreverLong(destino, offset + POS_MAXIMA, maxima);
+        escreverLong(destino, offset + POS_MINIMA, minima);
+        escreverLong(destino, offset + POS_VOLUME, volume);
+        escreverLong(destino, offset + POS_VWAP, vwap);
+        return TAMANHO_BARRA;
+    }
+
+    /**
+     * Valida a versão e o tamanho de uma mensagem e obtém o seu tipo.
+     *
+     * @param dados   Os bytes da mensagem.
+     * @param offset  A posição inicial da mensagem.
+     * @param tamanho A quantidade de bytes disponíveis a partir de offset.
+     * @return O tipo da mensagem (TIPO_ORDEM, TIPO_NEGOCIO, TIPO_ATUALIZACAO, TIPO_ALTERACAO, TIPO_ACEITE,
+     *         TIPO_CONSULTA, TIPO_EXECUCAO ou TIPO_BARRA).
+     * @throws IllegalArgumentException Se a versão não for suportada, o tipo for desconhecido ou
+     *                                  a mensagem for menor do que o tamanho do seu tipo.
+     */
+    public static byte tipoMensagem(byte[] dados, int offset, int tamanho) {
+        if (tamanho < POS_QUANTIDADE) {
+            throw new IllegalArgumentException("Mensagem binária truncada: " + tamanho + " bytes");
+        }
+        if (dados[offset + POS_VERSAO] != VERSAO) {
+            throw new IllegalArgumentException("Versão de mensagem não suportada: " + dados[offset + POS_VERSAO]);
+        }
+
+        byte tipo = dados[offset + POS_TIPO];
+        int esperado;
+        switch (tipo) {
+            case TIPO_ORDEM:
+                esperado = TAMANHO_ORDEM;
+                break;
+            case TIPO_NEGOCIO:
+                esperado = TAMANHO_NEGOCIO;
+                break;
+            case TIPO_ATUALIZACAO:
+                esperado = TAMANHO_ATUALIZACAO;
+                break;
+            case TIPO_ALTERACAO:
+                esperado = TAMANHO_ALTERACAO;
+                break;
+            case TIPO_ACEITE:
+                esperado = TAMANHO_ACEITE;
+                break;
+            case TIPO_CONSULTA:
+                esperado = TAMANHO_CONSULTA;
+                break;
+            case TIPO_EXECUCAO:
+                esperado = TAMANHO_EXECUCAO;
+                break;
+            case TIPO_BARRA:
+                esperado = TAMANHO_BARRA;
+                break;
+            default:
+                throw new IllegalArgumentException("Tipo de mensagem desconhecido: " + tipo);
+        }
+        if (tamanho < esperado) {
+            throw new IllegalArgumentException("Mensagem binária truncada: " + tamanho + " bytes");
+        }
+        return tipo;
+    }
+
+    /**
+     * Lê o lado (tipo de operação) de uma mensagem.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return COMPRA ou VENDA.
+     */
+    public static TipoOperacao lado(byte[] dados, int offset) {
+        return dados[offset + POS_LADO] == 0 ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+    }
+
+    /**
+     * Lê a quantidade de uma mensagem.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return A quantidade.
+     */
+    public static int quantidade(byte[] dados, int offset) {
+        return lerInt(dados, offset + POS_QUANTIDADE);
+    }
+
+    /**
+     * Lê o preço, em ponto fixo, de uma mensagem.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O preço em ponto fixo.
+     */
+    public static long preco(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_PRECO);
+    }
+
+    /**
+     * Lê o ativo de uma mensagem.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @param nomes  O cache usado para evitar a criação de Strings repetidas.
+     * @return O ativo.
+     */
+    public static String ativo(byte[] dados, int offset, CacheDeNomes nomes) {
+        return nomes.obter(dados, offset + POS_ATIVO, TAMANHO_ATIVO);
+    }
+
+    /**
+     * Lê a corretora de uma ORDEM, de um NEGOCIO, de uma ALTERACAO, de um ACEITE ou de uma EXECUCAO.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @param nomes  O cache usado para evitar a criação de Strings repetidas.
+     * @return A corretora.
+     */
+    public static String corretora(byte[] dados, int offset, CacheDeNomes nomes) {
+        return nomes.obter(dados, offset + POS_CORRETORA, TAMANHO_CORRETORA);
+    }
+
+    /**
+     * Lê o código do ativo de uma mensagem no Dicionario de ativos, sem alocar se o ativo já
+     * for conhecido.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O código do ativo.
+     * @throws IllegalArgumentException Se o ativo for vazio ou tiver caracteres fora do ASCII visível.
+     */
+    public static int codigoAtivo(byte[] dados, int offset) {
+        validarNome(dados, offset + POS_ATIVO, TAMANHO_ATIVO);
+        return Dicionario.getAtivos().codigo(dados, offset + POS_ATIVO, TAMANHO_ATIVO);
+    }
+
+    /**
+     * Lê o código da corretora de uma ORDEM ou de uma ALTERACAO no Dicionario de corretoras, sem
+     * alocar se a corretora já for conhecida.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O código da corretora.
+     * @throws IllegalArgumentException Se a corretora for vazia ou tiver caracteres fora do ASCII visível.
+     */
+    public static int codigoCorretora(byte[] dados, int offset) {
+        validarNome(dados, offset + POS_CORRETORA, TAMANHO_CORRETORA);
+        return Dicionario.getCorretoras().codigo(dados, offset + POS_CORRETORA, TAMANHO_CORRETORA);
+    }
+
+    /**
+     * Lê o código do ativo de uma mensagem no Dicionario de ativos, sem incluir o ativo se ele
+     * ainda não for conhecido e sem alocar.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O código do ativo, ou Dicionario.SEM_CODIGO se ele não for conhecido.
+     * @throws IllegalArgumentException Se o ativo for vazio ou tiver caracteres fora do ASCII visível.
+     */
+    public static int codigoAtivoExistente(byte[] dados, int offset) {
+        validarNome(dados, offset + POS_ATIVO, TAMANHO_ATIVO);
+        return Dicionario.getAtivos().codigoExistente(dados, offset + POS_ATIVO, TAMANHO_ATIVO);
+    }
+
+    /**
+     * Lê o código da corretora de uma ORDEM ou de uma ALTERACAO no Dicionario de corretoras, sem
+     * incluir a corretora se ela ainda não for conhecida e sem alocar.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O código da corretora, ou Dicionario.SEM_CODIGO se ela não for conhecida.
+     * @throws IllegalArgumentException Se a corretora for vazia ou tiver caracteres fora do ASCII visível.
+     */
+    public static int codigoCorretoraExistente(byte[] dados, int offset) {
+        validarNome(dados, offset + POS_CORRETORA, TAMANHO_CORRETORA);
+        return Dicionario.getCorretoras().codigoExistente(dados, offset + POS_CORRETORA, TAMANHO_CORRETORA);
+    }
+
+    /**
+     * Lê a data e hora de um NEGOCIO.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return A data e hora, em milissegundos desde a época.
+     */
+    public static long dataHora(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_DATA_HORA);
+    }
+
+    /**
+     * Lê o número de sequência de uma ATUALIZACAO.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O número de sequência.
+     */
+    public static long sequencia(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_SEQUENCIA);
+    }
+
+    /**
+     * Lê o número dado pelo Broker em uma ORDEM, uma ALTERACAO ou um ACEITE.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O ID do Broker.
+     */
+    public static long idBroker(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_ID_BROKER);
+    }
+
+    /**
+     * Lê o ID do negócio de uma EXECUCAO.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O ID do negócio.
+     */
+    public static long idNegocio(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_ID_NEGOCIO);
+    }
+
+    /**
+     * Lê o ID da ordem atribuído pela Bolsa em uma ALTERACAO, um ACEITE ou uma EXECUCAO.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O ID da ordem.
+     */
+    public static long idOrdem(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_ID_ORDEM);
+    }
+
+    /**
+     * Lê o início do período de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O início, em milissegundos desde a época.
+     */
+    public static long inicioBarra(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_INICIO);
+    }
+
+    /**
+     * Lê a duração do período de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return A duração, em milissegundos.
+     */
+    public static long duracaoBarra(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_DURACAO);
+    }
+
+    /**
+     * Lê o preço de abertura, em ponto fixo, de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O preço de abertura em ponto fixo.
+     */
+    public static long abertura(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_ABERTURA);
+    }
+
+    /**
+     * Lê o preço máximo, em ponto fixo, de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O preço máximo em ponto fixo.
+     */
+    public static long maxima(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_MAXIMA);
+    }
+
+    /**
+     * Lê o preço mínimo, em ponto fixo, de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O preço mínimo em ponto fixo.
+     */
+    public static long minima(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_MINIMA);
+    }
+
+    /**
+     * Lê o volume de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return A quantidade de ações negociadas.
+     */
+    public static long volume(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_VOLUME);
+    }
+
+    /**
+     * Lê o preço médio ponderado pelo volume, em ponto fixo, de uma BARRA.
+     *
+     * @param dados  Os bytes da mensagem.
+     * @param offset A posição inicial da mensagem.
+     * @return O VWAP em ponto fixo.
+     */
+    public static long vwap(byte[] dados, int offset) {
+        return lerLong(dados, offset + POS_VWAP);
+    }
+
+    /**
+     * Verifica se um nome pode ser usado como ativo ou corretora: de 1 a tamanhoCampo caracteres
+     * ASCII visíveis, de modo que caiba sem perdas nos campos das mensagens e dos jornais.
+     *
+     * @param nome         O nome.
+     * @param tamanhoCampo O tamanho do campo (TAMANHO_ATIVO ou TAMANHO_CORRETORA).
+     * @throws IllegalArgumentException Se o nome não couber no campo.
+     */
+    public static void validarNome(String nome, int tamanhoCampo) {
+        int tamanho = nome.length();
+        if (tamanho == 0 || tamanho > tamanhoCampo) {
+            throw new IllegalArgumentException("Nome deve ter de 1 a " + tamanhoCampo + " caracteres: " + nome);
+        }
+        for (int i = 0; i < tamanho; i++) {
+            if (!visivel(nome.charAt(i))) {
+                throw new IllegalArgumentException("Nome com caractere inválido: " + nome);
+            }
+        }
+    }
+
+    private static void validarNome(byte[] dados, int offset, int tamanhoCampo) {
+        if (dados[offset] == 0) {
+            throw new IllegalArgumentException("Nome vazio na mensagem");
+        }
+        for (int i = 0; i < tamanhoCampo && dados[offset + i] != 0; i++) {
+            if (!visivel((char) (dados[offset + i] & 0xFF))) {
+                throw new IllegalArgumentException("Nome com caractere inválido na mensagem");
+            }
+        }
+    }
+
+    private static boolean visivel(char c) {
+        return c > ' ' && c < 0x7F;
+    }
+
+    private static void escreverCabecalho(byte[] destino, int offset, byte tipo, TipoOperacao lado,
+                                          String ativo, int quantidade, long preco) {
+        destino[offset + POS_VERSAO] = VERSAO;
+        destino[offset + POS_TIPO] = tipo;
+        destino[offset + POS_LADO] = (byte) (lado == TipoOperacao.COMPRA ? 0 : 1);
+        destino[offset + 3] = 0;
+        escreverInt(destino, offset + POS_QUANTIDADE, quantidade);
+        escreverLong(destino, offset + POS_PRECO, preco);
+        escreverNome(destino, offset + POS_ATIVO, TAMANHO_ATIVO, ativo);
+    }
+
+    private static void escreverNome(byte[] destino, int offset, int tamanhoCampo, String nome) {
+        int tamanho = nome.length();
+        if (tamanho > tamanhoCampo) {
+            throw new IllegalArgumentException("Nome com mais de " + tamanhoCampo + " caracteres: " + nome);
+        }
+        for (int i = 0; i < tamanho; i++) {
+            char c = nome.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                throw new IllegalArgumentException("Nome com caractere não ASCII: " + nome);
+            }
+            destino[offset + i] = (byte) c;
+        }
+        for (int i = tamanho; i < tamanhoCampo; i++) {
+            destino[offset + i] = 0;
+        }
+    }
+
+    private static void escreverInt(byte[] destino, int offset, int valor) {
+        destino[offset] = (byte) (valor >>> 24);
+        destino[offset + 1] = (byte) (valor >>> 16);
+        destino[offset + 2] = (byte) (valor >>> 8);
+        destino[offset + 3] = (byte) valor;
+    }
+
+    private static void escreverLong(byte[] destino, int offset, long valor) {
+        escreverInt(destino, offset, (int) (valor >>> 32));
+        escreverInt(destino, offset + 4, (int) valor);
+    }
+
+    private static int lerInt(byte[] dados, int offset) {
+        return (dados[offset] & 0xFF) << 24
+                | (dados[offset + 1] & 0xFF) << 16
+                | (dados[offset + 2] & 0xFF) << 8
+                | (dados[offset + 3] & 0xFF);
+    }
+
+    private static long lerLong(byte[] dados, int offset) {
+        return ((long) lerInt(dados, offset) << 32) | (lerInt(dados, offset + 4) & 0xFFFFFFFFL);
+    }
+}
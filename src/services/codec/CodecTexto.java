@@ -0,0 +1,83 @@
+package services.codec;
+
+import java.util.function.LongSupplier;
+
+import services.manager.Operacao;
+import services.manager.Relogio;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe CodecTexto lê e escreve o formato de texto das ordens trocadas entre Brokers e a
+ * Bolsa de Valores: "ativo-quantidade-valor-corretora", com o valor em formato decimal. O lado
+ * da ordem (COMPRA ou VENDA) não faz parte do texto e vem da chave de roteamento.
+ */
+public final class CodecTexto {
+
+    // Separador dos campos da mensagem
+    private static final String SEPARADOR = "-";
+
+    private CodecTexto() {
+    }
+
+    /**
+     * Converte uma mensagem de texto em uma operação de compra ou venda. O valor é convertido
+     * diretamente para ticks do ativo, sem passar por ponto flutuante.
+     *
+     * @param mensagem     A mensagem recebida.
+     * @param tipoOperacao O tipo de operação (COMPRA ou VENDA).
+     * @return Uma instância de Operacao criada com base na mensagem, sem ID.
+     * @throws IllegalArgumentException Se a mensagem não estiver no formato esperado ou contiver valores inválidos.
+     */
+    public static Operacao paraOperacao(String mensagem, TipoOperacao tipoOperacao) {
+        return paraOperacao(mensagem, tipoOperacao, () -> Operacao.SEM_ID);
+    }
+
+    /**
+     * Converte uma mensagem de texto em uma operação de compra ou venda, com o ID obtido da
+     * fonte informada. O ID é obtido apenas depois da validação da mensagem, de modo que
+     * mensagens inválidas não consomem IDs.
+     *
+     * @param mensagem     A mensagem recebida.
+     * @param tipoOperacao O tipo de operação (COMPRA ou VENDA).
+     * @param ids          A fonte do ID da operação.
+     * @return Uma instância de Operacao criada com base na mensagem.
+     * @throws IllegalArgumentException Se a mensagem não estiver no formato esperado ou contiver valores inválidos.
+     */
+    public static Operacao paraOperacao(String mensagem, TipoOperacao tipoOperacao, LongSupplier ids) {
+        String[] campos = mensagem.split(SEPARADOR);
+        if (campos.length != 4) {
+            throw new IllegalArgumentException("Mensagem inválida, formato esperado: 'ativo-quantidade-valor-corretora'");
+        }
+        String ativo = campos[0];
+        CodecBinario.validarNome(ativo, CodecBinario.TAMANHO_ATIVO);
+        CodecBinario.validarNome(campos[3], CodecBinario.TAMANHO_CORRETORA);
+        int quantidade;
+        long preco;
+
+        try {
+            quantidade = Integer.parseInt(campos[1]);
+            preco = TabelaDeTicks.getInstance().paraTicks(ativo, campos[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Quantidade ou valor inválidos na mensagem: " + mensagem);
+        }
+        if (quantidade <= 0) {
+            throw new IllegalArgumentException("Quantidade inválida: " + quantidade);
+        }
+
+        return new Operacao(ids.getAsLong(), tipoOperacao, ativo, quantidade, preco, campos[3], Relogio.agora());
+    }
+
+    /**
+     * Escreve uma operação no formato de texto.
+     *
+     * @param operacao A operação a ser escrita.
+     * @return A mensagem no formato "ativo-quantidade-valor-corretora".
+     */
+    public static String deOperacao(Operacao operacao) {
+        return operacao.getAtivo() + SEPARADOR +
+                operacao.getQuantidade() + SEPARADOR +
+                operacao.getValorFormatado() + SEPARADOR +
+                operacao.getCorretora();
+    }
+}
@@ -0,0 +1,43 @@
+package services.codec;
+
+/**
+ * Enumeração que define os formatos de mensagem aceitos entre Brokers e a Bolsa de Valores.
+ * O formato de cada mensagem é indicado pela propriedade content-type do AMQP; mensagens sem
+ * content-type são tratadas como texto, para compatibilidade com Brokers antigos.
+ */
+public enum FormatoMensagem {
+    /**
+     * Formato de texto delimitado por hífens: "ativo-quantidade-valor-corretora".
+     */
+    TEXTO("text/plain"),
+
+    /**
+     * Formato binário de layout fixo e versionado, definido em CodecBinario.
+     */
+    BINARIO("application/x-bolsa-binario");
+
+    private final String tipoConteudo;
+
+    FormatoMensagem(String tipoConteudo) {
+        this.tipoConteudo = tipoConteudo;
+    }
+
+    /**
+     * Obtém o content-type AMQP correspondente ao formato.
+     *
+     * @return O content-type do formato.
+     */
+    public String getTipoConteudo() {
+        return tipoConteudo;
+    }
+
+    /**
+     * Determina o formato de uma mensagem a partir do seu content-type.
+     *
+     * @param tipoConteudo O content-type da mensagem, possivelmente null.
+     * @return BINARIO se o content-type for o do formato binário, TEXTO caso contrário.
+     */
+    public static FormatoMensagem deTipoConteudo(String tipoConteudo) {
+        return BINARIO.tipoConteudo.equals(tipoConteudo) ? BINARIO : TEXTO;
+    }
+}
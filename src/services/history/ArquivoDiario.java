@@ -0,0 +1,703 @@
+package services.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import services.manager.Dicionario;
+import services.manager.Operacao;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe ArquivoDiario é o arquivo colunar e comprimido dos negócios de um dia, gerado a partir
+ * do jornal de negócios na compactação de fim de dia. O jornal, de registros de tamanho fixo, é
+ * otimizado para a escrita; o arquivo, para consultas analíticas sobre o dia inteiro.
+ *
+ * Os negócios são ordenados por ativo e, dentro de cada ativo, na ordem do jornal, e divididos em
+ * blocos de REGISTROS_POR_BLOCO negócios. Dentro de um bloco, cada campo é gravado como uma coluna
+ * contígua:
+ *
+ * <pre>
+ * data e hora   deltas em relação ao negócio anterior do bloco (varint zigzag)
+ * ID            deltas em relação ao negócio anterior do bloco (varint zigzag)
+ * ativo         código no dicionário de ativos (varint)
+ * corretora     código no dicionário de corretoras (varint)
+ * lado          um bit por negócio (1 = VENDA)
+ * preço         em ponto fixo (unidades de 1/TabelaDeTicks.ESCALA), deltas (varint zigzag)
+ * quantidade    varint
+ * </pre>
+ *
+ * Os dicionários guardam os nomes em ordem alfabética, de modo que a ordem dos códigos é a dos
+ * nomes. O diretório de blocos guarda, para cada bloco, as datas, os códigos de ativo e os
+ * códigos de corretora mínimos e máximos e a posição de cada coluna. Uma consulta salta os blocos
+ * cujas estatísticas excluem o filtro e decodifica apenas as colunas de que precisa, em vetores
+ * de tipos primitivos. As agregações (somar) processam os blocos em paralelo, em um ForkJoinPool.
+ *
+ * Layout do arquivo: tamanho do cabeçalho (int), cabeçalho (mágico, versão, dia, quantidade de
+ * negócios, dicionários e diretório de blocos) e os dados dos blocos. O arquivo é imutável e é
+ * gravado de forma atômica; o jornal continua sendo a fonte dos negócios.
+ */
+public class ArquivoDiario {
+
+    /**
+     * Campo pelo qual os negócios são agrupados em uma agregação.
+     */
+    public enum Agrupamento {
+        ATIVO,
+        CORRETORA
+    }
+
+    /**
+     * Valor somado em uma agregação.
+     */
+    public enum Medida {
+        // Quantidade de ações negociadas
+        VOLUME,
+        // Soma de preço × quantidade, em ponto fixo
+        FINANCEIRO,
+        // Quantidade de negócios
+        NEGOCIOS
+    }
+
+    // Quantidade de negócios por bloco
+    static final int REGISTROS_POR_BLOCO = 4096;
+
+    private static final int MAGICO = 0x4A4E4341; // "JNCA"
+    private static final int VERSAO = 1;
+
+    // Colunas de cada bloco, na ordem em que são gravadas
+    private static final int COL_DATA_HORA = 0;
+    private static final int COL_ID = 1;
+    private static final int COL_ATIVO = 2;
+    private static final int COL_CORRETORA = 3;
+    private static final int COL_LADO = 4;
+    private static final int COL_PRECO = 5;
+    private static final int COL_QUANTIDADE = 6;
+    private static final int COLUNAS = 7;
+
+    private final LocalDate dia;
+    private final int registros;
+    private final String[] ativos;
+    private final String[] corretoras;
+    private final Map<String, Integer> codigosAtivos;
+    private final Map<String, Integer> codigosCorretoras;
+    private final Bloco[] blocos;
+    private final ByteBuffer dados; // somente leituras absolutas, compartilhado pelas threads
+    private final int inicioDados;
+
+    private ArquivoDiario(LocalDate dia, int registros, String[] ativos, String[] corretoras, Bloco[] blocos,
+                          ByteBuffer dados, int inicioDados) {
+        this.dia = dia;
+        this.registros = registros;
+        this.ativos = ativos;
+        this.corretoras = corretoras;
+        this.codigosAtivos = codigos(ativos);
+        this.codigosCorretoras = codigos(corretoras);
+        this.blocos = blocos;
+        this.dados = dados;
+        this.inicioDados = inicioDados;
+    }
+
+    /**
+     * Abre um arquivo diário gravado anteriormente, mapeando-o em memória.
+     *
+     * @param arquivo O caminho do arquivo.
+     * @return O arquivo aberto.
+     * @throws IOException Em caso de erro de leitura ou de formato inválido.
+     */
+    public static ArquivoDiario abrir(Path arquivo) throws IOException {
+        ByteBuffer dados;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        int tamanhoCabecalho = dados.getInt(0);
+        byte[] cabecalho = new byte[tamanhoCabecalho];
+        ByteBuffer leitura = dados.duplicate();
+        leitura.position(4);
+        leitura.get(cabecalho);
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(cabecalho))) {
+            if (in.readInt() != MAGICO || in.readInt() != VERSAO) {
+                throw new IOException("Arquivo diário inválido: " + arquivo);
+            }
+            LocalDate dia = LocalDate.ofEpochDay(in.readLong());
+            int registros = in.readInt();
+            String[] ativos = lerNomes(in);
+            String[] corretoras = lerNomes(in);
+            Bloco[] blocos = new Bloco[in.readInt()];
+            for (int i = 0; i < blocos.length; i++) {
+                Bloco bloco = new Bloco();
+                bloco.registros = in.readInt();
+                bloco.dataHoraMinima = in.readLong();
+                bloco.dataHoraMaxima = in.readLong();
+                bloco.ativoMinimo = in.readInt();
+                bloco.ativoMaximo = in.readInt();
+                bloco.corretoraMinima = in.readInt();
+                bloco.corretoraMaxima = in.readInt();
+                for (int c = 0; c <= COLUNAS; c++) {
+                    bloco.colunas[c] = in.readInt();
+                }
+                blocos[i] = bloco;
+            }
+            return new ArquivoDiario(dia, registros, ativos, corretoras, blocos, dados, 4 + tamanhoCabecalho);
+        }
+    }
+
+    /**
+     * Obtém o dia dos negócios do arquivo.
+     *
+     * @return O dia.
+     */
+    public LocalDate getDia() {
+        return dia;
+    }
+
+    /**
+     * Obtém a quantidade de negócios do arquivo.
+     *
+     * @return A quantidade de negócios.
+     */
+    public int getRegistros() {
+        return registros;
+    }
+
+    /**
+     * Obtém a quantidade de blocos do arquivo.
+     *
+     * @return A quantidade de blocos.
+     */
+    public int getBlocos() {
+        return blocos.length;
+    }
+
+    /**
+     * Soma uma medida dos negócios aceitos por um filtro, agrupada por ativo ou por corretora.
+     * Os blocos candidatos são processados em paralelo no ForkJoinPool comum; cada um decodifica
+     * apenas as colunas do agrupamento, da medida e dos campos do filtro que as estatísticas do
+     * bloco não resolvem.
+     *
+     * @param filtro      O filtro dos negócios (ativo, corretora e período).
+     * @param agrupamento O campo do agrupamento.
+     * @param medida      O valor somado.
+     * @return A soma de cada ativo ou corretora com negócios aceitos, em ordem alfabética.
+     */
+    public Map<String, Long> somar(FiltroHistorico filtro, Agrupamento agrupamento, Medida medida) {
+        Consulta consulta = new Consulta(filtro, agrupamento, medida);
+        String[] nomes = agrupamento == Agrupamento.ATIVO ? ativos : corretoras;
+        Map<String, Long> resultado = new LinkedHashMap<>();
+        if (!consulta.possivel || blocos.length == 0) {
+            return resultado;
+        }
+        long[] somas = ForkJoinPool.commonPool().invoke(new Soma(consulta, 0, blocos.length));
+        for (int codigo = 0; somas != null && codigo < nomes.length; codigo++) {
+            if (somas[codigo] != 0) {
+                resultado.put(nomes[codigo], somas[codigo]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Percorre os negócios aceitos por um filtro, ordenados por ativo e, em cada ativo, na ordem
+     * do jornal. Cada negócio é criado apenas para ser entregue ao consumidor.
+     *
+     * @param filtro     O filtro dos negócios.
+     * @param consumidor O consumidor que recebe cada negócio aceito.
+     */
+    public void percorrer(FiltroHistorico filtro, Consumer<Operacao> consumidor) {
+        Consulta consulta = new Consulta(filtro, Agrupamento.ATIVO, Medida.NEGOCIOS);
+        if (!consulta.possivel) {
+            return;
+        }
+        TabelaDeTicks ticks = TabelaDeTicks.getInstance();
+        long[] datas = new long[REGISTROS_POR_BLOCO];
+        long[] ids = new long[REGISTROS_POR_BLOCO];
+        int[] codigosAtivo = new int[REGISTROS_POR_BLOCO];
+        int[] codigosCorretora = new int[REGISTROS_POR_BLOCO];
+        long[] precos = new long[REGISTROS_POR_BLOCO];
+        int[] quantidades = new int[REGISTROS_POR_BLOCO];
+        for (Bloco bloco : blocos) {
+            if (!consulta.podeConter(bloco)) {
+                continue;
+            }
+            decodificarDeltas(bloco, COL_DATA_HORA, datas);
+            decodificarDeltas(bloco, COL_ID, ids);
+            decodificarCodigos(bloco, COL_ATIVO, codigosAtivo);
+            decodificarCodigos(bloco, COL_CORRETORA, codigosCorretora);
+            decodificarDeltas(bloco, COL_PRECO, precos);
+            decodificarCodigos(bloco, COL_QUANTIDADE, quantidades);
+            int lados = inicioDados + bloco.colunas[COL_LADO];
+            for (int i = 0; i < bloco.registros; i++) {
+                if (!consulta.aceita(datas[i], codigosAtivo[i], codigosCorretora[i])) {
+                    continue;
+                }
+                String ativo = ativos[codigosAtivo[i]];
+                TipoOperacao lado = (dados.get(lados + (i >>> 3)) >>> (i & 7) & 1) == 0 ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+                consumidor.accept(new Operacao(ids[i], lado, ativo, quantidades[i], ticks.paraTicks(ativo, precos[i]),
+                        corretoras[codigosCorretora[i]], datas[i]));
+            }
+        }
+    }
+
+    /**
+     * Soma a medida dos negócios aceitos de um bloco, por código do agrupamento, ou retorna null
+     * se as estatísticas do bloco excluem o filtro.
+     */
+    private long[] somarBloco(Bloco bloco, Consulta consulta) {
+        if (!consulta.podeConter(bloco)) {
+            return null;
+        }
+        int n = bloco.registros;
+        boolean porAtivo = consulta.agrupamento == Agrupamento.ATIVO;
+        int[] grupos = new int[n];
+        decodificarCodigos(bloco, porAtivo ? COL_ATIVO : COL_CORRETORA, grupos);
+
+        // Apenas os campos do filtro que as estatísticas do bloco não resolvem são decodificados
+        long[] datas = null;
+        if (consulta.inicio > bloco.dataHoraMinima || consulta.fim <= bloco.dataHoraMaxima) {
+            datas = new long[n];
+            decodificarDeltas(bloco, COL_DATA_HORA, datas);
+        }
+        int[] codigosAtivo = null;
+        if (consulta.ativo >= 0 && (bloco.ativoMinimo != consulta.ativo || bloco.ativoMaximo != consulta.ativo)) {
+            codigosAtivo = porAtivo ? grupos : decodificarCodigos(bloco, COL_ATIVO, new int[n]);
+        }
+        int[] codigosCorretora = null;
+        if (consulta.corretora >= 0 && (bloco.corretoraMinima != consulta.corretora || bloco.corretoraMaxima != consulta.corretora)) {
+            codigosCorretora = porAtivo ? decodificarCodigos(bloco, COL_CORRETORA, new int[n]) : grupos;
+        }
+        int[] quantidades = null;
+        if (consulta.medida != Medida.NEGOCIOS) {
+            quantidades = decodificarCodigos(bloco, COL_QUANTIDADE, new int[n]);
+        }
+        long[] precos = null;
+        if (consulta.medida == Medida.FINANCEIRO) {
+            precos = new long[n];
+            decodificarDeltas(bloco, COL_PRECO, precos);
+        }
+
+        long[] somas = new long[porAtivo ? ativos.length : corretoras.length];
+        for (int i = 0; i < n; i++) {
+            if (datas != null && (datas[i] < consulta.inicio || datas[i] >= consulta.fim)
+                    || codigosAtivo != null && codigosAtivo[i] != consulta.ativo
+                    || codigosCorretora != null && codigosCorretora[i] != consulta.corretora) {
+                continue;
+            }
+            switch (consulta.medida) {
+                case VOLUME:
+                    somas[grupos[i]] += quantidades[i];
+                    break;
+                case FINANCEIRO:
+                    somas[grupos[i]] += precos[i] * quantidades[i];
+                    break;
+                default:
+                    somas[grupos[i]]++;
+            }
+        }
+        return somas;
+    }
+
+    /**
+     * Decodifica uma coluna de deltas (data e hora, ID ou preço) de um bloco.
+     */
+    private void decodificarDeltas(Bloco bloco, int coluna, long[] destino) {
+        int p = inicioDados + bloco.colunas[coluna];
+        long anterior = 0;
+        for (int i = 0; i < bloco.registros; i++) {
+            long valor = 0;
+            int deslocamento = 0;
+            byte b;
+            do {
+                b = dados.get(p++);
+                valor |= (long) (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            } while (b < 0);
+            anterior += (valor >>> 1) ^ -(valor & 1);
+            destino[i] = anterior;
+        }
+    }
+
+    /**
+     * Decodifica uma coluna de inteiros não negativos (códigos ou quantidades) de um bloco.
+     */
+    private int[] decodificarCodigos(Bloco bloco, int coluna, int[] destino) {
+        int p = inicioDados + bloco.colunas[coluna];
+        for (int i = 0; i < bloco.registros; i++) {
+            int valor = 0;
+            int deslocamento = 0;
+            byte b;
+            do {
+                b = dados.get(p++);
+                valor |= (b & 0x7F) << deslocamento;
+                deslocamento += 7;
+            } while (b < 0);
+            destino[i] = valor;
+        }
+        return destino;
+    }
+
+    private static String[] lerNomes(DataInputStream in) throws IOException {
+        String[] nomes = new String[in.readInt()];
+        for (int i = 0; i < nomes.length; i++) {
+            nomes[i] = in.readUTF();
+        }
+        return nomes;
+    }
+
+    private static Map<String, Integer> codigos(String[] nomes) {
+        Map<String, Integer> codigos = new HashMap<>();
+        for (int i = 0; i < nomes.length; i++) {
+            codigos.put(nomes[i], i);
+        }
+        return codigos;
+    }
+
+    /**
+     * Filtro de uma consulta traduzido para os códigos dos dicionários.
+     */
+    private class Consulta {
+        final Agrupamento agrupamento;
+        final Medida medida;
+        final long inicio;
+        final long fim;
+        final int ativo; // -1 sem restrição
+        final int corretora; // -1 sem restrição
+        final boolean possivel; // false se o ativo ou a corretora do filtro não aparecem no dia
+
+        Consulta(FiltroHistorico filtro, Agrupamento agrupamento, Medida medida) {
+            this.agrupamento = agrupamento;
+            this.medida = medida;
+            this.inicio = filtro.getInicio();
+            this.fim = filtro.getFim();
+            Integer codigoAtivo = filtro.getAtivo() == null ? Integer.valueOf(-1) : codigosAtivos.get(filtro.getAtivo());
+            Integer codigoCorretora = filtro.getCorretora() == null ? Integer.valueOf(-1) : codigosCorretoras.get(filtro.getCorretora());
+            this.possivel = codigoAtivo != null && codigoCorretora != null;
+            this.ativo = codigoAtivo == null ? -1 : codigoAtivo;
+            this.corretora = codigoCorretora == null ? -1 : codigoCorretora;
+        }
+
+        boolean podeConter(Bloco bloco) {
+            return bloco.dataHoraMaxima >= inicio && bloco.dataHoraMinima < fim
+                    && (ativo < 0 || ativo >= bloco.ativoMinimo && ativo <= bloco.ativoMaximo)
+                    && (corretora < 0 || corretora >= bloco.corretoraMinima && corretora <= bloco.corretoraMaxima);
+        }
+
+        boolean aceita(long dataHora, int codigoAtivo, int codigoCorretora) {
+            return dataHora >= inicio && dataHora < fim
+                    && (ativo < 0 || codigoAtivo == ativo)
+                    && (corretora < 0 || codigoCorretora == corretora);
+        }
+    }
+
+    /**
+     * Soma de um intervalo de blocos, dividida ao meio até um bloco por tarefa.
+     */
+    private class Soma extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Consulta consulta;
+        private final int primeiro;
+        private final int fim;
+
+        Soma(Consulta consulta, int primeiro, int fim) {
+            this.consulta = consulta;
+            this.primeiro = primeiro;
+            this.fim = fim;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (fim - primeiro == 1) {
+                return somarBloco(blocos[primeiro], consulta);
+            }
+            int meio = (primeiro + fim) >>> 1;
+            Soma esquerda = new Soma(consulta, primeiro, meio);
+            esquerda.fork();
+            long[] direita = new Soma(consulta, meio, fim).compute();
+            long[] somas = esquerda.join();
+            if (somas == null) {
+                return direita;
+            }
+            if (direita != null) {
+                for (int i = 0; i < somas.length; i++) {
+                    somas[i] += direita[i];
+                }
+            }
+            return somas;
+        }
+    }
+
+    /**
+     * Entrada do diretório: estatísticas de um bloco e posições das suas colunas em relação ao
+     * início dos dados (a última posição é o fim do bloco).
+     */
+    private static class Bloco {
+        int registros;
+        long dataHoraMinima;
+        long dataHoraMaxima;
+        int ativoMinimo;
+        int ativoMaximo;
+        int corretoraMinima;
+        int corretoraMaxima;
+        final int[] colunas = new int[COLUNAS + 1];
+    }
+
+    /**
+     * Acumula os negócios de um dia em vetores de tipos primitivos e grava o arquivo diário.
+     * Recebe os negócios como um Consumer, por exemplo de JornalNegocios.consultar.
+     */
+    static class Compactador implements Consumer<Operacao> {
+        private final TabelaDeTicks ticks = TabelaDeTicks.getInstance();
+        private int quantidade;
+        private long[] datas = new long[1024];
+        private long[] ids = new long[1024];
+        private int[] codigosAtivo = new int[1024]; // códigos do Dicionario
+        private int[] codigosCorretora = new int[1024];
+        private boolean[] vendas = new boolean[1024];
+        private long[] precos = new long[1024];
+        private int[] quantidades = new int[1024];
+
+        @Override
+        public void accept(Operacao negocio) {
+            if (quantidade == datas.length) {
+                int capacidade = quantidade * 2;
+                datas = Arrays.copyOf(datas, capacidade);
+                ids = Arrays.copyOf(ids, capacidade);
+                codigosAtivo = Arrays.copyOf(codigosAtivo, capacidade);
+                codigosCorretora = Arrays.copyOf(codigosCorretora, capacidade);
+                vendas = Arrays.copyOf(vendas, capacidade);
+                precos = Arrays.copyOf(precos, capacidade);
+                quantidades = Arrays.copyOf(quantidades, capacidade);
+            }
+            datas[quantidade] = negocio.getDataHora();
+            ids[quantidade] = negocio.getId();
+            codigosAtivo[quantidade] = negocio.getCodigoAtivo();
+            codigosCorretora[quantidade] = negocio.getCodigoCorretora();
+            vendas[quantidade] = negocio.getTipo() == TipoOperacao.VENDA;
+            precos[quantidade] = ticks.paraPontoFixo(negocio.getAtivo(), negocio.getPreco());
+            quantidades[quantidade] = negocio.getQuantidade();
+            quantidade++;
+        }
+
+        /**
+         * Obtém a quantidade de negócios acumulados.
+         *
+         * @return A quantidade de negócios.
+         */
+        int getQuantidade() {
+            return quantidade;
+        }
+
+        /**
+         * Grava o arquivo diário de forma atômica (arquivo temporário seguido de renomeação).
+         *
+         * @param arquivo O caminho do arquivo.
+         * @param dia     O dia dos negócios.
+         * @return O arquivo gravado, aberto para consultas.
+         * @throws IOException Em caso de erro de escrita.
+         */
+        ArquivoDiario gravar(Path arquivo, LocalDate dia) throws IOException {
+            // Os códigos do Dicionario, válidos só no processo, passam à ordem alfabética dos nomes do dia
+            int[] novoAtivo = new int[Dicionario.getAtivos().tamanho()];
+            int[] novaCorretora = new int[Dicionario.getCorretoras().tamanho()];
+            String[] nomesAtivos = recodificar(Dicionario.getAtivos(), codigosAtivo, novoAtivo);
+            String[] nomesCorretoras = recodificar(Dicionario.getCorretoras(), codigosCorretora, novaCorretora);
+
+            // Ordenação estável por ativo (counting sort), que preserva a ordem do jornal em cada ativo
+            int[] inicioAtivo = new int[nomesAtivos.length + 1];
+            for (int i = 0; i < quantidade; i++) {
+                inicioAtivo[novoAtivo[codigosAtivo[i]] + 1]++;
+            }
+            for (int a = 0; a < nomesAtivos.length; a++) {
+                inicioAtivo[a + 1] += inicioAtivo[a];
+            }
+            int[] ordem = new int[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                ordem[inicioAtivo[novoAtivo[codigosAtivo[i]]]++] = i;
+            }
+
+            int quantidadeBlocos = (quantidade + REGISTROS_POR_BLOCO - 1) / REGISTROS_POR_BLOCO;
+            Bloco[] blocos = new Bloco[quantidadeBlocos];
+            Saida saida = new Saida(Math.max(1024, quantidade * 8));
+            for (int b = 0; b < quantidadeBlocos; b++) {
+                int de = b * REGISTROS_POR_BLOCO;
+                int ate = Math.min(quantidade, de + REGISTROS_POR_BLOCO);
+                Bloco bloco = new Bloco();
+                bloco.registros = ate - de;
+                bloco.dataHoraMinima = Long.MAX_VALUE;
+                bloco.dataHoraMaxima = Long.MIN_VALUE;
+                bloco.ativoMinimo = Integer.MAX_VALUE;
+                bloco.ativoMaximo = Integer.MIN_VALUE;
+                bloco.corretoraMinima = Integer.MAX_VALUE;
+                bloco.corretoraMaxima = Integer.MIN_VALUE;
+                for (int k = de; k < ate; k++) {
+                    int i = ordem[k];
+                    int ativo = novoAtivo[codigosAtivo[i]];
+                    int corretora = novaCorretora[codigosCorretora[i]];
+                    bloco.dataHoraMinima = Math.min(bloco.dataHoraMinima, datas[i]);
+                    bloco.dataHoraMaxima = Math.max(bloco.dataHoraMaxima, datas[i]);
+                    bloco.ativoMinimo = Math.min(bloco.ativoMinimo, ativo);
+                    bloco.ativoMaximo = Math.max(bloco.ativoMaximo, ativo);
+                    bloco.corretoraMinima = Math.min(bloco.corretoraMinima, corretora);
+                    bloco.corretoraMaxima = Math.max(bloco.corretoraMaxima, corretora);
+                }
+
+                bloco.colunas[COL_DATA_HORA] = saida.tamanho;
+                long anterior = 0;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverDelta(datas[ordem[k]] - anterior);
+                    anterior = datas[ordem[k]];
+                }
+                bloco.colunas[COL_ID] = saida.tamanho;
+                anterior = 0;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverDelta(ids[ordem[k]] - anterior);
+                    anterior = ids[ordem[k]];
+                }
+                bloco.colunas[COL_ATIVO] = saida.tamanho;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverVarint(novoAtivo[codigosAtivo[ordem[k]]]);
+                }
+                bloco.colunas[COL_CORRETORA] = saida.tamanho;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverVarint(novaCorretora[codigosCorretora[ordem[k]]]);
+                }
+                bloco.colunas[COL_LADO] = saida.tamanho;
+                for (int k = de; k < ate; k += 8) {
+                    int bits = 0;
+                    for (int j = 0; j < 8 && k + j < ate; j++) {
+                        bits |= (vendas[ordem[k + j]] ? 1 : 0) << j;
+                    }
+                    saida.escreverByte(bits);
+                }
+                bloco.colunas[COL_PRECO] = saida.tamanho;
+                anterior = 0;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverDelta(precos[ordem[k]] - anterior);
+                    anterior = precos[ordem[k]];
+                }
+                bloco.colunas[COL_QUANTIDADE] = saida.tamanho;
+                for (int k = de; k < ate; k++) {
+                    saida.escreverVarint(quantidades[ordem[k]]);
+                }
+                bloco.colunas[COLUNAS] = saida.tamanho;
+                blocos[b] = bloco;
+            }
+
+            ByteArrayOutputStream bytesCabecalho = new ByteArrayOutputStream();
+            try (DataOutputStream cabecalho = new DataOutputStream(bytesCabecalho)) {
+                cabecalho.writeInt(MAGICO);
+                cabecalho.writeInt(VERSAO);
+                cabecalho.writeLong(dia.toEpochDay());
+                cabecalho.writeInt(quantidade);
+                gravarNomes(cabecalho, nomesAtivos);
+                gravarNomes(cabecalho, nomesCorretoras);
+                cabecalho.writeInt(blocos.length);
+                for (Bloco bloco : blocos) {
+                    cabecalho.writeInt(bloco.registros);
+                    cabecalho.writeLong(bloco.dataHoraMinima);
+                    cabecalho.writeLong(bloco.dataHoraMaxima);
+                    cabecalho.writeInt(bloco.ativoMinimo);
+                    cabecalho.writeInt(bloco.ativoMaximo);
+                    cabecalho.writeInt(bloco.corretoraMinima);
+                    cabecalho.writeInt(bloco.corretoraMaxima);
+                    for (int posicao : bloco.colunas) {
+                        cabecalho.writeInt(posicao);
+                    }
+                }
+            }
+
+            Files.createDirectories(arquivo.toAbsolutePath().getParent());
+            Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporario);
+                 DataOutputStream dadosSaida = new DataOutputStream(out)) {
+                dadosSaida.writeInt(bytesCabecalho.size());
+                bytesCabecalho.writeTo(dadosSaida);
+                dadosSaida.write(saida.bytes, 0, saida.tamanho);
+            }
+            Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return abrir(arquivo);
+        }
+
+        private String[] recodificar(Dicionario dicionario, int[] codigos, int[] novo) {
+            boolean[] usados = new boolean[novo.length];
+            int distintos = 0;
+            for (int i = 0; i < quantidade; i++) {
+                if (!usados[codigos[i]]) {
+                    usados[codigos[i]] = true;
+                    distintos++;
+                }
+            }
+            String[] nomes = new String[distintos];
+            int n = 0;
+            for (int codigo = 0; codigo < usados.length; codigo++) {
+                if (usados[codigo]) {
+                    nomes[n++] = dicionario.nome(codigo);
+                }
+            }
+            Arrays.sort(nomes);
+            for (int i = 0; i < nomes.length; i++) {
+                novo[dicionario.codigo(nomes[i])] = i;
+            }
+            return nomes;
+        }
+
+        private static void gravarNomes(DataOutputStream out, String[] nomes) throws IOException {
+            out.writeInt(nomes.length);
+            for (String nome : nomes) {
+                out.writeUTF(nome);
+            }
+        }
+    }
+
+    /**
+     * Vetor de bytes crescente onde os blocos são codificados.
+     */
+    private static class Saida {
+        byte[] bytes;
+        int tamanho;
+
+        Saida(int capacidade) {
+            bytes = new byte[capacidade];
+        }
+
+        void escreverByte(int valor) {
+            if (tamanho == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[tamanho++] = (byte) valor;
+        }
+
+        // Inteiro não negativo em grupos de 7 bits, do menos significativo, com o bit alto de continuação
+        void escreverVarint(long valor) {
+            while ((valor & ~0x7FL) != 0) {
+                escreverByte((int) (valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            escreverByte((int) valor);
+        }
+
+        // Delta com sinal em zigzag (0, -1, 1, -2, ... viram 0, 1, 2, 3, ...), para que deltas pequenos ocupem poucos bytes
+        void escreverDelta(long delta) {
+            escreverVarint((delta << 1) ^ (delta >> 63));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package services.history;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+import services.manager.Relogio;
+
+/**
+ * A classe FiltroHistorico descreve uma consulta ao histórico de negócios: um ativo, uma
+ * corretora e um intervalo de tempo, todos opcionais. O filtro é aplicado diretamente sobre
+ * os registros binários do jornal, de modo que registros descartados não geram objetos.
+ *
+ * Os filtros são imutáveis; cada método "com" retorna um novo filtro.
+ */
+public class FiltroHistorico {
+
+    private static final FiltroHistorico TODOS = new FiltroHistorico(null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private final String ativo;
+    private final String corretora;
+    private final long inicio;
+    private final long fim;
+
+    // Nomes já no formato do registro, para comparação sem decodificação
+    private final byte[] ativoRegistro;
+    private final byte[] corretoraRegistro;
+
+    // Um nome que não cabe no registro não pode ter sido gravado: o filtro não aceita nenhum negócio
+    private final boolean vazio;
+
+    private FiltroHistorico(String ativo, String corretora, long inicio, long fim) {
+        this.ativo = ativo;
+        this.corretora = corretora;
+        this.inicio = inicio;
+        this.fim = fim;
+        this.vazio = (ativo != null && !JornalNegocios.cabeNoRegistro(ativo, JornalNegocios.TAMANHO_ATIVO))
+                || (corretora != null && !JornalNegocios.cabeNoRegistro(corretora, JornalNegocios.TAMANHO_CORRETORA));
+        this.ativoRegistro = ativo == null || vazio ? null : JornalNegocios.nomeParaRegistro(ativo, JornalNegocios.TAMANHO_ATIVO);
+        this.corretoraRegistro = corretora == null || vazio ? null : JornalNegocios.nomeParaRegistro(corretora, JornalNegocios.TAMANHO_CORRETORA);
+    }
+
+    /**
+     * Obtém um filtro que aceita todos os negócios.
+     *
+     * @return O filtro vazio.
+     */
+    public static FiltroHistorico todos() {
+        return TODOS;
+    }
+
+    /**
+     * Restringe o filtro aos negócios de um ativo.
+     *
+     * @param ativo O ativo.
+     * @return Um novo filtro com a restrição.
+     */
+    public FiltroHistorico comAtivo(String ativo) {
+        return new FiltroHistorico(ativo, corretora, inicio, fim);
+    }
+
+    /**
+     * Restringe o filtro aos negócios de uma corretora.
+     *
+     * @param corretora A corretora.
+     * @return Um novo filtro com a restrição.
+     */
+    public FiltroHistorico comCorretora(String corretora) {
+        return new FiltroHistorico(ativo, corretora, inicio, fim);
+    }
+
+    /**
+     * Restringe o filtro aos negócios realizados em um intervalo de tempo.
+     *
+     * @param inicio O início do intervalo (inclusive), ou null para não limitar.
+     * @param fim    O fim do intervalo (exclusive), ou null para não limitar.
+     * @return Um novo filtro com a restrição.
+     */
+    public FiltroHistorico comPeriodo(LocalDateTime inicio, LocalDateTime fim) {
+        return new FiltroHistorico(ativo, corretora,
+                inicio == null ? Long.MIN_VALUE : paraNanos(inicio),
+                fim == null ? Long.MAX_VALUE : paraNanos(fim));
+    }
+
+    String getAtivo() {
+        return ativo;
+    }
+
+    String getCorretora() {
+        return corretora;
+    }
+
+    long getInicio() {
+        return inicio;
+    }
+
+    long getFim() {
+        return fim;
+    }
+
+    /**
+     * Indica se um intervalo de datas [minimo, maximo] pode conter negócios aceitos pelo filtro.
+     */
+    boolean intersecta(long minimo, long maximo) {
+        return !vazio && maximo >= inicio && minimo < fim;
+    }
+
+    /**
+     * Indica se o registro na posição informada é aceito pelo filtro.
+     */
+    boolean aceita(ByteBuffer dados, int p) {
+        long dataHora = dados.getLong(p + JornalNegocios.POS_DATA_HORA);
+        if (vazio || dataHora < inicio || dataHora >= fim) {
+            return false;
+        }
+        return (ativoRegistro == null || iguais(dados, p + JornalNegocios.POS_ATIVO, ativoRegistro))
+                && (corretoraRegistro == null || iguais(dados, p + JornalNegocios.POS_CORRETORA, corretoraRegistro));
+    }
+
+    private static boolean iguais(ByteBuffer dados, int p, byte[] nome) {
+        for (int i = 0; i < nome.length; i++) {
+            if (dados.get(p + i) != nome[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long paraNanos(LocalDateTime dataHora) {
+        return Relogio.deDataHora(dataHora);
+    }
+}
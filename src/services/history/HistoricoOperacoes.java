@@ -1,14 +1,36 @@
 package services.history;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import services.manager.Operacao;
+import utils.BolsaDeValoresConfig;
 
 /**
  * A classe HistoricoOperacoes gerencia o histórico de operações realizadas em um mercado financeiro.
- * Ela mantém um histórico das operações em um arquivo, permitindo consultas ao histórico.
+ * Ela mantém um histórico das operações em um jornal binário de registros de tamanho fixo
+ * (JornalNegocios), permitindo consultas ao histórico.
+ *
+ * As ordens recebidas pela Bolsa de Valores são gravadas em um segundo jornal, no mesmo
+ * diretório e formato, com o prefixo "ordens-". A posição de cada ordem nesse jornal é a sua
+ * sequência, usada pela recuperação do livro de ofertas para reaplicar as ordens posteriores
+ * ao último snapshot.
+ *
+ * Ao final de cada dia, os negócios do dia podem ser compactados em um ArquivoDiario colunar,
+ * no diretório de arquivos, para consultas analíticas sem ler o jornal registro a registro.
  * 
  * A classe segue o padrão Singleton para garantir que haja apenas uma instância durante a execução do programa.
  */
@@ -16,26 +38,77 @@ public class HistoricoOperacoes {
 
     private static HistoricoOperacoes instance;
     
-    // Lista para armazenar o histórico de operações
-    private final List<Operacao> historico;
-    
-    // Buffer para acumular operações em lote
-    private final List<Operacao> buffer;
-    
-    // Caminho padrão para o arquivo de histórico
-    private static final String ARQUIVO_HISTORICO = "HistoricoTransacao.txt";
+    // Jornal onde os negócios são gravados
+    private final JornalNegocios jornal;
+
+    // Jornal onde as ordens recebidas são gravadas, antes do casamento
+    private final JornalNegocios jornalOrdens;
+
+    // Prefixo dos segmentos do jornal de ordens
+    private static final String PREFIXO_ORDENS = "ordens-";
+
+    // Modo de durabilidade do jornal
+    private final ModoDurabilidade modo;
     
-    // Tamanho máximo padrão do lote antes de escrever no arquivo
+    // Tamanho máximo padrão do lote antes de forçar a escrita no disco (modo POR_LOTE)
     private static final int TAMANHO_LOTE_PADRAO = 100;
+
+    // Prefixo e sufixo dos arquivos diários ("negocios-2024-01-31.col")
+    private static final String PREFIXO_ARQUIVO = "negocios-";
+    private static final String SUFIXO_ARQUIVO = ".col";
+
+    // Diretório dos arquivos diários
+    private final Path diretorioArquivos = Paths.get(BolsaDeValoresConfig.DIRETORIO_ARQUIVO);
+
+    // Agenda a compactação diária; a thread só é criada no primeiro agendamento
+    private final ScheduledExecutorService compactacao = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "HistoricoOperacoes-compactacao");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     /**
      * Construtor privado para evitar a criação direta de instâncias.
-     * Inicializa a lista de histórico e o buffer de operações.
+     * Abre os jornais de negócios e de ordens, posicionando a escrita após o último registro
+     * válido de cada um.
      */
     private HistoricoOperacoes() {
-        this.historico = new ArrayList<>();
-        this.buffer = new ArrayList<>();
-        carregarHistorico(); // Carrega o histórico a partir do arquivo
+        this.modo = ModoDurabilidade.valueOf(BolsaDeValoresConfig.DURABILIDADE_HISTORICO.toUpperCase());
+        try {
+            this.jornal = new JornalNegocios(
+                    Paths.get(BolsaDeValoresConfig.DIRETORIO_HISTORICO),
+                    BolsaDeValoresConfig.TAMANHO_SEGMENTO_HISTORICO,
+                    modo,
+                    TAMANHO_LOTE_PADRAO,
+                    BolsaDeValoresConfig.INTERVALO_SINCRONIZACAO_HISTORICO);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao abrir o jornal de negócios", e);
+        }
+        try {
+            this.jornalOrdens = new JornalNegocios(
+                    Paths.get(BolsaDeValoresConfig.DIRETORIO_HISTORICO),
+                    PREFIXO_ORDENS,
+                    BolsaDeValoresConfig.TAMANHO_SEGMENTO_HISTORICO,
+                    modo,
+                    TAMANHO_LOTE_PADRAO,
+                    BolsaDeValoresConfig.INTERVALO_SINCRONIZACAO_HISTORICO);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao abrir o jornal de ordens", e);
+        }
+
+        // Garante que os registros pendentes cheguem ao disco no encerramento
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                jornal.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o jornal de negócios: " + e.getMessage());
+            }
+            try {
+                jornalOrdens.close();
+            } catch (IOException e) {
+                System.err.println("Erro ao fechar o jornal de ordens: " + e.getMessage());
+            }
+        }));
     }
     
     /**
@@ -51,64 +124,192 @@ public class HistoricoOperacoes {
     }
     
     /**
-     * Registra uma operação no histórico, adicionando-a ao buffer.
-     * Se o buffer atingir ou ultrapassar o tamanho máximo do lote, as operações são salvas em lote.
+     * Registra uma operação no histórico, acrescentando-a ao jornal de negócios.
+     * A escrita no disco segue o modo de durabilidade configurado.
      *
      * @param operacao A operação a ser registrada.
      */
-    public synchronized void registrarOperacao(Operacao operacao) {
-        buffer.add(operacao); // Adiciona a operação ao buffer
-        
-        // Se o buffer atingir ou ultrapassar o tamanho máximo do lote, salva as operações
-        if (buffer.size() >= TAMANHO_LOTE_PADRAO) {
-            salvarLote();
+    public void registrarOperacao(Operacao operacao) {
+        try {
+            jornal.registrar(operacao);
+        } catch (IOException e) {
+            System.err.println("Erro ao registrar a operação no histórico: " + e.getMessage());
         }
     }
     
     /**
-     * Consulta o histórico de operações.
+     * Registra uma ordem recebida, antes do casamento, acrescentando-a ao jornal de ordens.
+     * A ordem deve ser registrada com a quantidade recebida, antes que o casamento a altere.
+     * As alterações de ordens são registradas no mesmo jornal, na ordem de chegada.
      *
-     * @return Uma lista contendo o histórico de operações.
+     * Ao contrário dos negócios, uma ordem que não pôde ser registrada não deve ser processada:
+     * a recuperação do livro não a reproduziria.
+     *
+     * @param ordem A ordem ou a alteração recebida.
+     * @throws IOException Em caso de erro ao gravar o jornal de ordens.
+     */
+    public void registrarOrdem(Operacao ordem) throws IOException {
+        jornalOrdens.registrar(ordem);
+    }
+
+    /**
+     * Percorre, em ordem de chegada, as ordens registradas a partir de uma sequência.
+     *
+     * @param primeira   A sequência da primeira ordem entregue (0 para todas).
+     * @param consumidor O consumidor que recebe cada ordem.
+     * @return A quantidade de ordens entregues.
+     * @throws IOException Em caso de erro ao ler o jornal de ordens.
+     */
+    public long percorrerOrdens(long primeira, Consumer<Operacao> consumidor) throws IOException {
+        return jornalOrdens.percorrer(primeira, consumidor);
+    }
+
+    /**
+     * Conta as ordens registradas no jornal de ordens.
+     *
+     * @return A quantidade de ordens.
+     * @throws IOException Em caso de erro ao ler o jornal de ordens.
+     */
+    public long quantidadeOrdens() throws IOException {
+        return jornalOrdens.quantidadeRegistros();
+    }
+
+    /**
+     * Obtém o maior ID de ordem registrado no jornal de ordens.
+     *
+     * @return O maior ID, ou 0 se não houver ordens.
+     * @throws IOException Em caso de erro ao ler o jornal de ordens.
+     */
+    public long maiorIdOrdem() throws IOException {
+        return jornalOrdens.maiorId();
+    }
+
+    /**
+     * Conta os negócios registrados no jornal de negócios.
+     *
+     * @return A quantidade de negócios.
+     * @throws IOException Em caso de erro ao ler o jornal de negócios.
+     */
+    public long quantidadeNegocios() throws IOException {
+        return jornal.quantidadeRegistros();
+    }
+
+    /**
+     * Obtém o maior ID de negócio registrado no jornal de negócios. No modo particionado, os
+     * negócios não são gravados na ordem dos IDs, e a quantidade de registros não indica o
+     * último ID atribuído.
+     *
+     * @return O maior ID, ou 0 se não houver negócios.
+     * @throws IOException Em caso de erro ao ler o jornal de negócios.
+     */
+    public long maiorIdNegocio() throws IOException {
+        return jornal.maiorId();
+    }
+
+    /**
+     * Força para o disco todas as operações e ordens registradas até o momento.
      */
-    public synchronized List<Operacao> consultarHistorico() {
-        return new ArrayList<>(historico);
+    public void sincronizar() {
+        jornal.sincronizar();
+        jornalOrdens.sincronizar();
     }
     
     /**
-     * Salva as operações acumuladas no buffer em um arquivo de histórico.
+     * Garante a durabilidade das operações e ordens registradas até o momento conforme o modo
+     * configurado: força a escrita no disco nos modos POR_LOTE e TEMPORIZADO e deixa a cargo
+     * do sistema operacional no modo SISTEMA_OPERACIONAL.
      */
-    private synchronized void salvarLote() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ARQUIVO_HISTORICO, true))) {
-            // Escreve todas as operações do buffer ao final do arquivo
-            for (Operacao operacao : buffer) {
-                oos.writeObject(operacao);
-            }
-            // Limpa o buffer após a escrita
-            buffer.clear();
+    public void garantirDurabilidade() {
+        if (modo != ModoDurabilidade.SISTEMA_OPERACIONAL) {
+            jornal.sincronizar();
+            jornalOrdens.sincronizar();
+        }
+    }
+
+    /**
+     * Consulta as operações aceitas por um filtro, entregando-as uma a uma ao consumidor, em
+     * ordem de registro. A consulta usa os índices dos segmentos e não bloqueia novos registros.
+     *
+     * @param filtro     O filtro da consulta (ativo, corretora e período).
+     * @param consumidor O consumidor que recebe cada operação encontrada.
+     */
+    public void consultar(FiltroHistorico filtro, Consumer<Operacao> consumidor) {
+        try {
+            jornal.consultar(filtro, consumidor);
         } catch (IOException e) {
-            System.err.println("Erro ao salvar o lote no histórico: " + e.getMessage());
-            // Lidar com exceções adequadamente
+            System.err.println("Erro ao consultar o histórico: " + e.getMessage());
         }
     }
-    
+
     /**
-     * Carrega o histórico de operações a partir de um arquivo.
-     */
-    private synchronized void carregarHistorico() {
-        File file = new File(ARQUIVO_HISTORICO);
-        if (file.exists()) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                historico.clear();
-                Operacao operacao;
-                while ((operacao = (Operacao) ois.readObject()) != null) {
-                    historico.add(operacao);
-                }
-            } catch (EOFException e) {
-                // Fim do arquivo alcançado, o que é esperado
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Erro ao carregar o histórico: " + e.getMessage());
-                // Lidar com exceções adequadamente
+     * Compacta os negócios de um dia, no fuso horário do sistema, em um arquivo diário colunar,
+     * substituindo o arquivo do dia se ele já existir. O jornal não é alterado.
+     *
+     * @param dia O dia dos negócios.
+     * @return O arquivo diário gravado.
+     * @throws IOException Em caso de erro ao ler o jornal ou ao gravar o arquivo.
+     */
+    public ArquivoDiario compactarDia(LocalDate dia) throws IOException {
+        ArquivoDiario.Compactador compactador = new ArquivoDiario.Compactador();
+        jornal.consultar(FiltroHistorico.todos().comPeriodo(dia.atStartOfDay(), dia.plusDays(1).atStartOfDay()), compactador);
+        return compactador.gravar(arquivoDiario(dia), dia);
+    }
+
+    /**
+     * Abre o arquivo diário de um dia já compactado.
+     *
+     * @param dia O dia dos negócios.
+     * @return O arquivo diário, ou null se o dia não foi compactado.
+     * @throws IOException Em caso de erro ao ler o arquivo.
+     */
+    public ArquivoDiario abrirArquivoDiario(LocalDate dia) throws IOException {
+        Path arquivo = arquivoDiario(dia);
+        return Files.exists(arquivo) ? ArquivoDiario.abrir(arquivo) : null;
+    }
+
+    /**
+     * Agenda a compactação diária: em cada dia, no horário informado, os negócios do dia corrente
+     * são compactados. O horário deve ser posterior ao fechamento do pregão.
+     *
+     * @param horario O horário da compactação.
+     */
+    public void agendarCompactacao(LocalTime horario) {
+        LocalDateTime agora = LocalDateTime.now();
+        LocalDateTime proximo = agora.toLocalDate().atTime(horario);
+        if (!proximo.isAfter(agora)) {
+            proximo = proximo.plusDays(1);
+        }
+        compactacao.scheduleAtFixedRate(() -> {
+            LocalDate dia = LocalDate.now();
+            try {
+                long inicio = System.nanoTime();
+                ArquivoDiario arquivo = compactarDia(dia);
+                System.out.println("[HistoricoOperacoes] " + arquivo.getRegistros() + " negócios de " + dia
+                        + " compactados em " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[HistoricoOperacoes] Erro ao compactar os negócios de " + dia + ": " + e.getMessage());
             }
+        }, Duration.between(agora, proximo).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        System.out.println("[HistoricoOperacoes] Compactação diária agendada para " + horario);
+    }
+
+    private Path arquivoDiario(LocalDate dia) {
+        return diretorioArquivos.resolve(PREFIXO_ARQUIVO + dia + SUFIXO_ARQUIVO);
+    }
+
+    /**
+     * Consulta o histórico de operações, lendo-o do jornal de negócios. Todo o histórico é
+     * carregado na memória; para históricos grandes, prefira consultar(FiltroHistorico, Consumer).
+     *
+     * @return Uma lista contendo o histórico de operações.
+     */
+    public List<Operacao> consultarHistorico() {
+        List<Operacao> historico = new ArrayList<>();
+        try {
+            jornal.percorrer(historico::add);
+        } catch (IOException e) {
+            System.err.println("Erro ao carregar o histórico: " + e.getMessage());
         }
+        return historico;
     }
 }
@@ -0,0 +1,264 @@
+package services.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import services.codec.CacheDeNomes;
+
+/**
+ * A classe IndiceSegmento é um índice esparso de um segmento fechado do jornal de negócios.
+ * O segmento é dividido em blocos de REGISTROS_POR_BLOCO registros; para cada bloco o índice
+ * guarda as datas mínima e máxima e, para cada ativo e cada corretora, a lista de blocos em
+ * que aparecem. Uma consulta lê apenas os blocos que podem conter resultados.
+ *
+ * O índice é gravado ao lado do segmento, com a extensão ".idx", e é imutável.
+ */
+class IndiceSegmento {
+
+    // Quantidade de registros por bloco indexado
+    static final int REGISTROS_POR_BLOCO = 1024;
+
+    private static final int MAGICO = 0x4A4E4958; // "JNIX"
+    private static final int VERSAO = 1;
+
+    private final int registros;
+    private final long minimo;
+    private final long maximo;
+    private final long[] minimoBloco;
+    private final long[] maximoBloco;
+    private final Map<String, int[]> blocosPorAtivo;
+    private final Map<String, int[]> blocosPorCorretora;
+
+    private IndiceSegmento(int registros, long[] minimoBloco, long[] maximoBloco,
+                           Map<String, int[]> blocosPorAtivo, Map<String, int[]> blocosPorCorretora) {
+        this.registros = registros;
+        this.minimoBloco = minimoBloco;
+        this.maximoBloco = maximoBloco;
+        this.blocosPorAtivo = blocosPorAtivo;
+        this.blocosPorCorretora = blocosPorCorretora;
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < minimoBloco.length; i++) {
+            min = Math.min(min, minimoBloco[i]);
+            max = Math.max(max, maximoBloco[i]);
+        }
+        this.minimo = min;
+        this.maximo = max;
+    }
+
+    /**
+     * Constrói o índice percorrendo os registros válidos de um segmento.
+     *
+     * @param dados Os bytes do segmento, com o cabeçalho já validado.
+     * @return O índice do segmento.
+     */
+    static IndiceSegmento construir(ByteBuffer dados) {
+        int registros = JornalNegocios.contarRegistrosValidos(dados);
+        int blocos = (registros + REGISTROS_POR_BLOCO - 1) / REGISTROS_POR_BLOCO;
+        long[] minimoBloco = new long[blocos];
+        long[] maximoBloco = new long[blocos];
+        Map<String, ListaBlocos> ativos = new HashMap<>();
+        Map<String, ListaBlocos> corretoras = new HashMap<>();
+        byte[] registro = new byte[JornalNegocios.TAMANHO_REGISTRO];
+        ByteBuffer leitura = dados.duplicate();
+        CacheDeNomes nomes = new CacheDeNomes(1024);
+
+        for (int bloco = 0; bloco < blocos; bloco++) {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            int fim = Math.min(registros, (bloco + 1) * REGISTROS_POR_BLOCO);
+            for (int i = bloco * REGISTROS_POR_BLOCO; i < fim; i++) {
+                int p = JornalNegocios.posicaoRegistro(i);
+                long dataHora = dados.getLong(p + JornalNegocios.POS_DATA_HORA);
+                min = Math.min(min, dataHora);
+                max = Math.max(max, dataHora);
+
+                leitura.position(p);
+                leitura.get(registro);
+                adicionar(ativos, nomes.obter(registro, JornalNegocios.POS_ATIVO, JornalNegocios.TAMANHO_ATIVO), bloco);
+                adicionar(corretoras, nomes.obter(registro, JornalNegocios.POS_CORRETORA, JornalNegocios.TAMANHO_CORRETORA), bloco);
+            }
+            minimoBloco[bloco] = min;
+            maximoBloco[bloco] = max;
+        }
+        return new IndiceSegmento(registros, minimoBloco, maximoBloco, compactar(ativos), compactar(corretoras));
+    }
+
+    /**
+     * Lê um índice gravado anteriormente.
+     *
+     * @param arquivo O arquivo do índice.
+     * @return O índice lido.
+     * @throws IOException Em caso de erro de leitura ou de formato inválido.
+     */
+    static IndiceSegmento ler(Path arquivo) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivo)))) {
+            if (in.readInt() != MAGICO || in.readInt() != VERSAO) {
+                throw new IOException("Índice inválido: " + arquivo);
+            }
+            int registros = in.readInt();
+            int blocos = in.readInt();
+            long[] minimoBloco = new long[blocos];
+            long[] maximoBloco = new long[blocos];
+            for (int i = 0; i < blocos; i++) {
+                minimoBloco[i] = in.readLong();
+                maximoBloco[i] = in.readLong();
+            }
+            return new IndiceSegmento(registros, minimoBloco, maximoBloco, lerListas(in), lerListas(in));
+        }
+    }
+
+    /**
+     * Grava o índice de forma atômica (arquivo temporário seguido de renomeação).
+     *
+     * @param arquivo O arquivo do índice.
+     * @throws IOException Em caso de erro de escrita.
+     */
+    void gravar(Path arquivo) throws IOException {
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporario)))) {
+            out.writeInt(MAGICO);
+            out.writeInt(VERSAO);
+            out.writeInt(registros);
+            out.writeInt(minimoBloco.length);
+            for (int i = 0; i < minimoBloco.length; i++) {
+                out.writeLong(minimoBloco[i]);
+                out.writeLong(maximoBloco[i]);
+            }
+            gravarListas(out, blocosPorAtivo);
+            gravarListas(out, blocosPorCorretora);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Obtém a quantidade de registros indexados.
+     *
+     * @return A quantidade de registros do segmento.
+     */
+    int getRegistros() {
+        return registros;
+    }
+
+    /**
+     * Calcula os blocos do segmento que podem conter negócios aceitos pelo filtro.
+     *
+     * @param filtro O filtro da consulta.
+     * @return Os índices dos blocos candidatos, em ordem crescente.
+     */
+    int[] blocosCandidatos(FiltroHistorico filtro) {
+        if (registros == 0 || !filtro.intersecta(minimo, maximo)) {
+            return new int[0];
+        }
+
+        int[] candidatos = null;
+        if (filtro.getAtivo() != null) {
+            candidatos = blocosPorAtivo.getOrDefault(filtro.getAtivo(), new int[0]);
+        }
+        if (filtro.getCorretora() != null) {
+            int[] daCorretora = blocosPorCorretora.getOrDefault(filtro.getCorretora(), new int[0]);
+            candidatos = candidatos == null ? daCorretora : intersecao(candidatos, daCorretora);
+        }
+        if (candidatos == null) {
+            candidatos = new int[minimoBloco.length];
+            for (int i = 0; i < candidatos.length; i++) {
+                candidatos[i] = i;
+            }
+        }
+
+        int quantidade = 0;
+        int[] resultado = new int[candidatos.length];
+        for (int bloco : candidatos) {
+            if (filtro.intersecta(minimoBloco[bloco], maximoBloco[bloco])) {
+                resultado[quantidade++] = bloco;
+            }
+        }
+        return Arrays.copyOf(resultado, quantidade);
+    }
+
+    private static int[] intersecao(int[] a, int[] b) {
+        int[] resultado = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int quantidade = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                resultado[quantidade++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(resultado, quantidade);
+    }
+
+    private static void adicionar(Map<String, ListaBlocos> listas, String nome, int bloco) {
+        listas.computeIfAbsent(nome, chave -> new ListaBlocos()).adicionar(bloco);
+    }
+
+    private static Map<String, int[]> compactar(Map<String, ListaBlocos> listas) {
+        Map<String, int[]> compactas = new HashMap<>();
+        for (Map.Entry<String, ListaBlocos> entrada : listas.entrySet()) {
+            ListaBlocos lista = entrada.getValue();
+            compactas.put(entrada.getKey(), Arrays.copyOf(lista.blocos, lista.quantidade));
+        }
+        return compactas;
+    }
+
+    private static void gravarListas(DataOutputStream out, Map<String, int[]> listas) throws IOException {
+        out.writeInt(listas.size());
+        for (Map.Entry<String, int[]> entrada : listas.entrySet()) {
+            out.writeUTF(entrada.getKey());
+            out.writeInt(entrada.getValue().length);
+            for (int bloco : entrada.getValue()) {
+                out.writeInt(bloco);
+            }
+        }
+    }
+
+    private static Map<String, int[]> lerListas(DataInputStream in) throws IOException {
+        int quantidade = in.readInt();
+        Map<String, int[]> listas = new HashMap<>();
+        for (int i = 0; i < quantidade; i++) {
+            String nome = in.readUTF();
+            int[] blocos = new int[in.readInt()];
+            for (int j = 0; j < blocos.length; j++) {
+                blocos[j] = in.readInt();
+            }
+            listas.put(nome, blocos);
+        }
+        return listas;
+    }
+
+    /**
+     * Lista crescente de blocos sem repetição, usada durante a construção do índice.
+     */
+    private static class ListaBlocos {
+        private int[] blocos = new int[4];
+        private int quantidade;
+
+        void adicionar(int bloco) {
+            if (quantidade > 0 && blocos[quantidade - 1] == bloco) {
+                return;
+            }
+            if (quantidade == blocos.length) {
+                blocos = Arrays.copyOf(blocos, quantidade * 2);
+            }
+            blocos[quantidade++] = bloco;
+        }
+    }
+}
@@ -0,0 +1,692 @@
+package services.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import services.codec.CacheDeNomes;
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * A classe JornalNegocios grava os negócios realizados em registros binários de tamanho fixo,
+ * acrescentados ao final de segmentos de arquivo mapeados em memória. Cada registro é validado
+ * por uma soma de verificação, o que permite reabrir o jornal após uma queda e ler exatamente
+ * os registros completos.
+ *
+ * Cada segmento começa com um cabeçalho do tamanho de um registro, com um número mágico, a
+ * versão do layout e o tamanho do registro. Um segmento com outro cabeçalho é recusado ao
+ * ser aberto, de modo que uma mudança futura do layout é detectada, e não interpretada.
+ *
+ * Layout do cabeçalho (64 bytes, big-endian):
+ *
+ * <pre>
+ *  0 número mágico (int, "JNLS")
+ *  4 versão do layout (int)
+ *  8 tamanho do registro (int)
+ * 12 reservado (zeros)
+ * </pre>
+ *
+ * Layout de um registro (64 bytes, big-endian), a partir do fim do cabeçalho:
+ *
+ * <pre>
+ *  0 data e hora (long, nanossegundos desde a época)
+ *  8 preço (long, em ticks do ativo)
+ * 16 quantidade (int)
+ * 20 tipo (1 byte, 1 = COMPRA, 2 = VENDA) | 21 alteração (1 byte, 1 = alteração de ordem)
+ * 22 leilão (1 byte, 1 = abertura, 2 = encerramento) | 23 ID, 8 bits altos (1 byte)
+ * 24 ativo (12 bytes ASCII)
+ * 36 corretora (20 bytes ASCII)
+ * 56 ID, 32 bits baixos (int)
+ * 60 soma de verificação (int, nunca zero)
+ * </pre>
+ *
+ * A gravação é feita sob o monitor do jornal e custa apenas cópias para a memória mapeada. O
+ * fsync (force) é feito fora do monitor, conforme o ModoDurabilidade, de modo que um único
+ * fsync cobre todos os registros acrescentados até ali (group commit).
+ *
+ * As consultas nunca tomam o monitor do jornal: a posição de escrita é publicada em um campo
+ * volátil após cada registro, e os segmentos fechados são lidos por mapeamentos próprios. Ao
+ * ser fechado, cada segmento ganha em segundo plano um IndiceSegmento, usado para ler apenas
+ * os blocos que podem conter resultados.
+ *
+ * Cada registro guarda o ID da operação, com 40 bits, de modo que as ordens, os negócios e as
+ * execuções enviadas aos Brokers têm o mesmo ID no jornal, mesmo que os registros não estejam
+ * na ordem dos IDs (negócios de partições diferentes) ou que falte algum ID (gravação que
+ * falhou). A soma de verificação cobre o registro inteiro, inclusive os 40 bits do ID.
+ *
+ * O mesmo formato serve a outros jornais de operações, como o de ordens recebidas usado na
+ * recuperação do livro de ofertas; cada jornal usa um prefixo próprio nos nomes dos segmentos.
+ * No jornal de ordens, as alterações de ordens (Operacao.isAlteracao) são gravadas com o byte
+ * de alteração igual a 1 e com o ID da ordem alterada no lugar do preço, e os eventos de leilão
+ * (Operacao.isLeilao) com o byte de leilão igual ao evento.
+ */
+public class JornalNegocios implements Closeable {
+
+    // Tamanho de um registro, em bytes
+    public static final int TAMANHO_REGISTRO = 64;
+
+    // Prefixo padrão dos segmentos, usado pelo jornal de negócios
+    public static final String PREFIXO_SEGMENTO = "negocios-";
+    private static final String SUFIXO_SEGMENTO = ".jnl";
+    private static final String SUFIXO_INDICE = ".idx";
+
+    static final int POS_DATA_HORA = 0;
+    static final int POS_PRECO = 8;
+    static final int POS_QUANTIDADE = 16;
+    static final int POS_TIPO = 20;
+    static final int POS_ALTERACAO = 21;
+    static final int POS_LEILAO = 22;
+    static final int POS_ID_ALTO = 23;
+    static final int POS_ATIVO = 24;
+    static final int POS_CORRETORA = 36;
+    static final int POS_ID_BAIXO = 56;
+    static final int POS_VERIFICACAO = 60;
+    static final int TAMANHO_ATIVO = 12;
+    static final int TAMANHO_CORRETORA = 20;
+
+    // Cabeçalho de cada segmento, do tamanho de um registro para manter os registros alinhados
+    static final int TAMANHO_CABECALHO = TAMANHO_REGISTRO;
+    private static final int MAGICO_SEGMENTO = 0x4A4E4C53; // "JNLS"
+    private static final int VERSAO_SEGMENTO = 1;
+
+    // Maior ID que cabe nos 40 bits do registro
+    static final long ID_MAXIMO = (1L << 40) - 1;
+
+    private final Path diretorio;
+    private final String prefixo;
+    private final int tamanhoSegmento;
+    private final ModoDurabilidade modo;
+    private final int tamanhoLote;
+
+    // Segmentos fechados e segmento atual, publicados juntos para os leitores
+    private volatile Estado estado;
+
+    // Número do segmento atual (32 bits altos) e posição de escrita nele (32 bits baixos)
+    private volatile long cursor;
+
+    // Estado do escritor, protegido pelo monitor do jornal
+    private FileChannel canalAtual;
+    private int posicao;
+    private int pendentes;
+    private boolean fechado;
+
+    private final Thread sincronizador;
+    private final ExecutorService indexador;
+
+    // Índices dos segmentos fechados já lidos do disco
+    private final Map<Path, IndiceSegmento> indices = new ConcurrentHashMap<>();
+
+    /**
+     * Abre o jornal no diretório informado, criando-o se necessário, e posiciona a escrita
+     * após o último registro válido.
+     *
+     * @param diretorio          O diretório dos segmentos.
+     * @param tamanhoSegmento    O tamanho de cada segmento, em bytes, com o cabeçalho (arredondado para registros inteiros).
+     * @param modo               O modo de durabilidade.
+     * @param tamanhoLote        A quantidade de registros por fsync no modo POR_LOTE.
+     * @param intervaloMillis    O intervalo entre fsyncs no modo TEMPORIZADO, em milissegundos.
+     * @throws IOException Em caso de erro ao abrir ou mapear os segmentos, ou se um segmento
+     *                     tiver um cabeçalho desconhecido.
+     */
+    public JornalNegocios(Path diretorio, int tamanhoSegmento, ModoDurabilidade modo,
+                          int tamanhoLote, long intervaloMillis) throws IOException {
+        this(diretorio, PREFIXO_SEGMENTO, tamanhoSegmento, modo, tamanhoLote, intervaloMillis);
+    }
+
+    /**
+     * Abre um jornal cujos segmentos têm o prefixo informado, o que permite manter mais de um
+     * jornal no mesmo diretório.
+     *
+     * @param diretorio          O diretório dos segmentos.
+     * @param prefixo            O prefixo dos nomes dos segmentos (por exemplo, "ordens-").
+     * @param tamanhoSegmento    O tamanho de cada segmento, em bytes, com o cabeçalho (arredondado para registros inteiros).
+     * @param modo               O modo de durabilidade.
+     * @param tamanhoLote        A quantidade de registros por fsync no modo POR_LOTE.
+     * @param intervaloMillis    O intervalo entre fsyncs no modo TEMPORIZADO, em milissegundos.
+     * @throws IOException Em caso de erro ao abrir ou mapear os segmentos, ou se um segmento
+     *                     tiver um cabeçalho desconhecido.
+     */
+    public JornalNegocios(Path diretorio, String prefixo, int tamanhoSegmento, ModoDurabilidade modo,
+                          int tamanhoLote, long intervaloMillis) throws IOException {
+        this.diretorio = diretorio;
+        this.prefixo = prefixo;
+        this.tamanhoSegmento = TAMANHO_CABECALHO
+                + Math.max((tamanhoSegmento - TAMANHO_CABECALHO) / TAMANHO_REGISTRO, 1) * TAMANHO_REGISTRO;
+        this.modo = modo;
+        this.tamanhoLote = tamanhoLote;
+        this.indexador = Executors.newSingleThreadExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "JornalNegocios-indexador");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Files.createDirectories(diretorio);
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorio, prefixo + "*" + SUFIXO_SEGMENTO)) {
+            for (Path arquivo : arquivos) {
+                segmentos.add(arquivo);
+            }
+        }
+        Collections.sort(segmentos);
+
+        if (segmentos.isEmpty()) {
+            abrirSegmento(new ArrayList<>());
+        } else {
+            Path ultimo = segmentos.remove(segmentos.size() - 1);
+            for (Path segmento : segmentos) {
+                if (!Files.exists(arquivoIndice(segmento))) {
+                    indexador.execute(() -> indexar(segmento));
+                }
+            }
+            publicarEstado(segmentos, ultimo, mapear(ultimo));
+            posicao = contarRegistrosValidos(estado.atual) * TAMANHO_REGISTRO;
+            publicarCursor();
+        }
+
+        if (modo == ModoDurabilidade.TEMPORIZADO) {
+            sincronizador = new Thread(() -> sincronizarPeriodicamente(intervaloMillis), "JornalNegocios-sincronizador");
+            sincronizador.setDaemon(true);
+            sincronizador.start();
+        } else {
+            sincronizador = null;
+        }
+    }
+
+    /**
+     * Acrescenta um negócio ao jornal. No modo POR_LOTE, a thread que completa um lote faz o
+     * fsync de todos os registros pendentes antes de retornar.
+     *
+     * @param operacao O negócio a ser registrado.
+     * @throws IOException Em caso de erro ao criar um novo segmento ou ao forçar a escrita.
+     * @throws IllegalArgumentException Se o ID ou um dos nomes não couber no registro.
+     */
+    public void registrar(Operacao operacao) throws IOException {
+        MappedByteBuffer paraSincronizar = null;
+        synchronized (this) {
+            if (fechado) {
+                throw new IOException("Jornal de negócios fechado");
+            }
+            if (TAMANHO_CABECALHO + posicao + TAMANHO_REGISTRO > tamanhoSegmento) {
+                fecharSegmentoAtual();
+            }
+
+            MappedByteBuffer atual = estado.atual;
+            escreverRegistro(atual, TAMANHO_CABECALHO + posicao, operacao);
+            posicao += TAMANHO_REGISTRO;
+            publicarCursor();
+
+            if (modo == ModoDurabilidade.POR_LOTE && ++pendentes >= tamanhoLote) {
+                pendentes = 0;
+                paraSincronizar = atual;
+            }
+        }
+        if (paraSincronizar != null) {
+            paraSincronizar.force();
+        }
+    }
+
+    /**
+     * Força para o disco todos os registros acrescentados até o momento.
+     */
+    public void sincronizar() {
+        if (!fechado) {
+            estado.atual.force();
+        }
+    }
+
+    /**
+     * Percorre, em ordem de gravação, todos os negócios completos do jornal.
+     *
+     * @param consumidor O consumidor que recebe cada negócio lido.
+     * @throws IOException Em caso de erro ao ler os segmentos.
+     */
+    public void percorrer(Consumer<Operacao> consumidor) throws IOException {
+        consultar(FiltroHistorico.todos(), consumidor);
+    }
+
+    /**
+     * Conta os registros completos do jornal. Os segmentos fechados com índice não são lidos.
+     *
+     * @return A quantidade de registros.
+     * @throws IOException Em caso de erro ao ler os segmentos.
+     */
+    public long quantidadeRegistros() throws IOException {
+        Estado lido;
+        long cursorLido;
+        do {
+            cursorLido = cursor;
+            lido = estado;
+        } while (lido.numero != (int) (cursorLido >>> 32));
+
+        long registros = 0;
+        for (Path segmento : lido.fechados) {
+            IndiceSegmento indice = obterIndice(segmento);
+            if (indice != null) {
+                registros += indice.getRegistros();
+            } else {
+                registros += contarRegistrosValidos(mapearLeitura(segmento));
+            }
+        }
+        return registros + (int) cursorLido / TAMANHO_REGISTRO;
+    }
+
+    /**
+     * Obtém o maior ID registrado, para que a numeração continue após uma reinicialização. Os
+     * registros são gravados quase na ordem dos IDs (no modo particionado, os negócios das
+     * partições se intercalam apenas entre os que estão em andamento), por isso basta ler o
+     * segmento atual e o último segmento fechado.
+     *
+     * @return O maior ID registrado, ou 0 se o jornal estiver vazio.
+     * @throws IOException Em caso de erro ao ler os segmentos.
+     */
+    public long maiorId() throws IOException {
+        long registrosPorSegmento = tamanhoSegmento / TAMANHO_REGISTRO;
+        long[] maior = new long[1];
+        percorrer(Math.max(0, quantidadeRegistros() - 2 * registrosPorSegmento),
+                operacao -> maior[0] = Math.max(maior[0], operacao.getId()));
+        return maior[0];
+    }
+
+    /**
+     * Percorre, em ordem de gravação, os registros a partir de uma posição do jornal. Os
+     * segmentos fechados anteriores à posição são saltados pela quantidade de registros, sem
+     * serem lidos.
+     *
+     * @param primeiro   A posição do primeiro registro entregue (0 para o início do jornal).
+     * @param consumidor O consumidor que recebe cada registro lido.
+     * @return A quantidade de registros entregues.
+     * @throws IOException Em caso de erro ao ler os segmentos.
+     */
+    public long percorrer(long primeiro, Consumer<Operacao> consumidor) throws IOException {
+        Estado lido;
+        long cursorLido;
+        do {
+            cursorLido = cursor;
+            lido = estado;
+        } while (lido.numero != (int) (cursorLido >>> 32));
+
+        CacheDeNomes nomes = new CacheDeNomes(1024);
+        byte[] registro = new byte[TAMANHO_REGISTRO];
+        FiltroHistorico todos = FiltroHistorico.todos();
+        long anteriores = 0;
+        long entregues = 0;
+        for (Path segmento : lido.fechados) {
+            IndiceSegmento indice = obterIndice(segmento);
+            if (indice != null && anteriores + indice.getRegistros() <= primeiro) {
+                anteriores += indice.getRegistros();
+                continue;
+            }
+            ByteBuffer dados = mapearLeitura(segmento);
+            int registros = indice != null ? indice.getRegistros() : contarRegistrosValidos(dados);
+            int inicio = (int) Math.min(registros, Math.max(0, primeiro - anteriores));
+            varrer(dados, inicio, registros, todos, registro, nomes, consumidor);
+            entregues += registros - inicio;
+            anteriores += registros;
+        }
+        int registros = (int) cursorLido / TAMANHO_REGISTRO;
+        int inicio = (int) Math.min(registros, Math.max(0, primeiro - anteriores));
+        varrer(lido.atual.duplicate(), inicio, registros, todos, registro, nomes, consumidor);
+        return entregues + registros - inicio;
+    }
+
+    /**
+     * Percorre, em ordem de gravação, os negócios aceitos por um filtro. Os segmentos fechados
+     * que já possuem índice são lidos apenas nos blocos candidatos; os demais são varridos.
+     * A consulta não bloqueia o registro de novos negócios e não carrega o histórico na
+     * memória: cada negócio é criado apenas para ser entregue ao consumidor.
+     *
+     * @param filtro     O filtro da consulta.
+     * @param consumidor O consumidor que recebe cada negócio aceito.
+     * @throws IOException Em caso de erro ao ler os segmentos ou os índices.
+     */
+    public void consultar(FiltroHistorico filtro, Consumer<Operacao> consumidor) throws IOException {
+        Estado lido;
+        long cursorLido;
+        do {
+            cursorLido = cursor;
+            lido = estado;
+        } while (lido.numero != (int) (cursorLido >>> 32));
+
+        CacheDeNomes nomes = new CacheDeNomes(1024);
+        byte[] registro = new byte[TAMANHO_REGISTRO];
+        for (Path segmento : lido.fechados) {
+            ByteBuffer dados = mapearLeitura(segmento);
+            IndiceSegmento indice = obterIndice(segmento);
+            if (indice != null) {
+                for (int bloco : indice.blocosCandidatos(filtro)) {
+                    int inicio = bloco * IndiceSegmento.REGISTROS_POR_BLOCO;
+                    int fim = Math.min(indice.getRegistros(), inicio + IndiceSegmento.REGISTROS_POR_BLOCO);
+                    varrer(dados, inicio, fim, filtro, registro, nomes, consumidor);
+                }
+            } else {
+                varrer(dados, 0, contarRegistrosValidos(dados), filtro, registro, nomes, consumidor);
+            }
+        }
+        varrer(lido.atual.duplicate(), 0, (int) cursorLido / TAMANHO_REGISTRO, filtro, registro, nomes, consumidor);
+    }
+
+    /**
+     * Fecha o jornal, forçando os registros pendentes para o disco. As indexações ainda não
+     * iniciadas são descartadas (os segmentos sem índice são indexados ao reabrir o jornal), e
+     * a indexação em andamento é aguardada, para que nenhum arquivo seja gravado no diretório
+     * depois do fechamento.
+     *
+     * @throws IOException Em caso de erro ao fechar o segmento atual, ou se a thread for
+     *                     interrompida enquanto aguarda a indexação em andamento.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (fechado) {
+                return;
+            }
+            fechado = true;
+            estado.atual.force();
+            canalAtual.close();
+        }
+        if (sincronizador != null) {
+            sincronizador.interrupt();
+        }
+        indexador.shutdown();
+        try {
+            indexador.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido ao aguardar a indexação do jornal", e);
+        }
+    }
+
+    private void sincronizarPeriodicamente(long intervaloMillis) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervaloMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sincronizar();
+        }
+    }
+
+    /**
+     * Fecha o segmento atual, agenda a sua indexação e abre o próximo.
+     */
+    private void fecharSegmentoAtual() throws IOException {
+        Estado anterior = estado;
+        if (modo != ModoDurabilidade.SISTEMA_OPERACIONAL) {
+            anterior.atual.force();
+        }
+        Path fechado = anterior.caminho;
+        indexador.execute(() -> indexar(fechado));
+
+        List<Path> fechados = new ArrayList<>(anterior.fechados);
+        fechados.add(fechado);
+        abrirSegmento(fechados);
+    }
+
+    private void abrirSegmento(List<Path> fechados) throws IOException {
+        Path segmento = diretorio.resolve(String.format("%s%08d%s", prefixo, fechados.size(), SUFIXO_SEGMENTO));
+        publicarEstado(fechados, segmento, mapear(segmento));
+        posicao = 0;
+        publicarCursor();
+    }
+
+    /**
+     * Mapeia o segmento atual para escrita, gravando o cabeçalho se o segmento for novo.
+     */
+    private MappedByteBuffer mapear(Path segmento) throws IOException {
+        if (canalAtual != null) {
+            canalAtual.close();
+        }
+        canalAtual = FileChannel.open(segmento, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer dados = canalAtual.map(FileChannel.MapMode.READ_WRITE, 0, tamanhoSegmento);
+        if (vazio(dados, TAMANHO_CABECALHO)) {
+            dados.putInt(0, MAGICO_SEGMENTO);
+            dados.putInt(4, VERSAO_SEGMENTO);
+            dados.putInt(8, TAMANHO_REGISTRO);
+            if (modo != ModoDurabilidade.SISTEMA_OPERACIONAL) {
+                dados.force();
+            }
+        }
+        validarCabecalho(dados, segmento);
+        return dados;
+    }
+
+    /**
+     * Mapeia um segmento fechado para leitura, validando o seu cabeçalho.
+     */
+    private static ByteBuffer mapearLeitura(Path segmento) throws IOException {
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ)) {
+            ByteBuffer dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            validarCabecalho(dados, segmento);
+            return dados;
+        }
+    }
+
+    private static void validarCabecalho(ByteBuffer dados, Path segmento) throws IOException {
+        if (dados.capacity() < TAMANHO_CABECALHO
+                || dados.getInt(0) != MAGICO_SEGMENTO
+                || dados.getInt(4) != VERSAO_SEGMENTO
+                || dados.getInt(8) != TAMANHO_REGISTRO) {
+            throw new IOException("Segmento do jornal com cabeçalho desconhecido: " + segmento);
+        }
+    }
+
+    private static boolean vazio(ByteBuffer dados, int tamanho) {
+        for (int i = 0; i < tamanho; i += 8) {
+            if (dados.getLong(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void publicarEstado(List<Path> fechados, Path caminho, MappedByteBuffer atual) {
+        estado = new Estado(Collections.unmodifiableList(fechados), caminho, atual);
+    }
+
+    private void publicarCursor() {
+        cursor = ((long) estado.numero << 32) | posicao;
+    }
+
+    /**
+     * Obtém o índice de um segmento fechado, ou null se ele ainda não foi construído.
+     */
+    private IndiceSegmento obterIndice(Path segmento) throws IOException {
+        IndiceSegmento indice = indices.get(segmento);
+        if (indice == null) {
+            Path arquivo = arquivoIndice(segmento);
+            if (!Files.exists(arquivo)) {
+                return null;
+            }
+            indice = IndiceSegmento.ler(arquivo);
+            indices.put(segmento, indice);
+        }
+        return indice;
+    }
+
+    /**
+     * Constrói e grava o índice de um segmento fechado. Executado na thread do indexador; não
+     * faz nada se o jornal já estiver sendo fechado.
+     */
+    private void indexar(Path segmento) {
+        if (indexador.isShutdown()) {
+            return;
+        }
+        try {
+            IndiceSegmento.construir(mapearLeitura(segmento)).gravar(arquivoIndice(segmento));
+        } catch (IOException e) {
+            System.err.println("Erro ao indexar o segmento " + segmento + ": " + e.getMessage());
+        }
+    }
+
+    private static Path arquivoIndice(Path segmento) {
+        String nome = segmento.getFileName().toString();
+        return segmento.resolveSibling(nome.substring(0, nome.length() - SUFIXO_SEGMENTO.length()) + SUFIXO_INDICE);
+    }
+
+    /**
+     * Entrega ao consumidor os registros aceitos pelo filtro entre dois registros de um segmento.
+     */
+    private static void varrer(ByteBuffer dados, int inicio, int fim, FiltroHistorico filtro,
+                               byte[] registro, CacheDeNomes nomes, Consumer<Operacao> consumidor) {
+        for (int p = posicaoRegistro(inicio); p < posicaoRegistro(fim); p += TAMANHO_REGISTRO) {
+            if (filtro.aceita(dados, p)) {
+                consumidor.accept(lerRegistro(dados, p, registro, nomes));
+            }
+        }
+    }
+
+    /**
+     * Obtém a posição, no segmento, de um registro.
+     */
+    static int posicaoRegistro(int indice) {
+        return TAMANHO_CABECALHO + indice * TAMANHO_REGISTRO;
+    }
+
+    /**
+     * Conta os registros válidos no início de um segmento, cujo cabeçalho já foi validado. A
+     * contagem para no primeiro registro vazio ou incompleto.
+     */
+    static int contarRegistrosValidos(ByteBuffer dados) {
+        int registros = 0;
+        for (int p = TAMANHO_CABECALHO; p + TAMANHO_REGISTRO <= dados.capacity(); p += TAMANHO_REGISTRO) {
+            int verificacao = dados.getInt(p + POS_VERIFICACAO);
+            if (verificacao == 0 || verificacao != calcularVerificacao(dados, p)) {
+                break;
+            }
+            registros++;
+        }
+        return registros;
+    }
+
+    /**
+     * Converte um nome para o formato de campo do registro: ASCII completado com zeros.
+     */
+    static byte[] nomeParaRegistro(String nome, int tamanhoCampo) {
+        byte[] campo = new byte[tamanhoCampo];
+        ByteBuffer destino = ByteBuffer.wrap(campo);
+        escreverNome(destino, 0, tamanhoCampo, nome);
+        return campo;
+    }
+
+    private static void escreverRegistro(ByteBuffer destino, int p, Operacao operacao) {
+        long id = operacao.getId();
+        if (id < Operacao.SEM_ID || id > ID_MAXIMO) {
+            throw new IllegalArgumentException("ID fora do intervalo do jornal: " + id);
+        }
+        // Os nomes primeiro: um nome inválido interrompe a escrita antes dos demais campos
+        escreverNome(destino, p + POS_ATIVO, TAMANHO_ATIVO, operacao.getAtivo());
+        escreverNome(destino, p + POS_CORRETORA, TAMANHO_CORRETORA, operacao.getCorretora());
+        destino.putLong(p + POS_DATA_HORA, operacao.getDataHora());
+        destino.putLong(p + POS_PRECO, operacao.isAlteracao() ? operacao.getIdAlterada() : operacao.getPreco());
+        destino.putInt(p + POS_QUANTIDADE, operacao.getQuantidade());
+        destino.putInt(p + POS_TIPO, (operacao.getTipo() == TipoOperacao.COMPRA ? 1 : 2) << 24
+                | (operacao.isAlteracao() ? 1 : 0) << 16
+                | operacao.getLeilao() << 8
+                | (int) (id >>> 32));
+        destino.putInt(p + POS_ID_BAIXO, (int) id);
+        destino.putInt(p + POS_VERIFICACAO, calcularVerificacao(destino, p));
+    }
+
+    private static Operacao lerRegistro(ByteBuffer dados, int p, byte[] registro, CacheDeNomes nomes) {
+        for (int i = 0; i < TAMANHO_REGISTRO; i++) {
+            registro[i] = dados.get(p + i);
+        }
+        long id = lerId(dados, p);
+
+        if (registro[POS_LEILAO] != Operacao.SEM_LEILAO) {
+            return Operacao.leilao(id, nomes.obter(registro, POS_ATIVO, TAMANHO_ATIVO), registro[POS_LEILAO],
+                    dados.getLong(p + POS_DATA_HORA));
+        }
+        TipoOperacao tipo = registro[POS_TIPO] == 1 ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+        if (registro[POS_ALTERACAO] == 1) {
+            return Operacao.alteracao(id, dados.getLong(p + POS_PRECO), tipo, nomes.obter(registro, POS_ATIVO, TAMANHO_ATIVO),
+                    dados.getInt(p + POS_QUANTIDADE), nomes.obter(registro, POS_CORRETORA, TAMANHO_CORRETORA),
+                    dados.getLong(p + POS_DATA_HORA));
+        }
+        return new Operacao(id, tipo, nomes.obter(registro, POS_ATIVO, TAMANHO_ATIVO),
+                dados.getInt(p + POS_QUANTIDADE), dados.getLong(p + POS_PRECO),
+                nomes.obter(registro, POS_CORRETORA, TAMANHO_CORRETORA), dados.getLong(p + POS_DATA_HORA));
+    }
+
+    /**
+     * Indica se um nome cabe sem perdas em um campo de nome do registro: até tamanhoCampo
+     * caracteres ASCII.
+     */
+    static boolean cabeNoRegistro(String nome, int tamanhoCampo) {
+        if (nome.length() > tamanhoCampo) {
+            return false;
+        }
+        for (int i = 0; i < nome.length(); i++) {
+            char c = nome.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Os nomes são validados na entrada (ver CodecBinario.validarNome); um nome que não cabe é um erro, e não é truncado
+    private static void escreverNome(ByteBuffer destino, int p, int tamanhoCampo, String nome) {
+        if (!cabeNoRegistro(nome, tamanhoCampo)) {
+            throw new IllegalArgumentException("Nome não cabe no registro do jornal: " + nome);
+        }
+        int tamanho = nome.length();
+        for (int i = 0; i < tamanho; i++) {
+            destino.put(p + i, (byte) nome.charAt(i));
+        }
+        for (int i = tamanho; i < tamanhoCampo; i++) {
+            destino.put(p + i, (byte) 0);
+        }
+    }
+
+    static long lerId(ByteBuffer dados, int p) {
+        return (dados.get(p + POS_ID_ALTO) & 0xFFL) << 32 | (dados.getInt(p + POS_ID_BAIXO) & 0xFFFFFFFFL);
+    }
+
+    private static int calcularVerificacao(ByteBuffer dados, int p) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < POS_ID_BAIXO; i += 8) {
+            h = (h ^ dados.getLong(p + i)) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        // Os 8 bits altos do ID entram com os campos acima; os 32 bits baixos entram aqui
+        h = (h ^ (dados.getInt(p + POS_ID_BAIXO) & 0xFFFFFFFFL)) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        int verificacao = (int) (h ^ (h >>> 32));
+        return verificacao == 0 ? 1 : verificacao;
+    }
+
+    /**
+     * Segmentos fechados e segmento atual, publicados de forma imutável para os leitores.
+     */
+    private static class Estado {
+        final List<Path> fechados;
+        final Path caminho;
+        final MappedByteBuffer atual;
+        final int numero;
+
+        Estado(List<Path> fechados, Path caminho, MappedByteBuffer atual) {
+            this.fechados = fechados;
+            this.caminho = caminho;
+            this.atual = atual;
+            this.numero = fechados.size();
+        }
+    }
+}
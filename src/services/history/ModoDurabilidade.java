@@ -0,0 +1,23 @@
+package services.history;
+
+/**
+ * Enumeração que define quando o jornal de negócios força os registros para o disco.
+ */
+public enum ModoDurabilidade {
+    /**
+     * Força os registros para o disco a cada lote de registros (fsync por lote).
+     * Um único fsync cobre todos os registros gravados por qualquer thread até aquele momento.
+     */
+    POR_LOTE,
+
+    /**
+     * Força os registros para o disco em intervalos fixos de tempo, em uma thread de fundo.
+     */
+    TEMPORIZADO,
+
+    /**
+     * Deixa a escrita a cargo do sistema operacional, que descarrega as páginas mapeadas
+     * quando achar conveniente. Os registros só são forçados ao fechar o jornal.
+     */
+    SISTEMA_OPERACIONAL
+}
@@ -0,0 +1,231 @@
+package services.manager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import utils.BolsaDeValoresConfig;
+
+/**
+ * A classe Dicionario associa nomes (os ativos ou as corretoras) a códigos inteiros densos,
+ * atribuídos em ordem de chegada a partir de 0. O código de um nome nunca muda durante a
+ * execução, de modo que o livro, as métricas e as rotas podem guardar o seu estado em vetores
+ * indexados pelo código, e comparar ativos e corretoras como inteiros, em vez de fazer hash e
+ * comparar strings a cada ordem. Os nomes só são consultados nas bordas: na API e na exibição.
+ *
+ * Os códigos valem apenas dentro do processo e não são gravados em disco nem enviados nas
+ * mensagens, que continuam a levar os nomes; por isso podem diferir entre execuções.
+ *
+ * A consulta do código a partir dos bytes de uma mensagem (ver codigo(byte[], int, int)) não
+ * aloca quando o nome já é conhecido: ela calcula o hash dos bytes, que para nomes ASCII é o
+ * mesmo de String.hashCode, e procura o nome em uma tabela de endereçamento aberto. As
+ * consultas não bloqueiam; a inclusão de um nome novo sincroniza no dicionário.
+ *
+ * Os nomes nunca são removidos, e cada dicionário aceita no máximo CAPACIDADE_DICIONARIO nomes
+ * (bolsa.dicionario.capacidade): um nome novo além dela é recusado, de modo que mensagens com
+ * nomes arbitrários não fazem o dicionário crescer sem limite. Na entrada, os nomes só são
+ * incluídos depois de validada a mensagem; as consultas que não devem incluir nomes usam
+ * codigoExistente.
+ *
+ * Há um dicionário de ativos e um de corretoras por processo (ver getAtivos e getCorretoras).
+ */
+public final class Dicionario {
+
+    /**
+     * Código retornado por codigoExistente para um nome que não está no dicionário.
+     */
+    public static final int SEM_CODIGO = -1;
+
+    private static final Dicionario ATIVOS = new Dicionario(BolsaDeValoresConfig.CAPACIDADE_DICIONARIO);
+    private static final Dicionario CORRETORAS = new Dicionario(BolsaDeValoresConfig.CAPACIDADE_DICIONARIO);
+
+    private final int capacidade;
+
+    private final Map<String, Integer> codigos = new ConcurrentHashMap<>();
+    private volatile String[] nomes = new String[64]; // nome de cada código
+    private volatile AtomicIntegerArray tabela = new AtomicIntegerArray(128); // código + 1 por hash; 0 se livre
+    private volatile int tamanho;
+
+    private Dicionario(int capacidade) {
+        this.capacidade = capacidade;
+    }
+
+    /**
+     * Obtém o dicionário de ativos.
+     *
+     * @return O dicionário de ativos do processo.
+     */
+    public static Dicionario getAtivos() {
+        return ATIVOS;
+    }
+
+    /**
+     * Obtém o dicionário de corretoras.
+     *
+     * @return O dicionário de corretoras do processo.
+     */
+    public static Dicionario getCorretoras() {
+        return CORRETORAS;
+    }
+
+    /**
+     * Obtém o código de um nome, atribuindo-lhe o próximo código livre se ele ainda não existir.
+     *
+     * @param nome O nome.
+     * @return O código do nome.
+     * @throws IllegalStateException Se o nome for novo e o dicionário estiver cheio.
+     */
+    public int codigo(String nome) {
+        Integer codigo = codigos.get(nome);
+        return codigo != null ? codigo : incluir(nome);
+    }
+
+    /**
+     * Obtém o código de um nome já existente, sem incluí-lo.
+     *
+     * @param nome O nome.
+     * @return O código do nome, ou SEM_CODIGO se ele não estiver no dicionário.
+     */
+    public int codigoExistente(String nome) {
+        Integer codigo = codigos.get(nome);
+        return codigo != null ? codigo : SEM_CODIGO;
+    }
+
+    /**
+     * Obtém o código do nome gravado em um campo de tamanho fixo de uma mensagem, em ASCII e
+     * completado com zeros, atribuindo-lhe um código se ele ainda não existir. Não aloca quando
+     * o nome já é conhecido.
+     *
+     * @param dados          Os bytes da mensagem.
+     * @param offset         A posição do campo.
+     * @param tamanhoMaximo  O tamanho do campo.
+     * @return O código do nome.
+     * @throws IllegalStateException Se o nome for novo e o dicionário estiver cheio.
+     */
+    public int codigo(byte[] dados, int offset, int tamanhoMaximo) {
+        int codigo = codigoExistente(dados, offset, tamanhoMaximo);
+        return codigo != SEM_CODIGO ? codigo : codigo(new String(dados, offset, tamanho(dados, offset, tamanhoMaximo), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Obtém o código do nome gravado em um campo de tamanho fixo de uma mensagem, sem incluí-lo
+     * e sem alocar.
+     *
+     * @param dados          Os bytes da mensagem.
+     * @param offset         A posição do campo.
+     * @param tamanhoMaximo  O tamanho do campo.
+     * @return O código do nome, ou SEM_CODIGO se ele não estiver no dicionário.
+     */
+    public int codigoExistente(byte[] dados, int offset, int tamanhoMaximo) {
+        int tamanhoNome = 0;
+        int hash = 0;
+        while (tamanhoNome < tamanhoMaximo && dados[offset + tamanhoNome] != 0) {
+            hash = 31 * hash + (dados[offset + tamanhoNome] & 0xFF);
+            tamanhoNome++;
+        }
+
+        AtomicIntegerArray slots = tabela;
+        String[] lidos = nomes;
+        int mascara = slots.length() - 1;
+        for (int i = espalhar(hash) & mascara; ; i = (i + 1) & mascara) {
+            int codigo = slots.get(i) - 1;
+            if (codigo < 0) {
+                break;
+            }
+            if (codigo < lidos.length && igual(lidos[codigo], dados, offset, tamanhoNome)) {
+                return codigo;
+            }
+        }
+        return SEM_CODIGO;
+    }
+
+    /**
+     * Obtém o nome de um código.
+     *
+     * @param codigo O código, obtido deste dicionário.
+     * @return O nome.
+     */
+    public String nome(int codigo) {
+        return nomes[codigo];
+    }
+
+    /**
+     * Obtém a quantidade de nomes do dicionário, que é também o próximo código livre.
+     *
+     * @return A quantidade de nomes.
+     */
+    public int tamanho() {
+        return tamanho;
+    }
+
+    private synchronized int incluir(String nome) {
+        Integer existente = codigos.get(nome);
+        if (existente != null) {
+            return existente;
+        }
+        int codigo = tamanho;
+        if (codigo >= capacidade) {
+            throw new IllegalStateException("Dicionário cheio (" + capacidade + " nomes), nome recusado: " + nome);
+        }
+        String[] atuais = nomes;
+        if (codigo == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+        }
+        atuais[codigo] = nome;
+        nomes = atuais;
+
+        // Mantém a tabela de hash com ocupação de no máximo metade
+        AtomicIntegerArray slots = tabela;
+        if (2 * (codigo + 1) > slots.length()) {
+            slots = new AtomicIntegerArray(slots.length() * 2);
+            for (int i = 0; i < codigo; i++) {
+                posicionar(slots, atuais[i].hashCode(), i);
+            }
+            posicionar(slots, nome.hashCode(), codigo);
+            tabela = slots;
+        } else {
+            posicionar(slots, nome.hashCode(), codigo);
+        }
+
+        codigos.put(nome, codigo);
+        tamanho = codigo + 1;
+        return codigo;
+    }
+
+    private static int tamanho(byte[] dados, int offset, int tamanhoMaximo) {
+        int tamanhoNome = 0;
+        while (tamanhoNome < tamanhoMaximo && dados[offset + tamanhoNome] != 0) {
+            tamanhoNome++;
+        }
+        return tamanhoNome;
+    }
+
+    private static void posicionar(AtomicIntegerArray slots, int hash, int codigo) {
+        int mascara = slots.length() - 1;
+        int i = espalhar(hash) & mascara;
+        while (slots.get(i) != 0) {
+            i = (i + 1) & mascara;
+        }
+        slots.set(i, codigo + 1);
+    }
+
+    // Nomes sequenciais ("PETR3", "PETR4") têm hashes vizinhos: a multiplicação os espalha pela tabela
+    private static int espalhar(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean igual(String nome, byte[] dados, int offset, int tamanhoNome) {
+        if (nome == null || nome.length() != tamanhoNome) {
+            return false;
+        }
+        for (int i = 0; i < tamanhoNome; i++) {
+            if (nome.charAt(i) != (dados[offset + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,8 +1,9 @@
 package services.manager;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * A classe Operacao representa uma operação financeira realizada em um mercado de valores.
@@ -10,37 +11,214 @@ import java.util.UUID;
  * 
  * Cada operação é identificada por um ID único e possui informações sobre a corretora, ativo,
  * quantidade de ações negociadas, valor por ação e a data e hora da operação.
+ *
+ * O ID é um número sequencial atribuído pela Bolsa de Valores (ver server.Sequenciador): as
+ * ordens são numeradas na chegada e os negócios no casamento. Operações criadas fora da Bolsa,
+ * como as ordens de um Broker antes do envio, têm o ID SEM_ID. A data e hora é mantida em
+ * nanossegundos desde a época (ver Relogio) e convertida para LocalDateTime apenas na exibição.
+ * 
+ * O ativo e a corretora são mantidos como códigos do Dicionario, atribuídos quando a ordem é
+ * decodificada, de modo que o casamento compara e indexa inteiros; os nomes são obtidos do
+ * dicionário apenas na exibição e nas mensagens.
+ *
+ * O valor por ação é mantido em ticks do ativo (ponto fixo, ver TabelaDeTicks), para que
+ * comparações de preço sejam exatas e feitas com aritmética inteira.
+ *
+ * Uma alteração (ver alteracao) é o pedido de uma corretora para mudar a quantidade de uma
+ * ordem sua que está no livro, identificada pelo ID atribuído pela Bolsa; a quantidade 0
+ * cancela a ordem. Ela percorre o mesmo caminho das ordens, do jornal de ordens ao motor de
+ * casamento, e não tem preço.
+ *
+ * Um evento de leilão (ver leilao) abre ou encerra o leilão de um ativo. Ele também é numerado
+ * e gravado no jornal de ordens na posição em que ocorreu, para que a recuperação do livro
+ * reproduza os leilões, e não tem quantidade, preço nem corretora.
  */
 public class Operacao implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 4L;
+
+    // ID das operações ainda não numeradas pela Bolsa de Valores
+    public static final long SEM_ID = 0;
+
+    // Eventos de leilão de um ativo (ver leilao)
+    public static final byte SEM_LEILAO = 0;
+    public static final byte ABERTURA_LEILAO = 1;
+    public static final byte ENCERRAMENTO_LEILAO = 2;
 
-    private final String id; // Identificador único da operação
+    private final long id; // Identificador único da operação
     private final TipoOperacao tipo; // Tipo de operação (COMPRA ou VENDA)
-    private final String ativo; // Ativo negociado
+    private final int codigoAtivo; // Código do ativo negociado no Dicionario de ativos
     private int quantidade; // Quantidade de ações negociadas
-    private final double valor; // Valor por ação
-    private final String corretora; // Corretora responsável pela operação
-    private final LocalDateTime dataHora; // Data e hora da operação
+    private final long preco; // Valor por ação, em ticks do ativo
+    private final int codigoCorretora; // Código da corretora responsável no Dicionario de corretoras
+    private final long dataHora; // Data e hora da operação, em nanossegundos desde a época
+    private final long idAlterada; // ID da ordem alterada por esta operação, ou SEM_ID
+    private final boolean alteracao; // Indica se a operação é uma alteração de ordem (ver alteracao)
+    private final byte leilao; // Evento de leilão representado por esta operação, ou SEM_LEILAO
+
+    /**
+     * Construtor para criar uma nova operação ainda sem ID, como as ordens criadas por um Broker.
+     *
+     * @param tipo        Tipo de operação (COMPRA ou VENDA).
+     * @param ativo       Ativo negociado.
+     * @param quantidade  Quantidade de ações negociadas.
+     * @param preco       Valor por ação, em ticks do ativo.
+     * @param corretora   Corretora responsável pela operação.
+     * @param dataHora    Data e hora da operação, em nanossegundos desde a época.
+     */
+    public Operacao(TipoOperacao tipo, String ativo, int quantidade, long preco, String corretora, long dataHora) {
+        this(SEM_ID, tipo, ativo, quantidade, preco, corretora, dataHora);
+    }
 
     /**
-     * Construtor para criar uma nova operação.
+     * Construtor para criar uma nova operação com o ID atribuído pela Bolsa de Valores.
      *
+     * @param id          ID da operação.
      * @param tipo        Tipo de operação (COMPRA ou VENDA).
      * @param ativo       Ativo negociado.
      * @param quantidade  Quantidade de ações negociadas.
-     * @param valor       Valor por ação.
+     * @param preco       Valor por ação, em ticks do ativo.
      * @param corretora   Corretora responsável pela operação.
-     * @param dataHora    Data e hora da operação.
+     * @param dataHora    Data e hora da operação, em nanossegundos desde a época.
      */
-    public Operacao(TipoOperacao tipo, String ativo, int quantidade, double valor, String corretora, LocalDateTime dataHora) {
-        this.id = UUID.randomUUID().toString(); // Gera um ID único
+    public Operacao(long id, TipoOperacao tipo, String ativo, int quantidade, long preco, String corretora, long dataHora) {
+        this(id, tipo, Dicionario.getAtivos().codigo(ativo), quantidade, preco,
+                Dicionario.getCorretoras().codigo(corretora), dataHora, SEM_ID, false, SEM_LEILAO);
+    }
+
+    private Operacao(long id, TipoOperacao tipo, int codigoAtivo, int quantidade, long preco, int codigoCorretora,
+                     long dataHora, long idAlterada, boolean alteracao, byte leilao) {
+        this.id = id;
         this.tipo = tipo;
-        this.ativo = ativo;
+        this.codigoAtivo = codigoAtivo;
         this.quantidade = quantidade;
-        this.valor = valor;
-        this.corretora = corretora;
+        this.preco = preco;
+        this.codigoCorretora = codigoCorretora;
         this.dataHora = dataHora;
+        this.idAlterada = idAlterada;
+        this.alteracao = alteracao;
+        this.leilao = leilao;
+    }
+
+    /**
+     * Cria uma alteração da quantidade de uma ordem que está no livro.
+     *
+     * @param id             ID da alteração, atribuído pela Bolsa de Valores na chegada.
+     * @param idAlterada     ID da ordem alterada, atribuído pela Bolsa de Valores (maior que zero).
+     * @param tipo           Tipo da ordem alterada (COMPRA ou VENDA).
+     * @param ativo          Ativo da ordem alterada.
+     * @param novaQuantidade Nova quantidade da ordem no livro; 0 cancela a ordem.
+     * @param corretora      Corretora da ordem alterada.
+     * @param dataHora       Data e hora da alteração, em nanossegundos desde a época.
+     * @return A alteração.
+     * @throws IllegalArgumentException Se o ID da ordem alterada não for maior que zero.
+     */
+    public static Operacao alteracao(long id, long idAlterada, TipoOperacao tipo, String ativo, int novaQuantidade,
+                                     String corretora, long dataHora) {
+        return alteracao(id, idAlterada, tipo, Dicionario.getAtivos().codigo(ativo), novaQuantidade,
+                Dicionario.getCorretoras().codigo(corretora), dataHora);
+    }
+
+    /**
+     * Cria uma alteração da quantidade de uma ordem que está no livro, com o ativo e a
+     * corretora já convertidos em códigos.
+     *
+     * @param id              ID da alteração, atribuído pela Bolsa de Valores na chegada.
+     * @param idAlterada      ID da ordem alterada, atribuído pela Bolsa de Valores (maior que zero).
+     * @param tipo            Tipo da ordem alterada (COMPRA ou VENDA).
+     * @param codigoAtivo     Código do ativo da ordem alterada (ver Dicionario.getAtivos).
+     * @param novaQuantidade  Nova quantidade da ordem no livro; 0 cancela a ordem.
+     * @param codigoCorretora Código da corretora da ordem alterada (ver Dicionario.getCorretoras).
+     * @param dataHora        Data e hora da alteração, em nanossegundos desde a época.
+     * @return A alteração.
+     * @throws IllegalArgumentException Se o ID da ordem alterada não for maior que zero.
+     */
+    public static Operacao alteracao(long id, long idAlterada, TipoOperacao tipo, int codigoAtivo, int novaQuantidade,
+                                     int codigoCorretora, long dataHora) {
+        if (idAlterada <= SEM_ID) {
+            throw new IllegalArgumentException("ID da ordem alterada inválido: " + idAlterada);
+        }
+        return new Operacao(id, tipo, codigoAtivo, novaQuantidade, 0, codigoCorretora, dataHora, idAlterada, true, SEM_LEILAO);
+    }
+
+    /**
+     * Cria uma ordem ou um negócio com o ativo e a corretora já convertidos em códigos, como
+     * na decodificação das ordens e no casamento.
+     *
+     * @param id              ID da operação.
+     * @param tipo            Tipo de operação (COMPRA ou VENDA).
+     * @param codigoAtivo     Código do ativo negociado (ver Dicionario.getAtivos).
+     * @param quantidade      Quantidade de ações negociadas.
+     * @param preco           Valor por ação, em ticks do ativo.
+     * @param codigoCorretora Código da corretora responsável (ver Dicionario.getCorretoras).
+     * @param dataHora        Data e hora da operação, em nanossegundos desde a época.
+     * @return A operação.
+     */
+    public static Operacao porCodigos(long id, TipoOperacao tipo, int codigoAtivo, int quantidade, long preco,
+                                      int codigoCorretora, long dataHora) {
+        return new Operacao(id, tipo, codigoAtivo, quantidade, preco, codigoCorretora, dataHora, SEM_ID, false, SEM_LEILAO);
+    }
+
+    /**
+     * Cria a abertura ou o encerramento do leilão de um ativo.
+     *
+     * @param id       ID do evento, atribuído pela Bolsa de Valores como o de uma ordem.
+     * @param ativo    Ativo do leilão.
+     * @param evento   ABERTURA_LEILAO ou ENCERRAMENTO_LEILAO.
+     * @param dataHora Data e hora do evento, em nanossegundos desde a época.
+     * @return O evento de leilão.
+     */
+    public static Operacao leilao(long id, String ativo, byte evento, long dataHora) {
+        if (evento != ABERTURA_LEILAO && evento != ENCERRAMENTO_LEILAO) {
+            throw new IllegalArgumentException("Evento de leilão inválido: " + evento);
+        }
+        return new Operacao(id, TipoOperacao.COMPRA, Dicionario.getAtivos().codigo(ativo), 0, 0,
+                Dicionario.getCorretoras().codigo(""), dataHora, SEM_ID, false, evento);
+    }
+
+    /**
+     * Obtém o ID da operação.
+     *
+     * @return O ID atribuído pela Bolsa de Valores, ou SEM_ID.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Indica se a operação é uma alteração de uma ordem do livro, e não uma ordem ou um negócio.
+     *
+     * @return true se a operação for uma alteração.
+     */
+    public boolean isAlteracao() {
+        return alteracao;
+    }
+
+    /**
+     * Indica se a operação é a abertura ou o encerramento do leilão de um ativo.
+     *
+     * @return true se a operação for um evento de leilão.
+     */
+    public boolean isLeilao() {
+        return leilao != SEM_LEILAO;
+    }
+
+    /**
+     * Obtém o evento de leilão representado por esta operação.
+     *
+     * @return ABERTURA_LEILAO, ENCERRAMENTO_LEILAO ou SEM_LEILAO.
+     */
+    public byte getLeilao() {
+        return leilao;
+    }
+
+    /**
+     * Obtém o ID da ordem alterada por esta operação.
+     *
+     * @return O ID da ordem alterada, ou SEM_ID se a operação não for uma alteração.
+     */
+    public long getIdAlterada() {
+        return idAlterada;
     }
 
     /**
@@ -58,7 +236,16 @@ public class Operacao implements Serializable {
      * @return O ativo negociado.
      */
     public String getAtivo() {
-        return ativo;
+        return Dicionario.getAtivos().nome(codigoAtivo);
+    }
+
+    /**
+     * Obtém o código do ativo negociado.
+     *
+     * @return O código do ativo no Dicionario de ativos.
+     */
+    public int getCodigoAtivo() {
+        return codigoAtivo;
     }
 
     /**
@@ -71,12 +258,21 @@ public class Operacao implements Serializable {
     }
 
     /**
-     * Obtém o valor por ação.
+     * Obtém o valor por ação, em ticks do ativo.
+     *
+     * @return O valor por ação em ticks.
+     */
+    public long getPreco() {
+        return preco;
+    }
+
+    /**
+     * Obtém o valor por ação em formato decimal, para exibição.
      *
-     * @return O valor por ação.
+     * @return O valor por ação formatado.
      */
-    public double getValor() {
-        return valor;
+    public String getValorFormatado() {
+        return TabelaDeTicks.getInstance().formatar(getAtivo(), preco);
     }
 
     /**
@@ -85,7 +281,34 @@ public class Operacao implements Serializable {
      * @return A corretora responsável.
      */
     public String getCorretora() {
-        return corretora;
+        return Dicionario.getCorretoras().nome(codigoCorretora);
+    }
+
+    /**
+     * Obtém o código da corretora responsável pela operação.
+     *
+     * @return O código da corretora no Dicionario de corretoras.
+     */
+    public int getCodigoCorretora() {
+        return codigoCorretora;
+    }
+
+    /**
+     * Obtém a data e hora da operação.
+     *
+     * @return A data e hora da operação, em nanossegundos desde a época.
+     */
+    public long getDataHora() {
+        return dataHora;
+    }
+
+    /**
+     * Obtém a data e hora da operação no fuso horário do sistema, para exibição.
+     *
+     * @return A data e hora local da operação.
+     */
+    public LocalDateTime getDataHoraLocal() {
+        return Relogio.paraDataHora(dataHora);
     }
 
     /**
@@ -97,6 +320,51 @@ public class Operacao implements Serializable {
         this.quantidade = quantidade;
     }
 
+    // Os códigos valem apenas dentro do processo: a forma serializada leva os nomes
+    private Object writeReplace() {
+        return new FormaSerializada(this);
+    }
+
+    private void readObject(ObjectInputStream entrada) throws InvalidObjectException {
+        throw new InvalidObjectException("Operacao é serializada pela FormaSerializada");
+    }
+
+    /**
+     * Forma serializada de uma operação, com o ativo e a corretora por nome.
+     */
+    private static final class FormaSerializada implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final TipoOperacao tipo;
+        private final String ativo;
+        private final int quantidade;
+        private final long preco;
+        private final String corretora;
+        private final long dataHora;
+        private final long idAlterada;
+        private final boolean alteracao;
+        private final byte leilao;
+
+        FormaSerializada(Operacao operacao) {
+            id = operacao.id;
+            tipo = operacao.tipo;
+            ativo = operacao.getAtivo();
+            quantidade = operacao.quantidade;
+            preco = operacao.preco;
+            corretora = operacao.getCorretora();
+            dataHora = operacao.dataHora;
+            idAlterada = operacao.idAlterada;
+            alteracao = operacao.alteracao;
+            leilao = operacao.leilao;
+        }
+
+        private Object readResolve() {
+            return new Operacao(id, tipo, Dicionario.getAtivos().codigo(ativo), quantidade, preco,
+                    Dicionario.getCorretoras().codigo(corretora), dataHora, idAlterada, alteracao, leilao);
+        }
+    }
+
     /**
      * Retorna uma representação de string da operação, incluindo tipo, ativo,
      * quantidade, valor, corretora e data/hora da operação.
@@ -105,7 +373,15 @@ public class Operacao implements Serializable {
      */
     @Override
     public String toString() {
-        return String.format("%s - %s: %d ações a R$%.2f pela corretora %s em %s",
-                tipo, ativo, quantidade, valor, corretora, dataHora);
+        if (isLeilao()) {
+            return String.format("%s - %s do leilão em %s", getAtivo(),
+                    leilao == ABERTURA_LEILAO ? "abertura" : "encerramento", getDataHoraLocal());
+        }
+        if (isAlteracao()) {
+            return String.format("%s - %s: ordem %d alterada para %d ações pela corretora %s em %s",
+                    tipo, getAtivo(), idAlterada, quantidade, getCorretora(), getDataHoraLocal());
+        }
+        return String.format("%s - %s: %d ações a R$%s pela corretora %s em %s",
+                tipo, getAtivo(), quantidade, getValorFormatado(), getCorretora(), getDataHoraLocal());
     }
 }
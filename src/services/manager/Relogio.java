@@ -0,0 +1,74 @@
+package services.manager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * A classe Relogio fornece a data e hora das operações em nanossegundos desde a época (UTC),
+ * como um long, sem alocar objetos nem consultar o fuso horário.
+ *
+ * A hora do sistema é lida uma única vez, na carga da classe; a partir daí, o relógio avança
+ * por System.nanoTime. Assim, as datas são monotônicas e têm resolução de nanossegundos, mas
+ * não acompanham ajustes posteriores da hora do sistema. A conversão para LocalDateTime, no
+ * fuso horário do sistema, é feita apenas na exibição.
+ */
+public final class Relogio {
+
+    private static final long NANOS_POR_SEGUNDO = 1_000_000_000L;
+
+    private static final long ORIGEM_EPOCA = System.currentTimeMillis() * 1_000_000L;
+    private static final long ORIGEM_NANO = System.nanoTime();
+
+    private Relogio() {
+    }
+
+    /**
+     * Obtém a data e hora atual.
+     *
+     * @return Os nanossegundos desde a época.
+     */
+    public static long agora() {
+        return ORIGEM_EPOCA + (System.nanoTime() - ORIGEM_NANO);
+    }
+
+    /**
+     * Converte uma data e hora em nanossegundos desde a época para o fuso horário do sistema.
+     *
+     * @param nanos Os nanossegundos desde a época.
+     * @return A data e hora local.
+     */
+    public static LocalDateTime paraDataHora(long nanos) {
+        return LocalDateTime.ofInstant(paraInstante(nanos), ZoneId.systemDefault());
+    }
+
+    /**
+     * Converte uma data e hora em nanossegundos desde a época para um Instant.
+     *
+     * @param nanos Os nanossegundos desde a época.
+     * @return O instante.
+     */
+    public static Instant paraInstante(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, NANOS_POR_SEGUNDO), Math.floorMod(nanos, NANOS_POR_SEGUNDO));
+    }
+
+    /**
+     * Converte uma data e hora local, no fuso horário do sistema, para nanossegundos desde a época.
+     *
+     * @param dataHora A data e hora local.
+     * @return Os nanossegundos desde a época.
+     */
+    public static long deDataHora(LocalDateTime dataHora) {
+        return deInstante(dataHora.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Converte um Instant para nanossegundos desde a época.
+     *
+     * @param instante O instante.
+     * @return Os nanossegundos desde a época.
+     */
+    public static long deInstante(Instant instante) {
+        return instante.getEpochSecond() * NANOS_POR_SEGUNDO + instante.getNano();
+    }
+}
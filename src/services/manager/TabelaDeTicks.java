@@ -0,0 +1,196 @@
+package services.manager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A classe TabelaDeTicks define o tamanho do tick (menor variação de preço) de cada ativo e
+ * converte preços entre a representação decimal usada nas bordas do sistema e a representação
+ * em ticks (long) usada no casamento de ofertas e no histórico.
+ *
+ * O tamanho do tick é expresso em unidades de 1/ESCALA reais. O valor padrão é de um centavo,
+ * e pode ser alterado por ativo com a propriedade de sistema "bolsa.tick.ATIVO" (por exemplo,
+ * -Dbolsa.tick.PETR4=0.05).
+ *
+ * A classe segue o padrão Singleton para garantir que haja apenas uma instância durante a execução do programa.
+ */
+public class TabelaDeTicks {
+
+    private static TabelaDeTicks instance;
+
+    // Quantidade de casas decimais da representação em ponto fixo
+    public static final int CASAS_DECIMAIS = 4;
+
+    // Fator de escala da representação em ponto fixo (1 real = ESCALA unidades)
+    public static final long ESCALA = 10_000L;
+
+    // Tamanho padrão do tick: um centavo
+    public static final long TICK_PADRAO = ESCALA / 100;
+
+    // Prefixo das propriedades de sistema que definem o tick de um ativo
+    private static final String PREFIXO_PROPRIEDADE = "bolsa.tick.";
+
+    // Tamanho do tick por ativo, em unidades de 1/ESCALA
+    private final Map<String, Long> ticks;
+
+    /**
+     * Construtor privado para evitar a criação direta de instâncias.
+     * Carrega os tamanhos de tick definidos nas propriedades de sistema.
+     */
+    private TabelaDeTicks() {
+        ticks = new ConcurrentHashMap<>();
+        for (String propriedade : System.getProperties().stringPropertyNames()) {
+            if (propriedade.startsWith(PREFIXO_PROPRIEDADE)) {
+                definirTamanhoTick(propriedade.substring(PREFIXO_PROPRIEDADE.length()),
+                        System.getProperty(propriedade));
+            }
+        }
+    }
+
+    /**
+     * Método para obter a instância única da classe TabelaDeTicks.
+     *
+     * @return A instância única de TabelaDeTicks.
+     */
+    public static synchronized TabelaDeTicks getInstance() {
+        if (instance == null) {
+            instance = new TabelaDeTicks();
+        }
+        return instance;
+    }
+
+    /**
+     * Define o tamanho do tick de um ativo.
+     *
+     * @param ativo O ativo.
+     * @param tamanhoTick O tamanho do tick em formato decimal (por exemplo, "0.01").
+     * @throws IllegalArgumentException Se o tamanho do tick não for positivo.
+     */
+    public void definirTamanhoTick(String ativo, String tamanhoTick) {
+        long escalado = paraPontoFixo(tamanhoTick);
+        if (escalado <= 0) {
+            throw new IllegalArgumentException("Tamanho de tick inválido para " + ativo + ": " + tamanhoTick);
+        }
+        ticks.put(ativo, escalado);
+    }
+
+    /**
+     * Obtém o tamanho do tick de um ativo.
+     *
+     * @param ativo O ativo.
+     * @return O tamanho do tick em unidades de 1/ESCALA.
+     */
+    public long tamanhoTick(String ativo) {
+        Long tick = ticks.get(ativo);
+        return tick == null ? TICK_PADRAO : tick;
+    }
+
+    /**
+     * Converte um preço decimal em ticks do ativo, sem passar por ponto flutuante.
+     *
+     * @param ativo O ativo ao qual o preço se refere.
+     * @param valor O preço em formato decimal, com ponto ou vírgula como separador.
+     * @return O preço em ticks.
+     * @throws IllegalArgumentException Se o preço for inválido ou não for múltiplo do tick.
+     */
+    public long paraTicks(String ativo, CharSequence valor) {
+        return paraTicks(ativo, paraPontoFixo(valor));
+    }
+
+    /**
+     * Converte um preço em ponto fixo (unidades de 1/ESCALA) em ticks do ativo.
+     *
+     * @param ativo O ativo ao qual o preço se refere.
+     * @param pontoFixo O preço em ponto fixo.
+     * @return O preço em ticks.
+     * @throws IllegalArgumentException Se o preço não for múltiplo do tick.
+     */
+    public long paraTicks(String ativo, long pontoFixo) {
+        long tick = tamanhoTick(ativo);
+        if (pontoFixo % tick != 0) {
+            throw new IllegalArgumentException("Preço " + pontoFixo + "/" + ESCALA + " não é múltiplo do tick de " + ativo);
+        }
+        return pontoFixo / tick;
+    }
+
+    /**
+     * Converte um preço em ticks do ativo para ponto fixo (unidades de 1/ESCALA).
+     *
+     * @param ativo O ativo ao qual o preço se refere.
+     * @param preco O preço em ticks.
+     * @return O preço em ponto fixo.
+     */
+    public long paraPontoFixo(String ativo, long preco) {
+        return preco * tamanhoTick(ativo);
+    }
+
+    /**
+     * Converte um preço em ticks do ativo para o formato decimal, para exibição.
+     *
+     * @param ativo O ativo ao qual o preço se refere.
+     * @param preco O preço em ticks.
+     * @return O preço em formato decimal, com duas casas decimais ou mais se necessário.
+     */
+    public String formatar(String ativo, long preco) {
+        long escalado = paraPontoFixo(ativo, preco);
+        long inteiro = escalado / ESCALA;
+        long fracao = Math.abs(escalado % ESCALA);
+
+        StringBuilder sb = new StringBuilder();
+        if (escalado < 0 && inteiro == 0) {
+            sb.append('-');
+        }
+        sb.append(inteiro).append('.');
+
+        String casas = Long.toString(fracao + ESCALA).substring(1);
+        int fim = casas.length();
+        while (fim > 2 && casas.charAt(fim - 1) == '0') {
+            fim--;
+        }
+        return sb.append(casas, 0, fim).toString();
+    }
+
+    /**
+     * Converte um valor decimal para a representação em ponto fixo (unidades de 1/ESCALA).
+     *
+     * @param valor O valor em formato decimal.
+     * @return O valor em ponto fixo.
+     * @throws IllegalArgumentException Se o valor for inválido ou tiver mais casas do que a escala suporta.
+     */
+    static long paraPontoFixo(CharSequence valor) {
+        int tamanho = valor.length();
+        if (tamanho == 0) {
+            throw new IllegalArgumentException("Valor vazio");
+        }
+
+        long inteiro = 0;
+        long fracao = 0;
+        int casas = -1;
+        for (int i = 0; i < tamanho; i++) {
+            char c = valor.charAt(i);
+            if (c == '.' || c == ',') {
+                if (casas >= 0) {
+                    throw new IllegalArgumentException("Valor inválido: " + valor);
+                }
+                casas = 0;
+            } else if (c >= '0' && c <= '9') {
+                int digito = c - '0';
+                if (casas < 0) {
+                    inteiro = Math.addExact(Math.multiplyExact(inteiro, 10), digito);
+                } else if (casas < CASAS_DECIMAIS) {
+                    fracao = fracao * 10 + digito;
+                    casas++;
+                } else if (digito != 0) {
+                    throw new IllegalArgumentException("Valor com casas decimais demais: " + valor);
+                }
+            } else {
+                throw new IllegalArgumentException("Valor inválido: " + valor);
+            }
+        }
+
+        for (int i = Math.max(casas, 0); i < CASAS_DECIMAIS; i++) {
+            fracao *= 10;
+        }
+        return Math.addExact(Math.multiplyExact(inteiro, ESCALA), fracao);
+    }
+}
@@ -0,0 +1,82 @@
+package services.manager;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A classe TabelaPorCodigo guarda um valor por código de um Dicionario (o livro de cada ativo,
+ * a rota de cada corretora), em um vetor indexado pelo código que cresce conforme os códigos
+ * aparecem. A consulta é uma leitura do vetor, sem hash e sem bloqueio; a criação de um valor
+ * sincroniza na tabela e ocorre uma única vez por código.
+ *
+ * @param <T> O tipo dos valores.
+ */
+public final class TabelaPorCodigo<T> {
+
+    private volatile AtomicReferenceArray<T> valores = new AtomicReferenceArray<>(16);
+
+    /**
+     * Obtém o valor de um código.
+     *
+     * @param codigo O código.
+     * @return O valor, ou null se ainda não houver valor para o código.
+     */
+    public T obter(int codigo) {
+        AtomicReferenceArray<T> atuais = valores;
+        return codigo < atuais.length() ? atuais.get(codigo) : null;
+    }
+
+    /**
+     * Obtém o valor de um código, criando-o se ainda não existir.
+     *
+     * @param codigo O código.
+     * @param criar  A função que cria o valor a partir do código, chamada com a tabela bloqueada.
+     * @return O valor.
+     */
+    public T obter(int codigo, IntFunction<? extends T> criar) {
+        T valor = obter(codigo);
+        return valor != null ? valor : criar(codigo, criar);
+    }
+
+    /**
+     * Aplica uma ação a cada valor da tabela, em ordem de código. Os valores criados durante a
+     * iteração podem não ser visitados.
+     *
+     * @param acao A ação.
+     */
+    public void paraCada(Consumer<? super T> acao) {
+        AtomicReferenceArray<T> atuais = valores;
+        for (int codigo = 0; codigo < atuais.length(); codigo++) {
+            T valor = atuais.get(codigo);
+            if (valor != null) {
+                acao.accept(valor);
+            }
+        }
+    }
+
+    /**
+     * Remove todos os valores.
+     */
+    public synchronized void limpar() {
+        valores = new AtomicReferenceArray<>(16);
+    }
+
+    private synchronized T criar(int codigo, IntFunction<? extends T> criar) {
+        AtomicReferenceArray<T> atuais = valores;
+        if (codigo >= atuais.length()) {
+            AtomicReferenceArray<T> maiores = new AtomicReferenceArray<>(Math.max(codigo + 1, atuais.length() * 2));
+            for (int i = 0; i < atuais.length(); i++) {
+                maiores.set(i, atuais.get(i));
+            }
+            valores = maiores;
+            atuais = maiores;
+        }
+        T valor = atuais.get(codigo);
+        if (valor == null) {
+            valor = criar.apply(codigo);
+            atuais.set(codigo, valor);
+        }
+        return valor;
+    }
+}
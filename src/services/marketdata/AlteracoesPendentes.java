@@ -0,0 +1,125 @@
+package services.marketdata;
+
+import java.util.Arrays;
+
+import services.manager.TipoOperacao;
+
+/**
+ * A classe AlteracoesPendentes consolida as alterações de nível de um ativo ainda não
+ * publicadas: uma por lado e preço, com a quantidade e a sequência mais recentes.
+ *
+ * As alterações ficam em vetores primitivos, na ordem da primeira alteração de cada nível, e
+ * uma tabela de endereçamento aberto localiza o nível já pendente, sem objetos por preço. Os
+ * vetores são mantidos entre os intervalos de publicação (ver limpar).
+ *
+ * A classe não é sincronizada.
+ */
+final class AlteracoesPendentes {
+
+    private static final int CAPACIDADE_INICIAL = 16;
+
+    private boolean[] compras = new boolean[CAPACIDADE_INICIAL];
+    private long[] precos = new long[CAPACIDADE_INICIAL];
+    private long[] quantidades = new long[CAPACIDADE_INICIAL];
+    private long[] sequencias = new long[CAPACIDADE_INICIAL];
+    private int tamanho;
+
+    // Posição + 1 de cada alteração por hash do lado e do preço; 0 se livre
+    private int[] tabela = new int[2 * CAPACIDADE_INICIAL];
+
+    /**
+     * Registra a alteração de um nível, substituindo a alteração pendente do mesmo nível.
+     *
+     * @param lado       O lado do livro (COMPRA ou VENDA).
+     * @param preco      O preço, em ticks.
+     * @param quantidade A nova quantidade total do nível.
+     * @param sequencia  A sequência da alteração.
+     */
+    void registrar(TipoOperacao lado, long preco, long quantidade, long sequencia) {
+        boolean compra = lado == TipoOperacao.COMPRA;
+        int mascara = tabela.length - 1;
+        int i = espalhar(compra, preco) & mascara;
+        for (int posicao = tabela[i] - 1; posicao >= 0; posicao = tabela[i] - 1) {
+            if (precos[posicao] == preco && compras[posicao] == compra) {
+                quantidades[posicao] = quantidade;
+                sequencias[posicao] = sequencia;
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+
+        if (tamanho == precos.length) {
+            crescer();
+            i = livre(tabela, espalhar(compra, preco));
+        }
+        compras[tamanho] = compra;
+        precos[tamanho] = preco;
+        quantidades[tamanho] = quantidade;
+        sequencias[tamanho] = sequencia;
+        tabela[i] = ++tamanho;
+    }
+
+    /**
+     * Obtém a quantidade de alterações pendentes.
+     *
+     * @return A quantidade de alterações.
+     */
+    int tamanho() {
+        return tamanho;
+    }
+
+    boolean isVazio() {
+        return tamanho == 0;
+    }
+
+    TipoOperacao lado(int posicao) {
+        return compras[posicao] ? TipoOperacao.COMPRA : TipoOperacao.VENDA;
+    }
+
+    long preco(int posicao) {
+        return precos[posicao];
+    }
+
+    long quantidade(int posicao) {
+        return quantidades[posicao];
+    }
+
+    long sequencia(int posicao) {
+        return sequencias[posicao];
+    }
+
+    /**
+     * Descarta as alterações, mantendo os vetores para o próximo intervalo.
+     */
+    void limpar() {
+        Arrays.fill(tabela, 0);
+        tamanho = 0;
+    }
+
+    private void crescer() {
+        int capacidade = precos.length * 2;
+        compras = Arrays.copyOf(compras, capacidade);
+        precos = Arrays.copyOf(precos, capacidade);
+        quantidades = Arrays.copyOf(quantidades, capacidade);
+        sequencias = Arrays.copyOf(sequencias, capacidade);
+        tabela = new int[2 * capacidade];
+        for (int posicao = 0; posicao < tamanho; posicao++) {
+            tabela[livre(tabela, espalhar(compras[posicao], precos[posicao]))] = posicao + 1;
+        }
+    }
+
+    private static int livre(int[] tabela, int hash) {
+        int mascara = tabela.length - 1;
+        int i = hash & mascara;
+        while (tabela[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        return i;
+    }
+
+    // Preços vizinhos têm hashes vizinhos: a multiplicação os espalha pela tabela
+    private static int espalhar(boolean compra, long preco) {
+        long h = (preco << 1 | (compra ? 1 : 0)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
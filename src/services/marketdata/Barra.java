@@ -0,0 +1,156 @@
+package services.marketdata;
+
+/**
+ * A classe Barra representa os negócios de um ativo em um período de duração fixa (uma barra,
+ * ou candle, de um gráfico): os preços de abertura, máxima, mínima e fechamento, o volume, a
+ * quantidade de negócios e o preço médio ponderado pelo volume (VWAP).
+ *
+ * Os preços estão em ticks, e o volume financeiro é a soma de preço × quantidade, também em
+ * ticks. Os objetos são imutáveis e copiam o estado da barra no momento da consulta.
+ */
+public final class Barra {
+
+    private final String ativo;
+    private final long inicio;
+    private final long duracao;
+    private final long abertura;
+    private final long maxima;
+    private final long minima;
+    private final long fechamento;
+    private final long volume;
+    private final long negocios;
+    private final long financeiro;
+
+    /**
+     * Cria uma barra.
+     *
+     * @param ativo      O ativo.
+     * @param inicio     O início do período, em nanossegundos desde a época.
+     * @param duracao    A duração do período, em nanossegundos.
+     * @param abertura   O preço do primeiro negócio do período, em ticks.
+     * @param maxima     O maior preço negociado no período, em ticks.
+     * @param minima     O menor preço negociado no período, em ticks.
+     * @param fechamento O preço do último negócio do período, em ticks.
+     * @param volume     A quantidade de ações negociadas no período.
+     * @param negocios   A quantidade de negócios do período.
+     * @param financeiro A soma de preço × quantidade dos negócios do período, em ticks.
+     */
+    public Barra(String ativo, long inicio, long duracao, long abertura, long maxima, long minima,
+                 long fechamento, long volume, long negocios, long financeiro) {
+        this.ativo = ativo;
+        this.inicio = inicio;
+        this.duracao = duracao;
+        this.abertura = abertura;
+        this.maxima = maxima;
+        this.minima = minima;
+        this.fechamento = fechamento;
+        this.volume = volume;
+        this.negocios = negocios;
+        this.financeiro = financeiro;
+    }
+
+    /**
+     * Obtém o ativo.
+     *
+     * @return O ativo.
+     */
+    public String getAtivo() {
+        return ativo;
+    }
+
+    /**
+     * Obtém o início do período.
+     *
+     * @return Os nanossegundos desde a época.
+     */
+    public long getInicio() {
+        return inicio;
+    }
+
+    /**
+     * Obtém a duração do período.
+     *
+     * @return A duração, em nanossegundos.
+     */
+    public long getDuracao() {
+        return duracao;
+    }
+
+    /**
+     * Obtém o preço de abertura.
+     *
+     * @return O preço do primeiro negócio, em ticks.
+     */
+    public long getAbertura() {
+        return abertura;
+    }
+
+    /**
+     * Obtém o preço máximo.
+     *
+     * @return O maior preço negociado, em ticks.
+     */
+    public long getMaxima() {
+        return maxima;
+    }
+
+    /**
+     * Obtém o preço mínimo.
+     *
+     * @return O menor preço negociado, em ticks.
+     */
+    public long getMinima() {
+        return minima;
+    }
+
+    /**
+     * Obtém o preço de fechamento, que na barra do período corrente é o do último negócio.
+     *
+     * @return O preço do último negócio, em ticks.
+     */
+    public long getFechamento() {
+        return fechamento;
+    }
+
+    /**
+     * Obtém o volume.
+     *
+     * @return A quantidade de ações negociadas.
+     */
+    public long getVolume() {
+        return volume;
+    }
+
+    /**
+     * Obtém a quantidade de negócios.
+     *
+     * @return A quantidade de negócios.
+     */
+    public long getNegocios() {
+        return negocios;
+    }
+
+    /**
+     * Obtém o volume financeiro.
+     *
+     * @return A soma de preço × quantidade, em ticks.
+     */
+    public long getFinanceiro() {
+        return financeiro;
+    }
+
+    /**
+     * Obtém o preço médio ponderado pelo volume.
+     *
+     * @return O VWAP, em ticks (fracionário).
+     */
+    public double getVwap() {
+        return volume == 0 ? 0 : (double) financeiro / volume;
+    }
+
+    @Override
+    public String toString() {
+        return ativo + " [" + abertura + ", " + maxima + ", " + minima + ", " + fechamento + "] volume " + volume
+                + " negócios " + negocios + " VWAP " + getVwap();
+    }
+}
@@ -0,0 +1,156 @@
+package services.marketdata;
+
+import java.util.Arrays;
+
+/**
+ * A classe BarrasAtivo agrega incrementalmente os negócios de um ativo em barras de vários
+ * intervalos (por exemplo, 1 segundo, 1 minuto, 5 minutos e 1 dia), atualizadas a cada negócio.
+ *
+ * As barras recentes de cada intervalo ficam em um buffer circular de capacidade fixa, em vetores
+ * de tipos primitivos, um vetor por campo, indexados por intervalo × capacidade + posição. A
+ * posição de uma barra é o número do seu período módulo a capacidade, de modo que o registro de
+ * um negócio e a consulta de qualquer barra recente são O(1), sem alocação no registro. Os
+ * períodos são alinhados à época (UTC): a barra diária vai da meia-noite à meia-noite UTC.
+ *
+ * Um negócio de um período mais antigo do que o da barra que ocupa a sua posição (o que só
+ * ocorre se as datas dos negócios retrocederem mais do que o buffer) é ignorado.
+ *
+ * Não é thread-safe: o PublicadorMercado acessa as barras com o monitor do estado do ativo.
+ */
+final class BarrasAtivo {
+
+    private static final long SEM_PERIODO = Long.MIN_VALUE;
+
+    private final String ativo;
+    private final long[] intervalos; // em nanossegundos
+    private final int capacidade;
+
+    private final long[] periodos; // número do período (data / intervalo) de cada posição
+    private final long[] aberturas;
+    private final long[] maximas;
+    private final long[] minimas;
+    private final long[] fechamentos;
+    private final long[] volumes;
+    private final long[] negocios;
+    private final long[] financeiros;
+    private final boolean[] alteradas; // alteradas desde a última publicação
+    private final long[] ultimos; // período mais recente de cada intervalo
+    private int quantidadeAlteradas;
+
+    /**
+     * Cria as barras vazias de um ativo.
+     *
+     * @param ativo      O ativo.
+     * @param intervalos As durações das barras, em nanossegundos.
+     * @param capacidade A quantidade de barras recentes guardadas de cada intervalo.
+     */
+    BarrasAtivo(String ativo, long[] intervalos, int capacidade) {
+        this.ativo = ativo;
+        this.intervalos = intervalos;
+        this.capacidade = capacidade;
+        int tamanho = intervalos.length * capacidade;
+        periodos = new long[tamanho];
+        Arrays.fill(periodos, SEM_PERIODO);
+        aberturas = new long[tamanho];
+        maximas = new long[tamanho];
+        minimas = new long[tamanho];
+        fechamentos = new long[tamanho];
+        volumes = new long[tamanho];
+        negocios = new long[tamanho];
+        financeiros = new long[tamanho];
+        alteradas = new boolean[tamanho];
+        ultimos = new long[intervalos.length];
+        Arrays.fill(ultimos, SEM_PERIODO);
+    }
+
+    /**
+     * Registra um negócio nas barras de todos os intervalos.
+     *
+     * @param dataHora   A data e hora do negócio, em nanossegundos desde a época.
+     * @param preco      O preço do negócio, em ticks.
+     * @param quantidade A quantidade negociada.
+     */
+    void registrar(long dataHora, long preco, int quantidade) {
+        for (int i = 0; i < intervalos.length; i++) {
+            long periodo = Math.floorDiv(dataHora, intervalos[i]);
+            int indice = i * capacidade + (int) Math.floorMod(periodo, (long) capacidade);
+            if (periodos[indice] != periodo) {
+                if (periodos[indice] > periodo) {
+                    continue;
+                }
+                // Primeiro negócio do período: a posição passa a ser a da nova barra
+                periodos[indice] = periodo;
+                aberturas[indice] = preco;
+                maximas[indice] = preco;
+                minimas[indice] = preco;
+                volumes[indice] = 0;
+                negocios[indice] = 0;
+                financeiros[indice] = 0;
+            } else {
+                maximas[indice] = Math.max(maximas[indice], preco);
+                minimas[indice] = Math.min(minimas[indice], preco);
+            }
+            fechamentos[indice] = preco;
+            volumes[indice] += quantidade;
+            negocios[indice]++;
+            financeiros[indice] += preco * quantidade;
+            if (periodo > ultimos[i]) {
+                ultimos[i] = periodo;
+            }
+            if (!alteradas[indice]) {
+                alteradas[indice] = true;
+                quantidadeAlteradas++;
+            }
+        }
+    }
+
+    /**
+     * Obtém uma barra recente de um intervalo.
+     *
+     * @param intervalo A posição do intervalo, na ordem em que os intervalos foram informados.
+     * @param atras     Quantos períodos antes do mais recente (0 para a barra do último negócio).
+     * @return A barra, ou null se não houve negócios no período ou se ele já saiu do buffer.
+     */
+    Barra barra(int intervalo, int atras) {
+        if (atras < 0 || atras >= capacidade || ultimos[intervalo] == SEM_PERIODO) {
+            return null;
+        }
+        long periodo = ultimos[intervalo] - atras;
+        int indice = intervalo * capacidade + (int) Math.floorMod(periodo, (long) capacidade);
+        return periodos[indice] == periodo ? copiar(intervalo, indice) : null;
+    }
+
+    /**
+     * Indica se alguma barra foi alterada desde a última publicação.
+     *
+     * @return true se houver barras a publicar.
+     */
+    boolean temAlteradas() {
+        return quantidadeAlteradas > 0;
+    }
+
+    /**
+     * Lista as barras alteradas desde a última publicação, em ordem de intervalo e de posição, e
+     * as marca como publicadas.
+     *
+     * @return As barras alteradas.
+     */
+    Barra[] retirarAlteradas() {
+        Barra[] barras = new Barra[quantidadeAlteradas];
+        int n = 0;
+        for (int indice = 0; indice < alteradas.length && n < barras.length; indice++) {
+            if (alteradas[indice]) {
+                alteradas[indice] = false;
+                barras[n++] = copiar(indice / capacidade, indice);
+            }
+        }
+        quantidadeAlteradas = 0;
+        return barras;
+    }
+
+    private Barra copiar(int intervalo, int indice) {
+        return new Barra(ativo, periodos[indice] * intervalos[intervalo], intervalos[intervalo],
+                aberturas[indice], maximas[indice], minimas[indice], fechamentos[indice],
+                volumes[indice], negocios[indice], financeiros[indice]);
+    }
+}
@@ -0,0 +1,309 @@
+package services.marketdata;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import services.codec.CacheDeNomes;
+import services.codec.CodecBinario;
+import services.codec.FormatoMensagem;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+import services.mq.Mensagem;
+import services.mq.Transporte;
+import utils.RabbitMQConfig;
+
+/**
+ * A classe ConsultaLivro consulta, pela mensageria, os melhores níveis do livro da Bolsa de
+ * Valores, para um Broker que não tem o livro no seu processo.
+ *
+ * Cada consulta é publicada com a chave "CONSULTA.ativo" (ou "CONSULTA" para todos os ativos),
+ * um ID de correlação próprio e a chave de resposta "RESPOSTA.corretora", assinada em uma fila
+ * exclusiva do Broker. A resposta é associada à consulta pelo ID de correlação; respostas que
+ * chegam depois do tempo limite são descartadas.
+ *
+ * As respostas recentes são reaproveitadas: enquanto uma consulta com pelo menos a mesma
+ * profundidade tiver menos de VALIDADE_CONSULTA milissegundos, inclusive se ainda aguarda a
+ * resposta, uma nova consulta do mesmo ativo recebe o mesmo resultado, sem ida à Bolsa. A idade é
+ * contada a partir do envio da consulta, de modo que os níveis nunca são mais antigos do que o limite.
+ */
+public class ConsultaLivro {
+
+    // Máximo de respostas aguardando processamento na fila do Broker
+    private static final int MAX_RESPOSTAS = 1_000;
+
+    private static final ScheduledExecutorService EXPIRACOES = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+        Thread thread = new Thread(tarefa, "ConsultaLivro-expiracao");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Transporte transporte;
+    private final String corretora;
+    private final String rotaResposta;
+    private final long tempoNanos;
+    private final long validadeNanos;
+    private final AtomicLong numeracao = new AtomicLong();
+    private final AtomicLong acertos = new AtomicLong();
+
+    private final Map<String, Consulta> pendentes = new ConcurrentHashMap<>(); // por ID de correlação
+    private final Map<String, Consulta> recentes = new ConcurrentHashMap<>(); // por ativo ("" para todos)
+    private final CacheDeNomes nomes; // usado apenas pela thread das respostas
+
+    /**
+     * Cria a consulta ao livro de um Broker e assina as suas respostas.
+     *
+     * @param transporte O transporte das mensagens.
+     * @param corretora  O nome da corretora do Broker.
+     * @throws IOException Em caso de erro ao assinar as respostas.
+     */
+    public ConsultaLivro(Transporte transporte, String corretora) throws IOException {
+        this(transporte, corretora, 1024);
+        transporte.assinar(Collections.singletonList(rotaResposta), MAX_RESPOSTAS, this::receberResposta);
+    }
+
+    private ConsultaLivro(Transporte transporte, String corretora, int capacidadeNomes) {
+        this.transporte = transporte;
+        this.corretora = corretora;
+        this.rotaResposta = RabbitMQConfig.ROTA_RESPOSTA + "." + corretora;
+        this.tempoNanos = TimeUnit.MILLISECONDS.toNanos(RabbitMQConfig.TEMPO_CONSULTA);
+        this.validadeNanos = TimeUnit.MILLISECONDS.toNanos(RabbitMQConfig.VALIDADE_CONSULTA);
+        this.nomes = new CacheDeNomes(capacidadeNomes);
+    }
+
+    /**
+     * Cria a consulta ao livro de um Broker sem assinar as respostas. Quem recebe as mensagens
+     * com a chave getRotaResposta() as repassa a receberResposta, como as sessões de Broker que
+     * compartilham uma fila. O cache de nomes é pequeno, para reduzir a memória por sessão.
+     *
+     * @param transporte O transporte das mensagens.
+     * @param corretora  O nome da corretora do Broker.
+     * @return A consulta ao livro.
+     */
+    public static ConsultaLivro semAssinatura(Transporte transporte, String corretora) {
+        return new ConsultaLivro(transporte, corretora, 16);
+    }
+
+    /**
+     * Obtém a chave de roteamento das respostas às consultas deste Broker.
+     *
+     * @return A chave "RESPOSTA.corretora".
+     */
+    public String getRotaResposta() {
+        return rotaResposta;
+    }
+
+    /**
+     * Consulta os melhores níveis do livro de um ativo.
+     *
+     * @param ativo        O ativo.
+     * @param profundidade A quantidade máxima de níveis de cada lado (a Bolsa pode responder menos).
+     * @return Um future concluído com a profundidade do livro, ou com TimeoutException se a Bolsa
+     *         não responder a tempo.
+     * @throws IOException Em caso de erro ao publicar a consulta.
+     */
+    public CompletableFuture<ProfundidadeLivro> consultar(String ativo, int profundidade) throws IOException {
+        if (ativo.isEmpty()) {
+            throw new IllegalArgumentException("Ativo não informado");
+        }
+        return obter(ativo, profundidade).thenApply(livros -> {
+            ProfundidadeLivro livro = livros.get(ativo);
+            return livro == null ? ProfundidadeLivro.vazia(ativo) : livro.limitar(profundidade);
+        });
+    }
+
+    /**
+     * Consulta os melhores níveis do livro de todos os ativos com ofertas.
+     *
+     * @param profundidade A quantidade máxima de níveis de cada lado de cada ativo.
+     * @return Um future concluído com a profundidade do livro de cada ativo, ou com
+     *         TimeoutException se a Bolsa não responder a tempo.
+     * @throws IOException Em caso de erro ao publicar a consulta.
+     */
+    public CompletableFuture<Map<String, ProfundidadeLivro>> consultarTodos(int profundidade) throws IOException {
+        return obter("", profundidade);
+    }
+
+    /**
+     * Obtém a quantidade de consultas respondidas com uma resposta recente, sem ida à Bolsa.
+     *
+     * @return A quantidade de consultas respondidas pelo cache.
+     */
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    private CompletableFuture<Map<String, ProfundidadeLivro>> obter(String ativo, int profundidade) throws IOException {
+        if (profundidade <= 0) {
+            throw new IllegalArgumentException("Profundidade inválida: " + profundidade);
+        }
+        long agora = System.nanoTime();
+        Consulta recente = recentes.get(ativo);
+        if (recente != null && recente.profundidade >= profundidade && agora - recente.envio <= validadeNanos
+                && !recente.resposta.isCompletedExceptionally()) {
+            acertos.incrementAndGet();
+            return recente.resposta;
+        }
+
+        Consulta consulta = new Consulta(ativo, profundidade, agora);
+        String idCorrelacao = corretora + "-" + numeracao.incrementAndGet();
+        pendentes.put(idCorrelacao, consulta);
+        if (validadeNanos > 0) {
+            recentes.put(ativo, consulta);
+        }
+        consulta.expiracao = EXPIRACOES.schedule(() -> expirar(idCorrelacao), tempoNanos, TimeUnit.NANOSECONDS);
+
+        byte[] pedido = new byte[CodecBinario.TAMANHO_CONSULTA];
+        CodecBinario.codificarConsulta(pedido, 0, ativo, profundidade, corretora);
+        String routingKey = ativo.isEmpty() ? RabbitMQConfig.ROTA_CONSULTA : RabbitMQConfig.ROTA_CONSULTA + "." + ativo;
+        try {
+            transporte.publicar(routingKey, pedido, FormatoMensagem.BINARIO.getTipoConteudo(), idCorrelacao, rotaResposta);
+        } catch (IOException | RuntimeException e) {
+            descartar(idCorrelacao, consulta);
+            consulta.expiracao.cancel(false);
+            consulta.resposta.completeExceptionally(e);
+            throw e;
+        }
+        return consulta.resposta;
+    }
+
+    /**
+     * Conclui com erro uma consulta que não foi respondida no tempo limite.
+     */
+    private void expirar(String idCorrelacao) {
+        Consulta consulta = pendentes.get(idCorrelacao);
+        if (consulta != null && descartar(idCorrelacao, consulta)) {
+            consulta.resposta.completeExceptionally(new TimeoutException(
+                    "Sem resposta da Bolsa em " + RabbitMQConfig.TEMPO_CONSULTA + " ms para a consulta " + idCorrelacao));
+        }
+    }
+
+    private boolean descartar(String idCorrelacao, Consulta consulta) {
+        recentes.remove(consulta.ativo, consulta);
+        return pendentes.remove(idCorrelacao, consulta);
+    }
+
+    /**
+     * Associa uma resposta à sua consulta pelo ID de correlação e a decodifica. As respostas de
+     * um Broker devem ser recebidas por uma única thread de cada vez. A entrega é concluída
+     * mesmo que a resposta seja inválida ou o seu processamento falhe.
+     *
+     * @param recebida A resposta recebida.
+     */
+    public void receberResposta(Mensagem recebida) {
+        try {
+            Consulta consulta = recebida.getIdCorrelacao() == null ? null : pendentes.remove(recebida.getIdCorrelacao());
+            if (consulta != null) {
+                ScheduledFuture<?> expiracao = consulta.expiracao;
+                if (expiracao != null) {
+                    // Sem a expiração ainda agendada, ela não encontrará a consulta pendente
+                    expiracao.cancel(false);
+                }
+                try {
+                    consulta.resposta.complete(decodificar(recebida.getCorpo()));
+                } catch (RuntimeException e) {
+                    // A consulta falha na hora, em vez de esperar a expiração
+                    recentes.remove(consulta.ativo, consulta);
+                    consulta.resposta.completeExceptionally(e);
+                }
+            }
+        } finally {
+            transporte.concluirEntrega(recebida.getIdEntrega());
+        }
+    }
+
+    /**
+     * Decodifica os registros ATUALIZACAO de uma resposta, agrupados por ativo e, em cada lado,
+     * do melhor para o pior preço.
+     */
+    private Map<String, ProfundidadeLivro> decodificar(byte[] corpo) {
+        Map<String, Niveis> niveis = new HashMap<>();
+        for (int offset = 0; offset < corpo.length; offset += CodecBinario.TAMANHO_ATUALIZACAO) {
+            if (CodecBinario.tipoMensagem(corpo, offset, corpo.length - offset) != CodecBinario.TIPO_ATUALIZACAO) {
+                throw new IllegalArgumentException("Resposta de consulta com registro que não é ATUALIZACAO");
+            }
+            String ativo = CodecBinario.ativo(corpo, offset, nomes);
+            Niveis doAtivo = niveis.computeIfAbsent(ativo, Niveis::new);
+            doAtivo.sequencia = CodecBinario.sequencia(corpo, offset);
+            doAtivo.adicionar(CodecBinario.lado(corpo, offset),
+                    TabelaDeTicks.getInstance().paraTicks(ativo, CodecBinario.preco(corpo, offset)),
+                    CodecBinario.quantidade(corpo, offset));
+        }
+
+        Map<String, ProfundidadeLivro> livros = new HashMap<>();
+        for (Niveis doAtivo : niveis.values()) {
+            livros.put(doAtivo.ativo, doAtivo.concluir());
+        }
+        return Collections.unmodifiableMap(livros);
+    }
+
+    /**
+     * Consulta enviada: o ativo, a profundidade pedida, o instante do envio (System.nanoTime)
+     * e a resposta, compartilhada pelas consultas que a reaproveitam.
+     */
+    private static class Consulta {
+        final String ativo;
+        final int profundidade;
+        final long envio;
+        final CompletableFuture<Map<String, ProfundidadeLivro>> resposta = new CompletableFuture<>();
+        volatile ScheduledFuture<?> expiracao;
+
+        Consulta(String ativo, int profundidade, long envio) {
+            this.ativo = ativo;
+            this.profundidade = profundidade;
+            this.envio = envio;
+        }
+    }
+
+    /**
+     * Níveis de um ativo em decodificação.
+     */
+    private static class Niveis {
+        final String ativo;
+        long sequencia;
+        long[] precosCompra = new long[8];
+        long[] quantidadesCompra = new long[8];
+        long[] precosVenda = new long[8];
+        long[] quantidadesVenda = new long[8];
+        int compras;
+        int vendas;
+
+        Niveis(String ativo) {
+            this.ativo = ativo;
+        }
+
+        void adicionar(TipoOperacao lado, long preco, long quantidade) {
+            if (lado == TipoOperacao.COMPRA) {
+                if (compras == precosCompra.length) {
+                    precosCompra = Arrays.copyOf(precosCompra, compras * 2);
+                    quantidadesCompra = Arrays.copyOf(quantidadesCompra, compras * 2);
+                }
+                precosCompra[compras] = preco;
+                quantidadesCompra[compras++] = quantidade;
+            } else {
+                if (vendas == precosVenda.length) {
+                    precosVenda = Arrays.copyOf(precosVenda, vendas * 2);
+                    quantidadesVenda = Arrays.copyOf(quantidadesVenda, vendas * 2);
+                }
+                precosVenda[vendas] = preco;
+                quantidadesVenda[vendas++] = quantidade;
+            }
+        }
+
+        ProfundidadeLivro concluir() {
+            return new ProfundidadeLivro(ativo, sequencia,
+                    Arrays.copyOf(precosCompra, compras), Arrays.copyOf(quantidadesCompra, compras),
+                    Arrays.copyOf(precosVenda, vendas), Arrays.copyOf(quantidadesVenda, vendas));
+        }
+    }
+}
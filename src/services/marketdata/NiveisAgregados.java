@@ -0,0 +1,107 @@
+package services.marketdata;
+
+import java.util.Arrays;
+
+/**
+ * A classe NiveisAgregados guarda a quantidade total de cada nível de preço de um lado do livro
+ * de um ativo, como divulgada pelo PublicadorMercado.
+ *
+ * Como em NiveisDePreco, os preços ficam em um vetor primitivo ordenado, com o melhor nível na
+ * última posição, e as quantidades em um vetor paralelo, sem objetos por nível. Alterar o
+ * melhor nível custa O(1); os demais, uma busca binária e o deslocamento dos níveis melhores.
+ *
+ * A classe não é sincronizada: o PublicadorMercado delimita as escritas com a versão do estado
+ * do ativo, e os leitores copiam os níveis de forma otimista (ver copiar).
+ */
+final class NiveisAgregados {
+
+    private static final int CAPACIDADE_INICIAL = 16;
+
+    // true para o lado de compra (melhor = maior preço), false para o lado de venda (melhor = menor preço)
+    private final boolean compra;
+
+    // Chaves em ordem crescente; a chave é o preço na compra e o preço negado na venda
+    private long[] chaves = new long[CAPACIDADE_INICIAL];
+    private long[] quantidades = new long[CAPACIDADE_INICIAL];
+    private int tamanho;
+
+    /**
+     * Cria um lado vazio.
+     *
+     * @param compra true para o lado de compra, false para o lado de venda.
+     */
+    NiveisAgregados(boolean compra) {
+        this.compra = compra;
+    }
+
+    /**
+     * Define a quantidade total de um nível, removendo-o se a quantidade for zero.
+     *
+     * @param preco      O preço, em ticks.
+     * @param quantidade A quantidade total do nível.
+     */
+    void definir(long preco, long quantidade) {
+        long chave = compra ? preco : -preco;
+        int indice = tamanho > 0 && chaves[tamanho - 1] == chave
+                ? tamanho - 1
+                : Arrays.binarySearch(chaves, 0, tamanho, chave);
+
+        if (indice >= 0) {
+            if (quantidade != 0) {
+                quantidades[indice] = quantidade;
+            } else {
+                System.arraycopy(chaves, indice + 1, chaves, indice, tamanho - indice - 1);
+                System.arraycopy(quantidades, indice + 1, quantidades, indice, tamanho - indice - 1);
+                tamanho--;
+            }
+            return;
+        }
+        if (quantidade == 0) {
+            return;
+        }
+
+        int posicao = -(indice + 1);
+        if (tamanho == chaves.length) {
+            chaves = Arrays.copyOf(chaves, tamanho * 2);
+            quantidades = Arrays.copyOf(quantidades, tamanho * 2);
+        }
+        System.arraycopy(chaves, posicao, chaves, posicao + 1, tamanho - posicao);
+        System.arraycopy(quantidades, posicao, quantidades, posicao + 1, tamanho - posicao);
+        chaves[posicao] = chave;
+        quantidades[posicao] = quantidade;
+        tamanho++;
+    }
+
+    /**
+     * Obtém a quantidade de níveis.
+     *
+     * @return A quantidade de níveis.
+     */
+    int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Copia os melhores níveis, do melhor para o pior, para vetores de destino. Durante uma
+     * escrita concorrente a cópia pode sair inconsistente ou lançar uma exceção; quem lê de
+     * outra thread valida a versão do estado do ativo e repete a cópia.
+     *
+     * @param precos      O destino dos preços, em ticks.
+     * @param destino     O destino das quantidades.
+     * @param posicao     A posição inicial nos vetores de destino.
+     * @param maximo      A quantidade máxima de níveis a copiar.
+     * @return A quantidade de níveis copiados.
+     */
+    int copiar(long[] precos, long[] destino, int posicao, int maximo) {
+        long[] lidasChaves = chaves;
+        long[] lidasQuantidades = quantidades;
+        int lido = tamanho;
+        int copiados = Math.min(lido, maximo);
+        for (int i = 0; i < copiados; i++) {
+            long chave = lidasChaves[lido - 1 - i];
+            precos[posicao + i] = compra ? chave : -chave;
+            destino[posicao + i] = lidasQuantidades[lido - 1 - i];
+        }
+        return copiados;
+    }
+}
@@ -0,0 +1,128 @@
+package services.marketdata;
+
+import services.manager.TipoOperacao;
+
+/**
+ * A classe ProfundidadeLivro representa os melhores níveis de preço do livro agregado de um
+ * ativo, como respondidos pela Bolsa de Valores a uma consulta: em cada lado, os níveis do
+ * melhor para o pior preço, com a quantidade total de cada nível.
+ *
+ * A sequência é a da última alteração do livro refletida nos níveis, a mesma das mensagens
+ * ATUALIZACAO e SNAPSHOT dos dados de mercado. Os objetos são imutáveis.
+ */
+public final class ProfundidadeLivro {
+
+    private final String ativo;
+    private final long sequencia;
+    private final long[] precosCompra;
+    private final long[] quantidadesCompra;
+    private final long[] precosVenda;
+    private final long[] quantidadesVenda;
+
+    /**
+     * Cria a profundidade do livro de um ativo.
+     *
+     * @param ativo             O ativo.
+     * @param sequencia         A sequência da última alteração refletida nos níveis.
+     * @param precosCompra      Os preços dos níveis de compra, em ticks, do maior para o menor.
+     * @param quantidadesCompra As quantidades dos níveis de compra.
+     * @param precosVenda       Os preços dos níveis de venda, em ticks, do menor para o maior.
+     * @param quantidadesVenda  As quantidades dos níveis de venda.
+     */
+    public ProfundidadeLivro(String ativo, long sequencia, long[] precosCompra, long[] quantidadesCompra,
+                             long[] precosVenda, long[] quantidadesVenda) {
+        this.ativo = ativo;
+        this.sequencia = sequencia;
+        this.precosCompra = precosCompra;
+        this.quantidadesCompra = quantidadesCompra;
+        this.precosVenda = precosVenda;
+        this.quantidadesVenda = quantidadesVenda;
+    }
+
+    /**
+     * Cria a profundidade de um ativo sem ofertas.
+     *
+     * @param ativo O ativo.
+     * @return A profundidade sem níveis.
+     */
+    public static ProfundidadeLivro vazia(String ativo) {
+        return new ProfundidadeLivro(ativo, 0, new long[0], new long[0], new long[0], new long[0]);
+    }
+
+    /**
+     * Obtém o ativo.
+     *
+     * @return O ativo.
+     */
+    public String getAtivo() {
+        return ativo;
+    }
+
+    /**
+     * Obtém a sequência da última alteração do livro refletida nos níveis.
+     *
+     * @return A sequência, ou 0 se o ativo não tiver ofertas.
+     */
+    public long getSequencia() {
+        return sequencia;
+    }
+
+    /**
+     * Obtém a quantidade de níveis de um lado.
+     *
+     * @param lado O lado do livro (COMPRA ou VENDA).
+     * @return A quantidade de níveis.
+     */
+    public int niveis(TipoOperacao lado) {
+        return precos(lado).length;
+    }
+
+    /**
+     * Obtém o preço de um nível.
+     *
+     * @param lado  O lado do livro (COMPRA ou VENDA).
+     * @param nivel A posição do nível, a partir de 0 para o melhor preço.
+     * @return O preço do nível, em ticks do ativo.
+     */
+    public long preco(TipoOperacao lado, int nivel) {
+        return precos(lado)[nivel];
+    }
+
+    /**
+     * Obtém a quantidade total de um nível.
+     *
+     * @param lado  O lado do livro (COMPRA ou VENDA).
+     * @param nivel A posição do nível, a partir de 0 para o melhor preço.
+     * @return A quantidade total das ofertas do nível.
+     */
+    public long quantidade(TipoOperacao lado, int nivel) {
+        return lado == TipoOperacao.COMPRA ? quantidadesCompra[nivel] : quantidadesVenda[nivel];
+    }
+
+    /**
+     * Obtém a profundidade limitada aos melhores níveis de cada lado.
+     *
+     * @param profundidade A quantidade máxima de níveis de cada lado.
+     * @return Esta profundidade, se já estiver dentro do limite, ou uma cópia limitada.
+     */
+    public ProfundidadeLivro limitar(int profundidade) {
+        if (precosCompra.length <= profundidade && precosVenda.length <= profundidade) {
+            return this;
+        }
+        int compras = Math.min(profundidade, precosCompra.length);
+        int vendas = Math.min(profundidade, precosVenda.length);
+        long[] pc = new long[compras];
+        long[] qc = new long[compras];
+        long[] pv = new long[vendas];
+        long[] qv = new long[vendas];
+        System.arraycopy(precosCompra, 0, pc, 0, compras);
+        System.arraycopy(quantidadesCompra, 0, qc, 0, compras);
+        System.arraycopy(precosVenda, 0, pv, 0, vendas);
+        System.arraycopy(quantidadesVenda, 0, qv, 0, vendas);
+        return new ProfundidadeLivro(ativo, sequencia, pc, qc, pv, qv);
+    }
+
+    private long[] precos(TipoOperacao lado) {
+        return lado == TipoOperacao.COMPRA ? precosCompra : precosVenda;
+    }
+}
@@ -0,0 +1,504 @@
+package services.marketdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+import server.OuvinteLivro;
+import services.codec.CodecBinario;
+import services.manager.Dicionario;
+import services.manager.Operacao;
+import services.manager.TabelaPorCodigo;
+import services.manager.TabelaDeTicks;
+import services.manager.TipoOperacao;
+import utils.RabbitMQConfig;
+
+/**
+ * A classe PublicadorMercado divulga os dados de mercado de cada ativo: as alterações dos
+ * níveis de preço do livro (deltas incrementais), os negócios realizados e, periodicamente,
+ * uma fotografia (snapshot) completa do livro.
+ *
+ * As alterações são agregadas por ativo e publicadas a cada intervalo. Dentro de um intervalo,
+ * várias alterações do mesmo nível são consolidadas (conflation) em uma só, com a quantidade
+ * mais recente, de modo que um consumidor lento recebe o estado atual do livro e não um
+ * acúmulo ilimitado de alterações intermediárias. Os negócios não são consolidados.
+ *
+ * Cada alteração recebe um número de sequência crescente por ativo, e o snapshot informa a
+ * sequência da última alteração que ele contém. Para se ressincronizar, um assinante aplica o
+ * snapshot e descarta as atualizações com sequência menor ou igual à dele.
+ *
+ * Todas as mensagens são vetores de registros binários de CodecBinario, publicados com as
+ * chaves "NEGOCIO.ativo", "ATUALIZACAO.ativo" e "SNAPSHOT.ativo". Um snapshot é um vetor de
+ * registros ATUALIZACAO, todos com a sequência do snapshot.
+ *
+ * O mesmo estado agregado responde às consultas de profundidade dos Brokers (consultarNiveis),
+ * sem acesso ao livro de ofertas e, portanto, sem interromper o casamento. Os níveis de cada
+ * ativo ficam em vetores primitivos ordenados (NiveisAgregados), alterados pela thread de
+ * casamento sob uma versão (um StampedLock usado como seqlock); as consultas e os snapshots
+ * copiam os níveis de forma otimista e repetem a cópia se a versão mudou, sem nunca bloquear o
+ * casamento. O monitor de cada ativo protege apenas as alterações pendentes e os negócios do
+ * intervalo, e a publicação o mantém só para trocá-los por vetores vazios.
+ *
+ * Cada negócio também atualiza as barras do ativo (abertura, máxima, mínima, fechamento, volume,
+ * negócios e VWAP) nos intervalos configurados, em buffers circulares de BarrasAtivo, sem
+ * percorrer o histórico. As barras recentes são consultadas em O(1) por barra(ativo, intervalo,
+ * atras) e, opcionalmente, as barras alteradas no intervalo são publicadas com a chave
+ * "BARRA.ativo", como um vetor de registros BARRA de CodecBinario.
+ */
+public class PublicadorMercado implements OuvinteLivro {
+
+    /**
+     * Destino das mensagens de mercado.
+     */
+    @FunctionalInterface
+    public interface Destino {
+        /**
+         * Publica uma mensagem binária de mercado.
+         *
+         * @param routingKey A chave de roteamento da mensagem.
+         * @param corpo      Os registros binários da mensagem.
+         * @throws IOException se ocorrer um erro ao publicar.
+         */
+        void publicar(String routingKey, byte[] corpo) throws IOException;
+
+        /**
+         * Publica de uma vez as mensagens de um intervalo, na ordem da lista. A implementação
+         * padrão as publica uma a uma.
+         *
+         * @param routingKeys As chaves de roteamento, uma por mensagem.
+         * @param corpos      Os registros binários das mensagens, na mesma ordem das chaves.
+         * @throws IOException se ocorrer um erro ao publicar.
+         */
+        default void publicarLote(List<String> routingKeys, List<byte[]> corpos) throws IOException {
+            for (int i = 0; i < corpos.size(); i++) {
+                publicar(routingKeys.get(i), corpos.get(i));
+            }
+        }
+    }
+
+    // Tentativas de leitura otimista dos níveis antes de o leitor passar a dormir entre elas
+    private static final int TENTATIVAS_SEM_ESPERA = 8;
+
+    private final Destino destino;
+    private final TabelaPorCodigo<EstadoAtivo> ativos = new TabelaPorCodigo<>(); // estado de cada ativo, por código
+    private final ScheduledExecutorService publicador;
+    private final long[] intervalosBarras; // em nanossegundos
+    private final int capacidadeBarras;
+    private final boolean publicarBarras;
+
+    // Mensagens do intervalo, publicadas em um único lote; usadas apenas pela thread do publicador
+    private final List<String> chavesLote = new ArrayList<>();
+    private final List<byte[]> corposLote = new ArrayList<>();
+
+    /**
+     * Cria o publicador, sem barras, e agenda a publicação periódica das alterações e dos snapshots.
+     *
+     * @param destino            O destino das mensagens.
+     * @param intervaloMillis    O intervalo de consolidação das alterações, em milissegundos.
+     * @param intervaloSnapshot  O intervalo entre snapshots, em milissegundos.
+     */
+    public PublicadorMercado(Destino destino, long intervaloMillis, long intervaloSnapshot) {
+        this(destino, intervaloMillis, intervaloSnapshot, new long[0], 0, false);
+    }
+
+    /**
+     * Cria o publicador e agenda a publicação periódica das alterações, dos snapshots e, se
+     * pedido, das barras.
+     *
+     * @param destino            O destino das mensagens.
+     * @param intervaloMillis    O intervalo de consolidação das alterações, em milissegundos.
+     * @param intervaloSnapshot  O intervalo entre snapshots, em milissegundos.
+     * @param intervalosBarras   As durações das barras de cada ativo, em milissegundos (vazio desativa as barras).
+     * @param capacidadeBarras   A quantidade de barras recentes guardadas de cada intervalo.
+     * @param publicarBarras     Se as barras alteradas são publicadas a cada intervalo de consolidação.
+     */
+    public PublicadorMercado(Destino destino, long intervaloMillis, long intervaloSnapshot,
+                             long[] intervalosBarras, int capacidadeBarras, boolean publicarBarras) {
+        if (intervalosBarras.length > 0 && capacidadeBarras <= 0) {
+            throw new IllegalArgumentException("Capacidade de barras inválida: " + capacidadeBarras);
+        }
+        this.destino = destino;
+        this.intervalosBarras = new long[intervalosBarras.length];
+        for (int i = 0; i < intervalosBarras.length; i++) {
+            if (intervalosBarras[i] <= 0) {
+                throw new IllegalArgumentException("Intervalo de barras inválido: " + intervalosBarras[i]);
+            }
+            this.intervalosBarras[i] = TimeUnit.MILLISECONDS.toNanos(intervalosBarras[i]);
+        }
+        this.capacidadeBarras = capacidadeBarras;
+        this.publicarBarras = publicarBarras;
+        this.publicador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "PublicadorMercado");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publicador.scheduleWithFixedDelay(this::publicarAlteracoes, intervaloMillis, intervaloMillis, TimeUnit.MILLISECONDS);
+        publicador.scheduleWithFixedDelay(this::publicarSnapshots, intervaloSnapshot, intervaloSnapshot, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra um negócio realizado, a ser publicado no próximo intervalo.
+     *
+     * @param transacao O negócio realizado.
+     */
+    public void aoNegociar(Operacao transacao) {
+        EstadoAtivo estado = estado(transacao.getCodigoAtivo());
+        synchronized (estado) {
+            estado.negocios.add(transacao);
+            if (estado.barras != null) {
+                estado.barras.registrar(transacao.getDataHora(), transacao.getPreco(), transacao.getQuantidade());
+            }
+        }
+    }
+
+    /**
+     * Obtém uma barra recente de um ativo.
+     *
+     * @param ativo           O ativo.
+     * @param intervaloMillis A duração da barra, em milissegundos, um dos intervalos configurados.
+     * @param atras           Quantos períodos antes do último negócio (0 para a barra corrente).
+     * @return A barra, ou null se não houve negócios do ativo no período ou se ele já saiu do buffer.
+     * @throws IllegalArgumentException Se o intervalo não for um dos configurados.
+     */
+    public Barra barra(String ativo, long intervaloMillis, int atras) {
+        long intervalo = TimeUnit.MILLISECONDS.toNanos(intervaloMillis);
+        int posicao = 0;
+        while (posicao < intervalosBarras.length && intervalosBarras[posicao] != intervalo) {
+            posicao++;
+        }
+        if (posicao == intervalosBarras.length) {
+            throw new IllegalArgumentException("Intervalo de barras não configurado: " + intervaloMillis + " ms");
+        }
+        EstadoAtivo estado = estadoExistente(ativo);
+        if (estado == null) {
+            return null;
+        }
+        synchronized (estado) {
+            return estado.barras.barra(posicao, atras);
+        }
+    }
+
+    /**
+     * Registra a alteração de um nível de preço, consolidando-a com as alterações do mesmo
+     * nível ainda não publicadas.
+     */
+    @Override
+    public void aoAtualizarNivel(int codigoAtivo, TipoOperacao lado, long preco, long quantidade) {
+        EstadoAtivo estado = estado(codigoAtivo);
+        long sequencia;
+        long carimbo = estado.versao.writeLock();
+        try {
+            sequencia = ++estado.sequencia;
+            estado.niveis(lado).definir(preco, quantidade);
+        } finally {
+            estado.versao.unlockWrite(carimbo);
+        }
+        synchronized (estado) {
+            estado.pendentes.registrar(lado, preco, quantidade, sequencia);
+        }
+    }
+
+    /**
+     * Obtém a quantidade de níveis de preço de um lado do livro de um ativo.
+     *
+     * @param ativo O ativo.
+     * @param lado  O lado do livro (COMPRA ou VENDA).
+     * @return A quantidade de níveis, ou 0 se o ativo não tiver ofertas.
+     */
+    public int quantidadeNiveis(String ativo, TipoOperacao lado) {
+        EstadoAtivo estado = estadoExistente(ativo);
+        if (estado == null) {
+            return 0;
+        }
+        for (int tentativa = 1; ; tentativa++) {
+            long carimbo = estado.versao.tryOptimisticRead();
+            int quantidade = estado.niveis(lado).tamanho();
+            if (carimbo != 0 && estado.versao.validate(carimbo)) {
+                return quantidade;
+            }
+            aguardar(tentativa);
+        }
+    }
+
+    /**
+     * Codifica os melhores níveis de preço de um ativo, ou de todos os ativos, como um vetor de
+     * registros ATUALIZACAO: para cada ativo, as compras do maior para o menor preço e depois as
+     * vendas do menor para o maior, todos com a sequência da última alteração aplicada ao ativo.
+     *
+     * @param ativo        O ativo, ou vazio para todos os ativos com ofertas.
+     * @param profundidade A quantidade máxima de níveis de cada lado.
+     * @return Os registros dos níveis, vazio se não houver ofertas.
+     */
+    public byte[] consultarNiveis(String ativo, int profundidade) {
+        if (!ativo.isEmpty()) {
+            EstadoAtivo estado = estadoExistente(ativo);
+            if (estado == null) {
+                return new byte[0];
+            }
+            return codificarNiveis(estado.ativo, copiarNiveis(estado, profundidade));
+        }
+
+        List<byte[]> partes = new ArrayList<>();
+        ativos.paraCada(estado -> partes.add(codificarNiveis(estado.ativo, copiarNiveis(estado, profundidade))));
+        int tamanho = 0;
+        for (byte[] parte : partes) {
+            tamanho += parte.length;
+        }
+        byte[] corpo = new byte[tamanho];
+        int offset = 0;
+        for (byte[] parte : partes) {
+            System.arraycopy(parte, 0, corpo, offset, parte.length);
+            offset += parte.length;
+        }
+        return corpo;
+    }
+
+    /**
+     * Interrompe a publicação periódica. Alterações ainda não publicadas são descartadas.
+     */
+    public void encerrar() {
+        publicador.shutdownNow();
+    }
+
+    private EstadoAtivo estado(int codigoAtivo) {
+        EstadoAtivo estado = ativos.obter(codigoAtivo);
+        return estado != null ? estado : ativos.obter(codigoAtivo, codigo -> {
+            String ativo = Dicionario.getAtivos().nome(codigo);
+            return new EstadoAtivo(ativo,
+                    intervalosBarras.length > 0 ? new BarrasAtivo(ativo, intervalosBarras, capacidadeBarras) : null);
+        });
+    }
+
+    // As consultas por nome não incluem o ativo no Dicionario
+    private EstadoAtivo estadoExistente(String ativo) {
+        int codigoAtivo = Dicionario.getAtivos().codigoExistente(ativo);
+        return codigoAtivo == Dicionario.SEM_CODIGO ? null : ativos.obter(codigoAtivo);
+    }
+
+    /**
+     * Publica, para cada ativo, os negócios, as alterações consolidadas e, se configurado, as
+     * barras alteradas no último intervalo, todos em um único lote.
+     */
+    private void publicarAlteracoes() {
+        ativos.paraCada(this::publicarAlteracoes);
+        publicarLote();
+    }
+
+    private void publicarAlteracoes(EstadoAtivo estado) {
+        List<Operacao> retirados = estado.negociosRetirados;
+        AlteracoesPendentes retiradas = estado.pendentesRetiradas;
+        Barra[] barras = null;
+        synchronized (estado) {
+            // Troca os negócios e as alterações por vetores vazios; a codificação é feita fora do monitor
+            estado.negociosRetirados = estado.negocios;
+            estado.negocios = retirados;
+            estado.pendentesRetiradas = estado.pendentes;
+            estado.pendentes = retiradas;
+            if (publicarBarras && estado.barras != null && estado.barras.temAlteradas()) {
+                barras = estado.barras.retirarAlteradas();
+            }
+        }
+        retirados = estado.negociosRetirados;
+        retiradas = estado.pendentesRetiradas;
+        byte[] negocios = null;
+        byte[] atualizacoes = null;
+        if (!retirados.isEmpty()) {
+            negocios = codificarNegocios(estado.ativo, retirados);
+            retirados.clear();
+        }
+        if (!retiradas.isVazio()) {
+            atualizacoes = codificarPendentes(estado.ativo, retiradas);
+            retiradas.limpar();
+        }
+        if (negocios != null) {
+            adicionarAoLote(RabbitMQConfig.ROTA_NEGOCIO + "." + estado.ativo, negocios);
+        }
+        if (atualizacoes != null) {
+            adicionarAoLote(RabbitMQConfig.ROTA_ATUALIZACAO + "." + estado.ativo, atualizacoes);
+        }
+        if (barras != null) {
+            adicionarAoLote(RabbitMQConfig.ROTA_BARRA + "." + estado.ativo, codificarBarras(barras));
+        }
+    }
+
+    /**
+     * Publica um snapshot do livro de cada ativo, com a sequência da última alteração aplicada,
+     * todos em um único lote.
+     */
+    private void publicarSnapshots() {
+        ativos.paraCada(estado -> adicionarAoLote(RabbitMQConfig.ROTA_SNAPSHOT + "." + estado.ativo,
+                codificarNiveis(estado.ativo, copiarNiveis(estado, Integer.MAX_VALUE))));
+        publicarLote();
+    }
+
+    private void adicionarAoLote(String routingKey, byte[] corpo) {
+        chavesLote.add(routingKey);
+        corposLote.add(corpo);
+    }
+
+    private void publicarLote() {
+        if (corposLote.isEmpty()) {
+            return;
+        }
+        try {
+            destino.publicarLote(chavesLote, corposLote);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[PublicadorMercado] Erro ao publicar " + corposLote.size() + " mensagens: " + e.getMessage());
+        } finally {
+            chavesLote.clear();
+            corposLote.clear();
+        }
+    }
+
+    private static byte[] codificarNegocios(String ativo, List<Operacao> negocios) {
+        TabelaDeTicks ticks = TabelaDeTicks.getInstance();
+        byte[] corpo = new byte[negocios.size() * CodecBinario.TAMANHO_NEGOCIO];
+        int offset = 0;
+        for (Operacao negocio : negocios) {
+            long dataHora = negocio.getDataHora() / 1_000_000L;
+            offset += CodecBinario.codificarNegocio(corpo, offset, negocio.getTipo(), ativo,
+                    negocio.getQuantidade(), ticks.paraPontoFixo(ativo, negocio.getPreco()),
+                    negocio.getCorretora(), dataHora);
+        }
+        return corpo;
+    }
+
+    private static byte[] codificarBarras(Barra[] barras) {
+        TabelaDeTicks ticks = TabelaDeTicks.getInstance();
+        byte[] corpo = new byte[barras.length * CodecBinario.TAMANHO_BARRA];
+        int offset = 0;
+        for (Barra barra : barras) {
+            String ativo = barra.getAtivo();
+            offset += CodecBinario.codificarBarra(corpo, offset, ativo,
+                    (int) Math.min(barra.getNegocios(), Integer.MAX_VALUE),
+                    TimeUnit.NANOSECONDS.toMillis(barra.getInicio()), TimeUnit.NANOSECONDS.toMillis(barra.getDuracao()),
+                    ticks.paraPontoFixo(ativo, barra.getAbertura()), ticks.paraPontoFixo(ativo, barra.getMaxima()),
+                    ticks.paraPontoFixo(ativo, barra.getMinima()), ticks.paraPontoFixo(ativo, barra.getFechamento()),
+                    barra.getVolume(), Math.round(barra.getVwap() * ticks.tamanhoTick(ativo)));
+        }
+        return corpo;
+    }
+
+    private static byte[] codificarPendentes(String ativo, AlteracoesPendentes pendentes) {
+        byte[] corpo = new byte[pendentes.tamanho() * CodecBinario.TAMANHO_ATUALIZACAO];
+        int offset = 0;
+        for (int i = 0; i < pendentes.tamanho(); i++) {
+            offset += codificarNivel(corpo, offset, ativo, pendentes.lado(i), pendentes.preco(i),
+                    pendentes.quantidade(i), pendentes.sequencia(i));
+        }
+        return corpo;
+    }
+
+    private static byte[] codificarNiveis(String ativo, NiveisCopiados niveis) {
+        byte[] corpo = new byte[(niveis.compras + niveis.vendas) * CodecBinario.TAMANHO_ATUALIZACAO];
+        int offset = 0;
+        for (int i = 0; i < niveis.compras + niveis.vendas; i++) {
+            offset += codificarNivel(corpo, offset, ativo, i < niveis.compras ? TipoOperacao.COMPRA : TipoOperacao.VENDA,
+                    niveis.precos[i], niveis.quantidades[i], niveis.sequencia);
+        }
+        return corpo;
+    }
+
+    /**
+     * Copia os melhores níveis de cada lado de um ativo, sem bloquear a thread de casamento: a
+     * cópia é otimista e é repetida enquanto a versão do estado mudar durante a leitura.
+     */
+    private static NiveisCopiados copiarNiveis(EstadoAtivo estado, int profundidade) {
+        for (int tentativa = 1; ; tentativa++) {
+            long carimbo = estado.versao.tryOptimisticRead();
+            if (carimbo != 0) {
+                try {
+                    int compras = Math.min(profundidade, estado.compras.tamanho());
+                    int vendas = Math.min(profundidade, estado.vendas.tamanho());
+                    long[] precos = new long[compras + vendas];
+                    long[] quantidades = new long[compras + vendas];
+                    compras = estado.compras.copiar(precos, quantidades, 0, compras);
+                    vendas = estado.vendas.copiar(precos, quantidades, compras, vendas);
+                    long sequencia = estado.sequencia;
+                    if (estado.versao.validate(carimbo)) {
+                        return new NiveisCopiados(compras, vendas, precos, quantidades, sequencia);
+                    }
+                } catch (RuntimeException e) {
+                    // Estado lido durante uma escrita; a cópia é repetida
+                }
+            }
+            aguardar(tentativa);
+        }
+    }
+
+    /**
+     * Espera antes de uma nova tentativa de leitura: cede o processador nas primeiras e depois
+     * dorme por intervalos crescentes, de até 100 microssegundos.
+     */
+    private static void aguardar(int tentativa) {
+        if (tentativa < TENTATIVAS_SEM_ESPERA) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(100_000L, 1_000L << Math.min(tentativa - TENTATIVAS_SEM_ESPERA, 7)));
+        }
+    }
+
+    private static int codificarNivel(byte[] corpo, int offset, String ativo, TipoOperacao lado,
+                                      long preco, long quantidade, long sequencia) {
+        return CodecBinario.codificarAtualizacao(corpo, offset, lado, ativo,
+                (int) Math.min(quantidade, Integer.MAX_VALUE),
+                TabelaDeTicks.getInstance().paraPontoFixo(ativo, preco), sequencia);
+    }
+
+    /**
+     * Níveis copiados de um ativo: as compras e depois as vendas, cada lado do melhor para o
+     * pior preço, com a sequência da última alteração incluída.
+     */
+    private static class NiveisCopiados {
+        final int compras;
+        final int vendas;
+        final long[] precos;
+        final long[] quantidades;
+        final long sequencia;
+
+        NiveisCopiados(int compras, int vendas, long[] precos, long[] quantidades, long sequencia) {
+            this.compras = compras;
+            this.vendas = vendas;
+            this.precos = precos;
+            this.quantidades = quantidades;
+            this.sequencia = sequencia;
+        }
+    }
+
+    /**
+     * Estado de mercado de um ativo: o livro agregado por nível, as alterações ainda não
+     * publicadas, os negócios do intervalo e as barras. Os níveis e a sequência são alterados
+     * sob a versão; as alterações pendentes, os negócios e as barras, sob o próprio monitor. Os
+     * vetores retirados pertencem à thread de publicação.
+     */
+    private static class EstadoAtivo {
+        final String ativo;
+        final BarrasAtivo barras; // null sem barras
+        final StampedLock versao = new StampedLock();
+        long sequencia;
+
+        // Quantidade total por nível de preço (ticks), em ordem de preço
+        final NiveisAgregados compras = new NiveisAgregados(true);
+        final NiveisAgregados vendas = new NiveisAgregados(false);
+
+        // Alterações consolidadas por nível e negócios do intervalo, e os retirados na última publicação
+        AlteracoesPendentes pendentes = new AlteracoesPendentes();
+        AlteracoesPendentes pendentesRetiradas = new AlteracoesPendentes();
+        List<Operacao> negocios = new ArrayList<>();
+        List<Operacao> negociosRetirados = new ArrayList<>();
+
+        EstadoAtivo(String ativo, BarrasAtivo barras) {
+            this.ativo = ativo;
+            this.barras = barras;
+        }
+
+        NiveisAgregados niveis(TipoOperacao lado) {
+            return lado == TipoOperacao.COMPRA ? compras : vendas;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package services.metricas;
+
+/**
+ * A enumeração Estagio representa as etapas do processamento de uma operação na Bolsa de
+ * Valores cuja latência é medida por MetricasBolsa.
+ */
+public enum Estagio {
+    DECODIFICACAO("decodificacao"), // Leitura da mensagem recebida até a Operacao
+    FILA("fila"), // Espera na fila de entrada da partição do motor
+    CASAMENTO("casamento"), // MotorDeCasamento.processarTransacao, incluindo os ouvintes
+    HISTORICO("historico"), // HistoricoOperacoes.registrarOperacao de um negócio
+    PUBLICACAO("publicacao"); // Publicação de uma mensagem de mercado no transporte
+
+    private final String nome;
+
+    Estagio(String nome) {
+        this.nome = nome;
+    }
+
+    /**
+     * Obtém o nome do estágio usado nos relatórios e no JMX.
+     *
+     * @return O nome do estágio.
+     */
+    public String getNome() {
+        return nome;
+    }
+}
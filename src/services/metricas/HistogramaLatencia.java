@@ -0,0 +1,89 @@
+package services.metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe HistogramaLatencia conta latências em faixas log-lineares, no estilo do
+ * HdrHistogram: cada potência de dois é dividida em 64 faixas de mesma largura, de modo que o
+ * erro relativo de um percentil é menor que 1,6% em toda a escala, com memória fixa.
+ *
+ * O registro não aloca objetos, não usa bloqueios e pode ser feito por várias threads ao mesmo
+ * tempo. A correção da omissão coordenada cabe a quem registra: as latências devem ser medidas
+ * a partir do instante previsto para o envio, e não do instante em que o envio de fato ocorreu.
+ */
+public class HistogramaLatencia {
+
+    // Bits das faixas de cada potência de dois (64 faixas)
+    private static final int BITS_FAIXA = 6;
+    private static final int FAIXAS = 1 << BITS_FAIXA;
+
+    private final AtomicLongArray contagens = new AtomicLongArray((64 - BITS_FAIXA + 1) * FAIXAS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Registra uma latência.
+     *
+     * @param valor A latência, em nanossegundos (valores negativos contam como zero).
+     */
+    public void registrar(long valor) {
+        long latencia = Math.max(valor, 0);
+        contagens.incrementAndGet(indice(latencia));
+        total.increment();
+        maximo.accumulate(latencia);
+    }
+
+    /**
+     * Obtém a quantidade de latências registradas.
+     *
+     * @return A quantidade de registros.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * Obtém a maior latência registrada.
+     *
+     * @return A maior latência, em nanossegundos.
+     */
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * Obtém o percentil informado, como o maior valor da faixa que o contém.
+     *
+     * @param percentil O percentil, entre 0 e 100.
+     * @return A latência do percentil, em nanossegundos, ou 0 sem registros.
+     */
+    public long percentil(double percentil) {
+        long quantidade = total.sum();
+        if (quantidade == 0) {
+            return 0;
+        }
+        long alvo = Math.max(1, (long) Math.ceil(quantidade * percentil / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < contagens.length(); i++) {
+            acumulado += contagens.get(i);
+            if (acumulado >= alvo) {
+                return Math.min(maiorValor(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+
+    private static int indice(long valor) {
+        // Potência de dois acima das primeiras 2 * FAIXAS unidades, que têm largura 1
+        int potencia = Math.max(0, 63 - Long.numberOfLeadingZeros(valor) - BITS_FAIXA);
+        return potencia * FAIXAS + (int) (valor >>> potencia);
+    }
+
+    private static long maiorValor(int indice) {
+        int potencia = Math.max(0, indice / FAIXAS - 1);
+        long faixa = indice - (long) potencia * FAIXAS;
+        return ((faixa + 1) << potencia) - 1;
+    }
+}
@@ -0,0 +1,81 @@
+package services.metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A classe MetricasAtivo conta as operações recebidas e os negócios realizados de um ativo e
+ * guarda as taxas e a profundidade do livro calculadas no último intervalo de MetricasBolsa.
+ */
+public class MetricasAtivo implements MetricasAtivoMBean {
+
+    private final String ativo;
+    private final LongAdder ordens = new LongAdder();
+    private final LongAdder negocios = new LongAdder();
+
+    // Calculados pela thread de MetricasBolsa ao final de cada intervalo
+    private long ordensAnteriores;
+    private long negociosAnteriores;
+    private volatile double ordensPorSegundo;
+    private volatile double negociosPorSegundo;
+    private volatile int niveisCompra;
+    private volatile int niveisVenda;
+
+    MetricasAtivo(String ativo) {
+        this.ativo = ativo;
+    }
+
+    void contarOrdem() {
+        ordens.increment();
+    }
+
+    void contarNegocio() {
+        negocios.increment();
+    }
+
+    /**
+     * Calcula as taxas do intervalo encerrado e registra a profundidade atual do livro.
+     *
+     * @param segundos     A duração do intervalo, em segundos.
+     * @param niveisCompra A quantidade de níveis de compra do livro.
+     * @param niveisVenda  A quantidade de níveis de venda do livro.
+     */
+    void fecharIntervalo(double segundos, int niveisCompra, int niveisVenda) {
+        long totalOrdens = ordens.sum();
+        long totalNegocios = negocios.sum();
+        ordensPorSegundo = (totalOrdens - ordensAnteriores) / segundos;
+        negociosPorSegundo = (totalNegocios - negociosAnteriores) / segundos;
+        ordensAnteriores = totalOrdens;
+        negociosAnteriores = totalNegocios;
+        this.niveisCompra = niveisCompra;
+        this.niveisVenda = niveisVenda;
+    }
+
+    /**
+     * Obtém o ativo medido.
+     *
+     * @return O ativo.
+     */
+    public String getAtivo() {
+        return ativo;
+    }
+
+    @Override
+    public double getOrdensPorSegundo() {
+        return ordensPorSegundo;
+    }
+
+    @Override
+    public double getNegociosPorSegundo() {
+        return negociosPorSegundo;
+    }
+
+    @Override
+    public int getNiveisCompra() {
+        return niveisCompra;
+    }
+
+    @Override
+    public int getNiveisVenda() {
+        return niveisVenda;
+    }
+}
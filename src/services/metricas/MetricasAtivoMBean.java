@@ -0,0 +1,35 @@
+package services.metricas;
+
+/**
+ * Interface JMX das métricas de um ativo no último intervalo de MetricasBolsa.
+ */
+public interface MetricasAtivoMBean {
+
+    /**
+     * Obtém as operações recebidas por segundo no último intervalo.
+     *
+     * @return As operações recebidas por segundo no último intervalo.
+     */
+    double getOrdensPorSegundo();
+
+    /**
+     * Obtém os negócios realizados por segundo no último intervalo.
+     *
+     * @return Os negócios realizados por segundo no último intervalo.
+     */
+    double getNegociosPorSegundo();
+
+    /**
+     * Obtém a quantidade de níveis de preço de compra no livro.
+     *
+     * @return A quantidade de níveis de preço de compra no livro.
+     */
+    int getNiveisCompra();
+
+    /**
+     * Obtém a quantidade de níveis de preço de venda no livro.
+     *
+     * @return A quantidade de níveis de preço de venda no livro.
+     */
+    int getNiveisVenda();
+}
@@ -0,0 +1,320 @@
+package services.metricas;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import services.manager.Dicionario;
+import services.manager.TabelaPorCodigo;
+import services.manager.TipoOperacao;
+import utils.BolsaDeValoresConfig;
+
+/**
+ * A classe MetricasBolsa reúne as métricas do processamento de operações da Bolsa de Valores:
+ * a latência de cada Estagio, as operações e os negócios por segundo de cada ativo, a
+ * profundidade do livro e o tamanho das filas das partições do motor.
+ *
+ * O registro, feito pelas threads do processamento, não usa bloqueios nem aloca objetos (exceto
+ * na primeira operação de cada ativo). Cada medição de latência custa duas leituras de
+ * System.nanoTime e um incremento atômico; para que esse custo fique pequeno em relação ao
+ * casamento, apenas uma a cada BolsaDeValoresConfig.AMOSTRAGEM_METRICAS execuções de cada
+ * estágio é medida. As contagens de operações e negócios são exatas. Com -Dbolsa.metricas=false,
+ * nada é medido.
+ *
+ * A cada intervalo, uma thread própria encerra os histogramas e as taxas do intervalo, que
+ * passam a ser os publicados nos MBeans do domínio "bolsa" e, opcionalmente, escritos no
+ * console.
+ *
+ * A classe segue o padrão Singleton, para que o motor, o histórico e o consumidor de mensagens
+ * registrem nas mesmas métricas.
+ */
+public class MetricasBolsa implements MetricasBolsaMBean {
+
+    private static final boolean ATIVA = BolsaDeValoresConfig.METRICAS;
+
+    // Máscara da amostragem das latências: mede quando os bits sorteados são todos zero
+    private static final int MASCARA_AMOSTRAGEM =
+            Integer.highestOneBit(Math.max(1, BolsaDeValoresConfig.AMOSTRAGEM_METRICAS)) - 1;
+
+    // Ativos exibidos no relatório, os de maior quantidade de operações no intervalo
+    private static final int ATIVOS_NO_RELATORIO = 10;
+
+    private static MetricasBolsa instance;
+
+    private final MetricasEstagio[] estagios;
+    private final Map<String, MetricasAtivo> ativos = new ConcurrentHashMap<>();
+    private final TabelaPorCodigo<MetricasAtivo> ativosPorCodigo = new TabelaPorCodigo<>();
+    private volatile Supplier<int[]> fonteFilas = () -> new int[0];
+    private volatile ToIntBiFunction<String, TipoOperacao> fonteNiveis = (ativo, lado) -> 0;
+
+    // Calculados pela thread das métricas ao final de cada intervalo
+    private volatile double ordensPorSegundo;
+    private volatile double negociosPorSegundo;
+    private long ultimoFechamento = System.nanoTime();
+    private ScheduledExecutorService agendador;
+    private volatile MBeanServer servidorJmx;
+
+    /**
+     * Construtor privado para evitar a criação direta de instâncias.
+     */
+    private MetricasBolsa() {
+        estagios = new MetricasEstagio[Estagio.values().length];
+        for (Estagio estagio : Estagio.values()) {
+            estagios[estagio.ordinal()] = new MetricasEstagio(estagio);
+        }
+    }
+
+    /**
+     * Método para obter a instância única da classe MetricasBolsa.
+     *
+     * @return A instância única de MetricasBolsa.
+     */
+    public static synchronized MetricasBolsa getInstance() {
+        if (instance == null) {
+            instance = new MetricasBolsa();
+        }
+        return instance;
+    }
+
+    /**
+     * Obtém o instante de início de uma medição, se a execução for sorteada pela amostragem.
+     *
+     * @return System.nanoTime(), ou 0 se a execução não deve ser medida.
+     */
+    public long inicio() {
+        if (!ATIVA || (ThreadLocalRandom.current().nextInt() & MASCARA_AMOSTRAGEM) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra a latência de um estágio iniciado no instante informado.
+     *
+     * @param estagio O estágio medido.
+     * @param inicio  O instante de início, obtido de inicio() (0 não registra nada).
+     */
+    public void registrarDesde(Estagio estagio, long inicio) {
+        if (ATIVA && inicio != 0) {
+            estagios[estagio.ordinal()].registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Conta uma operação recebida pelo motor de casamento.
+     *
+     * @param codigoAtivo O código do ativo da operação (ver Dicionario.getAtivos).
+     */
+    public void contarOrdem(int codigoAtivo) {
+        if (ATIVA) {
+            metricasAtivo(codigoAtivo).contarOrdem();
+        }
+    }
+
+    /**
+     * Conta um negócio realizado.
+     *
+     * @param codigoAtivo O código do ativo negociado (ver Dicionario.getAtivos).
+     */
+    public void contarNegocio(int codigoAtivo) {
+        if (ATIVA) {
+            metricasAtivo(codigoAtivo).contarNegocio();
+        }
+    }
+
+    /**
+     * Define a fonte do tamanho das filas das partições do motor.
+     *
+     * @param fonte A função que informa o tamanho de cada fila.
+     */
+    public void setFonteFilas(Supplier<int[]> fonte) {
+        this.fonteFilas = fonte;
+    }
+
+    /**
+     * Define a fonte da profundidade do livro, em níveis de preço por ativo e lado.
+     *
+     * @param fonte A função que informa a quantidade de níveis de um ativo e lado.
+     */
+    public void setFonteNiveis(ToIntBiFunction<String, TipoOperacao> fonte) {
+        this.fonteNiveis = fonte;
+    }
+
+    /**
+     * Registra os MBeans e inicia o encerramento periódico dos intervalos. Não faz nada com as
+     * métricas desativadas ou se já tiver sido chamado.
+     *
+     * @param intervaloSegundos A duração de cada intervalo, em segundos.
+     * @param relatorio         Se o relatório de cada intervalo deve ser escrito no console.
+     */
+    public synchronized void iniciar(long intervaloSegundos, boolean relatorio) {
+        if (!ATIVA || agendador != null) {
+            return;
+        }
+        servidorJmx = ManagementFactory.getPlatformMBeanServer();
+        registrarMBean("bolsa:type=Bolsa", this);
+        for (MetricasEstagio estagio : estagios) {
+            registrarMBean("bolsa:type=Estagio,name=" + estagio.getEstagio().getNome(), estagio);
+        }
+        for (MetricasAtivo metricas : ativos.values()) {
+            registrarMBean(nomeMBeanAtivo(metricas.getAtivo()), metricas);
+        }
+
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MetricasBolsa");
+            thread.setDaemon(true);
+            return thread;
+        });
+        agendador.scheduleAtFixedRate(() -> {
+            try {
+                fecharIntervalo();
+                if (relatorio) {
+                    System.out.println(relatorio());
+                }
+            } catch (RuntimeException e) {
+                System.err.println("[MetricasBolsa] Erro ao encerrar o intervalo: " + e.getMessage());
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Interrompe o encerramento periódico dos intervalos.
+     */
+    public synchronized void encerrar() {
+        if (agendador != null) {
+            agendador.shutdownNow();
+            agendador = null;
+        }
+    }
+
+    /**
+     * Encerra o intervalo corrente: fecha os histogramas dos estágios e calcula as taxas e a
+     * profundidade do livro de cada ativo.
+     */
+    synchronized void fecharIntervalo() {
+        long agora = System.nanoTime();
+        double segundos = Math.max(agora - ultimoFechamento, 1) / 1e9;
+        ultimoFechamento = agora;
+
+        for (MetricasEstagio estagio : estagios) {
+            estagio.fecharIntervalo();
+        }
+
+        double ordens = 0;
+        double negocios = 0;
+        ToIntBiFunction<String, TipoOperacao> niveis = fonteNiveis;
+        for (MetricasAtivo metricas : ativos.values()) {
+            String ativo = metricas.getAtivo();
+            metricas.fecharIntervalo(segundos, niveis.applyAsInt(ativo, TipoOperacao.COMPRA),
+                    niveis.applyAsInt(ativo, TipoOperacao.VENDA));
+            ordens += metricas.getOrdensPorSegundo();
+            negocios += metricas.getNegociosPorSegundo();
+        }
+        ordensPorSegundo = ordens;
+        negociosPorSegundo = negocios;
+    }
+
+    /**
+     * Descreve em texto as métricas do último intervalo: as taxas gerais, as filas, a latência
+     * de cada estágio e os ativos com mais operações.
+     *
+     * @return O relatório.
+     */
+    public String relatorio() {
+        StringBuilder texto = new StringBuilder();
+        texto.append(String.format("[MetricasBolsa] %.0f ordens/s, %.0f negócios/s, filas %s",
+                ordensPorSegundo, negociosPorSegundo, Arrays.toString(getTamanhoFilas())));
+
+        texto.append(String.format("%n  %-14s %10s %10s %10s %10s %10s", "estágio (µs)", "qtd", "p50", "p99", "p99.9", "máx"));
+        for (MetricasEstagio estagio : estagios) {
+            texto.append(String.format("%n  %-14s %10d %10.1f %10.1f %10.1f %10.1f", estagio.getEstagio().getNome(),
+                    estagio.getQuantidade(), estagio.getP50Micros(), estagio.getP99Micros(),
+                    estagio.getP999Micros(), estagio.getMaximoMicros()));
+        }
+
+        List<MetricasAtivo> maisNegociados = new ArrayList<>(ativos.values());
+        maisNegociados.sort((a, b) -> Double.compare(b.getOrdensPorSegundo(), a.getOrdensPorSegundo()));
+        texto.append(String.format("%n  %-14s %10s %10s %10s %10s", "ativo", "ordens/s", "negócios/s", "níveis C", "níveis V"));
+        for (MetricasAtivo metricas : maisNegociados.subList(0, Math.min(ATIVOS_NO_RELATORIO, maisNegociados.size()))) {
+            texto.append(String.format("%n  %-14s %10.0f %10.0f %10d %10d", metricas.getAtivo(),
+                    metricas.getOrdensPorSegundo(), metricas.getNegociosPorSegundo(),
+                    metricas.getNiveisCompra(), metricas.getNiveisVenda()));
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Obtém as métricas de um estágio.
+     *
+     * @param estagio O estágio.
+     * @return As métricas do estágio.
+     */
+    public MetricasEstagio getEstagio(Estagio estagio) {
+        return estagios[estagio.ordinal()];
+    }
+
+    @Override
+    public double getOrdensPorSegundo() {
+        return ordensPorSegundo;
+    }
+
+    @Override
+    public double getNegociosPorSegundo() {
+        return negociosPorSegundo;
+    }
+
+    @Override
+    public int[] getTamanhoFilas() {
+        return fonteFilas.get();
+    }
+
+    @Override
+    public int getQuantidadeAtivos() {
+        return ativos.size();
+    }
+
+    private MetricasAtivo metricasAtivo(int codigoAtivo) {
+        MetricasAtivo metricas = ativosPorCodigo.obter(codigoAtivo);
+        if (metricas == null) {
+            metricas = ativosPorCodigo.obter(codigoAtivo, codigo ->
+                    ativos.computeIfAbsent(Dicionario.getAtivos().nome(codigo), this::novoAtivo));
+        }
+        return metricas;
+    }
+
+    private MetricasAtivo novoAtivo(String ativo) {
+        MetricasAtivo metricas = new MetricasAtivo(ativo);
+        if (servidorJmx != null) {
+            registrarMBean(nomeMBeanAtivo(ativo), metricas);
+        }
+        return metricas;
+    }
+
+    private static String nomeMBeanAtivo(String ativo) {
+        return "bolsa:type=Ativo,name=" + ObjectName.quote(ativo);
+    }
+
+    private void registrarMBean(String nome, Object mbean) {
+        try {
+            ObjectName objeto = new ObjectName(nome);
+            if (!servidorJmx.isRegistered(objeto)) {
+                servidorJmx.registerMBean(mbean, objeto);
+            }
+        } catch (JMException e) {
+            System.err.println("[MetricasBolsa] Erro ao registrar o MBean " + nome + ": " + e.getMessage());
+        }
+    }
+}
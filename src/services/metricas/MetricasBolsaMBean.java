@@ -0,0 +1,35 @@
+package services.metricas;
+
+/**
+ * Interface JMX das métricas gerais da Bolsa de Valores no último intervalo de MetricasBolsa.
+ */
+public interface MetricasBolsaMBean {
+
+    /**
+     * Obtém as operações recebidas por segundo no último intervalo, somando todos os ativos.
+     *
+     * @return As operações recebidas por segundo no último intervalo, somando todos os ativos.
+     */
+    double getOrdensPorSegundo();
+
+    /**
+     * Obtém os negócios realizados por segundo no último intervalo, somando todos os ativos.
+     *
+     * @return Os negócios realizados por segundo no último intervalo, somando todos os ativos.
+     */
+    double getNegociosPorSegundo();
+
+    /**
+     * Obtém a quantidade de operações em cada fila de partição do motor (vazio sem partições).
+     *
+     * @return A quantidade de operações em cada fila de partição do motor (vazio sem partições).
+     */
+    int[] getTamanhoFilas();
+
+    /**
+     * Obtém a quantidade de ativos com operações recebidas.
+     *
+     * @return A quantidade de ativos com operações recebidas.
+     */
+    int getQuantidadeAtivos();
+}
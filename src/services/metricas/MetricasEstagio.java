@@ -0,0 +1,69 @@
+package services.metricas;
+
+/**
+ * A classe MetricasEstagio guarda as latências de um estágio do processamento. As medições
+ * entram no histograma do intervalo corrente; ao final de cada intervalo, MetricasBolsa troca o
+ * histograma por um novo e o anterior passa a ser o publicado no JMX e no relatório.
+ */
+public class MetricasEstagio implements MetricasEstagioMBean {
+
+    private final Estagio estagio;
+    private volatile HistogramaLatencia atual = new HistogramaLatencia();
+    private volatile HistogramaLatencia ultimoIntervalo = new HistogramaLatencia();
+
+    MetricasEstagio(Estagio estagio) {
+        this.estagio = estagio;
+    }
+
+    /**
+     * Registra uma latência no intervalo corrente.
+     *
+     * @param nanos A latência, em nanossegundos.
+     */
+    void registrar(long nanos) {
+        atual.registrar(nanos);
+    }
+
+    /**
+     * Encerra o intervalo corrente e inicia um novo.
+     */
+    void fecharIntervalo() {
+        HistogramaLatencia fechado = atual;
+        atual = new HistogramaLatencia();
+        ultimoIntervalo = fechado;
+    }
+
+    /**
+     * Obtém o estágio medido.
+     *
+     * @return O estágio.
+     */
+    public Estagio getEstagio() {
+        return estagio;
+    }
+
+    @Override
+    public long getQuantidade() {
+        return ultimoIntervalo.getTotal();
+    }
+
+    @Override
+    public double getP50Micros() {
+        return ultimoIntervalo.percentil(50) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return ultimoIntervalo.percentil(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return ultimoIntervalo.percentil(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaximoMicros() {
+        return ultimoIntervalo.getMaximo() / 1e3;
+    }
+}
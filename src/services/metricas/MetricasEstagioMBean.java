@@ -0,0 +1,42 @@
+package services.metricas;
+
+/**
+ * Interface JMX das latências de um estágio no último intervalo de MetricasBolsa.
+ */
+public interface MetricasEstagioMBean {
+
+    /**
+     * Obtém a quantidade de medições (amostradas) no último intervalo.
+     *
+     * @return A quantidade de medições amostradas no último intervalo.
+     */
+    long getQuantidade();
+
+    /**
+     * Obtém a mediana da latência no último intervalo, em microssegundos.
+     *
+     * @return A mediana da latência no último intervalo, em microssegundos.
+     */
+    double getP50Micros();
+
+    /**
+     * Obtém o percentil 99 da latência no último intervalo, em microssegundos.
+     *
+     * @return O percentil 99 da latência no último intervalo, em microssegundos.
+     */
+    double getP99Micros();
+
+    /**
+     * Obtém o percentil 99,9 da latência no último intervalo, em microssegundos.
+     *
+     * @return O percentil 99,9 da latência no último intervalo, em microssegundos.
+     */
+    double getP999Micros();
+
+    /**
+     * Obtém a maior latência no último intervalo, em microssegundos.
+     *
+     * @return A maior latência no último intervalo, em microssegundos.
+     */
+    double getMaximoMicros();
+}
@@ -0,0 +1,132 @@
+package services.mq;
+
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A classe ConfirmadorEntregas envia as confirmações manuais (acks) das mensagens consumidas
+ * de um canal, em lotes, usando a confirmação múltipla do AMQP (multiple = true).
+ *
+ * As mensagens podem terminar de ser processadas fora de ordem (por exemplo, em partições
+ * diferentes do motor de casamento). Uma confirmação múltipla cobre todas as entregas até um
+ * delivery tag, então o confirmador só avança até o maior tag cujas entregas anteriores já
+ * foram todas concluídas. O canal limita as entregas sem confirmação (prefetch), de modo que
+ * as entregas concluídas cabem em um vetor circular do tamanho da janela, sem alocações.
+ *
+ * A confirmação é enviada quando um lote de entregas contíguas é concluído e, para não reter
+ * as últimas entregas de uma rajada, também periodicamente. Antes de cada confirmação é
+ * executada a ação informada em antesDeConfirmar (por exemplo, forçar o histórico para o
+ * disco), o que garante processamento "ao menos uma vez".
+ */
+class ConfirmadorEntregas {
+
+    private final Channel canal;
+    private final int tamanhoLote;
+
+    // Entregas concluídas além da marca, indexadas por delivery tag & mascara
+    private final boolean[] concluidas;
+    private final int mascara;
+
+    // Maior delivery tag tal que todas as entregas até ele foram concluídas
+    private long marca;
+
+    // Maior delivery tag já confirmado ao servidor; alterado apenas sob "confirmacao"
+    private volatile long confirmado;
+    private final Object confirmacao = new Object();
+
+    private volatile Runnable antesDeConfirmar = () -> { };
+    private final ScheduledExecutorService temporizador;
+
+    /**
+     * Cria um confirmador para um canal cujo prefetch é janela.
+     *
+     * @param canal           O canal de consumo.
+     * @param janela          O prefetch do canal (máximo de entregas sem confirmação).
+     * @param tamanhoLote     A quantidade de entregas contíguas concluídas por confirmação.
+     * @param intervaloMillis O intervalo máximo, em milissegundos, para confirmar as entregas concluídas.
+     */
+    ConfirmadorEntregas(Channel canal, int janela, int tamanhoLote, long intervaloMillis) {
+        this.canal = canal;
+        this.tamanhoLote = Math.max(1, Math.min(tamanhoLote, janela / 2));
+
+        int capacidade = Integer.highestOneBit(Math.max(janela, 1) * 2 - 1) << 1;
+        this.concluidas = new boolean[capacidade];
+        this.mascara = capacidade - 1;
+
+        this.temporizador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "ConfirmadorEntregas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        temporizador.scheduleWithFixedDelay(this::confirmar, intervaloMillis, intervaloMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Define a ação executada antes de cada confirmação enviada ao servidor.
+     *
+     * @param acao A ação, executada fora do monitor do confirmador.
+     */
+    void antesDeConfirmar(Runnable acao) {
+        this.antesDeConfirmar = acao;
+    }
+
+    /**
+     * Marca uma entrega como concluída, confirmando o lote se ele estiver completo.
+     *
+     * @param deliveryTag O delivery tag da entrega concluída.
+     */
+    void concluir(long deliveryTag) {
+        boolean loteCompleto;
+        synchronized (this) {
+            if (deliveryTag <= marca) {
+                return;
+            }
+            if (deliveryTag - marca > concluidas.length) {
+                throw new IllegalStateException("Entrega " + deliveryTag + " fora da janela de confirmação");
+            }
+            concluidas[(int) (deliveryTag & mascara)] = true;
+            while (concluidas[(int) ((marca + 1) & mascara)]) {
+                concluidas[(int) ((marca + 1) & mascara)] = false;
+                marca++;
+            }
+            loteCompleto = marca - confirmado >= tamanhoLote;
+        }
+        if (loteCompleto) {
+            confirmar();
+        }
+    }
+
+    /**
+     * Confirma ao servidor todas as entregas contíguas concluídas até o momento.
+     */
+    void confirmar() {
+        synchronized (confirmacao) {
+            long ate;
+            synchronized (this) {
+                ate = marca;
+            }
+            if (ate <= confirmado) {
+                return;
+            }
+            try {
+                antesDeConfirmar.run();
+                canal.basicAck(ate, true);
+                confirmado = ate;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[ConfirmadorEntregas] Erro ao confirmar entregas até " + ate + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Confirma as entregas concluídas e interrompe a confirmação periódica.
+     */
+    void encerrar() {
+        temporizador.shutdownNow();
+        confirmar();
+    }
+}
@@ -0,0 +1,15 @@
+package services.mq;
+
+/**
+ * A interface ConsumidorMensagens recebe as mensagens de uma fila de um Transporte. As
+ * mensagens de uma mesma fila são entregues em ordem, uma de cada vez.
+ */
+@FunctionalInterface
+public interface ConsumidorMensagens {
+    /**
+     * Chamado para cada mensagem recebida.
+     *
+     * @param mensagem A mensagem recebida.
+     */
+    void receber(Mensagem mensagem);
+}
@@ -0,0 +1,105 @@
+package services.mq;
+
+/**
+ * A classe Mensagem representa uma mensagem recebida de um Transporte: a chave de roteamento
+ * com que foi publicada, o corpo, o content-type e o identificador da entrega, usado para
+ * informar a conclusão do seu processamento.
+ *
+ * Mensagens de pedido e resposta trazem também o ID de correlação, que associa a resposta ao
+ * pedido, e, nos pedidos, a chave de roteamento para onde a resposta deve ser publicada.
+ */
+public class Mensagem {
+
+    private final String routingKey;
+    private final byte[] corpo;
+    private final String tipoConteudo;
+    private final long idEntrega;
+    private final String idCorrelacao;
+    private final String responderPara;
+
+    /**
+     * Cria uma mensagem recebida.
+     *
+     * @param routingKey   A chave de roteamento da mensagem.
+     * @param corpo        Os bytes da mensagem.
+     * @param tipoConteudo O content-type da mensagem, ou null se não informado.
+     * @param idEntrega    O identificador da entrega no transporte.
+     */
+    public Mensagem(String routingKey, byte[] corpo, String tipoConteudo, long idEntrega) {
+        this(routingKey, corpo, tipoConteudo, idEntrega, null, null);
+    }
+
+    /**
+     * Cria uma mensagem recebida de pedido ou de resposta.
+     *
+     * @param routingKey    A chave de roteamento da mensagem.
+     * @param corpo         Os bytes da mensagem.
+     * @param tipoConteudo  O content-type da mensagem, ou null se não informado.
+     * @param idEntrega     O identificador da entrega no transporte.
+     * @param idCorrelacao  O ID de correlação, ou null se não informado.
+     * @param responderPara A chave de roteamento da resposta, ou null se não informada.
+     */
+    public Mensagem(String routingKey, byte[] corpo, String tipoConteudo, long idEntrega,
+                    String idCorrelacao, String responderPara) {
+        this.routingKey = routingKey;
+        this.corpo = corpo;
+        this.tipoConteudo = tipoConteudo;
+        this.idEntrega = idEntrega;
+        this.idCorrelacao = idCorrelacao;
+        this.responderPara = responderPara;
+    }
+
+    /**
+     * Obtém a chave de roteamento com que a mensagem foi publicada.
+     *
+     * @return A chave de roteamento.
+     */
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Obtém os bytes da mensagem.
+     *
+     * @return O corpo da mensagem.
+     */
+    public byte[] getCorpo() {
+        return corpo;
+    }
+
+    /**
+     * Obtém o content-type da mensagem.
+     *
+     * @return O content-type, ou null se não informado.
+     */
+    public String getTipoConteudo() {
+        return tipoConteudo;
+    }
+
+    /**
+     * Obtém o identificador da entrega no transporte.
+     *
+     * @return O identificador da entrega.
+     */
+    public long getIdEntrega() {
+        return idEntrega;
+    }
+
+    /**
+     * Obtém o ID de correlação, que associa uma resposta ao seu pedido.
+     *
+     * @return O ID de correlação, ou null se não informado.
+     */
+    public String getIdCorrelacao() {
+        return idCorrelacao;
+    }
+
+    /**
+     * Obtém a chave de roteamento para onde a resposta a este pedido deve ser publicada.
+     *
+     * @return A chave de roteamento da resposta, ou null se não informada.
+     */
+    public String getResponderPara() {
+        return responderPara;
+    }
+}
@@ -0,0 +1,178 @@
+package services.mq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A classe PoolDeCanais distribui as publicações de um RabbitMQCliente por vários canais,
+ * abertos em rodízio sobre as conexões do cliente. Um canal AMQP não aceita publicações
+ * concorrentes, então cada canal tem o seu monitor, e threads em canais diferentes publicam em
+ * paralelo, inclusive em conexões (sockets) diferentes.
+ *
+ * Cada thread recebe um canal no seu primeiro envio, em rodízio, e passa a publicar sempre nele:
+ * o AMQP só garante a ordem das mensagens dentro de um canal, e assim as mensagens de uma mesma
+ * thread chegam na ordem de envio. Com mais threads do que canais, cada canal é compartilhado
+ * por algumas threads. Os canais são abertos sob demanda, e um canal fechado pelo servidor (por
+ * exemplo, por um erro de protocolo) é reaberto no próximo envio.
+ *
+ * Com publisher confirms, cada canal tem o seu PublicadorConfirmado, e a janela de confirmações
+ * é dividida entre os canais.
+ */
+final class PoolDeCanais {
+
+    private final List<Connection> conexoes;
+    private final String exchange;
+    private final int janelaPorCanal; // 0 sem publisher confirms
+    private final Canal[] canais;
+    private final AtomicInteger rodizio = new AtomicInteger();
+    private final ThreadLocal<Integer> indiceDaThread;
+
+    /**
+     * Cria o pool, sem abrir canais.
+     *
+     * @param conexoes           As conexões sobre as quais os canais são abertos, em rodízio.
+     * @param exchange           A exchange onde as mensagens são publicadas.
+     * @param quantidadeCanais   A quantidade máxima de canais de publicação.
+     * @param janelaConfirmacoes A quantidade máxima de mensagens aguardando confirmação, somando
+     *                           todos os canais (0 desativa os publisher confirms).
+     */
+    PoolDeCanais(List<Connection> conexoes, String exchange, int quantidadeCanais, int janelaConfirmacoes) {
+        if (conexoes.isEmpty() || quantidadeCanais <= 0) {
+            throw new IllegalArgumentException("O pool precisa de ao menos uma conexão e um canal");
+        }
+        this.conexoes = conexoes;
+        this.exchange = exchange;
+        this.janelaPorCanal = janelaConfirmacoes <= 0 ? 0
+                : Math.max(1, (janelaConfirmacoes + quantidadeCanais - 1) / quantidadeCanais);
+        this.canais = new Canal[quantidadeCanais];
+        this.indiceDaThread = ThreadLocal.withInitial(() -> Math.floorMod(rodizio.getAndIncrement(), canais.length));
+    }
+
+    /**
+     * Publica uma mensagem no canal da thread. Com publisher confirms, bloqueia apenas quando a
+     * janela do canal está cheia.
+     *
+     * @param routingKey   A chave de roteamento da mensagem.
+     * @param propriedades As propriedades da mensagem.
+     * @param corpo        Os bytes da mensagem.
+     * @return Um future concluído quando o servidor confirma a mensagem, ou já concluído sem confirms.
+     * @throws IOException se ocorrer um erro de E/S ao abrir o canal ou ao publicar.
+     */
+    CompletableFuture<Void> publicar(String routingKey, AMQP.BasicProperties propriedades, byte[] corpo)
+            throws IOException {
+        Canal canal = canal(indiceDaThread.get());
+        if (canal.publicador == null) {
+            synchronized (canal) {
+                canal.canal.basicPublish(exchange, routingKey, propriedades, corpo);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return canal.publicador.publicar(routingKey, propriedades, corpo);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Envio interrompido aguardando confirmações", e);
+        }
+    }
+
+    /**
+     * Publica um lote de mensagens no canal da thread, sem intercalar publicações de outras
+     * threads no mesmo canal. Com publisher confirms, o lote é enviado em partes do tamanho da
+     * janela do canal, cada uma por PublicadorConfirmado.publicarLote, e bloqueia apenas
+     * enquanto a janela não comporta a parte seguinte.
+     *
+     * @param routingKeys  As chaves de roteamento, uma por mensagem.
+     * @param propriedades As propriedades das mensagens.
+     * @param corpos       Os bytes das mensagens, na mesma ordem das chaves.
+     * @return Um future concluído quando o servidor confirma todas as mensagens, ou já concluído sem confirms.
+     * @throws IOException se ocorrer um erro de E/S ao abrir o canal ou ao publicar.
+     */
+    CompletableFuture<Void> publicarLote(List<String> routingKeys, AMQP.BasicProperties propriedades, List<byte[]> corpos)
+            throws IOException {
+        if (routingKeys.size() != corpos.size()) {
+            throw new IllegalArgumentException("Quantidade de chaves e de mensagens diferentes");
+        }
+        Canal canal = canal(indiceDaThread.get());
+        if (canal.publicador == null) {
+            synchronized (canal) {
+                for (int i = 0; i < corpos.size(); i++) {
+                    canal.canal.basicPublish(exchange, routingKeys.get(i), propriedades, corpos.get(i));
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> confirmacoes = new ArrayList<>(corpos.size());
+        try {
+            for (int inicio = 0; inicio < corpos.size(); inicio += janelaPorCanal) {
+                int fim = Math.min(corpos.size(), inicio + janelaPorCanal);
+                confirmacoes.addAll(canal.publicador.publicarLote(routingKeys.subList(inicio, fim), propriedades,
+                        corpos.subList(inicio, fim)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Envio interrompido aguardando confirmações", e);
+        }
+        return CompletableFuture.allOf(confirmacoes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Fecha os canais abertos. As conexões são fechadas pelo cliente.
+     *
+     * @throws IOException      se ocorrer um erro de E/S ao fechar um canal.
+     * @throws TimeoutException se ocorrer um tempo limite ao fechar um canal.
+     */
+    void fechar() throws IOException, TimeoutException {
+        synchronized (canais) {
+            for (int i = 0; i < canais.length; i++) {
+                if (canais[i] != null && canais[i].canal.isOpen()) {
+                    canais[i].canal.close();
+                }
+                canais[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Obtém o canal de uma posição do pool, abrindo-o no primeiro uso ou se tiver sido fechado.
+     */
+    private Canal canal(int indice) throws IOException {
+        // Os campos finais de Canal permitem a leitura sem o monitor
+        Canal canal = canais[indice];
+        if (canal != null && canal.canal.isOpen()) {
+            return canal;
+        }
+        synchronized (canais) {
+            canal = canais[indice];
+            if (canal == null || !canal.canal.isOpen()) {
+                Channel novo = conexoes.get(indice % conexoes.size()).createChannel();
+                if (novo == null) {
+                    throw new IOException("Limite de canais da conexão atingido");
+                }
+                canal = new Canal(novo, janelaPorCanal > 0 ? new PublicadorConfirmado(novo, exchange, janelaPorCanal) : null);
+                canais[indice] = canal;
+            }
+            return canal;
+        }
+    }
+
+    /**
+     * Canal de publicação e, com publisher confirms, o seu publicador.
+     */
+    private static final class Canal {
+        final Channel canal;
+        final PublicadorConfirmado publicador; // null sem publisher confirms
+
+        Canal(Channel canal, PublicadorConfirmado publicador) {
+            this.canal = canal;
+            this.publicador = publicador;
+        }
+    }
+}
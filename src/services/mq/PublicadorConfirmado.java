@@ -0,0 +1,198 @@
+package services.mq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A classe PublicadorConfirmado publica mensagens em um canal com publisher confirms,
+ * acompanhando as confirmações de forma assíncrona pelo delivery tag de cada mensagem.
+ *
+ * Cada publicação retorna um CompletableFuture, concluído quando o servidor confirma (ack) a
+ * mensagem e concluído com erro quando ele a rejeita (nack) ou quando o canal é fechado. Uma
+ * única confirmação "multiple" conclui de uma vez todas as mensagens até o seu delivery tag.
+ *
+ * A quantidade de mensagens aguardando confirmação é limitada pela janela informada na
+ * criação: quando a janela está cheia, a publicação bloqueia até que cheguem confirmações,
+ * aplicando contrapressão ao produtor.
+ *
+ * O canal é de uso exclusivo do publicador; as publicações são serializadas no seu monitor.
+ */
+public class PublicadorConfirmado {
+
+    private final Channel canal;
+    private final String exchange;
+    private final int maxEmTransito;
+    private final Semaphore janela;
+
+    // Mensagens aguardando confirmação, por delivery tag
+    private final NavigableMap<Long, CompletableFuture<Void>> pendentes = new ConcurrentSkipListMap<>();
+
+    /**
+     * Cria um publicador sobre um canal dedicado, ativando os publisher confirms no canal.
+     *
+     * @param canal        O canal usado exclusivamente por este publicador.
+     * @param exchange     A exchange onde as mensagens são publicadas.
+     * @param maxEmTransito A quantidade máxima de mensagens aguardando confirmação.
+     * @throws IOException se ocorrer um erro ao ativar os confirms no canal.
+     */
+    public PublicadorConfirmado(Channel canal, String exchange, int maxEmTransito) throws IOException {
+        if (maxEmTransito <= 0) {
+            throw new IllegalArgumentException("A janela de confirmações deve ser positiva: " + maxEmTransito);
+        }
+        this.canal = canal;
+        this.exchange = exchange;
+        this.maxEmTransito = maxEmTransito;
+        this.janela = new Semaphore(maxEmTransito);
+
+        canal.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long deliveryTag, boolean multiple) {
+                concluir(deliveryTag, multiple, null);
+            }
+
+            @Override
+            public void handleNack(long deliveryTag, boolean multiple) {
+                concluir(deliveryTag, multiple, new IOException("Mensagem rejeitada pelo servidor (delivery tag " + deliveryTag + ")"));
+            }
+        });
+        canal.addShutdownListener(this::falharPendentes);
+        canal.confirmSelect();
+    }
+
+    /**
+     * Publica uma mensagem, bloqueando enquanto a janela de confirmações estiver cheia.
+     *
+     * @param routingKey   A chave de roteamento da mensagem.
+     * @param propriedades As propriedades da mensagem (pode ser null).
+     * @param corpo        Os bytes da mensagem.
+     * @return Um future concluído quando o servidor confirmar a mensagem.
+     * @throws IOException          se ocorrer um erro de E/S ao publicar.
+     * @throws InterruptedException se a thread for interrompida aguardando espaço na janela.
+     */
+    public CompletableFuture<Void> publicar(String routingKey, AMQP.BasicProperties propriedades, byte[] corpo)
+            throws IOException, InterruptedException {
+        janela.acquire();
+        synchronized (this) {
+            return publicarNaJanela(routingKey, propriedades, corpo);
+        }
+    }
+
+    /**
+     * Publica um lote de mensagens com as mesmas propriedades, em sequência e sem intercalar
+     * publicações de outras threads. A janela é reservada para o lote inteiro de uma vez, de
+     * modo que o lote não pode ser maior do que a janela.
+     *
+     * @param routingKeys  As chaves de roteamento, uma por mensagem.
+     * @param propriedades As propriedades das mensagens (pode ser null).
+     * @param corpos       Os bytes das mensagens, na mesma ordem das chaves.
+     * @return Os futures de confirmação, na ordem das mensagens.
+     * @throws IOException          se ocorrer um erro de E/S ao publicar.
+     * @throws InterruptedException se a thread for interrompida aguardando espaço na janela.
+     */
+    public List<CompletableFuture<Void>> publicarLote(List<String> routingKeys, AMQP.BasicProperties propriedades,
+                                                      List<byte[]> corpos) throws IOException, InterruptedException {
+        if (routingKeys.size() != corpos.size()) {
+            throw new IllegalArgumentException("Quantidade de chaves e de mensagens diferentes");
+        }
+        int quantidade = corpos.size();
+        if (quantidade > maxEmTransito) {
+            throw new IllegalArgumentException("Lote de " + quantidade + " mensagens maior do que a janela de " + maxEmTransito);
+        }
+        janela.acquire(quantidade);
+
+        List<CompletableFuture<Void>> confirmacoes = new ArrayList<>(quantidade);
+        synchronized (this) {
+            for (int i = 0; i < quantidade; i++) {
+                try {
+                    confirmacoes.add(publicarNaJanela(routingKeys.get(i), propriedades, corpos.get(i)));
+                } catch (IOException | RuntimeException e) {
+                    // Devolve a janela reservada para as mensagens que não chegaram a ser publicadas
+                    janela.release(quantidade - i - 1);
+                    throw e;
+                }
+            }
+        }
+        return confirmacoes;
+    }
+
+    /**
+     * Obtém a quantidade de mensagens publicadas que ainda aguardam confirmação.
+     *
+     * @return A quantidade de mensagens em trânsito.
+     */
+    public int getEmTransito() {
+        return pendentes.size();
+    }
+
+    /**
+     * Publica uma mensagem cuja vaga na janela já foi reservada. Deve ser chamado no monitor
+     * do publicador, para que o delivery tag corresponda à ordem de publicação.
+     */
+    private CompletableFuture<Void> publicarNaJanela(String routingKey, AMQP.BasicProperties propriedades, byte[] corpo)
+            throws IOException {
+        long deliveryTag = canal.getNextPublishSeqNo();
+        CompletableFuture<Void> confirmacao = new CompletableFuture<>();
+        pendentes.put(deliveryTag, confirmacao);
+        try {
+            canal.basicPublish(exchange, routingKey, propriedades, corpo);
+        } catch (IOException | RuntimeException e) {
+            if (pendentes.remove(deliveryTag) != null) {
+                janela.release();
+            }
+            throw e;
+        }
+        return confirmacao;
+    }
+
+    /**
+     * Conclui a mensagem do delivery tag informado (e todas as anteriores, se "multiple").
+     */
+    private void concluir(long deliveryTag, boolean multiple, IOException erro) {
+        if (multiple) {
+            Map<Long, CompletableFuture<Void>> confirmadas = pendentes.headMap(deliveryTag, true);
+            for (Map.Entry<Long, CompletableFuture<Void>> entrada : confirmadas.entrySet()) {
+                if (confirmadas.remove(entrada.getKey()) != null) {
+                    concluir(entrada.getValue(), erro);
+                }
+            }
+        } else {
+            CompletableFuture<Void> confirmacao = pendentes.remove(deliveryTag);
+            if (confirmacao != null) {
+                concluir(confirmacao, erro);
+            }
+        }
+    }
+
+    private void concluir(CompletableFuture<Void> confirmacao, IOException erro) {
+        janela.release();
+        if (erro == null) {
+            confirmacao.complete(null);
+        } else {
+            confirmacao.completeExceptionally(erro);
+        }
+    }
+
+    /**
+     * Conclui com erro todas as mensagens pendentes quando o canal é fechado.
+     */
+    private void falharPendentes(ShutdownSignalException causa) {
+        IOException erro = new IOException("Canal fechado antes da confirmação", causa);
+        while (!pendentes.isEmpty()) {
+            Map.Entry<Long, CompletableFuture<Void>> entrada = pendentes.pollFirstEntry();
+            if (entrada != null) {
+                concluir(entrada.getValue(), erro);
+            }
+        }
+    }
+}
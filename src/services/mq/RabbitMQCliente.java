@@ -5,18 +5,33 @@ import com.rabbitmq.client.*;
 import utils.RabbitMQConfig;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
 /**
  * Classe que representa um cliente RabbitMQ, responsável por estabelecer a conexão
  * com o servidor RabbitMQ, enviar mensagens para uma fila específica e receber
- * mensagens de uma fila específica.
+ * mensagens de uma fila específica. É a implementação de Transporte sobre o AMQP.
+ *
+ * O cliente abre RabbitMQConfig.CONEXOES conexões. O consumo usa um canal próprio na primeira
+ * delas, e as publicações são distribuídas por um PoolDeCanais sobre todas, de modo que o
+ * cliente pode ser usado por várias threads ao mesmo tempo e a vazão de envio cresce com a
+ * quantidade de threads publicadoras. A exchange e a fila da Bolsa de Valores são declaradas
+ * uma única vez por processo.
  */
-public class RabbitMQCliente {
+public class RabbitMQCliente implements Transporte {
 
-    private Connection connection;
-    private Channel channel;
+    // Indica se a topologia já foi declarada por algum cliente deste processo
+    private static volatile boolean topologiaDeclarada;
+
+    private final List<Connection> conexoes = new ArrayList<>();
+    private Channel channel; // canal de consumo, na primeira conexão
+    private PoolDeCanais canaisPublicacao;
+    private ConfirmadorEntregas confirmador; // null no modo de confirmação automática (auto-ack)
 
     /**
      * Construtor que configura a conexão com o servidor RabbitMQ utilizando
@@ -34,64 +49,233 @@ public class RabbitMQCliente {
         factory.setPassword(RabbitMQConfig.PASSWORD);
         factory.setVirtualHost(RabbitMQConfig.VIRTUAL_HOST);
 
-        // Cria a conexão e o canal
-        connection = factory.newConnection();
-        channel = connection.createChannel();
+        // Cria as conexões e o canal de consumo
+        try {
+            for (int i = 0; i < Math.max(1, RabbitMQConfig.CONEXOES); i++) {
+                conexoes.add(factory.newConnection("bolsa-" + i));
+            }
+        } catch (IOException | TimeoutException e) {
+            try {
+                fecharConexoes();
+            } catch (IOException erroAoFechar) {
+                e.addSuppressed(erroAoFechar);
+            }
+            throw e;
+        }
+        channel = conexoes.get(0).createChannel();
+
+        // Declara a fila da Bolsa de Valores e a exchange de tópicos; as filas de cada Broker são declaradas ao consumi-las
+        declararTopologia(channel);
 
-        // Declara as filas e os tópicos
-        channel.queueDeclare(RabbitMQConfig.FILA_BROKER, true, false, false, null);
-        channel.queueDeclare(RabbitMQConfig.FILA_BOLSADEVALORES, true, false, false, null);
+        // Com prefetch configurado, as entregas são confirmadas manualmente, em lotes
+        if (RabbitMQConfig.PREFETCH > 0) {
+            channel.basicQos(RabbitMQConfig.PREFETCH, true);
+            confirmador = new ConfirmadorEntregas(channel, RabbitMQConfig.PREFETCH,
+                    RabbitMQConfig.LOTE_CONFIRMACOES, RabbitMQConfig.INTERVALO_CONFIRMACOES);
+        }
 
-        channel.exchangeDeclare(RabbitMQConfig.LDAMD_EXCHANGE, BuiltinExchangeType.TOPIC);
+        // As publicações usam canais próprios, com publisher confirms quando há janela de confirmações
+        canaisPublicacao = new PoolDeCanais(conexoes, RabbitMQConfig.LDAMD_EXCHANGE,
+                Math.max(1, RabbitMQConfig.CANAIS_PUBLICACAO), RabbitMQConfig.JANELA_CONFIRMACOES);
     }
 
     /**
-     * Envia uma mensagem para a fila especificada com a chave de roteamento dada.
+     * Declara a fila da Bolsa de Valores e a exchange, apenas no primeiro cliente do processo.
+     * As declarações são idempotentes, de modo que dois clientes criados ao mesmo tempo podem
+     * repeti-las sem efeito.
+     */
+    private static void declararTopologia(Channel canal) throws IOException {
+        if (topologiaDeclarada) {
+            return;
+        }
+        canal.queueDeclare(RabbitMQConfig.FILA_BOLSADEVALORES, true, false, false, null);
+        canal.exchangeDeclare(RabbitMQConfig.LDAMD_EXCHANGE, BuiltinExchangeType.TOPIC);
+        topologiaDeclarada = true;
+    }
+
+    /**
+     * Publica uma mensagem na exchange da aplicação, informando o seu formato na propriedade
+     * content-type, no canal de publicação da thread. Pode ser chamado por várias threads ao
+     * mesmo tempo. Com publisher confirms configurados, a publicação bloqueia apenas quando a
+     * janela de confirmações do canal está cheia.
      *
-     * @param fila        A fila para a qual a mensagem deve ser enviada.
-     * @param routingKey  A chave de roteamento para direcionar a mensagem.
-     * @param mensagem    A mensagem a ser enviada para a fila.
+     * @param routingKey    A chave de roteamento para direcionar a mensagem.
+     * @param corpo         Os bytes da mensagem.
+     * @param tipoConteudo  O content-type da mensagem.
+     * @param idCorrelacao  O ID de correlação, enviado na propriedade correlation-id, ou null.
+     * @param responderPara A chave de roteamento da resposta, enviada na propriedade reply-to, ou null.
+     * @return Um future concluído quando o servidor confirma a mensagem, ou já concluído sem confirms.
      * @throws IOException se ocorrer um erro de E/S ao enviar a mensagem.
      */
-    public void enviarMensagem(String fila, String routingKey, String mensagem) throws IOException {
-        // Publica a mensagem no tópico correspondente
-        channel.basicPublish(RabbitMQConfig.LDAMD_EXCHANGE, routingKey, null, mensagem.getBytes(StandardCharsets.UTF_8));
-        System.out.println("Enviado '" + routingKey + "'-> '" + mensagem + "'");
+    @Override
+    public CompletableFuture<Void> publicar(String routingKey, byte[] corpo, String tipoConteudo,
+                                            String idCorrelacao, String responderPara) throws IOException {
+        AMQP.BasicProperties propriedades = new AMQP.BasicProperties.Builder()
+                .contentType(tipoConteudo)
+                .correlationId(idCorrelacao)
+                .replyTo(responderPara)
+                .build();
+        return canaisPublicacao.publicar(routingKey, propriedades, corpo);
+    }
+
+    /**
+     * Publica um lote de mensagens no canal de publicação da thread, em sequência. Com publisher
+     * confirms, o lote ocupa a janela de confirmações de uma vez e é confirmado em conjunto,
+     * normalmente por uma única confirmação "multiple" do servidor.
+     *
+     * @param routingKeys  As chaves de roteamento, uma por mensagem.
+     * @param corpos       Os bytes das mensagens, na mesma ordem das chaves.
+     * @param tipoConteudo O content-type das mensagens.
+     * @return Um future concluído quando o servidor confirma todas as mensagens, ou já concluído sem confirms.
+     * @throws IOException se ocorrer um erro de E/S ao enviar as mensagens.
+     */
+    @Override
+    public CompletableFuture<Void> publicarLote(List<String> routingKeys, List<byte[]> corpos, String tipoConteudo)
+            throws IOException {
+        AMQP.BasicProperties propriedades = new AMQP.BasicProperties.Builder()
+                .contentType(tipoConteudo)
+                .build();
+        return canaisPublicacao.publicarLote(routingKeys, propriedades, corpos);
     }
 
     /**
-     * Recebe mensagens de uma fila específica usando um callback para processá-las.
+     * Consome uma fila durável, vinculando-a aos padrões informados. Filas vinculadas a "#" por
+     * versões anteriores são desvinculadas, para que recebam apenas as chaves dos padrões. O
+     * consumidor exclusivo usa a exclusividade de consumo do AMQP: o servidor recusa outros
+     * consumidores da fila, e recusa este se a fila já tiver algum.
      *
-     * @param queueName       O nome da fila de onde as mensagens devem ser recebidas.
-     * @param deliverCallback O callback para processar mensagens recebidas.
-     * @param local           Indica a origem (BolsaDeValores ou outra) para configurar corretamente a fila.
+     * @param fila       O nome da fila de onde as mensagens devem ser recebidas.
+     * @param padroes    Os padrões de vínculo da fila à exchange (pode ser vazia).
+     * @param exclusivo  true para que este seja o único consumidor da fila.
+     * @param consumidor O consumidor das mensagens recebidas.
      * @throws IOException se ocorrer um erro de E/S ao configurar o recebimento de mensagens.
      */
-    public void receberMensagem(String queueName, DeliverCallback deliverCallback, String local) throws IOException {
-        if (local.equals("BolsaDeValores")) {
-            // Faz o bind da fila com o tópico correspondente
-            channel.queueBind(queueName, RabbitMQConfig.LDAMD_EXCHANGE, "#");
-        
-            // Inicia o consumo de mensagens da fila especificada
-            channel.basicConsume(queueName, true, deliverCallback, consumerTag -> {});
-        } else {
-            // Inicia o consumo de mensagens da fila especificada
-            channel.basicConsume(queueName, true, deliverCallback, consumerTag -> {});
+    @Override
+    public void consumir(String fila, List<String> padroes, boolean exclusivo, ConsumidorMensagens consumidor)
+            throws IOException {
+        channel.queueDeclare(fila, true, false, false, null);
+        if (!padroes.isEmpty() && !padroes.contains("#")) {
+            channel.queueUnbind(fila, RabbitMQConfig.LDAMD_EXCHANGE, "#");
+        }
+        for (String padrao : padroes) {
+            channel.queueBind(fila, RabbitMQConfig.LDAMD_EXCHANGE, padrao);
+        }
+        channel.basicConsume(fila, confirmador == null, "", false, exclusivo, null, adaptar(consumidor), consumerTag -> {});
+    }
+
+    /**
+     * Vincula uma fila durável a mais padrões, sem iniciar um novo consumo.
+     *
+     * @param fila    O nome da fila.
+     * @param padroes Os padrões de vínculo acrescentados.
+     * @throws IOException se ocorrer um erro de E/S ao declarar ou vincular a fila.
+     */
+    @Override
+    public void vincular(String fila, List<String> padroes) throws IOException {
+        channel.queueDeclare(fila, true, false, false, null);
+        for (String padrao : padroes) {
+            channel.queueBind(fila, RabbitMQConfig.LDAMD_EXCHANGE, padrao);
+        }
+    }
+
+    /**
+     * Assina os padrões informados em uma fila exclusiva deste cliente. A fila retém no máximo
+     * maxMensagens mensagens e descarta as mais antigas quando cheia, de modo que um consumidor
+     * lento não acumula um atraso ilimitado.
+     *
+     * @param padroes      Os padrões de vínculo da fila à exchange.
+     * @param maxMensagens A quantidade máxima de mensagens retidas na fila.
+     * @param consumidor   O consumidor das mensagens recebidas.
+     * @throws IOException se ocorrer um erro de E/S ao declarar a fila ou iniciar o consumo.
+     */
+    @Override
+    public void assinar(List<String> padroes, int maxMensagens, ConsumidorMensagens consumidor) throws IOException {
+        Map<String, Object> argumentos = new HashMap<>();
+        argumentos.put("x-max-length", maxMensagens);
+        argumentos.put("x-overflow", "drop-head");
+        String fila = channel.queueDeclare("", false, true, true, argumentos).getQueue();
+
+        for (String padrao : padroes) {
+            channel.queueBind(fila, RabbitMQConfig.LDAMD_EXCHANGE, padrao);
+        }
+        channel.basicConsume(fila, confirmador == null, adaptar(consumidor), consumerTag -> {});
+    }
+
+    private static DeliverCallback adaptar(ConsumidorMensagens consumidor) {
+        return (consumerTag, delivery) -> consumidor.receber(new Mensagem(
+                delivery.getEnvelope().getRoutingKey(),
+                delivery.getBody(),
+                delivery.getProperties().getContentType(),
+                delivery.getEnvelope().getDeliveryTag(),
+                delivery.getProperties().getCorrelationId(),
+                delivery.getProperties().getReplyTo()));
+    }
+
+    /**
+     * Informa que o processamento de uma mensagem recebida terminou. No modo de confirmação
+     * manual, a entrega passa a poder ser confirmada ao servidor; no modo automático, não faz nada.
+     * Deve ser chamado uma vez para cada mensagem recebida, inclusive as descartadas por erro.
+     *
+     * @param idEntrega O delivery tag da mensagem (Mensagem.getIdEntrega()).
+     */
+    @Override
+    public void concluirEntrega(long idEntrega) {
+        if (confirmador != null) {
+            confirmador.concluir(idEntrega);
+        }
+    }
+
+    /**
+     * Define uma ação executada antes de cada confirmação de entregas enviada ao servidor, como
+     * forçar para o disco o que foi produzido pelas mensagens confirmadas.
+     *
+     * @param acao A ação a ser executada.
+     */
+    @Override
+    public void antesDeConfirmar(Runnable acao) {
+        if (confirmador != null) {
+            confirmador.antesDeConfirmar(acao);
         }
     }
 
     /**
-     * Fecha a conexão e o canal com o servidor RabbitMQ.
+     * Fecha as conexões e os canais com o servidor RabbitMQ.
      *
-     * @throws IOException      se ocorrer um erro de E/S ao fechar a conexão ou o canal.
-     * @throws TimeoutException se ocorrer um tempo limite ao fechar a conexão ou o canal.
+     * @throws IOException      se ocorrer um erro de E/S ao fechar uma conexão ou um canal.
+     * @throws TimeoutException se ocorrer um tempo limite ao fechar uma conexão ou um canal.
      */
     public void fecharConexao() throws IOException, TimeoutException {
+        if (confirmador != null) {
+            confirmador.encerrar();
+        }
+        if (canaisPublicacao != null) {
+            canaisPublicacao.fechar();
+        }
         if (channel != null && channel.isOpen()) {
             channel.close();
         }
-        if (connection != null && connection.isOpen()) {
-            connection.close();
+        fecharConexoes();
+    }
+
+    private void fecharConexoes() throws IOException {
+        for (Connection conexao : conexoes) {
+            if (conexao.isOpen()) {
+                conexao.close();
+            }
+        }
+    }
+
+    /**
+     * Fecha a conexão com o servidor RabbitMQ.
+     *
+     * @throws IOException se ocorrer um erro de E/S ou um tempo limite ao fechar a conexão.
+     */
+    @Override
+    public void fechar() throws IOException {
+        try {
+            fecharConexao();
+        } catch (TimeoutException e) {
+            throw new IOException("Tempo limite ao fechar a conexão", e);
         }
     }
 }
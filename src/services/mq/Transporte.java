@@ -0,0 +1,163 @@
+package services.mq;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import utils.RabbitMQConfig;
+
+/**
+ * A interface Transporte separa a Bolsa de Valores e os Brokers do sistema de mensageria. As
+ * mensagens são publicadas em uma exchange de tópicos e roteadas para as filas pelos padrões
+ * de vínculo do AMQP: palavras separadas por ponto, "*" para exatamente uma palavra e "#" para
+ * zero ou mais palavras.
+ *
+ * Há duas implementações: RabbitMQCliente, que usa um servidor RabbitMQ, e TransporteMemoria,
+ * que roteia as mensagens dentro do processo, para testes de carga e benchmarks sem rede. A
+ * implementação padrão é escolhida pela propriedade de sistema "bolsa.transporte".
+ */
+public interface Transporte {
+
+    /**
+     * Publica uma mensagem na exchange de tópicos.
+     *
+     * @param routingKey   A chave de roteamento da mensagem.
+     * @param corpo        Os bytes da mensagem.
+     * @param tipoConteudo O content-type da mensagem.
+     * @return Um future concluído quando o transporte aceita a mensagem: com publisher confirms,
+     *         quando o servidor a confirma; caso contrário, já concluído.
+     * @throws IOException se ocorrer um erro ao publicar.
+     */
+    default CompletableFuture<Void> publicar(String routingKey, byte[] corpo, String tipoConteudo) throws IOException {
+        return publicar(routingKey, corpo, tipoConteudo, null, null);
+    }
+
+    /**
+     * Publica uma mensagem de pedido ou de resposta na exchange de tópicos. A resposta a um
+     * pedido é publicada na exchange com a chave responderPara do pedido, e não diretamente em
+     * uma fila, de modo que quem pede escolhe a fila que a recebe pelos seus vínculos.
+     *
+     * @param routingKey    A chave de roteamento da mensagem.
+     * @param corpo         Os bytes da mensagem.
+     * @param tipoConteudo  O content-type da mensagem.
+     * @param idCorrelacao  O ID de correlação entre o pedido e a resposta, ou null.
+     * @param responderPara A chave de roteamento da resposta a um pedido, ou null.
+     * @return Um future concluído quando o transporte aceita a mensagem, como em publicar.
+     * @throws IOException se ocorrer um erro ao publicar.
+     */
+    CompletableFuture<Void> publicar(String routingKey, byte[] corpo, String tipoConteudo,
+                                     String idCorrelacao, String responderPara) throws IOException;
+
+    /**
+     * Publica um lote de mensagens com o mesmo content-type, na ordem da lista. Implementações
+     * sobre um servidor podem enviar o lote de uma vez e acompanhar as suas confirmações juntas;
+     * a implementação padrão publica as mensagens uma a uma.
+     *
+     * @param routingKeys  As chaves de roteamento, uma por mensagem.
+     * @param corpos       Os bytes das mensagens, na mesma ordem das chaves.
+     * @param tipoConteudo O content-type das mensagens.
+     * @return Um future concluído quando o transporte aceita todas as mensagens do lote, e
+     *         concluído com erro se alguma delas for rejeitada.
+     * @throws IOException se ocorrer um erro ao publicar.
+     */
+    default CompletableFuture<Void> publicarLote(List<String> routingKeys, List<byte[]> corpos, String tipoConteudo)
+            throws IOException {
+        if (routingKeys.size() != corpos.size()) {
+            throw new IllegalArgumentException("Quantidade de chaves e de mensagens diferentes");
+        }
+        CompletableFuture<?>[] confirmacoes = new CompletableFuture<?>[corpos.size()];
+        for (int i = 0; i < confirmacoes.length; i++) {
+            confirmacoes[i] = publicar(routingKeys.get(i), corpos.get(i), tipoConteudo);
+        }
+        return CompletableFuture.allOf(confirmacoes);
+    }
+
+    /**
+     * Consome uma fila nomeada e durável, vinculando-a aos padrões informados. Vários
+     * consumidores da mesma fila competem pelas mensagens.
+     *
+     * @param fila       O nome da fila.
+     * @param padroes    Os padrões de vínculo da fila à exchange (pode ser vazia).
+     * @param consumidor O consumidor das mensagens.
+     * @throws IOException se ocorrer um erro ao declarar, vincular ou consumir a fila.
+     */
+    default void consumir(String fila, List<String> padroes, ConsumidorMensagens consumidor) throws IOException {
+        consumir(fila, padroes, false, consumidor);
+    }
+
+    /**
+     * Consome uma fila nomeada e durável, vinculando-a aos padrões informados. Com um consumidor
+     * exclusivo, nenhum outro consumidor pode se registrar na fila enquanto ele estiver ativo, e o
+     * registro falha se a fila já tiver consumidores. A fila continua retendo as mensagens enquanto
+     * não houver consumidor.
+     *
+     * @param fila       O nome da fila.
+     * @param padroes    Os padrões de vínculo da fila à exchange (pode ser vazia).
+     * @param exclusivo  true para que este seja o único consumidor da fila.
+     * @param consumidor O consumidor das mensagens.
+     * @throws IOException se ocorrer um erro ao declarar, vincular ou consumir a fila, inclusive se
+     *                     a exclusividade não puder ser obtida.
+     */
+    void consumir(String fila, List<String> padroes, boolean exclusivo, ConsumidorMensagens consumidor) throws IOException;
+
+    /**
+     * Vincula uma fila nomeada e durável a mais padrões, sem registrar um novo consumidor. Usado
+     * para acrescentar chaves a uma fila já consumida, como a fila compartilhada por várias
+     * sessões de Broker.
+     *
+     * @param fila    O nome da fila.
+     * @param padroes Os padrões de vínculo acrescentados.
+     * @throws IOException se ocorrer um erro ao declarar ou vincular a fila.
+     */
+    void vincular(String fila, List<String> padroes) throws IOException;
+
+    /**
+     * Assina os padrões informados em uma fila exclusiva e temporária, que retém no máximo
+     * maxMensagens mensagens e descarta as mais antigas quando cheia.
+     *
+     * @param padroes      Os padrões de vínculo da fila à exchange.
+     * @param maxMensagens A quantidade máxima de mensagens retidas na fila.
+     * @param consumidor   O consumidor das mensagens.
+     * @throws IOException se ocorrer um erro ao declarar, vincular ou consumir a fila.
+     */
+    void assinar(List<String> padroes, int maxMensagens, ConsumidorMensagens consumidor) throws IOException;
+
+    /**
+     * Informa que o processamento de uma mensagem recebida terminou. Deve ser chamado uma vez
+     * para cada mensagem recebida, inclusive as descartadas por erro.
+     *
+     * @param idEntrega O identificador da entrega (Mensagem.getIdEntrega()).
+     */
+    void concluirEntrega(long idEntrega);
+
+    /**
+     * Define uma ação executada antes de cada confirmação de entregas ao servidor, como forçar
+     * para o disco o que foi produzido pelas mensagens confirmadas.
+     *
+     * @param acao A ação a ser executada.
+     */
+    void antesDeConfirmar(Runnable acao);
+
+    /**
+     * Encerra o transporte.
+     *
+     * @throws IOException se ocorrer um erro ao encerrar as conexões.
+     */
+    void fechar() throws IOException;
+
+    /**
+     * Cria o transporte configurado em RabbitMQConfig.TRANSPORTE: "AMQP" (padrão) conecta ao
+     * servidor RabbitMQ e "MEMORIA" usa o transporte em memória compartilhado pelo processo.
+     *
+     * @return O transporte configurado.
+     * @throws IOException      se ocorrer um erro de E/S ao conectar.
+     * @throws TimeoutException se ocorrer um tempo limite ao conectar.
+     */
+    static Transporte criar() throws IOException, TimeoutException {
+        if (RabbitMQConfig.TRANSPORTE.equalsIgnoreCase("MEMORIA")) {
+            return TransporteMemoria.getInstance();
+        }
+        return new RabbitMQCliente();
+    }
+}
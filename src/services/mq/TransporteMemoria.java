@@ -0,0 +1,278 @@
+package services.mq;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A classe TransporteMemoria é um Transporte dentro do processo, que segue a semântica de
+ * roteamento de uma exchange de tópicos do AMQP. Ela permite executar a Bolsa de Valores e os
+ * Brokers na mesma JVM, sem servidor RabbitMQ, para testes de carga e benchmarks.
+ *
+ * Cada fila é uma fila sem bloqueio (ConcurrentLinkedQueue) e cada consumidor tem uma thread
+ * própria, que dorme quando a fila está vazia e é acordada pelo produtor. As rotas de cada chave de
+ * roteamento são calculadas uma única vez e guardadas até que os vínculos mudem. Os vínculos sem
+ * curingas são indexados pela própria chave, e apenas os padrões com "*" ou "#" são comparados um
+ * a um, de modo que milhares de vínculos por corretora não tornam o roteamento linear.
+ *
+ * Não há persistência nem reentrega: uma mensagem é considerada entregue quando o consumidor
+ * a recebe, e a conclusão das entregas é ignorada.
+ *
+ * A classe segue o padrão Singleton, para que todos os componentes do processo compartilhem a
+ * mesma exchange.
+ */
+public class TransporteMemoria implements Transporte {
+
+    private static TransporteMemoria instance;
+
+    private final Map<String, Fila> filas = new ConcurrentHashMap<>();
+    private final List<Vinculo> vinculos = new CopyOnWriteArrayList<>(); // padrões com curingas
+    private final Map<String, List<Fila>> vinculosExatos = new HashMap<>(); // protegido pelo monitor da instância
+
+    // Filas de destino por chave de roteamento, invalidadas quando os vínculos mudam
+    private final Map<String, Fila[]> rotas = new ConcurrentHashMap<>();
+
+    private final AtomicInteger filasTemporarias = new AtomicInteger();
+
+    /**
+     * Construtor privado para evitar a criação direta de instâncias.
+     */
+    private TransporteMemoria() {
+    }
+
+    /**
+     * Método para obter a instância única da classe TransporteMemoria.
+     *
+     * @return A instância única de TransporteMemoria.
+     */
+    public static synchronized TransporteMemoria getInstance() {
+        if (instance == null) {
+            instance = new TransporteMemoria();
+        }
+        return instance;
+    }
+
+    @Override
+    public CompletableFuture<Void> publicar(String routingKey, byte[] corpo, String tipoConteudo,
+                                            String idCorrelacao, String responderPara) {
+        Fila[] destinos = rotas.get(routingKey);
+        if (destinos == null) {
+            destinos = rotear(routingKey);
+        }
+        for (Fila fila : destinos) {
+            fila.oferecer(routingKey, corpo, tipoConteudo, idCorrelacao, responderPara);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void consumir(String fila, List<String> padroes, boolean exclusivo, ConsumidorMensagens consumidor)
+            throws IOException {
+        Fila destino = filas.computeIfAbsent(fila, nome -> new Fila(nome, Integer.MAX_VALUE));
+        vincular(destino, padroes);
+        destino.iniciar(consumidor, exclusivo);
+    }
+
+    @Override
+    public void vincular(String fila, List<String> padroes) {
+        vincular(filas.computeIfAbsent(fila, nome -> new Fila(nome, Integer.MAX_VALUE)), padroes);
+    }
+
+    @Override
+    public void assinar(List<String> padroes, int maxMensagens, ConsumidorMensagens consumidor) throws IOException {
+        String nome = "assinatura-" + filasTemporarias.incrementAndGet();
+        Fila destino = new Fila(nome, maxMensagens);
+        filas.put(nome, destino);
+        vincular(destino, padroes);
+        destino.iniciar(consumidor, false);
+    }
+
+    @Override
+    public void concluirEntrega(long idEntrega) {
+        // Sem reentrega, não há o que confirmar
+    }
+
+    @Override
+    public void antesDeConfirmar(Runnable acao) {
+        // Sem confirmações, a ação nunca é necessária
+    }
+
+    /**
+     * Mantém as filas e os vínculos, que são compartilhados pelo processo.
+     */
+    @Override
+    public void fechar() {
+    }
+
+    /**
+     * Indica se uma chave de roteamento corresponde a um padrão de vínculo de tópicos.
+     *
+     * @param padrao     O padrão, com "*" para uma palavra e "#" para zero ou mais palavras.
+     * @param routingKey A chave de roteamento.
+     * @return true se a chave corresponder ao padrão.
+     */
+    static boolean corresponde(String padrao, String routingKey) {
+        return corresponde(padrao.split("\\.", -1), 0, routingKey.split("\\.", -1), 0);
+    }
+
+    private static boolean corresponde(String[] padrao, int p, String[] chave, int c) {
+        while (p < padrao.length) {
+            if (padrao[p].equals("#")) {
+                // "#" consome de zero até todas as palavras restantes
+                for (int resto = c; resto <= chave.length; resto++) {
+                    if (corresponde(padrao, p + 1, chave, resto)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (c == chave.length || !(padrao[p].equals("*") || padrao[p].equals(chave[c]))) {
+                return false;
+            }
+            p++;
+            c++;
+        }
+        return c == chave.length;
+    }
+
+    // Sincronizado com rotear, para que uma rota calculada com os vínculos antigos não seja guardada depois da invalidação
+    private synchronized void vincular(Fila fila, List<String> padroes) {
+        for (String padrao : padroes) {
+            if (padrao.indexOf('*') < 0 && padrao.indexOf('#') < 0) {
+                // Um vínculo exato só altera a rota da própria chave
+                vinculosExatos.computeIfAbsent(padrao, chave -> new ArrayList<>()).add(fila);
+                rotas.remove(padrao);
+            } else {
+                vinculos.add(new Vinculo(padrao, fila));
+                rotas.clear();
+            }
+        }
+    }
+
+    private synchronized Fila[] rotear(String routingKey) {
+        List<Fila> destinos = new ArrayList<>();
+        for (Fila fila : vinculosExatos.getOrDefault(routingKey, Collections.emptyList())) {
+            if (!destinos.contains(fila)) {
+                destinos.add(fila);
+            }
+        }
+        for (Vinculo vinculo : vinculos) {
+            if (!destinos.contains(vinculo.fila) && corresponde(vinculo.padrao, routingKey)) {
+                destinos.add(vinculo.fila);
+            }
+        }
+        Fila[] rota = destinos.toArray(new Fila[0]);
+        rotas.put(routingKey, rota);
+        return rota;
+    }
+
+    /**
+     * Vínculo de uma fila à exchange por um padrão de tópicos.
+     */
+    private static class Vinculo {
+        final String padrao;
+        final Fila fila;
+
+        Vinculo(String padrao, Fila fila) {
+            this.padrao = padrao;
+            this.fila = fila;
+        }
+    }
+
+    /**
+     * Fila em memória. Quando limitada, descarta as mensagens mais antigas ao ultrapassar o
+     * limite, como uma fila AMQP com x-overflow = drop-head. Vários consumidores de uma mesma
+     * fila competem pelas mensagens, cada um em uma thread própria, a menos que o primeiro seja
+     * exclusivo.
+     */
+    private static class Fila {
+
+        private final String nome;
+        private final int maxMensagens;
+        private final Queue<Mensagem> mensagens = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger tamanho = new AtomicInteger();
+        private final AtomicLong entregas = new AtomicLong();
+        private final List<Consumidor> consumidores = new CopyOnWriteArrayList<>();
+        private boolean exclusiva;
+
+        Fila(String nome, int maxMensagens) {
+            this.nome = nome;
+            this.maxMensagens = maxMensagens;
+        }
+
+        void oferecer(String routingKey, byte[] corpo, String tipoConteudo, String idCorrelacao, String responderPara) {
+            mensagens.offer(new Mensagem(routingKey, corpo, tipoConteudo, entregas.incrementAndGet(),
+                    idCorrelacao, responderPara));
+            if (tamanho.incrementAndGet() > maxMensagens && mensagens.poll() != null) {
+                tamanho.decrementAndGet();
+            }
+            for (Consumidor consumidor : consumidores) {
+                if (consumidor.aguardando) {
+                    LockSupport.unpark(consumidor.thread);
+                    break;
+                }
+            }
+        }
+
+        synchronized void iniciar(ConsumidorMensagens destino, boolean exclusivo) throws IOException {
+            if (exclusiva || (exclusivo && !consumidores.isEmpty())) {
+                throw new IOException("A fila " + nome + " tem um consumidor exclusivo ou já tem consumidores");
+            }
+            exclusiva = exclusivo;
+            Consumidor consumidor = new Consumidor(this, destino);
+            consumidor.thread = new Thread(consumidor, "TransporteMemoria-" + nome + "-" + (consumidores.size() + 1));
+            consumidor.thread.setDaemon(true);
+            consumidores.add(consumidor);
+            consumidor.thread.start();
+        }
+    }
+
+    /**
+     * Thread consumidora de uma fila, que dorme enquanto a fila está vazia.
+     */
+    private static class Consumidor implements Runnable {
+
+        private final Fila fila;
+        private final ConsumidorMensagens destino;
+        private Thread thread;
+        private volatile boolean aguardando;
+
+        Consumidor(Fila fila, ConsumidorMensagens destino) {
+            this.fila = fila;
+            this.destino = destino;
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Mensagem mensagem = fila.mensagens.poll();
+                if (mensagem == null) {
+                    // Sinaliza a espera antes de conferir a fila de novo, para não perder um aviso do produtor
+                    aguardando = true;
+                    if (fila.mensagens.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    aguardando = false;
+                    continue;
+                }
+                fila.tamanho.decrementAndGet();
+                try {
+                    destino.receber(mensagem);
+                } catch (RuntimeException e) {
+                    System.err.println("[TransporteMemoria] Erro ao consumir a fila " + fila.nome + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
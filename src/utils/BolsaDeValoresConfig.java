@@ -0,0 +1,95 @@
+package utils;
+
+/**
+ * Classe utilitária responsável por armazenar configurações do motor de negociação da
+ * Bolsa de Valores. Os valores podem ser alterados por propriedades de sistema
+ * (por exemplo, -Dbolsa.particoes=4).
+ */
+public class BolsaDeValoresConfig {
+    // Quantidade de partições do motor de casamento; 0 mantém o casamento na thread do consumidor
+    public static final int PARTICOES = Integer.getInteger("bolsa.particoes", 0);
+
+    // Capacidade do anel de entrada de cada partição (arredondada para potência de 2)
+    public static final int CAPACIDADE_FILA_PARTICAO = Integer.getInteger("bolsa.particoes.capacidade", 65_536);
+
+    // Quantidade máxima de nomes de cada dicionário (ativos e corretoras); um nome novo além dela é recusado
+    public static final int CAPACIDADE_DICIONARIO = Integer.getInteger("bolsa.dicionario.capacidade", 65_536);
+
+    // Diretório dos segmentos do jornal de negócios
+    public static final String DIRETORIO_HISTORICO = System.getProperty("bolsa.historico.diretorio", "historico");
+
+    // Tamanho de cada segmento do jornal de negócios, em bytes
+    public static final int TAMANHO_SEGMENTO_HISTORICO = Integer.getInteger("bolsa.historico.segmento", 64 * 1024 * 1024);
+
+    // Modo de durabilidade do jornal de negócios (POR_LOTE, TEMPORIZADO ou SISTEMA_OPERACIONAL)
+    public static final String DURABILIDADE_HISTORICO = System.getProperty("bolsa.historico.durabilidade", "POR_LOTE");
+
+    // Intervalo entre sincronizações do jornal no modo TEMPORIZADO, em milissegundos
+    public static final long INTERVALO_SINCRONIZACAO_HISTORICO = Long.getLong("bolsa.historico.intervalo", 10);
+
+    // Diretório dos arquivos diários colunares, gerados pela compactação de fim de dia
+    public static final String DIRETORIO_ARQUIVO = System.getProperty("bolsa.arquivo.diretorio", DIRETORIO_HISTORICO + "/arquivo");
+
+    // Horário diário da compactação dos negócios do dia em um arquivo colunar, no formato HH:mm (vazio desativa)
+    public static final String HORARIO_COMPACTACAO = System.getProperty("bolsa.historico.compactacao", "");
+
+    // Diretório dos snapshots do livro de ofertas
+    public static final String DIRETORIO_LIVRO = System.getProperty("bolsa.livro.diretorio", DIRETORIO_HISTORICO + "/livro");
+
+    // Intervalo entre snapshots do livro de ofertas, em segundos; 0 desativa os snapshots
+    public static final long INTERVALO_SNAPSHOT_LIVRO = Long.getLong("bolsa.livro.snapshot", 60);
+
+    // Intervalo de consolidação das alterações do livro publicadas como dados de mercado, em milissegundos
+    public static final long INTERVALO_MERCADO = Long.getLong("bolsa.mercado.intervalo", 100);
+
+    // Intervalo entre snapshots do livro publicados como dados de mercado, em milissegundos
+    public static final long INTERVALO_SNAPSHOT_MERCADO = Long.getLong("bolsa.mercado.snapshot", 5_000);
+
+    // Durações das barras (OHLCV e VWAP) de cada ativo, em segundos, separadas por vírgula (vazio desativa as barras)
+    public static final String INTERVALOS_BARRAS = System.getProperty("bolsa.barras.intervalos", "1,60,300,86400");
+
+    // Quantidade de barras recentes guardadas de cada intervalo
+    public static final int CAPACIDADE_BARRAS = Integer.getInteger("bolsa.barras.capacidade", 120);
+
+    // Publica as barras alteradas a cada intervalo de consolidação dos dados de mercado
+    public static final boolean PUBLICAR_BARRAS = Boolean.parseBoolean(System.getProperty("bolsa.barras.publicar", "false"));
+
+    // Publica para o Broker de origem o aceite de cada ordem recebida, com o ID usado para cancelá-la ou alterá-la
+    public static final boolean ACEITE_ORDENS = Boolean.parseBoolean(System.getProperty("bolsa.ordens.aceite", "true"));
+
+    // Publica para a corretora de cada lado de um negócio a execução da sua ordem
+    public static final boolean EXECUCAO_ORDENS = Boolean.parseBoolean(System.getProperty("bolsa.ordens.execucao", "true"));
+
+    // Duração de cada leilão, em milissegundos: as ordens do ativo se acumulam e negociam juntas ao final (0 desativa os leilões)
+    public static final long JANELA_LEILAO = Long.getLong("bolsa.leilao.janela", 2_000);
+
+    // Abre um leilão para cada ativo na sua primeira ordem após a inicialização (leilão de abertura)
+    public static final boolean LEILAO_ABERTURA = Boolean.parseBoolean(System.getProperty("bolsa.leilao.abertura", "false"));
+
+    // Ordens de um ativo em um segundo a partir das quais o ativo entra em leilão (0 desativa)
+    public static final int LIMITE_RAJADA_LEILAO = Integer.getInteger("bolsa.leilao.rajada", 0);
+
+    // Horário diário do leilão de fechamento de todos os ativos, no formato HH:mm (vazio desativa)
+    public static final String HORARIO_FECHAMENTO_LEILAO = System.getProperty("bolsa.leilao.fechamento", "");
+
+    // Máximo de níveis de cada lado do livro na resposta a uma consulta dos Brokers
+    public static final int PROFUNDIDADE_CONSULTA = Integer.getInteger("bolsa.consulta.profundidade", 20);
+
+    // Máximo de consultas dos Brokers aguardando resposta; as mais antigas são descartadas
+    public static final int FILA_CONSULTAS = Integer.getInteger("bolsa.consulta.fila", 1_000);
+
+    // Escreve no console cada operação recebida (desligar em testes de carga)
+    public static final boolean LOG_OPERACOES = Boolean.parseBoolean(System.getProperty("bolsa.log.operacoes", "true"));
+
+    // Mede a latência dos estágios, as taxas por ativo e a profundidade do livro
+    public static final boolean METRICAS = Boolean.parseBoolean(System.getProperty("bolsa.metricas", "true"));
+
+    // Mede a latência de uma a cada N execuções de cada estágio (arredondado para potência de 2)
+    public static final int AMOSTRAGEM_METRICAS = Integer.getInteger("bolsa.metricas.amostragem", 8);
+
+    // Duração de cada intervalo das métricas, em segundos
+    public static final long INTERVALO_METRICAS = Long.getLong("bolsa.metricas.intervalo", 10);
+
+    // Escreve no console o relatório das métricas ao final de cada intervalo
+    public static final boolean RELATORIO_METRICAS = Boolean.parseBoolean(System.getProperty("bolsa.metricas.relatorio", "true"));
+}
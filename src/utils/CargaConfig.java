@@ -0,0 +1,53 @@
+package utils;
+
+/**
+ * Classe utilitária responsável por armazenar configurações do gerador de carga. Os valores
+ * podem ser alterados por propriedades de sistema (por exemplo, -Dbolsa.carga.taxa=50000).
+ */
+public class CargaConfig {
+    // Quantidade de Brokers simulados
+    public static final int BROKERS = Integer.getInteger("bolsa.carga.brokers", 10);
+
+    // Hospeda os Brokers simulados como sessões de um SessoesBroker, sobre um único transporte
+    public static final boolean SESSOES = Boolean.parseBoolean(System.getProperty("bolsa.carga.sessoes", "true"));
+
+    // Taxa total de envio de ordens, em ordens por segundo
+    public static final int TAXA = Integer.getInteger("bolsa.carga.taxa", 10_000);
+
+    // Duração da medição, em segundos, depois do aquecimento
+    public static final int DURACAO = Integer.getInteger("bolsa.carga.duracao", 30);
+
+    // Duração do aquecimento, em segundos; as latências desse período são descartadas
+    public static final int AQUECIMENTO = Integer.getInteger("bolsa.carga.aquecimento", 5);
+
+    // Quantidade de ativos negociados
+    public static final int ATIVOS = Integer.getInteger("bolsa.carga.ativos", 50);
+
+    // Expoente da distribuição de Zipf da popularidade dos ativos (0 = uniforme)
+    public static final double EXPOENTE_ZIPF = Double.parseDouble(System.getProperty("bolsa.carga.zipf", "1.0"));
+
+    // Fração das ordens que são de compra
+    public static final double FRACAO_COMPRA = Double.parseDouble(System.getProperty("bolsa.carga.compra", "0.5"));
+
+    // Fração das ordens que cruzam o spread (agressoras); as demais repousam no livro
+    public static final double FRACAO_AGRESSIVA = Double.parseDouble(System.getProperty("bolsa.carga.agressiva", "0.3"));
+
+    // Preço inicial de todos os ativos, em ticks
+    public static final long PRECO_INICIAL = Long.getLong("bolsa.carga.preco", 2_000);
+
+    // Passo do passeio aleatório do preço de referência a cada ordem, em ticks
+    public static final long PASSO_PRECO = Long.getLong("bolsa.carga.passo", 1);
+
+    // Distância máxima, em ticks, das ordens que repousam em relação ao preço de referência
+    public static final int PROFUNDIDADE = Integer.getInteger("bolsa.carga.profundidade", 10);
+
+    // Margem, em ticks, com que as ordens agressoras atravessam o preço de referência
+    public static final int MARGEM_AGRESSIVA = Integer.getInteger("bolsa.carga.margem", 100);
+
+    // Tempo máximo de espera pela execução de uma ordem agressora, em milissegundos
+    public static final long ESPERA_EXECUCAO = Long.getLong("bolsa.carga.espera", 5_000);
+
+    // Inicia a Bolsa de Valores no mesmo processo; por padrão, apenas com o transporte em memória
+    public static final boolean BOLSA_LOCAL = Boolean.parseBoolean(System.getProperty("bolsa.carga.bolsa",
+            String.valueOf(RabbitMQConfig.TRANSPORTE.equalsIgnoreCase("MEMORIA"))));
+}
@@ -7,20 +7,79 @@ package utils;
  */
 public class RabbitMQConfig {
     // Configurações do servidor RabbitMQ
-    public static final String HOST = "jackal.rmq.cloudamqp.com"; // Endereço do servidor RabbitMQ
-    public static final int PORT = 5672; // Porta do servidor RabbitMQ
-    public static final String USERNAME = "bzrycdvq"; // Nome de usuário para autenticação
-    public static final String PASSWORD = "cvr5DrQ_exfC7cDMN7IU0l2tf11JS3k4"; // Senha para autenticação
-    public static final String VIRTUAL_HOST = "bzrycdvq"; // Virtual Host
+    public static final String HOST = System.getProperty("bolsa.rabbitmq.host", "jackal.rmq.cloudamqp.com"); // Endereço do servidor RabbitMQ
+    public static final int PORT = Integer.getInteger("bolsa.rabbitmq.porta", 5672); // Porta do servidor RabbitMQ
+    public static final String USERNAME = System.getProperty("bolsa.rabbitmq.usuario", "bzrycdvq"); // Nome de usuário para autenticação
+    public static final String PASSWORD = System.getProperty("bolsa.rabbitmq.senha", "cvr5DrQ_exfC7cDMN7IU0l2tf11JS3k4"); // Senha para autenticação
+    public static final String VIRTUAL_HOST = System.getProperty("bolsa.rabbitmq.vhost", "bzrycdvq"); // Virtual Host
 
     // Configurações de filas
-    public static final String FILA_BROKER = "BROKER_queue"; // Nome da fila para o Broker
+    public static final String FILA_BROKER = "BROKER_queue"; // Prefixo da fila de respostas de cada Broker ("<prefixo>.<corretora>")
     public static final String FILA_BOLSADEVALORES = "BOLSADEVALORES_queue"; // Nome da fila para a Bolsa de Valores
 
     // Configurações de tópicos
     public static final String TOPICO_COMPRA = "compra"; // Tópico para operações de compra
     public static final String TOPICO_VENDA = "venda"; // Tópico para operações de venda
     
+    // Transporte das mensagens: AMQP (servidor RabbitMQ) ou MEMORIA (roteamento dentro do processo)
+    public static final String TRANSPORTE = System.getProperty("bolsa.transporte", "AMQP");
+
+    // Formato das mensagens enviadas pelos Brokers (TEXTO ou BINARIO)
+    public static final String FORMATO_MENSAGEM = System.getProperty("bolsa.formato", "BINARIO");
+
+    // Conexões de cada cliente RabbitMQ, sobre as quais os canais de publicação são distribuídos
+    public static final int CONEXOES = Integer.getInteger("bolsa.rabbitmq.conexoes", 1);
+
+    // Máximo de canais de publicação de cada cliente; cada thread publica sempre no mesmo canal
+    public static final int CANAIS_PUBLICACAO = Integer.getInteger("bolsa.rabbitmq.canais", Runtime.getRuntime().availableProcessors());
+
+    // Máximo de mensagens aguardando publisher confirm por Broker (0 desativa os confirms)
+    public static final int JANELA_CONFIRMACOES = Integer.getInteger("bolsa.confirmacoes.janela", 0);
+
+    // Prefetch dos consumidores; com valor positivo, as entregas são confirmadas manualmente (0 usa auto-ack)
+    public static final int PREFETCH = Integer.getInteger("bolsa.prefetch", 0);
+
+    // Quantidade de entregas concluídas por confirmação múltipla (limitada à metade do prefetch)
+    public static final int LOTE_CONFIRMACOES = Integer.getInteger("bolsa.acks.lote", 64);
+
+    // Intervalo máximo para confirmar as entregas já concluídas, em milissegundos
+    public static final long INTERVALO_CONFIRMACOES = Long.getLong("bolsa.acks.intervalo", 20);
+
+    // Prefixos das chaves de roteamento dos dados de mercado ("<prefixo>.<ativo>")
+    public static final String ROTA_NEGOCIO = "NEGOCIO"; // Negócios realizados
+    public static final String ROTA_ATUALIZACAO = "ATUALIZACAO"; // Alterações consolidadas dos níveis do livro
+    public static final String ROTA_SNAPSHOT = "SNAPSHOT"; // Fotografias periódicas do livro
+    public static final String ROTA_BARRA = "BARRA"; // Barras (OHLCV e VWAP) alteradas de cada ativo
+
+    // Prefixos das chaves de roteamento das alterações de ordens ("<prefixo>.<ativo>")
+    public static final String ROTA_CANCELAMENTO = "CANCELAMENTO"; // Cancelamento de uma ordem do livro
+    public static final String ROTA_ALTERACAO = "ALTERACAO"; // Alteração da quantidade de uma ordem do livro
+
+    // Prefixo da chave de roteamento dos aceites de ordens ("<prefixo>.<corretora>"), recebidos na fila de cada Broker
+    public static final String ROTA_ACEITE = "ACEITE";
+
+    // Prefixo da chave de roteamento das execuções de ordens ("<prefixo>.<corretora>"), recebidas na fila de cada Broker
+    public static final String ROTA_EXECUCAO = "EXECUCAO";
+
+    // Prefixos das consultas ao livro ("<prefixo>.<ativo>", ou só o prefixo para todos os ativos) e das respostas ("<prefixo>.<corretora>")
+    public static final String ROTA_CONSULTA = "CONSULTA";
+    public static final String ROTA_RESPOSTA = "RESPOSTA";
+
+    // Tempo máximo de espera pela resposta de uma consulta ao livro, em milissegundos
+    public static final long TEMPO_CONSULTA = Long.getLong("bolsa.consulta.tempo", 2_000);
+
+    // Idade máxima de uma resposta de consulta reaproveitada pelo Broker, em milissegundos (0 desativa o cache)
+    public static final long VALIDADE_CONSULTA = Long.getLong("bolsa.consulta.validade", 500);
+
+    // Threads que processam as respostas das sessões de Broker hospedadas em um SessoesBroker
+    public static final int THREADS_SESSOES = Integer.getInteger("bolsa.sessoes.threads", Runtime.getRuntime().availableProcessors());
+
+    // Máximo de mensagens de mercado retidas na fila de um Broker; as mais antigas são descartadas
+    public static final int MAX_MENSAGENS_MERCADO = Integer.getInteger("bolsa.mercado.fila", 10_000);
+
+    // Ativos dos dados de mercado assinados por cada Broker, separados por vírgula ("#" para todos, vazio para nenhum)
+    public static final String ATIVOS_MERCADO = System.getProperty("bolsa.mercado.ativos", "#");
+
     // Exchange
     public static final String LDAMD_EXCHANGE = "ldamd_exchange"; // Nome da exchange
 }
@@ -0,0 +1,76 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes das fotografias do livro de um ativo lidas por outras threads.
+ */
+class LivroDoAtivoTest {
+
+    @Test
+    void fotografiaEReaproveitadaEnquantoOLivroNaoMuda() {
+        LivroDoAtivo livro = new LivroDoAtivo();
+        adicionar(livro, new Operacao(1, TipoOperacao.COMPRA, "LATS3", 100, 1000, "CORA", 1));
+
+        LivroDoAtivo.Fotografia primeira = livro.fotografar();
+        assertSame(primeira, livro.fotografar());
+
+        adicionar(livro, new Operacao(2, TipoOperacao.COMPRA, "LATS3", 200, 1001, "CORA", 2));
+        LivroDoAtivo.Fotografia segunda = livro.fotografar();
+
+        assertNotSame(primeira, segunda);
+        assertEquals(1, primeira.ofertas(TipoOperacao.COMPRA).size());
+        assertEquals(2, segunda.ofertas(TipoOperacao.COMPRA).get(0).getId());
+    }
+
+    @Test
+    void leitorNaoEsperaPeloEscritor() throws Exception {
+        LivroDoAtivo livro = new LivroDoAtivo();
+        adicionar(livro, new Operacao(1, TipoOperacao.VENDA, "LATS3", 100, 1000, "CORA", 1));
+        LivroDoAtivo.Fotografia anterior = livro.fotografar();
+
+        // Com uma escrita em andamento, o leitor devolve a última fotografia em vez de bloquear
+        long carimbo = livro.iniciarEscrita();
+        try {
+            LivroDoAtivo.Fotografia lida = CompletableFuture.supplyAsync(livro::fotografar).get(5, TimeUnit.SECONDS);
+            assertSame(anterior, lida);
+        } finally {
+            livro.concluirEscrita(carimbo);
+        }
+    }
+
+    @Test
+    void copiasEntreguesNaoAlteramAFotografia() {
+        LivroDoAtivo livro = new LivroDoAtivo();
+        adicionar(livro, new Operacao(1, TipoOperacao.VENDA, "LATS3", 100, 1000, "CORA", 1));
+        LivroDoAtivo.Fotografia fotografia = livro.fotografar();
+
+        List<Operacao> copias = new ArrayList<>();
+        fotografia.copiarOfertas(TipoOperacao.VENDA, copias);
+        copias.get(0).setQuantidade(1);
+
+        assertEquals(100, fotografia.ofertas(TipoOperacao.VENDA).get(0).getQuantidade());
+        assertEquals(100, livro.fotografar().ofertas(TipoOperacao.VENDA).get(0).getQuantidade());
+    }
+
+    private static void adicionar(LivroDoAtivo livro, Operacao oferta) {
+        long carimbo = livro.iniciarEscrita();
+        try {
+            livro.adicionar(oferta);
+        } finally {
+            livro.concluirEscrita(carimbo);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes do casamento de ofertas: prioridade preço-tempo, cancelamento e alteração pelo ID da
+ * ordem e o encerramento do leilão.
+ */
+class MotorDeCasamentoTest {
+
+    private static final String ATIVO = "MCTS3";
+
+    private LivroDeOfertas livro;
+    private MotorDeCasamento motor;
+    private final List<long[]> negocios = new ArrayList<>(); // {quantidade, preço, ID da agressora, ID da passiva}
+
+    @BeforeEach
+    void criarMotor() {
+        livro = new LivroDeOfertas();
+        AtomicLong ids = new AtomicLong();
+        motor = new MotorDeCasamento(livro, new OuvinteNegociacao() {
+            @Override
+            public void aoNegociar(Operacao transacao) {
+            }
+
+            @Override
+            public void aoNegociar(Operacao transacao, Operacao agressora, Operacao passiva) {
+                negocios.add(new long[] {transacao.getQuantidade(), transacao.getPreco(), agressora.getId(), passiva.getId()});
+            }
+        }, (codigoAtivo, lado, preco, quantidade) -> { }, ids::incrementAndGet);
+    }
+
+    @Test
+    void negociaPeloMelhorPrecoEDepoisPelaOrdemDeChegada() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 100, 101));
+        motor.processarTransacao(ordem(2, TipoOperacao.VENDA, 100, 100));
+        motor.processarTransacao(ordem(3, TipoOperacao.VENDA, 100, 100));
+
+        motor.processarTransacao(ordem(4, TipoOperacao.COMPRA, 250, 101));
+
+        assertEquals(3, negocios.size());
+        assertNegocio(negocios.get(0), 100, 100, 4, 2);
+        assertNegocio(negocios.get(1), 100, 100, 4, 3);
+        assertNegocio(negocios.get(2), 50, 101, 4, 1);
+        List<Operacao> restantes = livro.consultarOfertasPorAtivo(ATIVO);
+        assertEquals(1, restantes.size());
+        assertEquals(1, restantes.get(0).getId());
+        assertEquals(50, restantes.get(0).getQuantidade());
+    }
+
+    @Test
+    void saldoDaAgressoraFicaNoLivro() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 30, 100));
+        motor.processarTransacao(ordem(2, TipoOperacao.COMPRA, 100, 99));
+
+        assertTrue(negocios.isEmpty());
+        assertEquals(2, livro.consultarOfertasPorAtivo(ATIVO).size());
+        assertEquals(99, livro.melhorOferta(ATIVO, TipoOperacao.COMPRA).getPreco());
+    }
+
+    @Test
+    void cancelaPeloIdDaOrdem() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 100, 100));
+        motor.processarTransacao(alteracao(2, 1, TipoOperacao.VENDA, 0, "CORA"));
+
+        motor.processarTransacao(ordem(3, TipoOperacao.COMPRA, 100, 100));
+
+        assertTrue(negocios.isEmpty());
+        assertEquals(TipoOperacao.COMPRA, livro.consultarOfertasPorAtivo(ATIVO).get(0).getTipo());
+    }
+
+    @Test
+    void reducaoMantemAPrioridade() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 100, 100));
+        motor.processarTransacao(ordem(2, TipoOperacao.VENDA, 100, 100));
+        assertTrue(motor.alterarOferta(alteracao(3, 1, TipoOperacao.VENDA, 40, "CORA")));
+
+        motor.processarTransacao(ordem(4, TipoOperacao.COMPRA, 50, 100));
+
+        assertNegocio(negocios.get(0), 40, 100, 4, 1);
+        assertNegocio(negocios.get(1), 10, 100, 4, 2);
+    }
+
+    @Test
+    void aumentoLevaAOfertaParaOFinalDaFila() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 100, 100));
+        motor.processarTransacao(ordem(2, TipoOperacao.VENDA, 100, 100));
+        assertTrue(motor.alterarOferta(alteracao(3, 1, TipoOperacao.VENDA, 150, "CORA")));
+
+        motor.processarTransacao(ordem(4, TipoOperacao.COMPRA, 100, 100));
+
+        assertEquals(1, negocios.size());
+        assertNegocio(negocios.get(0), 100, 100, 4, 2);
+    }
+
+    @Test
+    void recusaAlteracaoDeOutraCorretoraOuDeOrdemInexistente() {
+        motor.processarTransacao(ordem(1, TipoOperacao.VENDA, 100, 100));
+
+        assertFalse(motor.alterarOferta(alteracao(2, 1, TipoOperacao.VENDA, 0, "CORB")));
+        assertFalse(motor.alterarOferta(alteracao(3, 1, TipoOperacao.COMPRA, 0, "CORA")));
+        assertFalse(motor.alterarOferta(alteracao(4, 99, TipoOperacao.VENDA, 0, "CORA")));
+        assertEquals(100, livro.consultarOfertasPorAtivo(ATIVO).get(0).getQuantidade());
+    }
+
+    @Test
+    void leilaoIgnoraNiveisCancelados() {
+        motor.processarTransacao(Operacao.leilao(1, ATIVO, Operacao.ABERTURA_LEILAO, 1));
+        motor.processarTransacao(ordem(2, TipoOperacao.COMPRA, 100, 102));
+        motor.processarTransacao(ordem(3, TipoOperacao.COMPRA, 100, 101));
+        motor.processarTransacao(ordem(4, TipoOperacao.VENDA, 150, 100));
+        motor.processarTransacao(ordem(5, TipoOperacao.VENDA, 10, 102));
+        motor.processarTransacao(ordem(6, TipoOperacao.COMPRA, 10, 100));
+        motor.processarTransacao(alteracao(7, 5, TipoOperacao.VENDA, 0, "CORA"));
+        motor.processarTransacao(alteracao(8, 6, TipoOperacao.COMPRA, 0, "CORC"));
+
+        motor.processarTransacao(Operacao.leilao(9, ATIVO, Operacao.ENCERRAMENTO_LEILAO, 2));
+
+        assertEquals(2, negocios.size());
+        assertNegocio(negocios.get(0), 100, 101, 4, 2);
+        assertNegocio(negocios.get(1), 50, 101, 4, 3);
+    }
+
+    @Test
+    void leilaoNegociaTudoAoPrecoDeEquilibrio() {
+        motor.processarTransacao(Operacao.leilao(1, ATIVO, Operacao.ABERTURA_LEILAO, 1));
+        motor.processarTransacao(ordem(2, TipoOperacao.COMPRA, 100, 102));
+        motor.processarTransacao(ordem(3, TipoOperacao.COMPRA, 100, 101));
+        motor.processarTransacao(ordem(4, TipoOperacao.VENDA, 150, 100));
+        motor.processarTransacao(ordem(5, TipoOperacao.VENDA, 100, 103));
+        assertTrue(negocios.isEmpty());
+        assertEquals(ATIVO, livro.ativosEmLeilao().get(0));
+
+        motor.processarTransacao(Operacao.leilao(6, ATIVO, Operacao.ENCERRAMENTO_LEILAO, 2));
+
+        // Em 100 e 101 negociam-se 150 ações; sobram compras, então vale o maior preço
+        assertEquals(2, negocios.size());
+        assertNegocio(negocios.get(0), 100, 101, 4, 2);
+        assertNegocio(negocios.get(1), 50, 101, 4, 3);
+        assertEquals(101, livro.melhorOferta(ATIVO, TipoOperacao.COMPRA).getPreco());
+        assertEquals(50, livro.melhorOferta(ATIVO, TipoOperacao.COMPRA).getQuantidade());
+        assertEquals(103, livro.melhorOferta(ATIVO, TipoOperacao.VENDA).getPreco());
+        assertTrue(livro.ativosEmLeilao().isEmpty());
+    }
+
+    @Test
+    void leilaoIgnoraOrdensSemQuantidade() {
+        motor.processarTransacao(Operacao.leilao(1, ATIVO, Operacao.ABERTURA_LEILAO, 1));
+        motor.processarTransacao(ordem(2, TipoOperacao.COMPRA, 0, 100));
+
+        assertTrue(livro.consultarOfertasPorAtivo(ATIVO).isEmpty());
+    }
+
+    private static Operacao ordem(long id, TipoOperacao tipo, int quantidade, long preco) {
+        return new Operacao(id, tipo, ATIVO, quantidade, preco, tipo == TipoOperacao.VENDA ? "CORA" : "CORC", id);
+    }
+
+    private static Operacao alteracao(long id, long idAlterada, TipoOperacao tipo, int novaQuantidade, String corretora) {
+        return Operacao.alteracao(id, idAlterada, tipo, ATIVO, novaQuantidade, corretora, id);
+    }
+
+    private static void assertNegocio(long[] negocio, long quantidade, long preco, long agressora, long passiva) {
+        assertEquals(quantidade, negocio[0], "quantidade");
+        assertEquals(preco, negocio[1], "preço");
+        assertEquals(agressora, negocio[2], "agressora");
+        assertEquals(passiva, negocio[3], "passiva");
+    }
+}
@@ -0,0 +1,122 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes do motor particionado: a ordem de chegada por ativo através do anel de cada partição
+ * e as etapas executadas pela partição em torno do casamento.
+ */
+class MotorParticionadoTest {
+
+    private final AtomicInteger negocios = new AtomicInteger();
+    private MotorParticionado motor;
+
+    @AfterEach
+    void encerrar() {
+        if (motor != null) {
+            motor.encerrar();
+        }
+    }
+
+    @Test
+    void preservaAOrdemDeCadaAtivoComAnelPequeno() throws Exception {
+        int quantidade = 3_000;
+        Map<String, List<Long>> recebidas = new ConcurrentHashMap<>();
+        List<Long> entregas = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch concluidas = new CountDownLatch(quantidade);
+        // Anel de 4 posições: o produtor dá várias voltas e espera pela partição
+        criarMotor(new EtapasParticao() {
+            @Override
+            public void antesDoCasamento(Operacao operacao, long idBroker) {
+                assertEquals(operacao.getId() * 10, idBroker);
+                recebidas.computeIfAbsent(operacao.getAtivo(), ativo -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(operacao.getId());
+            }
+
+            @Override
+            public void aposCasamento(Operacao operacao, long idEntrega) {
+                entregas.add(idEntrega);
+                concluidas.countDown();
+            }
+        }, 2, 4);
+
+        List<String> ativos = Arrays.asList("MPTS3", "MPTS4", "MPTS5");
+        for (long id = 1; id <= quantidade; id++) {
+            motor.submeter(compra(id, ativos.get((int) (id % ativos.size())), 100), id + 1_000_000, id * 10);
+        }
+
+        assertTrue(concluidas.await(10, TimeUnit.SECONDS));
+        assertEquals(quantidade, entregas.size());
+        for (String ativo : ativos) {
+            List<Long> ids = recebidas.get(ativo);
+            assertEquals(quantidade / ativos.size(), ids.size());
+            for (int i = 1; i < ids.size(); i++) {
+                assertTrue(ids.get(i - 1) < ids.get(i), ativo);
+            }
+        }
+        assertEquals(0, negocios.get());
+    }
+
+    @Test
+    void operacaoRecusadaAntesDoCasamentoNaoNegocia() throws Exception {
+        List<Long> entregas = Collections.synchronizedList(new ArrayList<>());
+        criarMotor(new EtapasParticao() {
+            @Override
+            public void antesDoCasamento(Operacao operacao, long idBroker) throws IOException {
+                if (operacao.getId() == 2) {
+                    throw new IOException("Jornal indisponível");
+                }
+            }
+
+            @Override
+            public void aposCasamento(Operacao operacao, long idEntrega) {
+                entregas.add(idEntrega);
+            }
+        }, 1, 8);
+
+        motor.processar(venda(1, "MPTS3", 100));
+        assertThrows(IOException.class, () -> motor.processar(compra(2, "MPTS3", 100)));
+        assertEquals(0, negocios.get());
+
+        motor.processar(compra(3, "MPTS3", 100));
+        assertEquals(1, negocios.get());
+        assertEquals(Arrays.asList(MotorParticionado.SEM_ENTREGA, MotorParticionado.SEM_ENTREGA,
+                MotorParticionado.SEM_ENTREGA), entregas);
+    }
+
+    private void criarMotor(EtapasParticao etapas, int particoes, int capacidade) {
+        motor = new MotorParticionado(new LivroDeOfertas(), new OuvinteNegociacao() {
+            @Override
+            public void aoNegociar(Operacao transacao) {
+                negocios.incrementAndGet();
+            }
+        }, (codigoAtivo, lado, preco, quantidade) -> { }, etapas, particoes, capacidade);
+    }
+
+    private static Operacao compra(long id, String ativo, long preco) {
+        return new Operacao(id, TipoOperacao.COMPRA, ativo, 10, preco, "CORA", id);
+    }
+
+    private static Operacao venda(long id, String ativo, long preco) {
+        return new Operacao(id, TipoOperacao.VENDA, ativo, 10, preco, "CORB", id);
+    }
+}
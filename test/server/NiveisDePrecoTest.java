@@ -0,0 +1,78 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes dos níveis de preço de um lado do livro, em especial da retirada adiada dos níveis
+ * esvaziados fora do topo.
+ */
+class NiveisDePrecoTest {
+
+    @Test
+    void nivelEsvaziadoForaDoTopoSaiQuandoChegaAoTopo() {
+        NiveisDePreco vendas = new NiveisDePreco(false);
+        NivelDePreco n100 = ocupar(vendas, 100);
+        NivelDePreco n101 = ocupar(vendas, 101);
+        ocupar(vendas, 102);
+
+        esvaziar(vendas, n101);
+        assertEquals(2, vendas.tamanho());
+        assertSame(n100, vendas.melhor());
+
+        esvaziar(vendas, n100);
+        assertEquals(102, vendas.melhor().getPreco());
+        assertEquals(1, vendas.tamanho());
+        assertEquals(1, vendas.posicoes());
+    }
+
+    @Test
+    void nivelVazioEReaproveitadoPeloMesmoPreco() {
+        NiveisDePreco compras = new NiveisDePreco(true);
+        ocupar(compras, 102);
+        NivelDePreco n101 = ocupar(compras, 101);
+        ocupar(compras, 100);
+        esvaziar(compras, n101);
+
+        NivelDePreco reaberto = compras.obterOuCriar(101);
+        reaberto.adicionar(new OfertaNoLivro(null));
+
+        assertSame(n101, reaberto);
+        assertEquals(3, compras.tamanho());
+    }
+
+    @Test
+    void compactaQuandoOsVaziosPassamDaMetade() {
+        NiveisDePreco compras = new NiveisDePreco(true);
+        NivelDePreco[] niveis = new NivelDePreco[100];
+        for (int i = 0; i < niveis.length; i++) {
+            niveis[i] = ocupar(compras, i);
+        }
+        // Esvazia todos os níveis abaixo do topo (99), dos piores para os melhores
+        for (int i = 0; i < niveis.length - 1; i++) {
+            esvaziar(compras, niveis[i]);
+        }
+
+        assertEquals(1, compras.tamanho());
+        assertTrue(compras.posicoes() <= 2 * compras.tamanho() + 1);
+        assertEquals(99, compras.melhor().getPreco());
+        assertNull(compras.obter(10));
+    }
+
+    private static NivelDePreco ocupar(NiveisDePreco lado, long preco) {
+        NivelDePreco nivel = lado.obterOuCriar(preco);
+        nivel.adicionar(new OfertaNoLivro(null));
+        return nivel;
+    }
+
+    private static void esvaziar(NiveisDePreco lado, NivelDePreco nivel) {
+        while (!nivel.isVazio()) {
+            nivel.remover(nivel.primeira());
+        }
+        lado.remover(nivel);
+    }
+}
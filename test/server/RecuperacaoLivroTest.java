@@ -0,0 +1,59 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import services.history.JornalNegocios;
+import services.history.ModoDurabilidade;
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes da restauração do livro a partir do jornal de ordens, sem snapshots.
+ */
+class RecuperacaoLivroTest {
+
+    private static final String ATIVO = "RLTS3";
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void reaplicaOrdensAlteracoesENegociosDoJornal() throws IOException {
+        try (JornalNegocios jornal = new JornalNegocios(diretorio.resolve("historico"), "ordens-", 64 * 1024,
+                ModoDurabilidade.SISTEMA_OPERACIONAL, 1, 10)) {
+            jornal.registrar(new Operacao(1, TipoOperacao.VENDA, ATIVO, 100, 100, "CORA", 1));
+            jornal.registrar(new Operacao(2, TipoOperacao.VENDA, ATIVO, 50, 101, "CORA", 2));
+            jornal.registrar(Operacao.alteracao(3, 1, TipoOperacao.VENDA, ATIVO, 0, "CORA", 3));
+            jornal.registrar(new Operacao(4, TipoOperacao.COMPRA, ATIVO, 30, 101, "CORB", 4));
+            jornal.registrar(new Operacao(5, TipoOperacao.COMPRA, ATIVO, 10, 99, "CORB", 5));
+
+            LivroDeOfertas livro = new LivroDeOfertas();
+            List<long[]> niveis = new ArrayList<>();
+            RecuperacaoLivro recuperacao = new RecuperacaoLivro(diretorio.resolve("livro"), jornal::percorrer);
+            recuperacao.restaurar(livro, (codigoAtivo, lado, preco, quantidade) ->
+                    niveis.add(new long[] {lado == TipoOperacao.COMPRA ? 0 : 1, preco, quantidade}));
+
+            // A ordem 1 foi cancelada e a 2 negociou 30 com a 4; a 5 não cruza
+            Operacao venda = livro.melhorOferta(ATIVO, TipoOperacao.VENDA);
+            assertEquals(2, venda.getId());
+            assertEquals(20, venda.getQuantidade());
+            Operacao compra = livro.melhorOferta(ATIVO, TipoOperacao.COMPRA);
+            assertEquals(5, compra.getId());
+            assertEquals(2, livro.consultarOfertasPorAtivo(ATIVO).size());
+
+            assertEquals(2, niveis.size());
+            for (long[] nivel : niveis) {
+                assertEquals(nivel[0] == 0 ? 99 : 101, nivel[1]);
+                assertEquals(nivel[0] == 0 ? 10 : 20, nivel[2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package services.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import services.manager.Dicionario;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes da codificação binária: ida e volta das mensagens e validação da entrada.
+ */
+class CodecBinarioTest {
+
+    private final CacheDeNomes nomes = new CacheDeNomes(16);
+
+    @Test
+    void ordemIdaEVolta() {
+        byte[] dados = new byte[8 + CodecBinario.TAMANHO_ORDEM];
+        int escritos = CodecBinario.codificarOrdem(dados, 8, TipoOperacao.VENDA, "CBTS3", 300, 123_4500L, "CORRETORA-CB", 77);
+
+        assertEquals(CodecBinario.TAMANHO_ORDEM, escritos);
+        assertEquals(CodecBinario.TIPO_ORDEM, CodecBinario.tipoMensagem(dados, 8, escritos));
+        assertEquals(TipoOperacao.VENDA, CodecBinario.lado(dados, 8));
+        assertEquals("CBTS3", CodecBinario.ativo(dados, 8, nomes));
+        assertEquals(300, CodecBinario.quantidade(dados, 8));
+        assertEquals(123_4500L, CodecBinario.preco(dados, 8));
+        assertEquals("CORRETORA-CB", CodecBinario.corretora(dados, 8, nomes));
+        assertEquals(77, CodecBinario.idBroker(dados, 8));
+    }
+
+    @Test
+    void alteracaoIdaEVolta() {
+        byte[] dados = new byte[CodecBinario.TAMANHO_ALTERACAO];
+        CodecBinario.codificarAlteracao(dados, 0, TipoOperacao.COMPRA, "CBTS4", 0, "CORB", 5, 1L << 35);
+
+        assertEquals(CodecBinario.TIPO_ALTERACAO, CodecBinario.tipoMensagem(dados, 0, dados.length));
+        assertEquals(TipoOperacao.COMPRA, CodecBinario.lado(dados, 0));
+        assertEquals("CBTS4", CodecBinario.ativo(dados, 0, nomes));
+        assertEquals(0, CodecBinario.quantidade(dados, 0));
+        assertEquals("CORB", CodecBinario.corretora(dados, 0, nomes));
+        assertEquals(5, CodecBinario.idBroker(dados, 0));
+        assertEquals(1L << 35, CodecBinario.idOrdem(dados, 0));
+    }
+
+    @Test
+    void codigoDoAtivoIgualAoDoDicionario() {
+        byte[] dados = new byte[CodecBinario.TAMANHO_ORDEM];
+        CodecBinario.codificarOrdem(dados, 0, TipoOperacao.COMPRA, "CBTS5", 1, 1, "CORC");
+
+        assertEquals(Dicionario.getAtivos().codigo("CBTS5"), CodecBinario.codigoAtivo(dados, 0));
+        assertEquals(Dicionario.getCorretoras().codigo("CORC"), CodecBinario.codigoCorretora(dados, 0));
+    }
+
+    @Test
+    void recusaMensagemTruncadaOuDeVersaoDesconhecida() {
+        byte[] dados = new byte[CodecBinario.TAMANHO_ORDEM];
+        CodecBinario.codificarOrdem(dados, 0, TipoOperacao.COMPRA, "CBTS3", 1, 1, "CORA");
+
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.tipoMensagem(dados, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.tipoMensagem(dados, 0, dados.length - 1));
+        dados[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.tipoMensagem(dados, 0, dados.length));
+    }
+
+    @Test
+    void recusaNomeInvalidoSemIncluirNoDicionario() {
+        byte[] dados = new byte[CodecBinario.TAMANHO_ORDEM];
+        CodecBinario.codificarOrdem(dados, 0, TipoOperacao.COMPRA, "CB TS", 1, 1, "CORA");
+        int ativos = Dicionario.getAtivos().tamanho();
+
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.codigoAtivo(dados, 0));
+        assertEquals(ativos, Dicionario.getAtivos().tamanho());
+
+        CodecBinario.codificarOrdem(dados, 0, TipoOperacao.COMPRA, "", 1, 1, "CORA");
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.codigoAtivo(dados, 0));
+        assertEquals(ativos, Dicionario.getAtivos().tamanho());
+    }
+
+    @Test
+    void recusaNomeMaiorQueOCampo() {
+        byte[] dados = new byte[CodecBinario.TAMANHO_ORDEM];
+
+        assertThrows(IllegalArgumentException.class,
+                () -> CodecBinario.codificarOrdem(dados, 0, TipoOperacao.COMPRA, "ATIVO-LONGO-DEMAIS", 1, 1, "CORA"));
+        assertThrows(IllegalArgumentException.class, () -> CodecBinario.validarNome("AÇÃO3", CodecBinario.TAMANHO_ATIVO));
+        CodecBinario.validarNome("PETR4", CodecBinario.TAMANHO_ATIVO);
+    }
+}
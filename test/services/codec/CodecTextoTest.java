@@ -0,0 +1,50 @@
+package services.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes da codificação de texto "ativo-quantidade-valor-corretora".
+ */
+class CodecTextoTest {
+
+    @Test
+    void operacaoIdaEVolta() {
+        Operacao operacao = CodecTexto.paraOperacao("CTTS3-200-12.34-CORA", TipoOperacao.COMPRA, () -> 42);
+
+        assertEquals(42, operacao.getId());
+        assertEquals(TipoOperacao.COMPRA, operacao.getTipo());
+        assertEquals("CTTS3", operacao.getAtivo());
+        assertEquals(200, operacao.getQuantidade());
+        assertEquals(1234, operacao.getPreco());
+        assertEquals("CORA", operacao.getCorretora());
+        assertEquals("CTTS3-200-12.34-CORA", CodecTexto.deOperacao(operacao));
+    }
+
+    @Test
+    void recusaMensagemInvalidaSemConsumirId() {
+        AtomicLong ids = new AtomicLong();
+
+        assertInvalida("CTTS3-200-12.34", ids);
+        assertInvalida("CTTS3-0-12.34-CORA", ids);
+        assertInvalida("CTTS3--5-12.34-CORA", ids);
+        assertInvalida("CTTS3-dez-12.34-CORA", ids);
+        assertInvalida("CTTS3-200-12.345-CORA", ids);
+        assertInvalida("ATIVOLONGODEMAIS-200-12.34-CORA", ids);
+        assertInvalida("-200-12.34-CORA", ids);
+        assertInvalida("CTTS3-200-12.34-CORRETORACOMNOMELONGO", ids);
+        assertEquals(0, ids.get());
+    }
+
+    private static void assertInvalida(String mensagem, AtomicLong ids) {
+        assertThrows(IllegalArgumentException.class,
+                () -> CodecTexto.paraOperacao(mensagem, TipoOperacao.VENDA, ids::incrementAndGet), mensagem);
+    }
+}
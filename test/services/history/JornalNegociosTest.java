@@ -0,0 +1,188 @@
+package services.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import services.manager.Operacao;
+import services.manager.TipoOperacao;
+
+/**
+ * Testes da escrita, da releitura e das consultas do jornal de negócios.
+ */
+class JornalNegociosTest {
+
+    // Segmentos pequenos, para que os testes atravessem mais de um segmento
+    private static final int TAMANHO_SEGMENTO = 4 * JornalNegocios.TAMANHO_REGISTRO;
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void registrosSobrevivemAReabertura() throws IOException {
+        long idGrande = (1L << 32) + 7;
+        try (JornalNegocios jornal = abrir()) {
+            for (int i = 1; i <= 5; i++) {
+                jornal.registrar(new Operacao(i, TipoOperacao.COMPRA, "JNTS3", 100 * i, 1000 + i, "CORA", 1_000L * i));
+            }
+            jornal.registrar(new Operacao(idGrande, TipoOperacao.VENDA, "JNTS4", 10, 2000, "CORRETORA-VINTE-CHAR", 9_000L));
+        }
+
+        try (JornalNegocios jornal = abrir()) {
+            List<Operacao> lidas = new ArrayList<>();
+            jornal.percorrer(lidas::add);
+
+            assertEquals(6, jornal.quantidadeRegistros());
+            assertEquals(6, lidas.size());
+            Operacao terceira = lidas.get(2);
+            assertEquals(3, terceira.getId());
+            assertEquals(TipoOperacao.COMPRA, terceira.getTipo());
+            assertEquals("JNTS3", terceira.getAtivo());
+            assertEquals(300, terceira.getQuantidade());
+            assertEquals(1003, terceira.getPreco());
+            assertEquals("CORA", terceira.getCorretora());
+            assertEquals(3_000L, terceira.getDataHora());
+
+            Operacao ultima = lidas.get(5);
+            assertEquals(idGrande, ultima.getId());
+            assertEquals(TipoOperacao.VENDA, ultima.getTipo());
+            assertEquals("CORRETORA-VINTE-CHAR", ultima.getCorretora());
+            assertEquals(idGrande, jornal.maiorId());
+        }
+    }
+
+    @Test
+    void percorreAPartirDeUmaPosicao() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            for (int i = 1; i <= 6; i++) {
+                jornal.registrar(new Operacao(i, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", i));
+            }
+
+            List<Long> ids = new ArrayList<>();
+            assertEquals(2, jornal.percorrer(4, operacao -> ids.add(operacao.getId())));
+            assertEquals(5L, ids.get(0));
+            assertEquals(6L, ids.get(1));
+        }
+    }
+
+    @Test
+    void maiorIdComIdsForaDeOrdem() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            assertEquals(0, jornal.maiorId());
+            jornal.registrar(new Operacao(10, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 1));
+            jornal.registrar(new Operacao(30, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 2));
+            jornal.registrar(new Operacao(20, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 3));
+
+            assertEquals(30, jornal.maiorId());
+        }
+    }
+
+    @Test
+    void recusaRegistroQueNaoCabe() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            jornal.registrar(new Operacao(1, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 1));
+
+            assertThrows(IllegalArgumentException.class, () ->
+                    jornal.registrar(new Operacao(2, TipoOperacao.COMPRA, "ATIVO-LONGO-DEMAIS", 1, 1, "CORA", 2)));
+            assertThrows(IllegalArgumentException.class, () ->
+                    jornal.registrar(new Operacao(3, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORRETORA-COM-NOME-LONGO", 3)));
+            assertThrows(IllegalArgumentException.class, () ->
+                    jornal.registrar(new Operacao(1L << 40, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 4)));
+
+            assertEquals(1, jornal.quantidadeRegistros());
+        }
+    }
+
+    @Test
+    void consultaPorAtivoNosSegmentosFechadosEAtual() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            registrarAlternados(jornal, 10);
+
+            assertEquals(Arrays.asList(2L, 4L, 6L, 8L, 10L), consultar(jornal, FiltroHistorico.todos().comAtivo("JNTS4")));
+            assertEquals(Arrays.asList(2L, 6L, 10L), consultar(jornal, FiltroHistorico.todos().comCorretora("CORB").comAtivo("JNTS4")));
+        }
+        try (JornalNegocios jornal = abrir()) {
+            assertEquals(Arrays.asList(2L, 4L, 6L, 8L, 10L), consultar(jornal, FiltroHistorico.todos().comAtivo("JNTS4")));
+        }
+    }
+
+    @Test
+    void fecharAguardaAIndexacao() throws IOException {
+        for (int rodada = 0; rodada < 20; rodada++) {
+            try (JornalNegocios jornal = abrir()) {
+                registrarAlternados(jornal, 40);
+            }
+            try (Stream<Path> arquivos = Files.list(diretorio)) {
+                assertFalse(arquivos.anyMatch(arquivo -> arquivo.toString().endsWith(".tmp")));
+            }
+        }
+    }
+
+    @Test
+    void somaDeVerificacaoCobreOIdInteiro() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            jornal.registrar(new Operacao(1, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 1));
+            jornal.registrar(new Operacao(2, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 2));
+        }
+        // Altera o bit mais baixo do ID do segundo registro
+        Path segmento = diretorio.resolve("negocios-00000000.jnl");
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer byteId = ByteBuffer.allocate(1);
+            long posicao = JornalNegocios.posicaoRegistro(1) + JornalNegocios.POS_ID_BAIXO + 3;
+            canal.read(byteId, posicao);
+            byteId.put(0, (byte) (byteId.get(0) ^ 1));
+            byteId.rewind();
+            canal.write(byteId, posicao);
+        }
+
+        try (JornalNegocios jornal = abrir()) {
+            assertEquals(1, jornal.quantidadeRegistros());
+        }
+    }
+
+    @Test
+    void recusaSegmentoComCabecalhoDesconhecido() throws IOException {
+        try (JornalNegocios jornal = abrir()) {
+            jornal.registrar(new Operacao(1, TipoOperacao.COMPRA, "JNTS3", 1, 1, "CORA", 1));
+        }
+        Path segmento = diretorio.resolve("negocios-00000000.jnl");
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 2}), 4);
+        }
+
+        assertThrows(IOException.class, this::abrir);
+    }
+
+    // Registra negócios numerados a partir de 1, alternando os ativos JNTS3 (ímpares) e JNTS4 (pares) e as corretoras CORA e CORB
+    private static void registrarAlternados(JornalNegocios jornal, int quantidade) throws IOException {
+        long primeiro = jornal.maiorId() + 1;
+        for (long id = primeiro; id < primeiro + quantidade; id++) {
+            jornal.registrar(new Operacao(id, TipoOperacao.COMPRA, id % 2 == 0 ? "JNTS4" : "JNTS3", 1, 1,
+                    id % 4 < 2 ? "CORA" : "CORB", id));
+        }
+    }
+
+    private static List<Long> consultar(JornalNegocios jornal, FiltroHistorico filtro) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        jornal.consultar(filtro, operacao -> ids.add(operacao.getId()));
+        return ids;
+    }
+
+    private JornalNegocios abrir() throws IOException {
+        return new JornalNegocios(diretorio, TAMANHO_SEGMENTO, ModoDurabilidade.POR_LOTE, 2, 10);
+    }
+}
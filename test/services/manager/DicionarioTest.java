@@ -0,0 +1,60 @@
+package services.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do dicionário de nomes. O dicionário é do processo, então cada teste usa nomes próprios.
+ */
+class DicionarioTest {
+
+    private final Dicionario dicionario = Dicionario.getAtivos();
+
+    @Test
+    void codigosDensosEEstaveis() {
+        int primeiro = dicionario.codigo("DCTA1");
+        int segundo = dicionario.codigo("DCTA2");
+
+        assertEquals(primeiro + 1, segundo);
+        assertEquals(primeiro, dicionario.codigo("DCTA1"));
+        assertEquals("DCTA2", dicionario.nome(segundo));
+        assertEquals(segundo + 1, dicionario.tamanho());
+    }
+
+    @Test
+    void codigoDosBytesIgualAoDoNome() {
+        byte[] campo = Arrays.copyOf("DCTB1".getBytes(StandardCharsets.US_ASCII), 12);
+
+        int codigo = dicionario.codigo(campo, 0, campo.length);
+
+        assertEquals(dicionario.codigo("DCTB1"), codigo);
+        assertEquals(codigo, dicionario.codigoExistente(campo, 0, campo.length));
+    }
+
+    @Test
+    void muitosNomesMantemOsCodigos() {
+        int[] codigos = new int[500];
+        for (int i = 0; i < codigos.length; i++) {
+            codigos[i] = dicionario.codigo("DCTC" + i);
+        }
+        for (int i = 0; i < codigos.length; i++) {
+            byte[] campo = Arrays.copyOf(("DCTC" + i).getBytes(StandardCharsets.US_ASCII), 12);
+            assertEquals(codigos[i], dicionario.codigoExistente(campo, 0, campo.length));
+            assertEquals("DCTC" + i, dicionario.nome(codigos[i]));
+        }
+    }
+
+    @Test
+    void codigoExistenteNaoIncluiONome() {
+        int tamanho = dicionario.tamanho();
+        byte[] campo = Arrays.copyOf("DCTD1".getBytes(StandardCharsets.US_ASCII), 12);
+
+        assertEquals(Dicionario.SEM_CODIGO, dicionario.codigoExistente("DCTD1"));
+        assertEquals(Dicionario.SEM_CODIGO, dicionario.codigoExistente(campo, 0, campo.length));
+        assertEquals(tamanho, dicionario.tamanho());
+    }
+}
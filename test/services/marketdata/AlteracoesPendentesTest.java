@@ -0,0 +1,50 @@
+package services.marketdata;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import services.manager.TipoOperacao;
+
+/**
+ * Testes da consolidação das alterações de nível entre publicações.
+ */
+class AlteracoesPendentesTest {
+
+    @Test
+    void consolidaPorLadoEPreco() {
+        AlteracoesPendentes pendentes = new AlteracoesPendentes();
+        pendentes.registrar(TipoOperacao.COMPRA, 100, 10, 1);
+        pendentes.registrar(TipoOperacao.VENDA, 100, 20, 2);
+        pendentes.registrar(TipoOperacao.COMPRA, 100, 0, 3);
+
+        assertEquals(2, pendentes.tamanho());
+        assertEquals(TipoOperacao.COMPRA, pendentes.lado(0));
+        assertEquals(0, pendentes.quantidade(0));
+        assertEquals(3, pendentes.sequencia(0));
+        assertEquals(TipoOperacao.VENDA, pendentes.lado(1));
+        assertEquals(20, pendentes.quantidade(1));
+    }
+
+    @Test
+    void cresceEMantemAOrdemDaPrimeiraAlteracao() {
+        AlteracoesPendentes pendentes = new AlteracoesPendentes();
+        for (int rodada = 0; rodada < 2; rodada++) {
+            for (long preco = 0; preco < 1000; preco++) {
+                pendentes.registrar(TipoOperacao.VENDA, preco, preco + rodada, rodada * 1000 + preco);
+            }
+        }
+
+        assertEquals(1000, pendentes.tamanho());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, pendentes.preco(i));
+            assertEquals(i + 1, pendentes.quantidade(i));
+        }
+
+        pendentes.limpar();
+        assertTrue(pendentes.isVazio());
+        pendentes.registrar(TipoOperacao.COMPRA, 5, 1, 1);
+        assertEquals(1, pendentes.tamanho());
+    }
+}
@@ -0,0 +1,81 @@
+package services.mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Testes da confirmação em lote de entregas concluídas fora de ordem.
+ */
+class ConfirmadorEntregasTest {
+
+    // Delivery tags confirmados e ações executadas, na ordem em que ocorreram
+    private final List<String> eventos = Collections.synchronizedList(new ArrayList<>());
+    private ConfirmadorEntregas confirmador;
+
+    @BeforeEach
+    void criarConfirmador() {
+        Channel canal = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class},
+                (proxy, metodo, argumentos) -> {
+                    if (metodo.getName().equals("basicAck")) {
+                        assertTrue((Boolean) argumentos[1], "confirmação múltipla");
+                        eventos.add("ack " + argumentos[0]);
+                    }
+                    return null;
+                });
+        // Lote de uma entrega e sem confirmação periódica durante o teste
+        confirmador = new ConfirmadorEntregas(canal, 8, 1, 3_600_000);
+    }
+
+    @AfterEach
+    void encerrar() {
+        confirmador.encerrar();
+    }
+
+    @Test
+    void confirmaApenasAteAPrimeiraEntregaPendente() {
+        confirmador.concluir(2);
+        confirmador.concluir(3);
+        assertTrue(eventos.isEmpty());
+
+        confirmador.concluir(1);
+        assertEquals(Collections.singletonList("ack 3"), eventos);
+
+        confirmador.concluir(5);
+        confirmador.confirmar();
+        assertEquals(Collections.singletonList("ack 3"), eventos);
+
+        confirmador.concluir(4);
+        assertEquals("ack 5", eventos.get(eventos.size() - 1));
+    }
+
+    @Test
+    void ignoraEntregaRepetidaERecusaForaDaJanela() {
+        confirmador.concluir(1);
+        confirmador.concluir(1);
+        assertEquals(Collections.singletonList("ack 1"), eventos);
+
+        assertThrows(IllegalStateException.class, () -> confirmador.concluir(1_000));
+    }
+
+    @Test
+    void executaAAcaoAntesDeConfirmar() {
+        confirmador.antesDeConfirmar(() -> eventos.add("antes"));
+
+        confirmador.concluir(1);
+
+        assertEquals(Arrays.asList("antes", "ack 1"), eventos);
+    }
+}
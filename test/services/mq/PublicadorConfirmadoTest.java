@@ -0,0 +1,206 @@
+package services.mq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * Testes das confirmações assíncronas e da janela do publicador com publisher confirms.
+ */
+class PublicadorConfirmadoTest {
+
+    private static final byte[] CORPO = new byte[] {1};
+
+    // Chaves publicadas no canal, na ordem de publicação
+    private final List<String> publicadas = Collections.synchronizedList(new ArrayList<>());
+    private Channel canal;
+    private ConfirmListener confirmacoes;
+    private ShutdownListener fechamento;
+    private long proximoTag = 1;
+
+    @BeforeEach
+    void criarCanal() {
+        canal = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class},
+                (proxy, metodo, argumentos) -> {
+                    switch (metodo.getName()) {
+                        case "addConfirmListener":
+                            confirmacoes = (ConfirmListener) argumentos[0];
+                            return null;
+                        case "addShutdownListener":
+                            fechamento = (ShutdownListener) argumentos[0];
+                            return null;
+                        case "getNextPublishSeqNo":
+                            return proximoTag;
+                        case "basicPublish":
+                            proximoTag++;
+                            publicadas.add((String) argumentos[1]);
+                            return null;
+                        case "isOpen":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    void confirmacaoSimplesEMultipla() throws Exception {
+        PublicadorConfirmado publicador = new PublicadorConfirmado(canal, "bolsa", 8);
+        CompletableFuture<Void> primeira = publicador.publicar("A", null, CORPO);
+        CompletableFuture<Void> segunda = publicador.publicar("B", null, CORPO);
+        CompletableFuture<Void> terceira = publicador.publicar("C", null, CORPO);
+        assertEquals(3, publicador.getEmTransito());
+
+        confirmacoes.handleAck(2, false);
+        assertFalse(primeira.isDone());
+        assertTrue(segunda.isDone());
+        assertEquals(2, publicador.getEmTransito());
+
+        confirmacoes.handleAck(3, true);
+        assertTrue(primeira.isDone());
+        assertTrue(terceira.isDone());
+        assertFalse(primeira.isCompletedExceptionally());
+        assertEquals(0, publicador.getEmTransito());
+        assertJanelaLivre(publicador, 8);
+    }
+
+    @Test
+    void rejeicaoConcluiComErro() throws Exception {
+        PublicadorConfirmado publicador = new PublicadorConfirmado(canal, "bolsa", 8);
+        List<CompletableFuture<Void>> lote = publicador.publicarLote(Arrays.asList("A", "B", "C"), null,
+                Arrays.asList(CORPO, CORPO, CORPO));
+
+        confirmacoes.handleNack(2, true);
+        confirmacoes.handleAck(3, false);
+
+        assertFalha(lote.get(0));
+        assertFalha(lote.get(1));
+        assertTrue(lote.get(2).isDone());
+        assertFalse(lote.get(2).isCompletedExceptionally());
+        assertJanelaLivre(publicador, 8);
+    }
+
+    @Test
+    void fechamentoDoCanalFalhaAsPendentes() throws Exception {
+        PublicadorConfirmado publicador = new PublicadorConfirmado(canal, "bolsa", 4);
+        CompletableFuture<Void> confirmada = publicador.publicar("A", null, CORPO);
+        CompletableFuture<Void> pendente = publicador.publicar("B", null, CORPO);
+        confirmacoes.handleAck(1, false);
+
+        fechamento.shutdownCompleted(new ShutdownSignalException(false, false, null, canal));
+
+        assertFalse(confirmada.isCompletedExceptionally());
+        assertFalha(pendente);
+        assertEquals(0, publicador.getEmTransito());
+        assertJanelaLivre(publicador, 4);
+    }
+
+    @Test
+    void janelaCheiaBloqueiaAteAConfirmacao() throws Exception {
+        PublicadorConfirmado publicador = new PublicadorConfirmado(canal, "bolsa", 2);
+        publicador.publicarLote(Arrays.asList("A", "B"), null, Arrays.asList(CORPO, CORPO));
+
+        CompletableFuture<CompletableFuture<Void>> terceira = new CompletableFuture<>();
+        Thread produtor = new Thread(() -> {
+            try {
+                terceira.complete(publicador.publicar("C", null, CORPO));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                terceira.completeExceptionally(e);
+            }
+        });
+        produtor.start();
+        aguardarBloqueio(produtor);
+        assertEquals(Arrays.asList("A", "B"), publicadas);
+
+        confirmacoes.handleAck(1, false);
+        terceira.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("A", "B", "C"), publicadas);
+        assertEquals(2, publicador.getEmTransito());
+
+        assertThrows(IllegalArgumentException.class, () ->
+                publicador.publicarLote(Arrays.asList("D", "E", "F"), null, Arrays.asList(CORPO, CORPO, CORPO)));
+    }
+
+    @Test
+    void poolDivideOLoteNaJanelaDoCanal() throws Exception {
+        Connection conexao = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, metodo, argumentos) ->
+                        metodo.getName().equals("createChannel") ? canal : null);
+        PoolDeCanais pool = new PoolDeCanais(Collections.singletonList(conexao), "bolsa", 1, 2);
+
+        CompletableFuture<CompletableFuture<Void>> lote = new CompletableFuture<>();
+        Thread produtor = new Thread(() -> {
+            try {
+                lote.complete(pool.publicarLote(Arrays.asList("A", "B", "C"), null, Arrays.asList(CORPO, CORPO, CORPO)));
+            } catch (IOException | RuntimeException e) {
+                lote.completeExceptionally(e);
+            }
+        });
+        produtor.start();
+        // A primeira parte ocupa a janela inteira; a segunda aguarda a sua confirmação
+        aguardarBloqueio(produtor);
+        assertEquals(Arrays.asList("A", "B"), publicadas);
+
+        confirmacoes.handleAck(2, true);
+        CompletableFuture<Void> confirmacao = lote.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("A", "B", "C"), publicadas);
+        assertFalse(confirmacao.isDone());
+
+        confirmacoes.handleAck(3, false);
+        assertTrue(confirmacao.isDone());
+        assertFalse(confirmacao.isCompletedExceptionally());
+    }
+
+    private static void aguardarBloqueio(Thread produtor) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (produtor.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < limite, "o produtor deveria aguardar a janela");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertFalha(CompletableFuture<Void> confirmacao) {
+        assertTrue(confirmacao.isCompletedExceptionally());
+        ExecutionException erro = assertThrows(ExecutionException.class, confirmacao::get);
+        assertTrue(erro.getCause() instanceof IOException);
+    }
+
+    // Um lote do tamanho da janela só é aceito sem bloquear se todas as vagas foram devolvidas
+    private void assertJanelaLivre(PublicadorConfirmado publicador, int janela) throws Exception {
+        List<String> chaves = new ArrayList<>();
+        List<byte[]> corpos = new ArrayList<>();
+        for (int i = 0; i < janela; i++) {
+            chaves.add("J");
+            corpos.add(CORPO);
+        }
+        CompletableFuture<Void> publicacao = CompletableFuture.runAsync(() -> {
+            try {
+                publicador.publicarLote(chaves, null, corpos);
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        publicacao.get(5, TimeUnit.SECONDS);
+        assertEquals(janela, publicador.getEmTransito());
+    }
+}